@@ -0,0 +1,132 @@
+package kz.kaspi.lab.fileuploader.bench;
+
+import kz.kaspi.lab.fileuploader.config.BlockingIoConfig;
+import kz.kaspi.lab.fileuploader.config.MinioConfig;
+import kz.kaspi.lab.fileuploader.service.LocalStorageBackend;
+import kz.kaspi.lab.fileuploader.service.MinioStorageBackend;
+import kz.kaspi.lab.fileuploader.service.PartBufferPool;
+import kz.kaspi.lab.fileuploader.service.StorageBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Всплеск из concurrency одновременных чтений объекта через настоящий {@link StorageBackend}
+ * на планировщике из {@link BlockingIoConfig}: backend=minio — MinIO SDK и OkHttp против
+ * {@link InMemoryS3Server}, который отдаёт тело кусками по 64 KB с задержкой chunkDelayMillis;
+ * backend=local — файлы на диске. Параллельно читается не больше maxThreads объектов
+ * (storage.blocking.max-threads, 0 — 10 × число ядер), остальные ждут в очереди.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockingIoBenchmark {
+
+    private static final int OBJECTS = 64;
+
+    @Param({"0", "512"})
+    private int maxThreads;
+
+    @Param({"minio", "local"})
+    private String backend;
+
+    @Param({"64", "512"})
+    private int concurrency;
+
+    @Param({"256KB"})
+    private String objectSize;
+
+    @Param({"5"})
+    private long chunkDelayMillis;
+
+    private InMemoryS3Server s3;
+    private Path rootDir;
+    private AnnotationConfigApplicationContext context;
+    private StorageBackend storage;
+
+    @Setup
+    public void setUp() throws IOException {
+        s3 = InMemoryS3Server.start(Duration.ofMillis(chunkDelayMillis));
+        rootDir = Files.createTempDirectory("bench-objects");
+
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("bench", Map.of(
+                "storage.backend", backend,
+                "storage.blocking.max-threads", String.valueOf(maxThreads),
+                "storage.minio.endpoint", s3.endpoint(),
+                "storage.minio.access-key", "bench",
+                "storage.minio.secret-key", "bench",
+                "storage.minio.bucket-name", "bench",
+                "storage.minio.max-concurrent-requests", String.valueOf(concurrency),
+                "storage.local.root-dir", rootDir.toString())));
+        context.register(BlockingIoConfig.class, PartBufferPool.class, MinioConfig.class,
+                MinioStorageBackend.class, LocalStorageBackend.class);
+        context.refresh();
+        storage = context.getBean(StorageBackend.class);
+
+        byte[] content = new byte[Math.toIntExact(DataSize.parse(objectSize).toBytes())];
+        s3.createBucket("bench");
+        Flux.range(0, OBJECTS)
+                .concatMap(i -> storage.put(objectName(i),
+                        Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(content)),
+                        "application/octet-stream", content.length, hash -> Mono.empty()))
+                .blockLast();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        s3.close();
+        FileSystemUtils.deleteRecursively(rootDir);
+    }
+
+    @Benchmark
+    public Long burst() {
+        return Flux.range(0, concurrency)
+                .flatMap(i -> storage.get(objectName(i % OBJECTS), 0, null)
+                        .map(BlockingIoBenchmark::release)
+                        .reduce(0L, Long::sum), concurrency)
+                .reduce(0L, Long::sum)
+                .block();
+    }
+
+    private static long release(DataBuffer buffer) {
+        long length = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return length;
+    }
+
+    private static String objectName(int i) {
+        return "bench/" + i;
+    }
+}
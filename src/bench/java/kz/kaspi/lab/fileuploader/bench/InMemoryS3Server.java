@@ -0,0 +1,230 @@
+package kz.kaspi.lab.fileuploader.bench;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * S3-совместимая заглушка в том же процессе — ровно те запросы, которые делает MinioStorageBackend:
+ * bucket (HEAD, PUT, ?location), PUT объекта, multipart (create, part, complete, abort) и DELETE.
+ * Тело читается до конца, но не хранится — запоминаются только размеры, поэтому в прогоне
+ * меряется сервис, а не диск или сеть хранилища. GET целого объекта отдаёт нули его длины
+ * кусками по 64 KB; {@code chunkDelay} между кусками имитирует медленное хранилище,
+ * читатель всё это время ждёт на сокете. Range не поддерживается.
+ */
+final class InMemoryS3Server implements AutoCloseable {
+
+    private static final String XMLNS = "http://s3.amazonaws.com/doc/2006-03-01/";
+    private static final int GET_CHUNK_SIZE = 64 * 1024;
+    private static final byte[] ZEROES = new byte[GET_CHUNK_SIZE];
+
+    private final Set<String> buckets = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> objects = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> multipartUploads = new ConcurrentHashMap<>();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final Duration chunkDelay;
+    private final DisposableServer server;
+
+    private InMemoryS3Server(Duration chunkDelay) {
+        this.chunkDelay = chunkDelay;
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .handle(this::handle)
+                .bindNow();
+    }
+
+    static InMemoryS3Server start() {
+        return new InMemoryS3Server(Duration.ZERO);
+    }
+
+    static InMemoryS3Server start(Duration chunkDelay) {
+        return new InMemoryS3Server(chunkDelay);
+    }
+
+    String endpoint() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    void createBucket(String bucket) {
+        buckets.add(bucket);
+    }
+
+    long bytesReceived() {
+        return bytesReceived.get();
+    }
+
+    int objectCount() {
+        return objects.size();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        QueryStringDecoder uri = new QueryStringDecoder(request.uri());
+        Map<String, List<String>> query = uri.parameters();
+        String path = uri.path().substring(1);
+        int slash = path.indexOf('/');
+        String bucket = slash < 0 ? path : path.substring(0, slash);
+        String key = slash < 0 ? "" : path.substring(slash + 1);
+        HttpMethod method = request.method();
+
+        if (key.isEmpty()) {
+            return handleBucket(request, response, method, bucket, query);
+        }
+        if (!buckets.contains(bucket)) {
+            return drain(request).then(error(response, HttpResponseStatus.NOT_FOUND, "NoSuchBucket"));
+        }
+        String object = bucket + "/" + key;
+
+        if (method.equals(HttpMethod.POST) && query.containsKey("uploads")) {
+            String uploadId = UUID.randomUUID().toString();
+            multipartUploads.put(uploadId, new AtomicLong());
+            return drain(request).then(xml(response, "<InitiateMultipartUploadResult xmlns=\"" + XMLNS + "\">"
+                    + "<Bucket>" + bucket + "</Bucket><Key>" + key + "</Key><UploadId>" + uploadId + "</UploadId>"
+                    + "</InitiateMultipartUploadResult>"));
+        }
+        if (query.containsKey("uploadId")) {
+            return handleMultipart(request, response, method, bucket, key, query.get("uploadId").get(0));
+        }
+        if (method.equals(HttpMethod.PUT)) {
+            return drain(request).flatMap(size -> {
+                objects.put(object, size);
+                return ok(response.header("ETag", etag()));
+            });
+        }
+        if (method.equals(HttpMethod.GET)) {
+            Long size = objects.get(object);
+            return size == null
+                    ? error(response, HttpResponseStatus.NOT_FOUND, "NoSuchKey")
+                    : sendObject(response, size);
+        }
+        if (method.equals(HttpMethod.HEAD)) {
+            Long size = objects.get(object);
+            return size == null
+                    ? response.status(HttpResponseStatus.NOT_FOUND).send()
+                    : ok(response.header("Content-Length", String.valueOf(size)).header("ETag", etag()));
+        }
+        if (method.equals(HttpMethod.DELETE)) {
+            objects.remove(object);
+            return response.status(HttpResponseStatus.NO_CONTENT).send();
+        }
+        return drain(request).then(error(response, HttpResponseStatus.NOT_IMPLEMENTED, "NotImplemented"));
+    }
+
+    private Mono<Void> handleBucket(HttpServerRequest request, HttpServerResponse response, HttpMethod method,
+                                    String bucket, Map<String, List<String>> query) {
+        if (method.equals(HttpMethod.GET) && query.containsKey("location")) {
+            return xml(response, "<LocationConstraint xmlns=\"" + XMLNS + "\"></LocationConstraint>");
+        }
+        if (method.equals(HttpMethod.HEAD)) {
+            return buckets.contains(bucket)
+                    ? ok(response)
+                    : response.status(HttpResponseStatus.NOT_FOUND).send();
+        }
+        if (method.equals(HttpMethod.PUT)) {
+            buckets.add(bucket);
+            return drain(request).then(ok(response));
+        }
+        return drain(request).then(error(response, HttpResponseStatus.NOT_IMPLEMENTED, "NotImplemented"));
+    }
+
+    private Mono<Void> handleMultipart(HttpServerRequest request, HttpServerResponse response, HttpMethod method,
+                                       String bucket, String key, String uploadId) {
+        AtomicLong size = multipartUploads.get(uploadId);
+        if (size == null) {
+            return drain(request).then(error(response, HttpResponseStatus.NOT_FOUND, "NoSuchUpload"));
+        }
+        if (method.equals(HttpMethod.PUT)) {
+            return drain(request).flatMap(partSize -> {
+                size.addAndGet(partSize);
+                return ok(response.header("ETag", etag()));
+            });
+        }
+        if (method.equals(HttpMethod.POST)) {
+            return drain(request).flatMap(ignored -> {
+                multipartUploads.remove(uploadId);
+                objects.put(bucket + "/" + key, size.get());
+                return xml(response, "<CompleteMultipartUploadResult xmlns=\"" + XMLNS + "\">"
+                        + "<Location>" + endpoint() + "/" + bucket + "/" + key + "</Location>"
+                        + "<Bucket>" + bucket + "</Bucket><Key>" + key + "</Key><ETag>" + etag() + "</ETag>"
+                        + "</CompleteMultipartUploadResult>");
+            });
+        }
+        if (method.equals(HttpMethod.DELETE)) {
+            multipartUploads.remove(uploadId);
+            return response.status(HttpResponseStatus.NO_CONTENT).send();
+        }
+        return drain(request).then(error(response, HttpResponseStatus.NOT_IMPLEMENTED, "NotImplemented"));
+    }
+
+    /**
+     * Читает тело до конца; буферы Netty освобождаются после onNext.
+     */
+    private Mono<Long> drain(HttpServerRequest request) {
+        return request.receive()
+                .reduce(0L, (total, buffer) -> total + readable(buffer))
+                .doOnNext(bytesReceived::addAndGet);
+    }
+
+    private Mono<Void> sendObject(HttpServerResponse response, long size) {
+        int chunks = Math.toIntExact((size + GET_CHUNK_SIZE - 1) / GET_CHUNK_SIZE);
+        Flux<ByteBuf> body = Flux.range(0, chunks)
+                .map(i -> Unpooled.wrappedBuffer(ZEROES, 0, (int) Math.min(GET_CHUNK_SIZE, size - (long) i * GET_CHUNK_SIZE)));
+        if (!chunkDelay.isZero()) {
+            body = body.delayElements(chunkDelay);
+        }
+        return response.status(HttpResponseStatus.OK)
+                .header("Content-Length", String.valueOf(size))
+                .header("Content-Type", "application/octet-stream")
+                .header("ETag", etag())
+                .send(body)
+                .then();
+    }
+
+    private static long readable(ByteBuf buffer) {
+        return buffer.readableBytes();
+    }
+
+    private static Mono<Void> ok(HttpServerResponse response) {
+        return response.status(HttpResponseStatus.OK).send();
+    }
+
+    private static Mono<Void> xml(HttpServerResponse response, String body) {
+        return response.status(HttpResponseStatus.OK)
+                .header("Content-Type", "application/xml")
+                .sendString(Mono.just("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body))
+                .then();
+    }
+
+    private static Mono<Void> error(HttpServerResponse response, HttpResponseStatus status, String code) {
+        return response.status(status)
+                .header("Content-Type", "application/xml")
+                .sendString(Mono.just("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>" + code
+                        + "</Code><Message>" + code + "</Message></Error>"))
+                .then();
+    }
+
+    private static String etag() {
+        return "\"" + UUID.randomUUID().toString().replace("-", "") + "\"";
+    }
+}
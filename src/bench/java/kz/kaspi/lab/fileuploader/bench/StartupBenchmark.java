@@ -0,0 +1,198 @@
+package kz.kaspi.lab.fileuploader.bench;
+
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Время до первого ответа: собранный jar запускается отдельным процессом, и замеряется время
+ * от запуска JVM до первого 200 на path. Перед замером схема БД применяется шагом migrate того же jar,
+ * так что вариант с профилем fast-start сравнивается с обычным на одной и той же базе.
+ * Сборки без шага migrate (Flyway только при старте) запускаются с migrate=false; jar, собранный
+ * с -Dmigrate=false, — тоже с migrate=false и postgres= базы, где схема уже применена.
+ * <p>
+ * Параметры в виде key=value:
+ * <ul>
+ *     <li>jar — что запускать (target/FileUploader-*.jar);</li>
+ *     <li>jvm — аргументы JVM через запятую, например
+ *     {@code -XX:SharedArchiveFile=application.jsa,-Dspring.aot.enabled=true};</li>
+ *     <li>args — аргументы приложения через запятую, например {@code --spring.profiles.active=fast-start};</li>
+ *     <li>runs — запусков (5);</li>
+ *     <li>path — первый запрос (/api/v1/uploads?limit=1 — с походом в БД);</li>
+ *     <li>label — подпись варианта в результате;</li>
+ *     <li>migrate — применить схему шагом migrate перед замером (true);</li>
+ *     <li>postgres — jdbc-url внешней БД вместо контейнера, user/password как в application.yaml;</li>
+ *     <li>out — куда дописать строку с результатом в JSON (target/startup-results.jsonl).</li>
+ * </ul>
+ * MinIO заменяет {@link InMemoryS3Server} в процессе бенчмарка.
+ */
+public final class StartupBenchmark {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(5);
+    private static final Duration START_TIMEOUT = Duration.ofMinutes(2);
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = UploadLoadBenchmark.parseOptions(args);
+        Path jar = options.containsKey("jar") ? Path.of(options.get("jar")) : findJar();
+        List<String> jvmArgs = split(options.getOrDefault("jvm", ""));
+        List<String> appArgs = split(options.getOrDefault("args", ""));
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        String path = options.getOrDefault("path", "/api/v1/uploads?limit=1");
+        String label = options.getOrDefault("label", String.join(" ", jvmArgs) + " " + String.join(" ", appArgs)).trim();
+        Path out = Path.of(options.getOrDefault("out", "target/startup-results.jsonl"));
+        boolean migrateFirst = Boolean.parseBoolean(options.getOrDefault("migrate", "true"));
+
+        PostgreSQLContainer<?> postgres = null;
+        try (InMemoryS3Server s3 = InMemoryS3Server.start()) {
+            String jdbcUrl = options.get("postgres");
+            if (jdbcUrl == null) {
+                postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+                        .withDatabaseName("fileuploader")
+                        .withUsername("postgres")
+                        .withPassword("postgres");
+                postgres.start();
+                jdbcUrl = postgres.getJdbcUrl();
+            }
+            List<String> connection = List.of(
+                    "--spring.flyway.url=" + jdbcUrl,
+                    "--spring.r2dbc.url=r2dbc:" + jdbcUrl.substring("jdbc:".length()),
+                    "--storage.minio.endpoint=" + s3.endpoint());
+
+            if (migrateFirst) {
+                System.out.println("Applying migrations");
+                List<String> migrate = new ArrayList<>(List.of("migrate"));
+                migrate.addAll(connection);
+                if (launch(jar, List.of(), migrate, jar.resolveSibling("startup-migrate.log")).waitFor() != 0) {
+                    throw new IllegalStateException("Migration failed, see " + jar.resolveSibling("startup-migrate.log"));
+                }
+            }
+
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+            long[] millis = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                int port = freePort();
+                List<String> runArgs = new ArrayList<>(connection);
+                runArgs.add("--server.port=" + port);
+                runArgs.addAll(appArgs);
+                Path log = jar.resolveSibling("startup-" + run + ".log");
+
+                long started = System.nanoTime();
+                Process process = launch(jar, jvmArgs, runArgs, log);
+                try {
+                    awaitFirstResponse(client, URI.create("http://127.0.0.1:" + port + path), process, log);
+                    millis[run] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                } finally {
+                    process.destroy();
+                    if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                        process.destroyForcibly();
+                    }
+                }
+                System.out.printf("Run %d: first response after %d ms%n", run + 1, millis[run]);
+            }
+
+            long[] sorted = millis.clone();
+            Arrays.sort(sorted);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("commit", UploadLoadBenchmark.gitCommit());
+            result.put("label", label);
+            result.put("path", path);
+            result.put("runs", runs);
+            result.put("minMs", sorted[0]);
+            result.put("medianMs", sorted[runs / 2]);
+            result.put("maxMs", sorted[runs - 1]);
+            report(result, out);
+        } finally {
+            if (postgres != null) {
+                postgres.stop();
+            }
+        }
+    }
+
+    private static Process launch(Path jar, List<String> jvmArgs, List<String> appArgs, Path log) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add(jar.toString());
+        command.addAll(appArgs);
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+    }
+
+    private static void awaitFirstResponse(HttpClient client, URI uri, Process process, Path log) throws Exception {
+        long deadline = System.nanoTime() + START_TIMEOUT.toNanos();
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(10)).build();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Application exited with " + process.exitValue() + ", see " + log);
+            }
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (ConnectException e) {
+                // Сервер ещё не слушает порт
+            }
+            Thread.sleep(POLL_INTERVAL.toMillis());
+        }
+        throw new IllegalStateException("No response from " + uri + " within " + START_TIMEOUT + ", see " + log);
+    }
+
+    private static Path findJar() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of("target"))) {
+            return files.filter(file -> file.getFileName().toString().matches("FileUploader-.*(?<!-plain)\\.jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No jar in target, run ./mvnw package first"));
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static List<String> split(String value) {
+        return value.isBlank() ? List.of() : List.of(value.trim().split("\\s*,\\s*"));
+    }
+
+    private static void report(Map<String, Object> result, Path out) throws IOException {
+        System.out.printf("%s: first response min=%s median=%s max=%s ms%n",
+                result.get("label"), result.get("minMs"), result.get("medianMs"), result.get("maxMs"));
+        String json = result.entrySet().stream()
+                .map(entry -> "\"" + entry.getKey() + "\":" + (entry.getValue() instanceof Number
+                        ? entry.getValue()
+                        : "\"" + entry.getValue() + "\""))
+                .collect(Collectors.joining(",", "{", "}"));
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        Files.writeString(out, json + System.lineSeparator(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        System.out.println("Result appended to " + out);
+    }
+}
@@ -0,0 +1,339 @@
+package kz.kaspi.lab.fileuploader.bench;
+
+import kz.kaspi.lab.fileuploader.FileUploaderApplication;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Сквозной нагрузочный прогон POST /api/v1/upload: приложение поднимается в этом же процессе
+ * поверх {@link InMemoryS3Server} и Postgres из testcontainers (или внешнего, см. postgres=).
+ * <p>
+ * Параметры в виде key=value:
+ * <ul>
+ *     <li>concurrency — одновременных запросов (16);</li>
+ *     <li>requests / warmup — запросов в замере и в прогреве (2000 / 200);</li>
+ *     <li>sizes — распределение размеров файлов, размер:вес (64KB:70,1MB:25,16MB:5);</li>
+ *     <li>backend — minio (заглушка S3, по умолчанию) или local;</li>
+ *     <li>blocking-threads — storage.blocking.max-threads (0 — 10 × число ядер);</li>
+ *     <li>postgres — jdbc-url внешней БД вместо контейнера, user/password как в application.yaml;</li>
+ *     <li>out — куда дописать строку с результатом в JSON (target/load-results.jsonl).</li>
+ * </ul>
+ * Свойства приложения переопределяются через -D. Распределение размеров детерминировано,
+ * так что результаты разных коммитов сравнимы между собой. Аллокации считаются по всем потокам
+ * JVM, то есть вместе с клиентом — сравнивать их имеет смысл только между прогонами этого же стенда.
+ */
+public final class UploadLoadBenchmark {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final double MB = 1024 * 1024;
+
+    private UploadLoadBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "2000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "200"));
+        String sizes = options.getOrDefault("sizes", "64KB:70,1MB:25,16MB:5");
+        String backend = options.getOrDefault("backend", "minio");
+        String blockingThreads = options.getOrDefault("blocking-threads", "0");
+        Path out = Path.of(options.getOrDefault("out", "target/load-results.jsonl"));
+
+        SizeDistribution distribution = SizeDistribution.parse(sizes);
+        PostgreSQLContainer<?> postgres = null;
+        try (InMemoryS3Server s3 = InMemoryS3Server.start()) {
+            String jdbcUrl = options.get("postgres");
+            if (jdbcUrl == null) {
+                postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+                        .withDatabaseName("fileuploader")
+                        .withUsername("postgres")
+                        .withPassword("postgres");
+                postgres.start();
+                jdbcUrl = postgres.getJdbcUrl();
+            }
+            configure(jdbcUrl, s3.endpoint(), backend, blockingThreads);
+
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(FileUploaderApplication.class).run()) {
+                int port = Integer.parseInt(context.getEnvironment().getRequiredProperty("local.server.port"));
+                Driver driver = new Driver(WebClient.create("http://127.0.0.1:" + port), distribution);
+
+                System.out.printf("Warmup: %d requests%n", warmup);
+                driver.measure(warmup, concurrency, 1);
+
+                System.out.printf("Measuring: %d requests, concurrency %d, sizes %s, backend %s, blocking threads %s%n",
+                        requests, concurrency, sizes, backend, blockingThreads);
+                Map<String, Object> result = driver.measure(requests, concurrency, 2);
+                result.put("commit", gitCommit());
+                result.put("backend", backend);
+                result.put("blockingThreads", blockingThreads);
+                result.put("sizes", sizes);
+                result.put("concurrency", concurrency);
+                report(result, out);
+            }
+        } finally {
+            if (postgres != null) {
+                postgres.stop();
+            }
+        }
+    }
+
+    private static void configure(String jdbcUrl, String s3Endpoint, String backend, String blockingThreads) throws IOException {
+        // application.yaml перекрывает defaultProperties, поэтому задаём системными свойствами, не трогая заданные через -D
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.flyway.url", jdbcUrl);
+        properties.put("spring.r2dbc.url", "r2dbc:" + jdbcUrl.substring("jdbc:".length()));
+        properties.put("storage.backend", backend);
+        properties.put("storage.blocking.max-threads", blockingThreads);
+        properties.put("storage.minio.endpoint", s3Endpoint);
+        properties.put("storage.local.root-dir", Files.createTempDirectory("bench-objects").toString());
+        properties.put("server.port", "0");
+        properties.put("logging.level.root", "WARN");
+        properties.put("spring.devtools.restart.enabled", "false");
+        properties.forEach((name, value) -> {
+            if (System.getProperty(name) == null) {
+                System.setProperty(name, value);
+            }
+        });
+    }
+
+    private static void report(Map<String, Object> result, Path out) throws IOException {
+        System.out.printf("requests=%s errors=%s%n", result.get("requests"), result.get("errors"));
+        System.out.printf("latency ms: p50=%s p90=%s p99=%s p999=%s max=%s%n",
+                result.get("p50Ms"), result.get("p90Ms"), result.get("p99Ms"), result.get("p999Ms"), result.get("maxMs"));
+        System.out.printf("throughput: %s req/s, %s MB/s%n", result.get("requestsPerSecond"), result.get("mbPerSecond"));
+        System.out.printf("allocation: %s MB/s, %s MB per request; gc: %s collections, %s ms%n",
+                result.get("allocMbPerSecond"), result.get("allocMbPerRequest"), result.get("gcCount"), result.get("gcMs"));
+
+        String json = result.entrySet().stream()
+                .map(entry -> "\"" + entry.getKey() + "\":" + (entry.getValue() instanceof Number
+                        ? entry.getValue()
+                        : "\"" + entry.getValue() + "\""))
+                .collect(Collectors.joining(",", "{", "}"));
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        Files.writeString(out, json + System.lineSeparator(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        System.out.println("Result appended to " + out);
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    static String gitCommit() {
+        try {
+            Process process = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").start();
+            String commit = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            return process.waitFor() == 0 ? commit : "unknown";
+        } catch (IOException e) {
+            return "unknown";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "unknown";
+        }
+    }
+
+    /**
+     * Размеры файлов с весами; выбор по номеру запроса с фиксированным seed.
+     */
+    private record SizeDistribution(long[] sizes, int[] cumulativeWeights) {
+
+        static SizeDistribution parse(String spec) {
+            String[] entries = spec.split(",");
+            long[] sizes = new long[entries.length];
+            int[] cumulative = new int[entries.length];
+            int total = 0;
+            for (int i = 0; i < entries.length; i++) {
+                String[] pair = entries[i].trim().split(":");
+                sizes[i] = DataSize.parse(pair[0]).toBytes();
+                total += pair.length > 1 ? Integer.parseInt(pair[1]) : 1;
+                cumulative[i] = total;
+            }
+            return new SizeDistribution(sizes, cumulative);
+        }
+
+        long sizeOf(int request) {
+            int total = cumulativeWeights[cumulativeWeights.length - 1];
+            int pick = new Random(request).nextInt(total);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (pick < cumulativeWeights[i]) {
+                    return sizes[i];
+                }
+            }
+            return sizes[sizes.length - 1];
+        }
+
+        long max() {
+            long max = 0;
+            for (long size : sizes) {
+                max = Math.max(max, size);
+            }
+            return max;
+        }
+    }
+
+    private static final class Driver {
+
+        private final WebClient client;
+        private final SizeDistribution distribution;
+        /** Общий случайный блок: тела запросов — его срезы без копирования. */
+        private final byte[] content;
+        private final String runId = UUID.randomUUID().toString();
+
+        Driver(WebClient client, SizeDistribution distribution) {
+            this.client = client;
+            this.distribution = distribution;
+            this.content = new byte[Math.toIntExact(distribution.max())];
+            new Random(42).nextBytes(content);
+        }
+
+        Map<String, Object> measure(int requests, int concurrency, int phase) {
+            Histogram latency = new ConcurrentHistogram(3);
+            Map<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+            AtomicLong uploadedBytes = new AtomicLong();
+
+            long allocatedBefore = allocatedBytes();
+            long[] gcBefore = gcTotals();
+            long start = System.nanoTime();
+            Flux.range(0, requests)
+                    .flatMap(i -> upload(phase, i, latency, statuses, uploadedBytes), concurrency)
+                    .blockLast();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long allocated = allocatedBytes() - allocatedBefore;
+            long[] gcAfter = gcTotals();
+
+            long errors = statuses.entrySet().stream()
+                    .filter(entry -> entry.getKey() < 200 || entry.getKey() >= 300)
+                    .mapToLong(entry -> entry.getValue().get())
+                    .sum();
+            statuses.forEach((status, count) -> System.out.printf("  HTTP %d: %d%n", status, count.get()));
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("requests", requests);
+            result.put("errors", errors);
+            result.put("p50Ms", millis(latency.getValueAtPercentile(50)));
+            result.put("p90Ms", millis(latency.getValueAtPercentile(90)));
+            result.put("p99Ms", millis(latency.getValueAtPercentile(99)));
+            result.put("p999Ms", millis(latency.getValueAtPercentile(99.9)));
+            result.put("maxMs", millis(latency.getMaxValue()));
+            result.put("requestsPerSecond", round(requests / seconds));
+            result.put("mbPerSecond", round(uploadedBytes.get() / MB / seconds));
+            result.put("allocMbPerSecond", round(allocated / MB / seconds));
+            result.put("allocMbPerRequest", round(allocated / MB / requests));
+            result.put("gcCount", gcAfter[0] - gcBefore[0]);
+            result.put("gcMs", gcAfter[1] - gcBefore[1]);
+            return result;
+        }
+
+        private Mono<Integer> upload(int phase, int request, Histogram latency,
+                                     Map<Integer, AtomicLong> statuses, AtomicLong uploadedBytes) {
+            long size = distribution.sizeOf(request);
+            MultipartBodyBuilder body = new MultipartBodyBuilder();
+            body.asyncPart("file", body(phase, request, size), DataBuffer.class)
+                    .filename("bench-" + request + ".bin")
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM);
+
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return client.post()
+                        .uri("/api/v1/upload")
+                        .header("X-Idempotency-Key", runId + "-" + phase + "-" + request)
+                        .body(BodyInserters.fromMultipartData(body.build()))
+                        .exchangeToMono(response -> response.releaseBody()
+                                .thenReturn(response.statusCode().value()))
+                        .onErrorReturn(-1)
+                        .doOnNext(status -> {
+                            latency.recordValue((System.nanoTime() - start) / 1000);
+                            statuses.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+                            if (status >= 200 && status < 300) {
+                                uploadedBytes.addAndGet(size);
+                            }
+                        });
+            });
+        }
+
+        /**
+         * Уникальный префикс, чтобы дедупликация по SHA-256 не схлопнула одинаковые тела, и срезы общего блока.
+         */
+        private Flux<DataBuffer> body(int phase, int request, long size) {
+            byte[] prefix = (runId + "-" + phase + "-" + request).getBytes(StandardCharsets.UTF_8);
+            int prefixLength = (int) Math.min(prefix.length, size);
+            int rest = Math.toIntExact(size - prefixLength);
+            DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+            return Flux.concat(
+                    Mono.fromSupplier(() -> factory.wrap(ByteBuffer.wrap(prefix, 0, prefixLength))),
+                    Flux.range(0, (rest + CHUNK_SIZE - 1) / CHUNK_SIZE).map(i -> {
+                        int offset = i * CHUNK_SIZE;
+                        return factory.wrap(ByteBuffer.wrap(content, offset, Math.min(CHUNK_SIZE, rest - offset)));
+                    }));
+        }
+
+        private static long allocatedBytes() {
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long total = 0;
+            for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                if (allocated > 0) {
+                    total += allocated;
+                }
+            }
+            return total;
+        }
+
+        private static long[] gcTotals() {
+            long count = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            return new long[]{count, millis};
+        }
+
+        private static double millis(long micros) {
+            return round(micros / 1000.0);
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 100) / 100.0;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SHA-256 содержимого загрузки: из массива (путь MinIO) и из direct ByteBuffer
+ * (путь локального бэкенда, буферы Netty).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentDigestBenchmark {
+
+    @Param({"8192", "65536", "1048576"})
+    public int size;
+
+    private byte[] heap;
+    private ByteBuffer direct;
+
+    @Setup
+    public void setUp() {
+        heap = new byte[size];
+        ThreadLocalRandom.current().nextBytes(heap);
+        direct = ByteBuffer.allocateDirect(size);
+        direct.put(heap).flip();
+    }
+
+    @Benchmark
+    public String heapArray() {
+        ContentDigest digest = new ContentDigest();
+        digest.update(heap, 0, heap.length);
+        return digest.hex();
+    }
+
+    @Benchmark
+    public String directBuffer() {
+        ContentDigest digest = new ContentDigest();
+        digest.update(direct.duplicate());
+        return digest.hex();
+    }
+}
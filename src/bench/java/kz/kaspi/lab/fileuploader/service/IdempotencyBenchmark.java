@@ -0,0 +1,85 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.service.InFlightUploads.Registration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Часть захвата idempotency key, выполняемая в памяти узла: поиск в кэше, запись
+ * результата захвата в кэш и регистрация лидера в InFlightUploads.
+ * Сам запрос claim к Postgres меряет {@code UploadLoadBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class IdempotencyBenchmark {
+
+    private static final int KEYS = 100_000;
+
+    private IdempotencyService idempotencyService;
+    private IdempotencyCache idempotencyCache;
+    private InFlightUploads inFlightUploads;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        idempotencyCache = new IdempotencyCache(meterRegistry, KEYS * 2L, Duration.ofHours(1), Duration.ofSeconds(5));
+        // Репозиторий не нужен: checkCachedStatus не ходит в БД
+        idempotencyService = new IdempotencyService(null, idempotencyCache);
+        inFlightUploads = new InFlightUploads(meterRegistry, Duration.ofSeconds(2));
+
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = UUID.randomUUID().toString();
+            // Половина ключей уже обработана, вторая половина — промахи кэша
+            if (i % 2 == 0) {
+                idempotencyCache.put(keys[i], Upload.UploadStatus.SUCCESS, UUID.randomUUID());
+            }
+        }
+    }
+
+    @Benchmark
+    public Upload checkCachedStatus() {
+        return idempotencyService.checkCachedStatus(randomKey()).block();
+    }
+
+    @Benchmark
+    public void cacheClaimedUpload() {
+        idempotencyCache.put(randomKey(), Upload.UploadStatus.PROCESSING, UUID.randomUUID());
+    }
+
+    @Benchmark
+    public boolean registerAndFinishLeader() {
+        String key = randomKey();
+        Registration registration = inFlightUploads.register(key);
+        if (registration.leader()) {
+            inFlightUploads.finish(key, registration.entry());
+        }
+        return registration.leader();
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(KEYS)];
+    }
+}
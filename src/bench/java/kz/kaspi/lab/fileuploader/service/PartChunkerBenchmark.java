@@ -0,0 +1,87 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нарезка входящего потока на части multipart вместе с подсчётом SHA-256 — то, что
+ * MinioStorageBackend делает с каждым байтом загрузки. Буферы источника по размеру
+ * как у Netty. Результат — объектов в секунду, MB/s = ops/s × objectSize.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartChunkerBenchmark {
+
+    private static final int PART_SIZE = Math.toIntExact(DataSize.ofMegabytes(8).toBytes());
+
+    @Param({"16384", "65536"})
+    public int sourceBufferSize;
+
+    @Param({"1048576", "33554432"})
+    public int objectSize;
+
+    private PartBufferPool pool;
+    private byte[] content;
+
+    @Setup
+    public void setUp() {
+        pool = new PartBufferPool(new SimpleMeterRegistry(), DataSize.ofBytes(PART_SIZE), 32, 32);
+        content = new byte[objectSize];
+        ThreadLocalRandom.current().nextBytes(content);
+    }
+
+    @Benchmark
+    public String splitAndHash() {
+        ContentDigest digest = new ContentDigest();
+        PartChunker.split(source(), pool, digest)
+                .doOnNext(chunk -> pool.release(chunk.data()))
+                .blockLast();
+        return digest.hex();
+    }
+
+    /**
+     * Для сравнения: только SHA-256 по тем же буферам, без копирования в части.
+     */
+    @Benchmark
+    public String hashOnly() {
+        ContentDigest digest = new ContentDigest();
+        source().doOnNext(buffer -> {
+                    try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                        iterator.forEachRemaining(digest::update);
+                    }
+                })
+                .blockLast();
+        return digest.hex();
+    }
+
+    private Flux<DataBuffer> source() {
+        int buffers = (objectSize + sourceBufferSize - 1) / sourceBufferSize;
+        return Flux.range(0, buffers).map(i -> {
+            int offset = i * sourceBufferSize;
+            int length = Math.min(sourceBufferSize, objectSize - offset);
+            return DefaultDataBufferFactory.sharedInstance.wrap(ByteBuffer.wrap(content, offset, length));
+        });
+    }
+}
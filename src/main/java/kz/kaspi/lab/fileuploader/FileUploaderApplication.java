@@ -2,12 +2,29 @@ package kz.kaspi.lab.fileuploader;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.util.ClassUtils;
+
+import java.util.Arrays;
 
 @SpringBootApplication
 public class FileUploaderApplication {
 
-    public static void main(String[] args) {
+    /** Лежит в src/migrate/java и попадает в сборку только с профилем migrate. */
+    private static final String MIGRATION_CLASS = "kz.kaspi.lab.fileuploader.config.DatabaseMigration";
+
+    public static void main(String[] args) throws ReflectiveOperationException {
+        if (args.length > 0 && "migrate".equals(args[0])) {
+            migrate(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         SpringApplication.run(FileUploaderApplication.class, args);
     }
 
+    private static void migrate(String[] args) throws ReflectiveOperationException {
+        if (!ClassUtils.isPresent(MIGRATION_CLASS, FileUploaderApplication.class.getClassLoader())) {
+            throw new IllegalStateException("This build has no migrations (built with -Dmigrate=false)");
+        }
+        Class.forName(MIGRATION_CLASS).getMethod("run", String[].class).invoke(null, (Object) args);
+    }
+
 }
@@ -0,0 +1,41 @@
+package kz.kaspi.lab.fileuploader.config;
+
+import kz.kaspi.lab.fileuploader.service.AdmissionController;
+import lombok.RequiredArgsConstructor;
+import org.jspecify.annotations.Nullable;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/admission: текущие лимиты допуска загрузок и их загрузка.
+ * POST с любыми из полей maxConcurrent, maxInFlightBytes, perClientMaxConcurrent меняет лимиты на лету.
+ * По умолчанию эндпоинт только для чтения (management.endpoint.admission.access=read-only):
+ * аутентификации у actuator нет, запись включается вместе с отдельным management.server.port.
+ */
+@Component
+@Endpoint(id = "admission")
+@RequiredArgsConstructor
+public class AdmissionEndpoint {
+
+    private final AdmissionController admissionController;
+
+    @ReadOperation
+    public Map<String, Object> admission() {
+        return Map.of(
+                "limits", admissionController.limits(),
+                "active", admissionController.active(),
+                "inFlightBytes", admissionController.inFlightBytes()
+        );
+    }
+
+    @WriteOperation
+    public AdmissionController.Limits updateLimits(@Nullable Integer maxConcurrent,
+                                                   @Nullable Long maxInFlightBytes,
+                                                   @Nullable Integer perClientMaxConcurrent) {
+        return admissionController.updateLimits(maxConcurrent, maxInFlightBytes, perClientMaxConcurrent);
+    }
+}
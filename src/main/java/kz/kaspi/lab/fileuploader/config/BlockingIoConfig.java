@@ -0,0 +1,32 @@
+package kz.kaspi.lab.fileuploader.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Планировщик блокирующих участков (storage.blocking.*): чтение тела объекта из MinIO,
+ * файловый I/O локального бэкенда, спул асинхронного приёма и дискового кэша.
+ * Пул платформенных потоков bounded-elastic, лимиты потоков и очереди задаются явно.
+ * <p>
+ * Запросы к MinIO (put, multipart, delete) неблокирующие и идут через dispatcher OkHttp,
+ * пул их не затрагивает.
+ */
+@Slf4j
+@Configuration
+public class BlockingIoConfig {
+
+    private static final String THREAD_PREFIX = "blocking-io";
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler blockingIoScheduler(
+            @Value("${storage.blocking.max-threads:0}") int maxThreads,
+            @Value("${storage.blocking.queue-size:100000}") int queueSize) {
+        int threads = maxThreads > 0 ? maxThreads : Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE;
+        log.info("Blocking I/O on bounded elastic scheduler: maxThreads={}, queueSize={}", threads, queueSize);
+        return Schedulers.newBoundedElastic(threads, queueSize, THREAD_PREFIX);
+    }
+}
@@ -0,0 +1,95 @@
+package kz.kaspi.lab.fileuploader.config;
+
+import jakarta.annotation.PreDestroy;
+import kz.kaspi.lab.fileuploader.service.MinioMultipartClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.ReactiveHealthIndicator;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+
+/**
+ * Проверка бакета MinIO (health-компонент minioBucket, входит в группу readiness).
+ * <p>
+ * Проверка идёт в фоне после старта: приложение поднимается, не дожидаясь MinIO, а readiness
+ * не переходит в UP, пока бакет не найден или не создан (storage.minio.create-bucket). Неудачные
+ * попытки повторяются с нарастающей паузой, последняя ошибка видна в /actuator/health.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+public class MinioBucketHealthIndicator implements ReactiveHealthIndicator {
+
+    private final MinioMultipartClient client;
+    private final String bucketName;
+    private final boolean createBucket;
+
+    private volatile boolean ready;
+    private volatile String lastError;
+    private volatile Disposable bootstrap;
+
+    public MinioBucketHealthIndicator(
+            MinioMultipartClient client,
+            @Value("${storage.minio.bucket-name}") String bucketName,
+            @Value("${storage.minio.create-bucket:true}") boolean createBucket) {
+        this.client = client;
+        this.bucketName = bucketName;
+        this.createBucket = createBucket;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        bootstrap = Mono.defer(this::ensureBucket)
+                .doOnError(e -> lastError = e.toString())
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("MinIO bucket {} is not available yet (attempt {}): {}",
+                                bucketName, signal.totalRetries() + 1, signal.failure().toString())))
+                .subscribe(v -> {
+                }, e -> log.error("MinIO bucket check stopped", e), () -> {
+                    ready = true;
+                    lastError = null;
+                });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (bootstrap != null) {
+            bootstrap.dispose();
+        }
+    }
+
+    private Mono<Void> ensureBucket() {
+        return client.bucketExists(bucketName)
+                .flatMap(exists -> {
+                    if (exists) {
+                        log.info("Bucket {} already exists", bucketName);
+                        return Mono.empty();
+                    }
+                    if (!createBucket) {
+                        return Mono.error(new IllegalStateException("Bucket " + bucketName + " does not exist"));
+                    }
+                    return client.makeBucket(bucketName)
+                            .doOnSuccess(v -> log.info("Created bucket: {}", bucketName));
+                });
+    }
+
+    @Override
+    public Mono<Health> health() {
+        if (ready) {
+            return Mono.just(Health.up().withDetail("bucket", bucketName).build());
+        }
+        // Первая проверка ещё не завершилась — OUT_OF_SERVICE, проверка не удалась — DOWN
+        return Mono.just(lastError != null
+                ? Health.down().withDetail("bucket", bucketName).withDetail("error", lastError).build()
+                : Health.outOfService().withDetail("bucket", bucketName).build());
+    }
+}
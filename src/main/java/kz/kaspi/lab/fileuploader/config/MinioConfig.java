@@ -1,17 +1,24 @@
 package kz.kaspi.lab.fileuploader.config;
 
-import io.minio.BucketExistsArgs;
-import io.minio.MakeBucketArgs;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
-import jakarta.annotation.PostConstruct;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
+import io.minio.http.HttpUtils;
+import kz.kaspi.lab.fileuploader.service.MinioMultipartClient;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-@Slf4j
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Клиенты MinIO. Создание бинов в сеть не ходит: наличие бакета проверяет
+ * {@link MinioBucketHealthIndicator} уже после старта.
+ */
 @Configuration
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
 public class MinioConfig {
 
     @Value("${storage.minio.endpoint}")
@@ -23,37 +30,37 @@ public class MinioConfig {
     @Value("${storage.minio.secret-key}")
     private String secretKey;
 
-    @Value("${storage.minio.bucket-name}")
-    private String bucketName;
+    @Value("${storage.minio.max-concurrent-requests:64}")
+    private int maxConcurrentRequests;
 
     @Bean
     public MinioClient minioClient() {
-        MinioClient client = MinioClient.builder()
+        return MinioClient.builder()
                 .endpoint(endpoint)
                 .credentials(accessKey, secretKey)
                 .build();
+    }
 
-        // Инициализация bucket прямо здесь, но без вызова бина самого себя
-        initializeBucket(client);
+    /**
+     * Неблокирующий клиент для стриминговой загрузки. У dispatcher OkHttp по умолчанию
+     * лимит 5 запросов на хост — поднимаем его, иначе параллельные загрузки встанут в очередь.
+     */
+    @Bean
+    public MinioMultipartClient minioMultipartClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxConcurrentRequests);
+        dispatcher.setMaxRequestsPerHost(maxConcurrentRequests);
 
-        return client;
-    }
+        long timeout = TimeUnit.MINUTES.toMillis(5);
+        OkHttpClient httpClient = HttpUtils.newDefaultHttpClient(timeout, timeout, timeout)
+                .newBuilder()
+                .dispatcher(dispatcher)
+                .build();
 
-    private void initializeBucket(MinioClient client) {
-        try {
-            boolean exists = client.bucketExists(
-                    BucketExistsArgs.builder().bucket(bucketName).build()
-            );
-            if (!exists) {
-                client.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
-                log.info("Created bucket: {}", bucketName);
-            } else {
-                log.info("Bucket {} already exists", bucketName);
-            }
-        } catch (Exception e) {
-            log.error("Failed to initialize MinIO bucket", e);
-            // Не бросаем исключение, чтобы приложение не падало при старте
-            // Можно добавить retry logic или health check
-        }
+        return new MinioMultipartClient(MinioAsyncClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .httpClient(httpClient)
+                .build());
     }
-}
\ No newline at end of file
+}
@@ -1,19 +1,69 @@
 package kz.kaspi.lab.fileuploader.config;
 
+import kz.kaspi.lab.fileuploader.controller.AdmissionFilter;
+import kz.kaspi.lab.fileuploader.controller.BatchUploadHandler;
+import kz.kaspi.lab.fileuploader.controller.ChunkedUploadHandler;
+import kz.kaspi.lab.fileuploader.controller.DirectUploadHandler;
+import kz.kaspi.lab.fileuploader.controller.FileDownloadHandler;
 import kz.kaspi.lab.fileuploader.controller.FileUploadHandler;
+import kz.kaspi.lab.fileuploader.controller.UploadListHandler;
+import kz.kaspi.lab.fileuploader.controller.UploadStatusStreamHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerResponse;
 
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
 import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RequestPredicates.PUT;
 import static org.springframework.web.reactive.function.server.RouterFunctions.route;
 
 @Configuration
 public class RouterConfig {
 
     @Bean
-    public RouterFunction<ServerResponse> uploadRoutes(FileUploadHandler handler) {
-        return route(POST("/api/v1/upload"), handler::uploadFile);
+    public RouterFunction<ServerResponse> uploadRoutes(FileUploadHandler handler, AdmissionFilter admissionFilter) {
+        return route(POST("/api/v1/upload"), handler::uploadFile)
+                .filter(admissionFilter)
+                .andRoute(GET("/api/v1/upload/{id}"), handler::getUploadStatus);
     }
-}
\ No newline at end of file
+
+    @Bean
+    public RouterFunction<ServerResponse> uploadListRoutes(UploadListHandler handler) {
+        return route(GET("/api/v1/uploads"), handler::list);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> uploadEventRoutes(UploadStatusStreamHandler handler) {
+        return route(GET("/api/v1/uploads/events"), handler::events);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> batchUploadRoutes(BatchUploadHandler handler, AdmissionFilter admissionFilter) {
+        return route(POST("/api/v1/upload/batch"), handler::uploadBatch)
+                .filter(admissionFilter);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> chunkedUploadRoutes(ChunkedUploadHandler handler, AdmissionFilter admissionFilter) {
+        return route(PUT("/api/v1/upload/sessions/{sessionId}/chunks/{index}"), handler::uploadChunk)
+                .filter(admissionFilter)
+                .andRoute(POST("/api/v1/upload/sessions"), handler::createSession)
+                .andRoute(GET("/api/v1/upload/sessions/{sessionId}"), handler::getSession)
+                .andRoute(POST("/api/v1/upload/sessions/{sessionId}/commit"), handler::commit);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+    public RouterFunction<ServerResponse> directUploadRoutes(DirectUploadHandler handler, AdmissionFilter admissionFilter) {
+        return route(POST("/api/v1/upload/direct/{id}/complete"), handler::complete)
+                .filter(admissionFilter)
+                .andRoute(POST("/api/v1/upload/direct"), handler::begin);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> downloadRoutes(FileDownloadHandler handler) {
+        return route(GET("/api/v1/files/{id}"), handler::download);
+    }
+}
@@ -0,0 +1,71 @@
+package kz.kaspi.lab.fileuploader.controller;
+
+import kz.kaspi.lab.fileuploader.exception.ClientLimitExceededException;
+import kz.kaspi.lab.fileuploader.exception.OverloadedException;
+import kz.kaspi.lab.fileuploader.service.AdmissionController;
+import kz.kaspi.lab.fileuploader.service.AdmissionController.Permit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+/**
+ * Фильтр перед загрузкой файла: запрос, не прошедший {@link AdmissionController},
+ * отклоняется до чтения тела — 429 при превышении лимита клиента, 503 при общей перегрузке.
+ * Клиент определяется по заголовку X-Client-Id, без него — по адресу.
+ */
+@Slf4j
+@Component
+public class AdmissionFilter implements HandlerFilterFunction<ServerResponse, ServerResponse> {
+
+    private static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    private final AdmissionController admissionController;
+    private final boolean enabled;
+
+    public AdmissionFilter(AdmissionController admissionController,
+                           @Value("${upload.admission.enabled:true}") boolean enabled) {
+        this.admissionController = admissionController;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
+        if (!enabled) {
+            return next.handle(request);
+        }
+        return Mono.defer(() -> {
+            Permit permit = admissionController.admit(clientId(request), request.headers().contentLength().orElse(-1));
+            return next.handle(request).doFinally(signal -> permit.release());
+        }).onErrorResume(OverloadedException.class, this::reject);
+    }
+
+    private Mono<ServerResponse> reject(OverloadedException e) {
+        HttpStatus status = e instanceof ClientLimitExceededException
+                ? HttpStatus.TOO_MANY_REQUESTS
+                : HttpStatus.SERVICE_UNAVAILABLE;
+        log.debug("Upload rejected with {}: {}", status.value(), e.getMessage());
+        return ServerResponse.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                .bodyValue(Map.of("error", e.getMessage()));
+    }
+
+    private static String clientId(ServerRequest request) {
+        String clientId = request.headers().firstHeader(CLIENT_ID_HEADER);
+        if (clientId != null && !clientId.isBlank()) {
+            return clientId;
+        }
+        return request.remoteAddress()
+                .map(InetSocketAddress::getHostString)
+                .orElse("unknown");
+    }
+}
@@ -0,0 +1,87 @@
+package kz.kaspi.lab.fileuploader.controller;
+
+import kz.kaspi.lab.fileuploader.exception.IdempotencyException;
+import kz.kaspi.lab.fileuploader.service.BatchItem;
+import kz.kaspi.lab.fileuploader.service.BatchUploadService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * POST /api/v1/upload/batch — много файлов в одном multipart-запросе.
+ * X-Idempotency-Key запроса обязателен; у каждой файловой части может быть свой
+ * X-Idempotency-Key в заголовках части, иначе ключ файла — ключ пачки и его номер.
+ * Ответ 200 с результатом по каждому файлу, в том числе когда часть файлов не сохранилась;
+ * 409, если ключ пачки уже использован для другого состава файлов.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BatchUploadHandler {
+
+    private static final String IDEMPOTENCY_HEADER = "X-Idempotency-Key";
+
+    private final BatchUploadService batchUploadService;
+
+    public Mono<ServerResponse> uploadBatch(ServerRequest request) {
+        String batchKey = request.headers().firstHeader(IDEMPOTENCY_HEADER);
+
+        if (batchKey == null || batchKey.isBlank()) {
+            return ServerResponse.badRequest()
+                    .bodyValue(Map.of("error", IDEMPOTENCY_HEADER + " header is required"));
+        }
+
+        return batchUploadService.processBatch(batchKey, items(request, batchKey))
+                .flatMap(response -> response.items().isEmpty()
+                        ? ServerResponse.badRequest().bodyValue(Map.of("error", "At least one file part is required"))
+                        : ServerResponse.ok().bodyValue(response))
+                .onErrorResume(IdempotencyException.class, e -> ServerResponse.status(HttpStatus.CONFLICT)
+                        .bodyValue(Map.of("error", e.getMessage())))
+                .onErrorResume(e -> {
+                    log.error("Unexpected error during batch upload {}", batchKey, e);
+                    return ServerResponse.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .bodyValue(Map.of("error", "Internal server error"));
+                });
+    }
+
+    /**
+     * Файловые части по одной, в порядке следования в запросе; остальные поля формы пропускаются.
+     */
+    private Flux<BatchItem> items(ServerRequest request, String batchKey) {
+        return Flux.defer(() -> {
+            AtomicInteger index = new AtomicInteger();
+            return request.bodyToFlux(PartEvent.class)
+                    .doOnDiscard(PartEvent.class, event -> DataBufferUtils.release(event.content()))
+                    .windowUntil(PartEvent::isLast)
+                    .concatMap(part -> part.switchOnFirst((first, events) -> {
+                        if (first.get() instanceof FilePartEvent fileEvent) {
+                            int itemIndex = index.getAndIncrement();
+                            String itemKey = fileEvent.headers().getFirst(IDEMPOTENCY_HEADER);
+                            MediaType contentType = fileEvent.headers().getContentType();
+                            return batchUploadService.bufferItem(
+                                    itemIndex,
+                                    itemKey != null && !itemKey.isBlank()
+                                            ? itemKey
+                                            : BatchUploadService.itemKey(batchKey, itemIndex),
+                                    fileEvent.filename(),
+                                    contentType != null ? contentType.toString() : MediaType.APPLICATION_OCTET_STREAM_VALUE,
+                                    events.map(PartEvent::content));
+                        }
+                        return events.doOnNext(event -> DataBufferUtils.release(event.content()))
+                                .then(Mono.<BatchItem>empty());
+                    }), 1);
+        });
+    }
+}
@@ -0,0 +1,179 @@
+package kz.kaspi.lab.fileuploader.controller;
+
+import kz.kaspi.lab.fileuploader.dto.CreateSessionRequest;
+import kz.kaspi.lab.fileuploader.dto.SessionResponse;
+import kz.kaspi.lab.fileuploader.dto.SessionResponse.ByteRange;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.UploadSessionPart;
+import kz.kaspi.lab.fileuploader.exception.IdempotencyException;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import kz.kaspi.lab.fileuploader.exception.UploadSessionException;
+import kz.kaspi.lab.fileuploader.service.ChunkedUploadService;
+import kz.kaspi.lab.fileuploader.service.ChunkedUploadService.SessionState;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * API докачки:
+ * <pre>
+ * POST /api/v1/upload/sessions                      — открыть (или продолжить) сессию
+ * PUT  /api/v1/upload/sessions/{id}/chunks/{index}  — загрузить чанк, в любом порядке
+ * GET  /api/v1/upload/sessions/{id}                 — какие диапазоны уже получены
+ * POST /api/v1/upload/sessions/{id}/commit          — собрать файл
+ * </pre>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChunkedUploadHandler {
+
+    private final ChunkedUploadService chunkedUploadService;
+
+    public Mono<ServerResponse> createSession(ServerRequest request) {
+        String idempotencyKey = request.headers().firstHeader("X-Idempotency-Key");
+
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return ServerResponse.badRequest()
+                    .bodyValue(Map.of("error", "X-Idempotency-Key header is required"));
+        }
+
+        return request.bodyToMono(CreateSessionRequest.class)
+                .filter(body -> body.filename() != null && !body.filename().isBlank())
+                .flatMap(body -> chunkedUploadService.openSession(
+                                idempotencyKey,
+                                body.filename(),
+                                body.contentType() != null ? body.contentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE,
+                                body.totalSize())
+                        .flatMap(opening -> {
+                            if (opening.session() != null) {
+                                return chunkedUploadService.getState(opening.session().getId())
+                                        .flatMap(state -> ServerResponse.status(HttpStatus.CREATED).bodyValue(toResponse(state)));
+                            }
+                            return keyTaken(opening.upload());
+                        }))
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.badRequest()
+                        .bodyValue(Map.of("error", "filename is required"))))
+                .onErrorResume(this::handleError);
+    }
+
+    public Mono<ServerResponse> uploadChunk(ServerRequest request) {
+        return Mono.defer(() -> chunkedUploadService.uploadChunk(
+                        sessionId(request),
+                        Integer.parseInt(request.pathVariable("index")),
+                        request.body(BodyExtractors.toDataBuffers())))
+                .flatMap(part -> ServerResponse.ok().bodyValue(Map.of(
+                        "index", part.partNumber() - 1,
+                        "size", part.size(),
+                        "etag", part.etag()
+                )))
+                .switchIfEmpty(Mono.defer(this::sessionNotFound))
+                .onErrorResume(this::handleError);
+    }
+
+    public Mono<ServerResponse> getSession(ServerRequest request) {
+        return Mono.defer(() -> chunkedUploadService.getState(sessionId(request)))
+                .flatMap(state -> ServerResponse.ok().bodyValue(toResponse(state)))
+                .switchIfEmpty(Mono.defer(this::sessionNotFound))
+                .onErrorResume(this::handleError);
+    }
+
+    public Mono<ServerResponse> commit(ServerRequest request) {
+        return Mono.defer(() -> chunkedUploadService.commit(sessionId(request)))
+                .flatMap(upload -> ServerResponse.ok().bodyValue(Map.of(
+                        "message", "File upload completed",
+                        "uploadId", upload.getId(),
+                        "status", upload.getStatus(),
+                        "size", upload.getFileSize()
+                )))
+                .switchIfEmpty(Mono.defer(this::sessionNotFound))
+                .onErrorResume(this::handleError);
+    }
+
+    private static UUID sessionId(ServerRequest request) {
+        return UUID.fromString(request.pathVariable("sessionId"));
+    }
+
+    private Mono<ServerResponse> keyTaken(Upload existing) {
+        if (existing.getStatus() == Upload.UploadStatus.SUCCESS) {
+            return ServerResponse.status(HttpStatus.CONFLICT)
+                    .bodyValue(Map.of(
+                            "error", "Request already processed",
+                            "uploadId", existing.getId(),
+                            "status", existing.getStatus()
+                    ));
+        }
+        return ServerResponse.status(HttpStatus.CONFLICT)
+                .bodyValue(Map.of(
+                        "error", "Idempotency key is used by a non-resumable upload",
+                        "uploadId", existing.getId(),
+                        "status", existing.getStatus()
+                ));
+    }
+
+    private Mono<ServerResponse> sessionNotFound() {
+        return ServerResponse.status(HttpStatus.NOT_FOUND)
+                .bodyValue(Map.of("error", "Upload session not found or no longer open"));
+    }
+
+    private Mono<ServerResponse> handleError(Throwable e) {
+        if (e instanceof IllegalArgumentException) {
+            // Некорректный sessionId или индекс чанка в пути
+            return ServerResponse.badRequest()
+                    .bodyValue(Map.of("error", "Invalid session id or chunk index"));
+        }
+        if (e instanceof UploadSessionException || e instanceof IdempotencyException) {
+            return ServerResponse.status(HttpStatus.CONFLICT)
+                    .bodyValue(Map.of("error", e.getMessage()));
+        }
+        if (e instanceof StorageException) {
+            log.error("Storage error during chunked upload", e);
+            return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .bodyValue(Map.of("error", "Failed to store file"));
+        }
+        log.error("Unexpected error during chunked upload", e);
+        return ServerResponse.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .bodyValue(Map.of("error", "Internal server error"));
+    }
+
+    private SessionResponse toResponse(SessionState state) {
+        long chunkSize = state.session().getChunkSize();
+        long received = 0;
+        List<ByteRange> ranges = new ArrayList<>();
+
+        for (UploadSessionPart part : state.parts()) {
+            long start = (part.getPartNumber() - 1) * chunkSize;
+            long end = start + part.getSize() - 1;
+            received += part.getSize();
+
+            ByteRange last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last.end() + 1 == start) {
+                ranges.set(ranges.size() - 1, new ByteRange(last.start(), end));
+            } else if (part.getSize() > 0) {
+                ranges.add(new ByteRange(start, end));
+            }
+        }
+
+        return new SessionResponse(
+                state.session().getId(),
+                state.session().getUploadId(),
+                state.session().getStatus(),
+                chunkSize,
+                state.session().getTotalSize(),
+                received,
+                ranges,
+                state.session().getExpiresAt()
+        );
+    }
+}
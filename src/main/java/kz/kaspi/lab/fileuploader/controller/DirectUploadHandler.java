@@ -0,0 +1,145 @@
+package kz.kaspi.lab.fileuploader.controller;
+
+import kz.kaspi.lab.fileuploader.dto.CompleteDirectUploadRequest;
+import kz.kaspi.lab.fileuploader.dto.DirectUploadRequest;
+import kz.kaspi.lab.fileuploader.dto.DirectUploadResponse;
+import kz.kaspi.lab.fileuploader.dto.DirectUploadResponse.PartUrl;
+import kz.kaspi.lab.fileuploader.entity.DirectUpload;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.exception.DirectUploadException;
+import kz.kaspi.lab.fileuploader.exception.IdempotencyException;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import kz.kaspi.lab.fileuploader.service.DirectUploadService;
+import kz.kaspi.lab.fileuploader.service.DirectUploadService.DirectUploadGrant;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Прямая загрузка в MinIO:
+ * <pre>
+ * POST /api/v1/upload/direct                — получить presigned URL (или свежие, повтором с тем же ключом)
+ * POST /api/v1/upload/direct/{id}/complete  — подтвердить загрузку
+ * </pre>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+public class DirectUploadHandler {
+
+    private final DirectUploadService directUploadService;
+
+    public Mono<ServerResponse> begin(ServerRequest request) {
+        String idempotencyKey = request.headers().firstHeader("X-Idempotency-Key");
+
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return ServerResponse.badRequest()
+                    .bodyValue(Map.of("error", "X-Idempotency-Key header is required"));
+        }
+
+        return request.bodyToMono(DirectUploadRequest.class)
+                .filter(body -> body.filename() != null && !body.filename().isBlank() && body.size() != null)
+                .flatMap(body -> directUploadService.begin(
+                                idempotencyKey,
+                                body.filename(),
+                                body.contentType() != null ? body.contentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE,
+                                body.size())
+                        .flatMap(grant -> grant.direct() != null
+                                ? ServerResponse.status(HttpStatus.CREATED).bodyValue(toResponse(grant))
+                                : keyTaken(grant.upload())))
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.badRequest()
+                        .bodyValue(Map.of("error", "filename and size are required"))))
+                .onErrorResume(this::handleError);
+    }
+
+    public Mono<ServerResponse> complete(ServerRequest request) {
+        return Mono.defer(() -> {
+                    UUID id = UUID.fromString(request.pathVariable("id"));
+                    return request.bodyToMono(CompleteDirectUploadRequest.class)
+                            .map(body -> body.etag() != null ? body.etag() : "")
+                            .defaultIfEmpty("")
+                            .flatMap(etag -> directUploadService.complete(id, etag.isBlank() ? null : etag));
+                })
+                .flatMap(upload -> ServerResponse.ok().bodyValue(Map.of(
+                        "message", "File upload completed",
+                        "uploadId", upload.getId(),
+                        "status", upload.getStatus(),
+                        "size", upload.getFileSize()
+                )))
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.status(HttpStatus.NOT_FOUND)
+                        .bodyValue(Map.of("error", "Direct upload not found or no longer open"))))
+                .onErrorResume(this::handleError);
+    }
+
+    private Mono<ServerResponse> keyTaken(Upload existing) {
+        if (existing.getStatus() == Upload.UploadStatus.SUCCESS) {
+            return ServerResponse.status(HttpStatus.CONFLICT)
+                    .bodyValue(Map.of(
+                            "error", "Request already processed",
+                            "uploadId", existing.getId(),
+                            "status", existing.getStatus()
+                    ));
+        }
+        return ServerResponse.status(HttpStatus.CONFLICT)
+                .bodyValue(Map.of(
+                        "error", "Idempotency key is used by another upload",
+                        "uploadId", existing.getId(),
+                        "status", existing.getStatus()
+                ));
+    }
+
+    private Mono<ServerResponse> handleError(Throwable e) {
+        if (e instanceof IllegalArgumentException) {
+            // Некорректный id в пути или размер файла
+            return ServerResponse.badRequest()
+                    .bodyValue(Map.of("error", e.getMessage() != null ? e.getMessage() : "Invalid request"));
+        }
+        if (e instanceof DirectUploadException || e instanceof IdempotencyException) {
+            return ServerResponse.status(HttpStatus.CONFLICT)
+                    .bodyValue(Map.of("error", e.getMessage()));
+        }
+        if (e instanceof StorageException) {
+            log.error("Storage error during direct upload", e);
+            return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .bodyValue(Map.of("error", "Storage is unavailable"));
+        }
+        log.error("Unexpected error during direct upload", e);
+        return ServerResponse.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .bodyValue(Map.of("error", "Internal server error"));
+    }
+
+    private static DirectUploadResponse toResponse(DirectUploadGrant grant) {
+        DirectUpload direct = grant.direct();
+        String url = null;
+        List<PartUrl> parts = null;
+        if (direct.isMultipart()) {
+            parts = new ArrayList<>(grant.urls().size());
+            for (int i = 0; i < grant.urls().size(); i++) {
+                parts.add(new PartUrl(i + 1, grant.urls().get(i)));
+            }
+        } else {
+            url = grant.urls().get(0);
+        }
+        return new DirectUploadResponse(
+                direct.getId(),
+                direct.getUploadId(),
+                url,
+                direct.getPartSize(),
+                parts,
+                grant.urlExpiresAt(),
+                direct.getExpiresAt()
+        );
+    }
+}
@@ -0,0 +1,132 @@
+package kz.kaspi.lab.fileuploader.controller;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import kz.kaspi.lab.fileuploader.service.FileDownloadService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * GET /api/v1/files/{id} — скачивание с поддержкой Range и If-None-Match.
+ * ETag — SHA-256 содержимого, поэтому одинаковые файлы валидируются одним и тем же тегом.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FileDownloadHandler {
+
+    private final FileDownloadService downloadService;
+
+    public Mono<ServerResponse> download(ServerRequest request) {
+        return Mono.fromCallable(() -> UUID.fromString(request.pathVariable("id")))
+                .flatMap(downloadService::findDownloadable)
+                .flatMap(upload -> {
+                    String etag = etag(upload);
+                    return request.checkNotModified(etag)
+                            .switchIfEmpty(Mono.defer(() -> serve(request, upload, etag)));
+                })
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.status(HttpStatus.NOT_FOUND)
+                        .bodyValue(Map.of("error", "File not found"))))
+                .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest()
+                        .bodyValue(Map.of("error", "Invalid file id")))
+                .onErrorResume(StorageException.class, e -> {
+                    log.error("Storage error during download", e);
+                    return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .bodyValue(Map.of("error", "Failed to read file"));
+                })
+                .onErrorResume(e -> {
+                    log.error("Unexpected error during download", e);
+                    return ServerResponse.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .bodyValue(Map.of("error", "Internal server error"));
+                });
+    }
+
+    private Mono<ServerResponse> serve(ServerRequest request, Upload upload, String etag) {
+        long size = upload.getFileSize();
+        List<HttpRange> ranges = requestedRanges(request);
+
+        if (!ranges.stream().allMatch(range -> range.getRangeStart(size) < size)) {
+            return ServerResponse.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                    .build();
+        }
+
+        long servedBytes = ranges.isEmpty() ? size : ranges.stream()
+                .mapToLong(range -> range.getRangeEnd(size) - range.getRangeStart(size) + 1)
+                .sum();
+
+        // Zero-copy: файл из кэша уходит через sendfile, Range обрабатывает ResourceHttpMessageWriter
+        return downloadService.cachedFile(upload, servedBytes)
+                .flatMap(file -> withHeaders(ServerResponse.ok(), upload, etag)
+                        .body(BodyInserters.fromResource(new FileSystemResource(file))))
+                .switchIfEmpty(Mono.defer(() -> fromStorage(upload, etag, ranges)));
+    }
+
+    /**
+     * Из хранилища поддерживается один диапазон; при нескольких отдаём файл целиком (RFC 9110 это допускает).
+     */
+    private Mono<ServerResponse> fromStorage(Upload upload, String etag, List<HttpRange> ranges) {
+        long size = upload.getFileSize();
+        if (ranges.size() == 1) {
+            long start = ranges.get(0).getRangeStart(size);
+            long end = ranges.get(0).getRangeEnd(size);
+            return withHeaders(ServerResponse.status(HttpStatus.PARTIAL_CONTENT), upload, etag)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size)
+                    .contentLength(end - start + 1)
+                    .body(BodyInserters.fromDataBuffers(downloadService.stream(upload, start, end - start + 1)));
+        }
+        return withHeaders(ServerResponse.ok(), upload, etag)
+                .contentLength(size)
+                .body(BodyInserters.fromDataBuffers(downloadService.stream(upload, 0, null)));
+    }
+
+    private static ServerResponse.BodyBuilder withHeaders(ServerResponse.BodyBuilder builder, Upload upload, String etag) {
+        return builder
+                .eTag(etag)
+                .contentType(mediaType(upload))
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .headers(headers -> headers.setContentDisposition(ContentDisposition.attachment()
+                        .filename(upload.getOriginalFilename(), StandardCharsets.UTF_8)
+                        .build()));
+    }
+
+    private static List<HttpRange> requestedRanges(ServerRequest request) {
+        try {
+            return request.headers().range();
+        } catch (IllegalArgumentException e) {
+            // Некорректный Range игнорируем и отдаём файл целиком
+            return List.of();
+        }
+    }
+
+    private static MediaType mediaType(Upload upload) {
+        try {
+            return upload.getContentType() != null
+                    ? MediaType.parseMediaType(upload.getContentType())
+                    : MediaType.APPLICATION_OCTET_STREAM;
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    private static String etag(Upload upload) {
+        return "\"" + (upload.getContentHash() != null ? upload.getContentHash() : upload.getId()) + "\"";
+    }
+}
@@ -1,32 +1,51 @@
 package kz.kaspi.lab.fileuploader.controller;
 
 import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.dto.UploadResponse;
+import kz.kaspi.lab.fileuploader.exception.OverloadedException;
+import kz.kaspi.lab.fileuploader.service.AsyncIngestService;
 import kz.kaspi.lab.fileuploader.service.FileUploadService;
 import kz.kaspi.lab.fileuploader.service.IdempotencyService;
+import kz.kaspi.lab.fileuploader.service.InFlightUploads;
+import kz.kaspi.lab.fileuploader.service.InFlightUploads.InFlight;
+import kz.kaspi.lab.fileuploader.service.UploadMetrics;
+import kz.kaspi.lab.fileuploader.service.UploadMetrics.Stage;
 import kz.kaspi.lab.fileuploader.exception.IdempotencyException;
+import io.micrometer.common.KeyValue;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.codec.multipart.FilePart;
-import org.springframework.http.codec.multipart.Part;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
+import org.springframework.http.server.reactive.observation.ServerRequestObservationContext;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.BodyExtractors;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class FileUploadHandler {
 
+    private static final String FILE_PART = "file";
+
     private final FileUploadService fileUploadService;
     private final IdempotencyService idempotencyService;
+    private final InFlightUploads inFlightUploads;
+    private final AsyncIngestService asyncIngestService;
+    private final UploadMetrics uploadMetrics;
 
     public Mono<ServerResponse> uploadFile(ServerRequest request) {
         String idempotencyKey = request.headers().firstHeader("X-Idempotency-Key");
@@ -36,13 +55,17 @@ public class FileUploadHandler {
                     .bodyValue(Map.of("error", "X-Idempotency-Key header is required"));
         }
 
-        // Проверяем, не обработан ли уже такой ключ
-        return idempotencyService.checkExistingStatus(idempotencyKey)
-                .flatMap(existing -> handleExistingUpload(existing, idempotencyKey, request))
-                .switchIfEmpty(processNewUpload(request, idempotencyKey))
+        // Повторы уже известных ключей отвечаем из кэша, не читая тело
+        return uploadMetrics.timeStage(Stage.CACHE_LOOKUP, idempotencyService.checkCachedStatus(idempotencyKey))
+                .flatMap(existing -> handleExistingUpload(existing.getId(), existing.getStatus()))
+                .switchIfEmpty(Mono.defer(() -> coalesceOrProcess(request, idempotencyKey)))
                 .onErrorResume(IdempotencyException.class, e ->
                         ServerResponse.status(HttpStatus.CONFLICT)
                                 .bodyValue(Map.of("error", e.getMessage())))
+                .onErrorResume(OverloadedException.class, e ->
+                        ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                                .bodyValue(Map.of("error", e.getMessage())))
                 .onErrorResume(e -> {
                     log.error("Unexpected error during upload", e);
                     return ServerResponse.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -50,54 +73,113 @@ public class FileUploadHandler {
                 });
     }
 
-    private Mono<ServerResponse> handleExistingUpload(Upload existing, String idempotencyKey, ServerRequest request) {
-        if (existing.getStatus() == Upload.UploadStatus.SUCCESS) {
+    public Mono<ServerResponse> getUploadStatus(ServerRequest request) {
+        return Mono.fromCallable(() -> UUID.fromString(request.pathVariable("id")))
+                .flatMap(fileUploadService::getStatus)
+                .flatMap(status -> ServerResponse.ok().bodyValue(status))
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.status(HttpStatus.NOT_FOUND)
+                        .bodyValue(Map.of("error", "Upload not found"))))
+                .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest()
+                        .bodyValue(Map.of("error", "Invalid upload id")));
+    }
+
+    /**
+     * Если тот же ключ уже загружается на этом узле, ждём результат лидера, не читая тело.
+     * Лидер завершился неудачно — регистрируемся заново и обрабатываем запрос сами,
+     * ключ в статусе FAILED будет переоткрыт.
+     */
+    private Mono<ServerResponse> coalesceOrProcess(ServerRequest request, String idempotencyKey) {
+        InFlightUploads.Registration registration = inFlightUploads.register(idempotencyKey);
+        InFlight entry = registration.entry();
+
+        if (registration.leader()) {
+            return processNewUpload(request, idempotencyKey, entry)
+                    .doFinally(signal -> inFlightUploads.finish(idempotencyKey, entry));
+        }
+
+        log.info("Request with key {} attached to in-flight upload", idempotencyKey);
+        return inFlightUploads.await(entry)
+                .flatMap(response -> handleExistingUpload(response.id(), response.status()))
+                .onErrorResume(TimeoutException.class, e ->
+                        handleExistingUpload(entry.uploadId(), Upload.UploadStatus.PROCESSING))
+                .switchIfEmpty(Mono.defer(() -> coalesceOrProcess(request, idempotencyKey)));
+    }
+
+    private Mono<ServerResponse> handleExistingUpload(UUID uploadId, Upload.UploadStatus status) {
+        if (status == Upload.UploadStatus.SUCCESS) {
             return ServerResponse.status(HttpStatus.CONFLICT)
                     .bodyValue(Map.of(
                             "error", "Request already processed",
-                            "uploadId", existing.getId(),
-                            "status", existing.getStatus()
-                    ));
-        } else if (existing.getStatus() == Upload.UploadStatus.PROCESSING) {
-            return ServerResponse.accepted()
-                    .bodyValue(Map.of(
-                            "message", "Request is being processed",
-                            "uploadId", existing.getId()
+                            "uploadId", uploadId,
+                            "status", status
                     ));
-        } else {
-            // FAILED — можно повторить, продолжаем обработку
-            return processNewUpload(request, idempotencyKey);
         }
+        // uploadId может быть ещё неизвестен, если лидер не успел занять ключ
+        Map<String, Object> body = new HashMap<>();
+        body.put("message", "Request is being processed");
+        if (uploadId != null) {
+            body.put("uploadId", uploadId);
+        }
+        return ServerResponse.accepted().bodyValue(body);
     }
 
-    private Mono<ServerResponse> processNewUpload(ServerRequest request, String idempotencyKey) {
-        return request.multipartData()
-                .flatMap(parts -> {
-                    Part filePart = parts.getFirst("file");
-                    if (filePart == null) {
-                        return ServerResponse.badRequest()
-                                .bodyValue(Map.of("error", "File part 'file' is required"));
+    /**
+     * Читает multipart потоково: ключ занимается, как только распарсены заголовки части 'file',
+     * и только после этого начинает читаться её содержимое.
+     */
+    private Mono<ServerResponse> processNewUpload(ServerRequest request, String idempotencyKey, InFlight entry) {
+        Timer.Sample parsing = uploadMetrics.startStage();
+        return request.bodyToFlux(PartEvent.class)
+                .doOnDiscard(PartEvent.class, event -> DataBufferUtils.release(event.content()))
+                .windowUntil(PartEvent::isLast)
+                .concatMap(part -> part.switchOnFirst((first, events) -> {
+                    if (first.get() instanceof FilePartEvent fileEvent && FILE_PART.equals(fileEvent.name())) {
+                        uploadMetrics.stopStage(Stage.PARSE, parsing);
+                        return uploadFilePart(request, idempotencyKey, fileEvent, events.map(PartEvent::content), entry);
                     }
+                    // Остальные поля формы не нужны — освобождаем буферы
+                    return events.doOnNext(event -> DataBufferUtils.release(event.content()))
+                            .then(Mono.<ServerResponse>empty());
+                }))
+                .next()
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.badRequest()
+                        .bodyValue(Map.of("error", "File part 'file' is required"))));
+    }
+
+    private Mono<ServerResponse> uploadFilePart(ServerRequest request, String idempotencyKey,
+                                                FilePartEvent fileEvent, Flux<DataBuffer> content, InFlight entry) {
+        MediaType contentType = fileEvent.headers().getContentType();
 
-                    FilePart file = (FilePart) filePart;
-                    Flux<DataBuffer> content = file.content();
-
-                    // Неблокирующий запуск обработки
-                    return fileUploadService.processUpload(
-                            idempotencyKey,
-                            file.filename(),
-                            request.headers().contentLength().orElse(0L),
-                            file.headers().getContentType() != null ?
-                                    file.headers().getContentType().toString() :
-                                    MediaType.APPLICATION_OCTET_STREAM_VALUE,
-                            content
-                    ).flatMap(response -> ServerResponse.accepted()
-                            .bodyValue(Map.of(
-                                    "message", "File upload initiated",
-                                    "uploadId", response.id(),
-                                    "status", response.status()
-                            ))
-                    );
+        return uploadMetrics.timeStage(Stage.CLAIM, idempotencyService.claim(
+                        idempotencyKey,
+                        fileEvent.filename(),
+                        request.headers().contentLength().orElse(0L),
+                        contentType != null ? contentType.toString() : MediaType.APPLICATION_OCTET_STREAM_VALUE
+                ))
+                .flatMap(claim -> {
+                    Upload upload = claim.upload();
+                    // Связываем span HTTP-запроса со span'ом загрузки
+                    ServerRequestObservationContext.findCurrent(request.exchange().getAttributes())
+                            .ifPresent(context -> context.addHighCardinalityKeyValue(
+                                    KeyValue.of("upload.id", upload.getId().toString())));
+                    if (!claim.claimed()) {
+                        // Дубликат — тело не читаем, остаток запроса будет отброшен
+                        return handleExistingUpload(upload.getId(), upload.getStatus());
+                    }
+                    entry.claimed(upload.getId());
+                    // В асинхронном режиме ответ уходит, как только тело сохранено в staging
+                    Mono<UploadResponse> processing = asyncIngestService.isEnabled()
+                            ? asyncIngestService.accept(upload, content)
+                            : fileUploadService.processUpload(upload, content);
+                    return processing
+                            .doOnNext(entry::succeeded)
+                            .flatMap(response -> ServerResponse.accepted()
+                                    .bodyValue(Map.of(
+                                            "message", "File upload initiated",
+                                            "uploadId", response.id(),
+                                            "status", response.status()
+                                    ))
+                            );
                 });
     }
 }
@@ -0,0 +1,69 @@
+package kz.kaspi.lab.fileuploader.controller;
+
+import kz.kaspi.lab.fileuploader.dto.UploadListItem;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import kz.kaspi.lab.fileuploader.service.UploadListingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * GET /api/v1/uploads?status=&contentType=&from=&to=&limit=&cursor= — список загрузок в NDJSON,
+ * новые первыми. from/to — ISO-8601 (from включительно, to нет). Следующая страница —
+ * тот же запрос с cursor из последней строки; пустой ответ или строк меньше limit — конец списка.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UploadListHandler {
+
+    private final UploadListingService listingService;
+
+    public Mono<ServerResponse> list(ServerRequest request) {
+        return Mono.fromCallable(() -> listingService.search(
+                        request.queryParam("status").map(UploadListHandler::status).orElse(null),
+                        request.queryParam("contentType").orElse(null),
+                        request.queryParam("from").map(value -> instant("from", value)).orElse(null),
+                        request.queryParam("to").map(value -> instant("to", value)).orElse(null),
+                        request.queryParam("cursor").orElse(null),
+                        request.queryParam("limit").map(UploadListHandler::limit).orElse(null)))
+                .flatMap(search -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .body(listingService.list(search), UploadListItem.class))
+                .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest()
+                        .bodyValue(Map.of("error", e.getMessage())));
+    }
+
+    private static UploadStatus status(String value) {
+        try {
+            return UploadStatus.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid status: " + value);
+        }
+    }
+
+    private static Instant instant(String name, String value) {
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": expected ISO-8601 instant");
+        }
+    }
+
+    private static Integer limit(String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit: " + value);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package kz.kaspi.lab.fileuploader.controller;
+
+import kz.kaspi.lab.fileuploader.dto.UploadStatusEvent;
+import kz.kaspi.lab.fileuploader.service.UploadStatusStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * GET /api/v1/uploads/events?id=...&id=... — статусы загрузок в SSE вместо опроса
+ * GET /api/v1/upload/{id}. Первым приходит текущий статус каждого id, затем его смены
+ * (event: status; event: not-found — загрузки нет). Поток закрывается, когда все загрузки
+ * завершены, или через upload.status-stream.max-duration — тогда клиент переподключается.
+ */
+@Slf4j
+@Component
+public class UploadStatusStreamHandler {
+
+    private final UploadStatusStream statusStream;
+    private final int maxIds;
+    private final Duration heartbeat;
+    private final Duration maxDuration;
+
+    public UploadStatusStreamHandler(
+            UploadStatusStream statusStream,
+            @Value("${upload.status-stream.max-ids:100}") int maxIds,
+            @Value("${upload.status-stream.heartbeat:15s}") Duration heartbeat,
+            @Value("${upload.status-stream.max-duration:30m}") Duration maxDuration) {
+        this.statusStream = statusStream;
+        this.maxIds = maxIds;
+        this.heartbeat = heartbeat;
+        this.maxDuration = maxDuration;
+    }
+
+    public Mono<ServerResponse> events(ServerRequest request) {
+        Set<UUID> ids;
+        try {
+            ids = ids(request);
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().bodyValue(Map.of("error", e.getMessage()));
+        }
+
+        Flux<ServerSentEvent<UploadStatusEvent>> events = statusStream.watch(ids)
+                .map(event -> ServerSentEvent.builder(event)
+                        .event(event.status() != null ? "status" : "not-found")
+                        .build())
+                .onErrorResume(e -> {
+                    // Клиент переподключится и получит актуальные статусы заново
+                    log.warn("Upload status stream for {} ids aborted: {}", ids.size(), e.getMessage());
+                    return Flux.empty();
+                });
+
+        // Комментарии держат соединение открытым через прокси, пока статусы не меняются
+        Flux<ServerSentEvent<UploadStatusEvent>> body = events.publish(shared -> Flux.merge(
+                        shared,
+                        Flux.interval(heartbeat)
+                                .map(tick -> ServerSentEvent.<UploadStatusEvent>builder().comment("keepalive").build())
+                                .takeUntilOther(shared.then(Mono.just(true)))))
+                .take(maxDuration);
+
+        return ServerResponse.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(BodyInserters.fromServerSentEvents(body));
+    }
+
+    /**
+     * id можно передать несколько раз или через запятую.
+     */
+    private Set<UUID> ids(ServerRequest request) {
+        Set<UUID> ids = new LinkedHashSet<>();
+        for (String value : request.queryParams().getOrDefault("id", List.of())) {
+            for (String id : value.split(",")) {
+                if (!id.isBlank()) {
+                    ids.add(uuid(id.trim()));
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalArgumentException("At least one id is required");
+        }
+        if (ids.size() > maxIds) {
+            throw new IllegalArgumentException("At most " + maxIds + " ids per stream");
+        }
+        return ids;
+    }
+
+    private static UUID uuid(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid id: " + value);
+        }
+    }
+}
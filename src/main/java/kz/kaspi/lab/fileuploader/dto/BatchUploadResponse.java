@@ -0,0 +1,37 @@
+package kz.kaspi.lab.fileuploader.dto;
+
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+
+import java.util.List;
+import java.util.UUID;
+
+public record BatchUploadResponse(
+        String batchKey,
+        int stored,
+        int duplicates,
+        int failed,
+        List<Item> items
+) {
+
+    /**
+     * Результат одного файла пачки, index — порядковый номер файловой части в запросе.
+     */
+    public record Item(
+            int index,
+            String idempotencyKey,
+            String filename,
+            Outcome outcome,
+            UUID uploadId,
+            UploadStatus status,
+            String error
+    ) {}
+
+    public enum Outcome {
+        /** Файл сохранён этим запросом. */
+        STORED,
+        /** Ключ уже обработан или обрабатывается — файл не записывался. */
+        DUPLICATE,
+        /** Файл не сохранён, его можно повторить с тем же ключом. */
+        FAILED
+    }
+}
@@ -0,0 +1,9 @@
+package kz.kaspi.lab.fileuploader.dto;
+
+/**
+ * @param etag необязательный ETag из ответа MinIO на одиночный PUT — сверяется с объектом.
+ *             Части multipart-загрузки сервис проверяет сам через ListParts
+ */
+public record CompleteDirectUploadRequest(
+        String etag
+) {}
@@ -0,0 +1,7 @@
+package kz.kaspi.lab.fileuploader.dto;
+
+public record CreateSessionRequest(
+        String filename,
+        String contentType,
+        Long totalSize
+) {}
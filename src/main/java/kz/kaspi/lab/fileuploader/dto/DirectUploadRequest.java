@@ -0,0 +1,11 @@
+package kz.kaspi.lab.fileuploader.dto;
+
+/**
+ * @param size точный размер файла: по нему выбирается одиночный PUT или multipart
+ *             и проверяется объект при завершении
+ */
+public record DirectUploadRequest(
+        String filename,
+        String contentType,
+        Long size
+) {}
@@ -0,0 +1,25 @@
+package kz.kaspi.lab.fileuploader.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Куда клиенту загружать файл: один presigned PUT в url либо части по partSize байт
+ * в parts (все, кроме последней, ровно partSize). После загрузки —
+ * POST /api/v1/upload/direct/{directUploadId}/complete до expiresAt.
+ *
+ * @param urlExpiresAt до какого момента действуют URL; повторный запрос с тем же ключом выдаёт новые
+ */
+public record DirectUploadResponse(
+        UUID directUploadId,
+        UUID uploadId,
+        String url,
+        Long partSize,
+        List<PartUrl> parts,
+        Instant urlExpiresAt,
+        Instant expiresAt
+) {
+
+    public record PartUrl(int partNumber, String url) {}
+}
@@ -0,0 +1,24 @@
+package kz.kaspi.lab.fileuploader.dto;
+
+import kz.kaspi.lab.fileuploader.entity.UploadSession.SessionStatus;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public record SessionResponse(
+        UUID sessionId,
+        UUID uploadId,
+        SessionStatus status,
+        long chunkSize,
+        Long totalSize,
+        long receivedBytes,
+        List<ByteRange> receivedRanges,
+        Instant expiresAt
+) {
+
+    /**
+     * Непрерывный диапазон полученных байт, границы включительно.
+     */
+    public record ByteRange(long start, long end) {}
+}
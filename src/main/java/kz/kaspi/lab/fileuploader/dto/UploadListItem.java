@@ -0,0 +1,24 @@
+package kz.kaspi.lab.fileuploader.dto;
+
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Строка NDJSON-ответа GET /api/v1/uploads.
+ *
+ * @param cursor позиция после этой записи; cursor последней строки — параметр запроса следующей страницы
+ */
+public record UploadListItem(
+        UUID id,
+        String idempotencyKey,
+        UploadStatus status,
+        String originalFilename,
+        String contentType,
+        Long fileSize,
+        String errorMessage,
+        Instant createdAt,
+        Instant updatedAt,
+        String cursor
+) {}
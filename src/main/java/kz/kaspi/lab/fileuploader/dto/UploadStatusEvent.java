@@ -0,0 +1,27 @@
+package kz.kaspi.lab.fileuploader.dto;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+
+import java.util.UUID;
+
+/**
+ * Статус загрузки в потоке /api/v1/uploads/events.
+ *
+ * @param status {@code null} — загрузки с таким id нет
+ */
+public record UploadStatusEvent(
+        UUID id,
+        UploadStatus status,
+        Long fileSize,
+        String errorMessage
+) {
+
+    public static UploadStatusEvent of(Upload upload) {
+        return new UploadStatusEvent(upload.getId(), upload.getStatus(), upload.getFileSize(), upload.getErrorMessage());
+    }
+
+    public static UploadStatusEvent notFound(UUID id) {
+        return new UploadStatusEvent(id, null, null, null);
+    }
+}
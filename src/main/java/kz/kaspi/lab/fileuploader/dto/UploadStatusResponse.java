@@ -0,0 +1,22 @@
+package kz.kaspi.lab.fileuploader.dto;
+
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * @param bytesStored сколько байт уже передано в хранилище; {@code null}, если загрузка
+ *                    не выполняется на этом узле прямо сейчас
+ */
+public record UploadStatusResponse(
+        UUID id,
+        UploadStatus status,
+        String originalFilename,
+        String contentType,
+        Long fileSize,
+        Long bytesStored,
+        String errorMessage,
+        Instant createdAt,
+        Instant updatedAt
+) {}
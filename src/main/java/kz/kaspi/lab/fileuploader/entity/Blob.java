@@ -0,0 +1,22 @@
+package kz.kaspi.lab.fileuploader.entity;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+@Table("blobs")
+public class Blob {
+
+    @Id
+    private String contentHash;
+    private String storagePath;
+    private Long fileSize;
+    private Integer refCount;
+    private UUID packId;
+    private Long packOffset;
+    private Instant createdAt;
+}
@@ -0,0 +1,33 @@
+package kz.kaspi.lab.fileuploader.entity;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+@Table("direct_uploads")
+public class DirectUpload {
+
+    @Id
+    private UUID id;
+    private UUID uploadId;
+    private String objectName;
+    private String multipartUploadId;
+    private Long partSize;
+    private Long expectedSize;
+    private DirectUploadStatus status;
+    private Instant expiresAt;
+    private Instant createdAt;
+    private Instant updatedAt;
+
+    public boolean isMultipart() {
+        return multipartUploadId != null;
+    }
+
+    public enum DirectUploadStatus {
+        PENDING, COMPLETING, COMPLETED, EXPIRED, FAILED
+    }
+}
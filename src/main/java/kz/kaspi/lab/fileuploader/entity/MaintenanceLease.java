@@ -0,0 +1,19 @@
+package kz.kaspi.lab.fileuploader.entity;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+
+@Data
+@Table("maintenance_leases")
+public class MaintenanceLease {
+
+    @Id
+    private String name;
+    private String holder;
+    private Instant expiresAt;
+    private String scanCursor;
+    private Instant updatedAt;
+}
@@ -0,0 +1,26 @@
+package kz.kaspi.lab.fileuploader.entity;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+@Table("packs")
+public class Pack {
+
+    @Id
+    private UUID id;
+    private String objectName;
+    private Long size;
+    private Long liveBytes;
+    private PackStatus status;
+    private Instant createdAt;
+    private Instant updatedAt;
+
+    public enum PackStatus {
+        SEALED, COMPACTING, DELETED
+    }
+}
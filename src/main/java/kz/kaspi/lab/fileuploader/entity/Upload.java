@@ -18,12 +18,31 @@ public class Upload {
     private String storagePath;
     private Long fileSize;
     private String contentType;
+    private String contentHash;
+    private Compression compression;
+    private Long storedSize;
+    private UUID packId;
+    private Long packOffset;
     private UploadStatus status;
     private String errorMessage;
     private Instant createdAt;
     private Instant updatedAt;
 
+    /**
+     * Файл лежит внутри пака: storagePath — объект пака, читать storedSize байт с packOffset.
+     */
+    public boolean isPacked() {
+        return packId != null;
+    }
+
     public enum UploadStatus {
         PROCESSING, SUCCESS, FAILED
     }
+
+    /**
+     * Как содержимое записано в хранилище, {@code null} — как NONE.
+     */
+    public enum Compression {
+        NONE, GZIP, ZSTD
+    }
 }
@@ -0,0 +1,29 @@
+package kz.kaspi.lab.fileuploader.entity;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+@Table("upload_sessions")
+public class UploadSession {
+
+    @Id
+    private UUID id;
+    private UUID uploadId;
+    private String objectName;
+    private String multipartUploadId;
+    private Long chunkSize;
+    private Long totalSize;
+    private SessionStatus status;
+    private Instant expiresAt;
+    private Instant createdAt;
+    private Instant updatedAt;
+
+    public enum SessionStatus {
+        OPEN, COMMITTING, COMMITTED, EXPIRED
+    }
+}
@@ -0,0 +1,21 @@
+package kz.kaspi.lab.fileuploader.entity;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+@Table("upload_session_parts")
+public class UploadSessionPart {
+
+    @Id
+    private Long id;
+    private UUID sessionId;
+    private Integer partNumber;
+    private Long size;
+    private String etag;
+    private Instant createdAt;
+}
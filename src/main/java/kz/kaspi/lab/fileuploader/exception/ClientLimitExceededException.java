@@ -0,0 +1,13 @@
+package kz.kaspi.lab.fileuploader.exception;
+
+import java.time.Duration;
+
+/**
+ * Клиент превысил свой лимит одновременных загрузок (429), сервис в целом не перегружен.
+ */
+public class ClientLimitExceededException extends OverloadedException {
+
+    public ClientLimitExceededException(String message, Duration retryAfter) {
+        super(message, retryAfter);
+    }
+}
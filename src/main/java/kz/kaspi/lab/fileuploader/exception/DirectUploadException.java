@@ -0,0 +1,8 @@
+package kz.kaspi.lab.fileuploader.exception;
+
+public class DirectUploadException extends RuntimeException {
+
+    public DirectUploadException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,20 @@
+package kz.kaspi.lab.fileuploader.exception;
+
+import java.time.Duration;
+
+/**
+ * Сервис перегружен, запрос стоит повторить не раньше чем через {@link #getRetryAfter()}.
+ */
+public class OverloadedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public OverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
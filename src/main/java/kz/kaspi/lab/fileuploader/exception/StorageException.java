@@ -2,11 +2,23 @@ package kz.kaspi.lab.fileuploader.exception;
 
 public class StorageException extends RuntimeException {
 
+    /** Временный сбой хранилища (503, обрыв соединения): ту же запись имеет смысл повторить позже. */
+    private final boolean retryable;
+
     public StorageException(String message) {
-        super(message);
+        this(message, null, false);
     }
 
     public StorageException(String message, Throwable cause) {
+        this(message, cause, false);
+    }
+
+    public StorageException(String message, Throwable cause, boolean retryable) {
         super(message, cause);
+        this.retryable = retryable;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
     }
-}
\ No newline at end of file
+}
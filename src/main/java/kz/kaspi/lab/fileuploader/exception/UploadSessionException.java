@@ -0,0 +1,8 @@
+package kz.kaspi.lab.fileuploader.exception;
+
+public class UploadSessionException extends RuntimeException {
+
+    public UploadSessionException(String message) {
+        super(message);
+    }
+}
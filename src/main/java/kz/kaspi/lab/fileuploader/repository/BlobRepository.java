@@ -0,0 +1,73 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Blob;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+@Repository
+public interface BlobRepository extends ReactiveCrudRepository<Blob, String> {
+
+    /**
+     * Берёт ссылку на уже существующий отдельный объект. Пусто, если такого содержимого нет,
+     * оно лежит в паке (путь к паку бэкенду не подходит) или последняя ссылка только что снята
+     * и объект вот-вот будет удалён.
+     */
+    @Query("UPDATE blobs SET ref_count = ref_count + 1 WHERE content_hash = :hash AND ref_count > 0 AND pack_id IS NULL RETURNING storage_path")
+    Mono<String> acquireExisting(String hash);
+
+    /**
+     * То же для упаковки: содержимое может лежать и в паке, и отдельным объектом.
+     */
+    @Query("UPDATE blobs SET ref_count = ref_count + 1 WHERE content_hash = :hash AND ref_count > 0 RETURNING *")
+    Mono<Blob> acquireExistingBlob(String hash);
+
+    /**
+     * Регистрирует только что записанный объект либо, если такое содержимое уже есть,
+     * добавляет ссылку на него. Возвращает запись, на которую теперь нужно ссылаться.
+     */
+    @Query("""
+            INSERT INTO blobs (content_hash, storage_path, file_size, ref_count)
+            VALUES (:hash, :storagePath, :size, 1)
+            ON CONFLICT (content_hash) DO UPDATE SET ref_count = blobs.ref_count + 1
+            RETURNING *
+            """)
+    Mono<Blob> acquireOrInsert(String hash, String storagePath, long size);
+
+    /**
+     * То же для файла, записанного в пак.
+     */
+    @Query("""
+            INSERT INTO blobs (content_hash, storage_path, file_size, ref_count, pack_id, pack_offset)
+            VALUES (:hash, :storagePath, :size, 1, :packId, :packOffset)
+            ON CONFLICT (content_hash) DO UPDATE SET ref_count = blobs.ref_count + 1
+            RETURNING *
+            """)
+    Mono<Blob> acquireOrInsertPacked(String hash, String storagePath, long size, UUID packId, long packOffset);
+
+    @Query("UPDATE blobs SET ref_count = ref_count - 1 WHERE content_hash = :hash AND ref_count > 0 RETURNING ref_count")
+    Mono<Integer> release(String hash);
+
+    /**
+     * Удаляет запись только если на неё никто не сослался заново. Возвращает удалённую запись:
+     * отдельный объект удаляется из хранилища, место в паке освобождается.
+     */
+    @Query("DELETE FROM blobs WHERE content_hash = :hash AND ref_count = 0 RETURNING *")
+    Mono<Blob> deleteUnreferenced(String hash);
+
+    @Query("SELECT * FROM blobs WHERE pack_id = :packId AND ref_count > 0 ORDER BY pack_offset")
+    Flux<Blob> findLiveInPack(UUID packId);
+
+    /**
+     * Переносит содержимое в новый пак при уплотнении. 0, если запись уже удалена.
+     */
+    @Query("""
+            UPDATE blobs SET storage_path = :storagePath, pack_id = :newPackId, pack_offset = :packOffset
+            WHERE content_hash = :hash AND pack_id = :oldPackId
+            """)
+    Mono<Integer> relocate(String hash, UUID oldPackId, UUID newPackId, String storagePath, long packOffset);
+}
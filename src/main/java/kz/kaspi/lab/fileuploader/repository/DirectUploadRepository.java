@@ -0,0 +1,48 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.DirectUpload;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Repository
+public interface DirectUploadRepository extends ReactiveCrudRepository<DirectUpload, UUID> {
+
+    @Query("SELECT * FROM direct_uploads WHERE upload_id = :uploadId AND status = 'PENDING' AND expires_at > NOW()")
+    Mono<DirectUpload> findPendingByUploadId(UUID uploadId);
+
+    @Query("SELECT * FROM direct_uploads WHERE id = :id AND status = 'PENDING' AND expires_at > NOW()")
+    Mono<DirectUpload> findPendingById(UUID id);
+
+    @Query("UPDATE direct_uploads SET expires_at = :expiresAt, updated_at = NOW() WHERE id = :id AND status = 'PENDING' RETURNING *")
+    Mono<DirectUpload> extendExpiry(UUID id, Instant expiresAt);
+
+    /**
+     * Переход между статусами с проверкой текущего. Пусто, если запись уже в другом статусе.
+     */
+    @Query("UPDATE direct_uploads SET status = :to, updated_at = NOW() WHERE id = :id AND status = :from RETURNING *")
+    Mono<DirectUpload> transition(UUID id, String from, String to);
+
+    /**
+     * Забирает пачку неподтверждённых загрузок с истёкшим сроком и завершений, зависших
+     * в COMPLETING с completingBefore; SKIP LOCKED — как у сессий докачки.
+     */
+    @Query("""
+            UPDATE direct_uploads SET status = 'EXPIRED', updated_at = NOW()
+            WHERE id IN (
+                SELECT id FROM direct_uploads
+                WHERE (status = 'PENDING' AND expires_at < NOW())
+                   OR (status = 'COMPLETING' AND updated_at < :completingBefore)
+                ORDER BY expires_at
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING *
+            """)
+    Flux<DirectUpload> expireBatch(Instant completingBefore, int limit);
+}
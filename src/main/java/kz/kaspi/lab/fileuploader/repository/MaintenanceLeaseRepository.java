@@ -0,0 +1,45 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.MaintenanceLease;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Аренда фоновой задачи. Время считается по часам БД, чтобы расхождение часов узлов
+ * не давало двум узлам держать аренду одновременно.
+ */
+@Repository
+public interface MaintenanceLeaseRepository extends ReactiveCrudRepository<MaintenanceLease, String> {
+
+    /**
+     * Берёт аренду, если её ещё нет, она истекла или уже принадлежит holder.
+     * Пусто — аренду держит другой узел.
+     */
+    @Query("""
+            INSERT INTO maintenance_leases (name, holder, expires_at)
+            VALUES (:name, :holder, NOW() + make_interval(secs => :ttlSeconds))
+            ON CONFLICT (name) DO UPDATE
+                SET holder = EXCLUDED.holder, expires_at = EXCLUDED.expires_at, updated_at = NOW()
+                WHERE maintenance_leases.expires_at < NOW() OR maintenance_leases.holder = EXCLUDED.holder
+            RETURNING *
+            """)
+    Mono<MaintenanceLease> acquire(String name, String holder, double ttlSeconds);
+
+    /**
+     * Продлевает аренду и сохраняет позицию задачи. 0 — аренда потеряна (истекла и её взял другой узел).
+     */
+    @Query("""
+            UPDATE maintenance_leases
+            SET scan_cursor = :scanCursor, expires_at = NOW() + make_interval(secs => :ttlSeconds), updated_at = NOW()
+            WHERE name = :name AND holder = :holder
+            """)
+    Mono<Integer> renew(String name, String holder, String scanCursor, double ttlSeconds);
+
+    /**
+     * Отпускает аренду досрочно, позиция остаётся для следующего держателя.
+     */
+    @Query("UPDATE maintenance_leases SET expires_at = NOW(), updated_at = NOW() WHERE name = :name AND holder = :holder")
+    Mono<Void> release(String name, String holder);
+}
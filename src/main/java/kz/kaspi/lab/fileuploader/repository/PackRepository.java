@@ -0,0 +1,46 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Pack;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Repository
+public interface PackRepository extends ReactiveCrudRepository<Pack, UUID> {
+
+    @Query("UPDATE packs SET live_bytes = live_bytes + :bytes, updated_at = NOW() WHERE id = :id")
+    Mono<Void> addLiveBytes(UUID id, long bytes);
+
+    @Query("UPDATE packs SET live_bytes = GREATEST(live_bytes - :bytes, 0), updated_at = NOW() WHERE id = :id")
+    Mono<Void> releaseBytes(UUID id, long bytes);
+
+    /**
+     * Забирает паки, в которых занято меньше minLiveRatio объёма. Пак в COMPACTING,
+     * не обновлявшийся с sealedBefore, — уплотнение прервалось, его забирают снова.
+     */
+    @Query("""
+            UPDATE packs SET status = 'COMPACTING', updated_at = NOW()
+            WHERE id IN (
+                SELECT id FROM packs
+                WHERE ((status = 'SEALED' AND created_at < :sealedBefore)
+                       OR (status = 'COMPACTING' AND updated_at < :sealedBefore))
+                  AND live_bytes < size * :minLiveRatio
+                ORDER BY live_bytes
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING *
+            """)
+    Flux<Pack> claimForCompaction(Instant sealedBefore, double minLiveRatio, int limit);
+
+    @Query("UPDATE packs SET status = 'DELETED', updated_at = NOW() WHERE id = :id")
+    Mono<Void> markDeleted(UUID id);
+
+    @Query("SELECT * FROM packs WHERE status = 'DELETED' AND updated_at < :deletedBefore ORDER BY updated_at LIMIT :limit")
+    Flux<Pack> findDeletedBefore(Instant deletedBefore, int limit);
+}
@@ -0,0 +1,14 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Строка страницы PROCESSING-загрузок, просмотренной {@link UploadReconcileRepository#failStale}.
+ *
+ * @param createdAt      вместе с id — позиция для следующей страницы
+ * @param idempotencyKey ключ загрузки
+ * @param failed         {@code true}, если запись переведена в FAILED этим запросом
+ */
+public record StaleUpload(UUID id, Instant createdAt, String idempotencyKey, boolean failed) {
+}
@@ -0,0 +1,34 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Итог пакетной загрузки, сохранённый по ключу пачки (таблица upload_batches).
+ *
+ * @param items файлы в порядке частей запроса
+ */
+public record UploadBatch(String batchKey, List<Item> items) {
+
+    /**
+     * @param outcome  исход файла в ответе на пачку (STORED, DUPLICATE, FAILED)
+     * @param uploadId {@code null}, если файл отклонён до claim
+     * @param status   статус загрузки на момент ответа, {@code null} если её нет
+     */
+    public record Item(String idempotencyKey, String filename, UUID uploadId, String outcome,
+                       UploadStatus status, String error) {
+    }
+
+    public List<String> itemKeys() {
+        return items.stream().map(Item::idempotencyKey).toList();
+    }
+
+    /**
+     * Все файлы пачки сохранены — повтор отвечается из записи, без claim и записи в хранилище.
+     */
+    public boolean completed() {
+        return items.stream().allMatch(item -> item.status() == UploadStatus.SUCCESS);
+    }
+}
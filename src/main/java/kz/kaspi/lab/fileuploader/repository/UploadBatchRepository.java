@@ -0,0 +1,44 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Многострочные операции над uploads для пакетной загрузки: один запрос на пачку вместо запроса на файл.
+ */
+public interface UploadBatchRepository {
+
+    /**
+     * {@link UploadClaimRepository#claim} для пачки. Берутся idempotencyKey, originalFilename,
+     * fileSize и contentType; ключи в пачке должны быть уникальны. Ключа, вставленного
+     * конкурентом во время запроса, в результате может не оказаться — его нужно запросить повторно.
+     */
+    Flux<UploadClaim> claimAll(List<Upload> uploads);
+
+    /**
+     * Переводит записи в SUCCESS с их storagePath, contentHash, fileSize, compression, storedSize
+     * и местом в паке (packId, packOffset).
+     */
+    Mono<Long> completeAll(List<Upload> uploads);
+
+    /**
+     * Переводит записи в FAILED, значение — текст ошибки.
+     */
+    Mono<Long> failAll(Map<UUID, String> errors);
+
+    /**
+     * Итог пачки по её ключу.
+     */
+    Mono<UploadBatch> findBatch(String batchKey);
+
+    /**
+     * Сохраняет итог пачки. Запись под тем же ключом перезаписывается, только если состав файлов
+     * (ключи в том же порядке) совпадает; {@code false} — под ключом уже записан другой состав.
+     */
+    Mono<Boolean> saveBatch(UploadBatch batch);
+}
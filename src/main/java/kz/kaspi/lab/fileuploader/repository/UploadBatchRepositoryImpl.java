@@ -0,0 +1,182 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@RequiredArgsConstructor
+class UploadBatchRepositoryImpl implements UploadBatchRepository {
+
+    /*
+     * То же, что CLAIM_SQL в UploadClaimRepositoryImpl, но строки приходят массивами через unnest.
+     */
+    private static final String CLAIM_ALL_SQL = """
+            WITH input AS (
+                SELECT * FROM unnest(CAST(:keys AS VARCHAR[]), CAST(:filenames AS VARCHAR[]),
+                                     CAST(:sizes AS BIGINT[]), CAST(:contentTypes AS VARCHAR[]))
+                    AS t(idempotency_key, original_filename, file_size, content_type)
+            ),
+            claimed AS (
+                INSERT INTO uploads (idempotency_key, original_filename, file_size, content_type, status)
+                SELECT idempotency_key, original_filename, file_size, content_type, 'PROCESSING' FROM input
+                ON CONFLICT (idempotency_key) DO UPDATE
+                    SET status = 'PROCESSING',
+                        original_filename = EXCLUDED.original_filename,
+                        file_size = EXCLUDED.file_size,
+                        content_type = EXCLUDED.content_type,
+                        error_message = NULL,
+                        updated_at = NOW()
+                    WHERE uploads.status = 'FAILED'
+                RETURNING *
+            )
+            SELECT claimed.*, TRUE AS claimed FROM claimed
+            UNION ALL
+            SELECT uploads.*, FALSE AS claimed FROM uploads
+            JOIN input ON input.idempotency_key = uploads.idempotency_key
+            WHERE NOT EXISTS (SELECT 1 FROM claimed WHERE claimed.idempotency_key = uploads.idempotency_key)
+            """;
+
+    private static final String COMPLETE_ALL_SQL = """
+            UPDATE uploads
+            SET status = 'SUCCESS',
+                storage_path = v.storage_path,
+                content_hash = v.content_hash,
+                file_size = v.file_size,
+                compression = v.compression,
+                stored_size = v.stored_size,
+                pack_id = v.pack_id,
+                pack_offset = v.pack_offset,
+                error_message = NULL,
+                updated_at = NOW()
+            FROM unnest(CAST(:ids AS UUID[]), CAST(:paths AS VARCHAR[]),
+                        CAST(:hashes AS VARCHAR[]), CAST(:sizes AS BIGINT[]),
+                        CAST(:compressions AS VARCHAR[]), CAST(:storedSizes AS BIGINT[]),
+                        CAST(:packIds AS UUID[]), CAST(:packOffsets AS BIGINT[]))
+                AS v(id, storage_path, content_hash, file_size, compression, stored_size, pack_id, pack_offset)
+            WHERE uploads.id = v.id
+            """;
+
+    private static final String FAIL_ALL_SQL = """
+            UPDATE uploads
+            SET status = 'FAILED', error_message = v.error_message, updated_at = NOW()
+            FROM unnest(CAST(:ids AS UUID[]), CAST(:errors AS TEXT[])) AS v(id, error_message)
+            WHERE uploads.id = v.id
+            """;
+
+    private static final String SAVE_BATCH_SQL = """
+            INSERT INTO upload_batches (batch_key, item_count, item_keys, filenames, upload_ids, outcomes, statuses, errors)
+            VALUES (:batchKey, :itemCount, CAST(:itemKeys AS VARCHAR[]), CAST(:filenames AS VARCHAR[]),
+                    CAST(:uploadIds AS UUID[]), CAST(:outcomes AS VARCHAR[]), CAST(:statuses AS VARCHAR[]),
+                    CAST(:errors AS TEXT[]))
+            ON CONFLICT (batch_key) DO UPDATE
+                SET filenames = EXCLUDED.filenames,
+                    upload_ids = EXCLUDED.upload_ids,
+                    outcomes = EXCLUDED.outcomes,
+                    statuses = EXCLUDED.statuses,
+                    errors = EXCLUDED.errors,
+                    updated_at = NOW()
+                WHERE upload_batches.item_keys = EXCLUDED.item_keys
+            """;
+
+    private final DatabaseClient databaseClient;
+    private final R2dbcConverter converter;
+
+    @Override
+    public Flux<UploadClaim> claimAll(List<Upload> uploads) {
+        if (uploads.isEmpty()) {
+            return Flux.empty();
+        }
+        return databaseClient.sql(CLAIM_ALL_SQL)
+                .bind("keys", uploads.stream().map(Upload::getIdempotencyKey).toArray(String[]::new))
+                .bind("filenames", uploads.stream().map(Upload::getOriginalFilename).toArray(String[]::new))
+                .bind("sizes", uploads.stream().map(Upload::getFileSize).toArray(Long[]::new))
+                .bind("contentTypes", uploads.stream().map(Upload::getContentType).toArray(String[]::new))
+                .map((row, metadata) -> new UploadClaim(
+                        converter.read(Upload.class, row, metadata),
+                        Boolean.TRUE.equals(row.get("claimed", Boolean.class))
+                ))
+                .all();
+    }
+
+    @Override
+    public Mono<Long> completeAll(List<Upload> uploads) {
+        if (uploads.isEmpty()) {
+            return Mono.just(0L);
+        }
+        return databaseClient.sql(COMPLETE_ALL_SQL)
+                .bind("ids", uploads.stream().map(Upload::getId).toArray(UUID[]::new))
+                .bind("paths", uploads.stream().map(Upload::getStoragePath).toArray(String[]::new))
+                .bind("hashes", uploads.stream().map(Upload::getContentHash).toArray(String[]::new))
+                .bind("sizes", uploads.stream().map(Upload::getFileSize).toArray(Long[]::new))
+                .bind("compressions", uploads.stream().map(upload -> compression(upload).name()).toArray(String[]::new))
+                .bind("storedSizes", uploads.stream().map(Upload::getStoredSize).toArray(Long[]::new))
+                .bind("packIds", uploads.stream().map(Upload::getPackId).toArray(UUID[]::new))
+                .bind("packOffsets", uploads.stream().map(Upload::getPackOffset).toArray(Long[]::new))
+                .fetch()
+                .rowsUpdated();
+    }
+
+    @Override
+    public Mono<Long> failAll(Map<UUID, String> errors) {
+        if (errors.isEmpty()) {
+            return Mono.just(0L);
+        }
+        return databaseClient.sql(FAIL_ALL_SQL)
+                .bind("ids", errors.keySet().toArray(UUID[]::new))
+                .bind("errors", errors.values().toArray(String[]::new))
+                .fetch()
+                .rowsUpdated();
+    }
+
+    @Override
+    public Mono<UploadBatch> findBatch(String batchKey) {
+        return databaseClient.sql("SELECT * FROM upload_batches WHERE batch_key = :batchKey")
+                .bind("batchKey", batchKey)
+                .map((row, metadata) -> {
+                    String[] keys = row.get("item_keys", String[].class);
+                    String[] filenames = row.get("filenames", String[].class);
+                    UUID[] uploadIds = row.get("upload_ids", UUID[].class);
+                    String[] outcomes = row.get("outcomes", String[].class);
+                    String[] statuses = row.get("statuses", String[].class);
+                    String[] errors = row.get("errors", String[].class);
+                    List<UploadBatch.Item> items = new ArrayList<>(keys.length);
+                    for (int i = 0; i < keys.length; i++) {
+                        items.add(new UploadBatch.Item(keys[i], filenames[i], uploadIds[i], outcomes[i],
+                                statuses[i] != null ? Upload.UploadStatus.valueOf(statuses[i]) : null, errors[i]));
+                    }
+                    return new UploadBatch(row.get("batch_key", String.class), items);
+                })
+                .one();
+    }
+
+    @Override
+    public Mono<Boolean> saveBatch(UploadBatch batch) {
+        List<UploadBatch.Item> items = batch.items();
+        return databaseClient.sql(SAVE_BATCH_SQL)
+                .bind("batchKey", batch.batchKey())
+                .bind("itemCount", items.size())
+                .bind("itemKeys", items.stream().map(UploadBatch.Item::idempotencyKey).toArray(String[]::new))
+                .bind("filenames", items.stream().map(UploadBatch.Item::filename).toArray(String[]::new))
+                .bind("uploadIds", items.stream().map(UploadBatch.Item::uploadId).toArray(UUID[]::new))
+                .bind("outcomes", items.stream().map(UploadBatch.Item::outcome).toArray(String[]::new))
+                .bind("statuses", items.stream()
+                        .map(item -> item.status() != null ? item.status().name() : null)
+                        .toArray(String[]::new))
+                .bind("errors", items.stream().map(UploadBatch.Item::error).toArray(String[]::new))
+                .fetch()
+                .rowsUpdated()
+                .map(updated -> updated > 0);
+    }
+
+    private static Upload.Compression compression(Upload upload) {
+        return upload.getCompression() != null ? upload.getCompression() : Upload.Compression.NONE;
+    }
+}
@@ -0,0 +1,12 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+
+/**
+ * Результат атомарной попытки занять idempotency key.
+ *
+ * @param upload  строка uploads: только что созданная/переоткрытая либо уже существующая
+ * @param claimed {@code true}, если ключ занят этим запросом и загрузку нужно выполнять
+ */
+public record UploadClaim(Upload upload, boolean claimed) {
+}
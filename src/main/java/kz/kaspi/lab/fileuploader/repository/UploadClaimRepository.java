@@ -0,0 +1,11 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import reactor.core.publisher.Mono;
+
+public interface UploadClaimRepository {
+
+    /**
+     * Одним запросом занимает ключ (новый или в статусе FAILED) либо возвращает существующую запись.
+     */
+    Mono<UploadClaim> claim(String idempotencyKey, String filename, long size, String contentType);
+}
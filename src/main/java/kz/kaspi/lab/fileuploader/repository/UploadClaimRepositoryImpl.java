@@ -0,0 +1,52 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+@RequiredArgsConstructor
+class UploadClaimRepositoryImpl implements UploadClaimRepository {
+
+    /*
+     * INSERT ... ON CONFLICT DO UPDATE срабатывает только для FAILED — это повтор после ошибки.
+     * Для SUCCESS/PROCESSING ничего не пишем и отдаём существующую строку через UNION.
+     */
+    private static final String CLAIM_SQL = """
+            WITH claimed AS (
+                INSERT INTO uploads (idempotency_key, original_filename, file_size, content_type, status)
+                VALUES (:key, :filename, :size, :contentType, 'PROCESSING')
+                ON CONFLICT (idempotency_key) DO UPDATE
+                    SET status = 'PROCESSING',
+                        original_filename = EXCLUDED.original_filename,
+                        file_size = EXCLUDED.file_size,
+                        content_type = EXCLUDED.content_type,
+                        error_message = NULL,
+                        updated_at = NOW()
+                    WHERE uploads.status = 'FAILED'
+                RETURNING *
+            )
+            SELECT claimed.*, TRUE AS claimed FROM claimed
+            UNION ALL
+            SELECT uploads.*, FALSE AS claimed FROM uploads
+            WHERE idempotency_key = :key AND NOT EXISTS (SELECT 1 FROM claimed)
+            """;
+
+    private final DatabaseClient databaseClient;
+    private final R2dbcConverter converter;
+
+    @Override
+    public Mono<UploadClaim> claim(String idempotencyKey, String filename, long size, String contentType) {
+        return databaseClient.sql(CLAIM_SQL)
+                .bind("key", idempotencyKey)
+                .bind("filename", filename)
+                .bind("size", size)
+                .bind("contentType", contentType)
+                .map((row, metadata) -> new UploadClaim(
+                        converter.read(Upload.class, row, metadata),
+                        Boolean.TRUE.equals(row.get("claimed", Boolean.class))
+                ))
+                .one();
+    }
+}
@@ -0,0 +1,34 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Запросы сверки базы с хранилищем (UploadReconciler): каждый — один запрос на страницу.
+ */
+public interface UploadReconcileRepository {
+
+    /**
+     * Обновляет updated_at загрузок, которые этот узел ещё выполняет, чтобы их не сочли зависшими.
+     */
+    Mono<Long> touchAll(Collection<UUID> ids);
+
+    /**
+     * Страница PROCESSING-записей, созданных до staleBefore, после позиции (afterCreatedAt, afterId)
+     * в порядке (created_at, id). Записи, не обновлявшиеся с staleBefore, переводятся в FAILED;
+     * загрузки с открытой сессией докачки или неподтверждённой прямой загрузкой не трогаются —
+     * их закрывают собственные сборщики, — пока сессия не истекла раньше staleBefore.
+     */
+    Flux<StaleUpload> failStale(Instant afterCreatedAt, UUID afterId, Instant staleBefore, int limit, String errorMessage);
+
+    /**
+     * Имена из страницы листинга, на которые не ссылается ни одна таблица. Зависшие
+     * на завершении (не обновлявшиеся с staleBefore) сессии и прямые загрузки ссылкой не считаются.
+     */
+    Flux<String> findUnreferenced(List<String> objectNames, Instant staleBefore);
+}
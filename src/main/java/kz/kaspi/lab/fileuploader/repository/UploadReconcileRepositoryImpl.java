@@ -0,0 +1,109 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@RequiredArgsConstructor
+class UploadReconcileRepositoryImpl implements UploadReconcileRepository {
+
+    private static final String TOUCH_ALL_SQL = """
+            UPDATE uploads SET updated_at = NOW()
+            WHERE id = ANY(CAST(:ids AS UUID[])) AND status = 'PROCESSING'
+            """;
+
+    /*
+     * Страница читается по idx_uploads_unfinished_created. Условия повторяются в UPDATE:
+     * строку, которую успели завершить после чтения страницы, UPDATE перечитает и пропустит.
+     * Открытая сессия или PENDING прямая загрузка защищают запись, пока не истекли: истёкшие
+     * закрывают свои проходы expire*, а если те не справились за stale-after — запись падает здесь.
+     */
+    private static final String FAIL_STALE_SQL = """
+            WITH page AS (
+                SELECT id, created_at FROM uploads
+                WHERE status = 'PROCESSING' AND created_at < :staleBefore
+                  AND (created_at, id) > (:afterCreatedAt, :afterId)
+                ORDER BY created_at, id
+                LIMIT :limit
+            ),
+            failed AS (
+                UPDATE uploads
+                SET status = 'FAILED', error_message = :errorMessage, updated_at = NOW()
+                FROM page
+                WHERE uploads.id = page.id
+                  AND uploads.status = 'PROCESSING'
+                  AND uploads.updated_at < :staleBefore
+                  AND NOT EXISTS (SELECT 1 FROM upload_sessions s WHERE s.upload_id = uploads.id AND s.status = 'OPEN'
+                                    AND s.expires_at >= :staleBefore)
+                  AND NOT EXISTS (SELECT 1 FROM direct_uploads d WHERE d.upload_id = uploads.id AND d.status = 'PENDING'
+                                    AND d.expires_at >= :staleBefore)
+                RETURNING uploads.id, uploads.idempotency_key
+            )
+            SELECT page.id, page.created_at, failed.idempotency_key, failed.id IS NOT NULL AS failed
+            FROM page LEFT JOIN failed ON failed.id = page.id
+            ORDER BY page.created_at, page.id
+            """;
+
+    /*
+     * Открытые сессии и прямые загрузки ссылаются на объект, который ещё пишется.
+     * FAILED-записи с storage_path тоже считаются ссылкой — лишний объект лучше, чем потерянный.
+     */
+    private static final String FIND_UNREFERENCED_SQL = """
+            SELECT t.name FROM unnest(CAST(:names AS VARCHAR[])) AS t(name)
+            WHERE NOT EXISTS (SELECT 1 FROM blobs WHERE blobs.storage_path = t.name)
+              AND NOT EXISTS (SELECT 1 FROM packs WHERE packs.object_name = t.name)
+              AND NOT EXISTS (SELECT 1 FROM uploads WHERE uploads.storage_path = t.name)
+              AND NOT EXISTS (SELECT 1 FROM upload_sessions s WHERE s.object_name = t.name
+                              AND (s.status = 'OPEN' OR (s.status = 'COMMITTING' AND s.updated_at >= :staleBefore)))
+              AND NOT EXISTS (SELECT 1 FROM direct_uploads d WHERE d.object_name = t.name
+                              AND (d.status = 'PENDING' OR (d.status = 'COMPLETING' AND d.updated_at >= :staleBefore)))
+            """;
+
+    private final DatabaseClient databaseClient;
+
+    @Override
+    public Mono<Long> touchAll(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return Mono.just(0L);
+        }
+        return databaseClient.sql(TOUCH_ALL_SQL)
+                .bind("ids", ids.toArray(UUID[]::new))
+                .fetch()
+                .rowsUpdated();
+    }
+
+    @Override
+    public Flux<StaleUpload> failStale(Instant afterCreatedAt, UUID afterId, Instant staleBefore, int limit, String errorMessage) {
+        return databaseClient.sql(FAIL_STALE_SQL)
+                .bind("afterCreatedAt", afterCreatedAt)
+                .bind("afterId", afterId)
+                .bind("staleBefore", staleBefore)
+                .bind("limit", limit)
+                .bind("errorMessage", errorMessage)
+                .map((row, metadata) -> new StaleUpload(
+                        row.get("id", UUID.class),
+                        row.get("created_at", Instant.class),
+                        row.get("idempotency_key", String.class),
+                        Boolean.TRUE.equals(row.get("failed", Boolean.class))
+                ))
+                .all();
+    }
+
+    @Override
+    public Flux<String> findUnreferenced(List<String> objectNames, Instant staleBefore) {
+        if (objectNames.isEmpty()) {
+            return Flux.empty();
+        }
+        return databaseClient.sql(FIND_UNREFERENCED_SQL)
+                .bind("names", objectNames.toArray(String[]::new))
+                .bind("staleBefore", staleBefore)
+                .map((row, metadata) -> row.get("name", String.class))
+                .all();
+    }
+}
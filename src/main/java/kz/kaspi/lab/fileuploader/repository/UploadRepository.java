@@ -9,9 +9,8 @@ import reactor.core.publisher.Mono;
 import java.util.UUID;
 
 @Repository
-public interface UploadRepository extends ReactiveCrudRepository<Upload, UUID> {
-
-    Mono<Boolean> existsByIdempotencyKey(String idempotencyKey);
+public interface UploadRepository extends ReactiveCrudRepository<Upload, UUID>, UploadClaimRepository, UploadBatchRepository,
+        UploadSearchRepository, UploadReconcileRepository {
 
     Mono<Upload> findByIdempotencyKey(String idempotencyKey);
 
@@ -20,4 +19,28 @@ public interface UploadRepository extends ReactiveCrudRepository<Upload, UUID> {
 
     @Query("UPDATE uploads SET status = :status, error_message = :errorMessage, updated_at = NOW() WHERE idempotency_key = :key")
     Mono<Void> updateStatusAndErrorByIdempotencyKey(String key, String status, String errorMessage);
-}
\ No newline at end of file
+
+    @Query("UPDATE uploads SET status = :status, error_message = :errorMessage, updated_at = NOW() WHERE id = :id")
+    Mono<Void> updateStatusAndErrorById(UUID id, String status, String errorMessage);
+
+    /**
+     * Переносит файлы с этим содержимым в новый пак при уплотнении.
+     */
+    @Query("""
+            UPDATE uploads SET storage_path = :storagePath, pack_id = :newPackId, pack_offset = :packOffset
+            WHERE content_hash = :hash AND pack_id = :oldPackId
+            """)
+    Mono<Integer> relocate(String hash, UUID oldPackId, UUID newPackId, String storagePath, long packOffset);
+
+    /**
+     * Перед удалением пака переводит на актуальное место записи, сохранённые уже после
+     * уплотнения со старым адресом (ссылку на содержимое они взяли раньше).
+     */
+    @Query("""
+            UPDATE uploads SET storage_path = blobs.storage_path, pack_id = blobs.pack_id, pack_offset = blobs.pack_offset
+            FROM blobs
+            WHERE uploads.pack_id = :packId AND blobs.content_hash = uploads.content_hash
+              AND blobs.pack_id IS DISTINCT FROM :packId
+            """)
+    Mono<Integer> relocateStale(UUID packId);
+}
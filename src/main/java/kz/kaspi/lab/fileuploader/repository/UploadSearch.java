@@ -0,0 +1,24 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Фильтр и позиция страницы для {@link UploadSearchRepository#search}; {@code null} — без условия.
+ *
+ * @param from           created_at не раньше
+ * @param to             created_at строго раньше
+ * @param afterCreatedAt created_at последней строки предыдущей страницы
+ * @param afterId        id последней строки предыдущей страницы, задаётся вместе с afterCreatedAt
+ */
+public record UploadSearch(
+        UploadStatus status,
+        String contentType,
+        Instant from,
+        Instant to,
+        Instant afterCreatedAt,
+        UUID afterId,
+        int limit
+) {}
@@ -0,0 +1,16 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import reactor.core.publisher.Flux;
+
+/**
+ * Просмотр uploads с keyset-пагинацией: страница продолжается после (created_at, id)
+ * последней строки предыдущей, поэтому глубокие страницы стоят столько же, сколько первая.
+ */
+public interface UploadSearchRepository {
+
+    /**
+     * Новые записи первыми, порядок (created_at, id) по убыванию; строки отдаются потоком по мере чтения.
+     */
+    Flux<Upload> search(UploadSearch search);
+}
@@ -0,0 +1,60 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RequiredArgsConstructor
+class UploadSearchRepositoryImpl implements UploadSearchRepository {
+
+    private final DatabaseClient databaseClient;
+    private final R2dbcConverter converter;
+
+    @Override
+    public Flux<Upload> search(UploadSearch search) {
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> params = new LinkedHashMap<>();
+
+        if (search.status() != null) {
+            // Статус подставляется литералом (значение enum, не ввод клиента): только так
+            // планировщик применяет частичный индекс idx_uploads_unfinished_created
+            // и к подготовленному запросу
+            conditions.add("status = '" + search.status().name() + "'");
+        }
+        if (search.contentType() != null) {
+            conditions.add("content_type = :contentType");
+            params.put("contentType", search.contentType());
+        }
+        if (search.from() != null) {
+            conditions.add("created_at >= :from");
+            params.put("from", search.from());
+        }
+        if (search.to() != null) {
+            conditions.add("created_at < :to");
+            params.put("to", search.to());
+        }
+        if (search.afterCreatedAt() != null) {
+            conditions.add("(created_at, id) < (:afterCreatedAt, :afterId)");
+            params.put("afterCreatedAt", search.afterCreatedAt());
+            params.put("afterId", search.afterId());
+        }
+
+        String sql = "SELECT * FROM uploads"
+                + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                + " ORDER BY created_at DESC, id DESC LIMIT :limit";
+        params.put("limit", search.limit());
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql);
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            spec = spec.bind(param.getKey(), param.getValue());
+        }
+        return spec.map((row, metadata) -> converter.read(Upload.class, row, metadata)).all();
+    }
+}
@@ -0,0 +1,27 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.UploadSessionPart;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+@Repository
+public interface UploadSessionPartRepository extends ReactiveCrudRepository<UploadSessionPart, Long> {
+
+    /**
+     * Повторная загрузка того же чанка перезаписывает часть в S3, поэтому и запись обновляется.
+     */
+    @Query("""
+            INSERT INTO upload_session_parts (session_id, part_number, size, etag)
+            VALUES (:sessionId, :partNumber, :size, :etag)
+            ON CONFLICT (session_id, part_number) DO UPDATE SET size = EXCLUDED.size, etag = EXCLUDED.etag
+            """)
+    Mono<Void> upsert(UUID sessionId, int partNumber, long size, String etag);
+
+    @Query("SELECT * FROM upload_session_parts WHERE session_id = :sessionId ORDER BY part_number")
+    Flux<UploadSessionPart> findBySessionIdOrdered(UUID sessionId);
+}
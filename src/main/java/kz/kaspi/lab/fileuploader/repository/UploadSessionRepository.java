@@ -0,0 +1,54 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.UploadSession;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Repository
+public interface UploadSessionRepository extends ReactiveCrudRepository<UploadSession, UUID> {
+
+    @Query("SELECT * FROM upload_sessions WHERE upload_id = :uploadId AND status = 'OPEN'")
+    Mono<UploadSession> findOpenByUploadId(UUID uploadId);
+
+    @Query("SELECT * FROM upload_sessions WHERE id = :id AND status = 'OPEN' AND expires_at > NOW()")
+    Mono<UploadSession> findOpenById(UUID id);
+
+    /**
+     * Открытая сессия либо сессия, чей commit прервался (COMMITTING), — его можно продолжить.
+     */
+    @Query("SELECT * FROM upload_sessions WHERE id = :id AND status IN ('OPEN', 'COMMITTING') AND expires_at > NOW()")
+    Mono<UploadSession> findCommittableById(UUID id);
+
+    @Query("UPDATE upload_sessions SET expires_at = :expiresAt, updated_at = NOW() WHERE id = :id AND status = 'OPEN'")
+    Mono<Void> extendExpiry(UUID id, Instant expiresAt);
+
+    /**
+     * Переход между статусами с проверкой текущего. Пусто, если сессия уже в другом статусе.
+     */
+    @Query("UPDATE upload_sessions SET status = :to, updated_at = NOW() WHERE id = :id AND status = :from RETURNING *")
+    Mono<UploadSession> transition(UUID id, String from, String to);
+
+    /**
+     * Забирает пачку просроченных сессий и commit-ов, зависших в COMMITTING с committingBefore.
+     * SKIP LOCKED позволяет нескольким узлам чистить сессии одновременно, не обрабатывая одну и ту же дважды.
+     */
+    @Query("""
+            UPDATE upload_sessions SET status = 'EXPIRED', updated_at = NOW()
+            WHERE id IN (
+                SELECT id FROM upload_sessions
+                WHERE (status = 'OPEN' AND expires_at < NOW())
+                   OR (status = 'COMMITTING' AND updated_at < :committingBefore)
+                ORDER BY expires_at
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING *
+            """)
+    Flux<UploadSession> expireBatch(Instant committingBefore, int limit);
+}
@@ -0,0 +1,246 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.kaspi.lab.fileuploader.exception.ClientLimitExceededException;
+import kz.kaspi.lab.fileuploader.exception.OverloadedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Допуск загрузок до чтения тела: глобальный лимит одновременных загрузок, бюджет байт
+ * в полёте (по заявленному Content-Length) и необязательный лимит на клиента.
+ * Лимиты меняются на лету через actuator-эндпоинт admission.
+ * <p>
+ * Retry-After считается из темпа, с которым завершаются текущие загрузки: сколько
+ * ждать, пока освободится слот или нужное число байт.
+ */
+@Slf4j
+@Component
+public class AdmissionController {
+
+    private static final Duration MIN_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final long unknownLengthBytes;
+    private final Duration maxRetryAfter;
+    private final DrainRate drainRate = new DrainRate(10);
+
+    private volatile int maxConcurrent;
+    private volatile long maxInFlightBytes;
+    private volatile int perClientMaxConcurrent;
+
+    private int active;
+    private long inFlightBytes;
+    private final Map<String, Integer> activeByClient = new HashMap<>();
+
+    private final Counter rejectedConcurrency;
+    private final Counter rejectedBytes;
+    private final Counter rejectedClient;
+
+    public AdmissionController(
+            MeterRegistry meterRegistry,
+            @Value("${upload.admission.max-concurrent:64}") int maxConcurrent,
+            @Value("${upload.admission.max-in-flight-bytes:2GB}") DataSize maxInFlightBytes,
+            @Value("${upload.admission.per-client-max-concurrent:0}") int perClientMaxConcurrent,
+            @Value("${upload.admission.unknown-length-bytes:8MB}") DataSize unknownLengthBytes,
+            @Value("${upload.admission.max-retry-after:30s}") Duration maxRetryAfter) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxInFlightBytes = maxInFlightBytes.toBytes();
+        this.perClientMaxConcurrent = perClientMaxConcurrent;
+        this.unknownLengthBytes = unknownLengthBytes.toBytes();
+        this.maxRetryAfter = maxRetryAfter;
+
+        this.rejectedConcurrency = rejectedCounter(meterRegistry, "concurrency");
+        this.rejectedBytes = rejectedCounter(meterRegistry, "bytes");
+        this.rejectedClient = rejectedCounter(meterRegistry, "client");
+        Gauge.builder("upload.admission.active", this, AdmissionController::active)
+                .description("Uploads admitted and not yet finished")
+                .register(meterRegistry);
+        Gauge.builder("upload.admission.in.flight.bytes", this, AdmissionController::inFlightBytes)
+                .description("Declared bytes of admitted uploads")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("upload.admission.limit.concurrent", this, controller -> controller.maxConcurrent)
+                .description("Current limit of concurrent uploads")
+                .register(meterRegistry);
+        Gauge.builder("upload.admission.limit.bytes", this, controller -> controller.maxInFlightBytes)
+                .description("Current budget of in-flight bytes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("upload.admission.rejected")
+                .description("Uploads rejected before reading the body")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Пускает загрузку или отклоняет её. Полученный допуск обязательно освободить.
+     *
+     * @param declaredBytes Content-Length запроса, отрицательное если неизвестен
+     * @throws ClientLimitExceededException клиент превысил свой лимит
+     * @throws OverloadedException          превышен глобальный лимит
+     */
+    public synchronized Permit admit(String clientId, long declaredBytes) {
+        long bytes = declaredBytes >= 0 ? declaredBytes : unknownLengthBytes;
+        int clientActive = activeByClient.getOrDefault(clientId, 0);
+
+        if (perClientMaxConcurrent > 0 && clientActive >= perClientMaxConcurrent) {
+            rejectedClient.increment();
+            throw new ClientLimitExceededException("Too many concurrent uploads for client",
+                    retryAfter(drainRate.completionsPerSecond() * clientActive / Math.max(1, active)));
+        }
+        if (active >= maxConcurrent) {
+            rejectedConcurrency.increment();
+            throw new OverloadedException("Too many concurrent uploads", retryAfter(drainRate.completionsPerSecond()));
+        }
+        // Запрос больше всего бюджета пропускаем, только когда в полёте ничего нет — иначе он не пройдёт никогда
+        if (active > 0 && inFlightBytes + bytes > maxInFlightBytes) {
+            rejectedBytes.increment();
+            double neededBytes = inFlightBytes + bytes - maxInFlightBytes;
+            throw new OverloadedException("Upload byte budget exhausted",
+                    retryAfter(drainRate.bytesPerSecond() / neededBytes));
+        }
+
+        active++;
+        inFlightBytes += bytes;
+        activeByClient.put(clientId, clientActive + 1);
+        return new Permit(clientId, bytes);
+    }
+
+    private synchronized void release(Permit permit) {
+        active--;
+        inFlightBytes -= permit.bytes;
+        activeByClient.computeIfPresent(permit.clientId, (client, count) -> count > 1 ? count - 1 : null);
+        drainRate.record(permit.bytes);
+    }
+
+    /**
+     * @param ratePerSecond сколько раз в секунду освобождается нужный ресурс; 0 — неизвестно
+     */
+    private Duration retryAfter(double ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            return maxRetryAfter;
+        }
+        long seconds = (long) Math.ceil(1 / ratePerSecond);
+        return Duration.ofSeconds(Math.max(MIN_RETRY_AFTER.toSeconds(), Math.min(seconds, maxRetryAfter.toSeconds())));
+    }
+
+    public synchronized int active() {
+        return active;
+    }
+
+    public synchronized long inFlightBytes() {
+        return inFlightBytes;
+    }
+
+    public Limits limits() {
+        return new Limits(maxConcurrent, maxInFlightBytes, perClientMaxConcurrent);
+    }
+
+    /**
+     * Меняет лимиты на лету; {@code null} оставляет значение как есть.
+     * Уже пущенные загрузки не прерываются.
+     */
+    public Limits updateLimits(Integer maxConcurrent, Long maxInFlightBytes, Integer perClientMaxConcurrent) {
+        if ((maxConcurrent != null && maxConcurrent <= 0)
+                || (maxInFlightBytes != null && maxInFlightBytes <= 0)
+                || (perClientMaxConcurrent != null && perClientMaxConcurrent < 0)) {
+            throw new IllegalArgumentException("Limits must be positive (perClientMaxConcurrent = 0 disables it)");
+        }
+        if (maxConcurrent != null) {
+            this.maxConcurrent = maxConcurrent;
+        }
+        if (maxInFlightBytes != null) {
+            this.maxInFlightBytes = maxInFlightBytes;
+        }
+        if (perClientMaxConcurrent != null) {
+            this.perClientMaxConcurrent = perClientMaxConcurrent;
+        }
+        Limits limits = limits();
+        log.info("Admission limits updated: {}", limits);
+        return limits;
+    }
+
+    public record Limits(int maxConcurrent, long maxInFlightBytes, int perClientMaxConcurrent) {
+    }
+
+    public final class Permit {
+
+        private final String clientId;
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(String clientId, long bytes) {
+            this.clientId = clientId;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Повторный вызов ничего не делает.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                AdmissionController.this.release(this);
+            }
+        }
+    }
+
+    /**
+     * Завершённые загрузки и их байты по секундам за последние {@code windowSeconds} секунд.
+     * Вызывается под монитором AdmissionController.
+     */
+    private static final class DrainRate {
+
+        private final long[] completions;
+        private final long[] bytes;
+        private final long[] bucketSecond;
+
+        DrainRate(int windowSeconds) {
+            this.completions = new long[windowSeconds];
+            this.bytes = new long[windowSeconds];
+            this.bucketSecond = new long[windowSeconds];
+        }
+
+        void record(long completedBytes) {
+            long second = System.nanoTime() / 1_000_000_000L;
+            int bucket = (int) (second % completions.length);
+            if (bucketSecond[bucket] != second) {
+                bucketSecond[bucket] = second;
+                completions[bucket] = 0;
+                bytes[bucket] = 0;
+            }
+            completions[bucket]++;
+            bytes[bucket] += completedBytes;
+        }
+
+        double completionsPerSecond() {
+            return sum(completions) / (double) completions.length;
+        }
+
+        double bytesPerSecond() {
+            return sum(bytes) / (double) bytes.length;
+        }
+
+        private long sum(long[] values) {
+            long now = System.nanoTime() / 1_000_000_000L;
+            long total = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (now - bucketSecond[i] < values.length) {
+                    total += values[i];
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import kz.kaspi.lab.fileuploader.dto.UploadResponse;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.exception.OverloadedException;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Асинхронный приём файлов (upload.async.enabled=true).
+ * <p>
+ * Тело запроса пишется в staging-каталог и сбрасывается на диск (fsync) — после этого
+ * клиент получает 202. Загрузку в хранилище и обновление статуса выполняет пул воркеров
+ * с ограниченной параллельностью. Если очередь заполнена, запрос отклоняется до чтения тела.
+ * Staging-файлы переживают рестарт: при старте незавершённые загрузки ставятся в очередь заново.
+ * <p>
+ * Staging-файл — единственная копия принятых байт, поэтому он удаляется только после того,
+ * как запись перешла в SUCCESS или FAILED. Если после ошибки запись осталась в PROCESSING
+ * (временный сбой хранилища, упала база, неожиданное исключение), сохранение повторяется
+ * до upload.async.max-attempts раз, затем запись явно переводится в FAILED.
+ */
+@Slf4j
+@Service
+public class AsyncIngestService {
+
+    private static final String STAGING_SUFFIX = ".staged";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final Duration RETRY_AFTER = Duration.ofSeconds(5);
+
+    private final FileUploadService fileUploadService;
+    private final UploadRepository uploadRepository;
+    private final boolean enabled;
+    private final int concurrency;
+    private final int queueDepth;
+    private final Path stagingDir;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Scheduler blockingIoScheduler;
+
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Set<UUID> queued = ConcurrentHashMap.newKeySet();
+    private final Sinks.Many<Upload> queue = Sinks.many().unicast().onBackpressureBuffer();
+    private Disposable workers;
+
+    public AsyncIngestService(
+            FileUploadService fileUploadService,
+            UploadRepository uploadRepository,
+            MeterRegistry meterRegistry,
+            Scheduler blockingIoScheduler,
+            @Value("${upload.async.enabled:false}") boolean enabled,
+            @Value("${upload.async.concurrency:8}") int concurrency,
+            @Value("${upload.async.queue-depth:256}") int queueDepth,
+            @Value("${upload.async.staging-dir:${java.io.tmpdir}/file-uploader-staging}") Path stagingDir,
+            @Value("${upload.async.max-attempts:5}") int maxAttempts,
+            @Value("${upload.async.retry-backoff:2s}") Duration retryBackoff) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("upload.async.max-attempts must be at least 1");
+        }
+        this.fileUploadService = fileUploadService;
+        this.uploadRepository = uploadRepository;
+        this.enabled = enabled;
+        this.concurrency = concurrency;
+        this.queueDepth = queueDepth;
+        this.stagingDir = stagingDir;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.blockingIoScheduler = blockingIoScheduler;
+
+        Gauge.builder("upload.async.backlog", backlog, AtomicInteger::get)
+                .description("Staged uploads waiting for or being stored")
+                .register(meterRegistry);
+        Gauge.builder("upload.async.running", running, AtomicInteger::get)
+                .description("Staged uploads currently being stored")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(stagingDir);
+        workers = queue.asFlux()
+                .flatMap(this::store, concurrency)
+                .subscribe();
+        log.info("Async ingest enabled: concurrency={}, queueDepth={}, stagingDir={}", concurrency, queueDepth, stagingDir);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (workers != null) {
+            workers.dispose();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Загрузки, которые лежат в staging этого узла и ещё не сохранены.
+     */
+    public Set<UUID> queuedIds() {
+        return Set.copyOf(queued);
+    }
+
+    /**
+     * Сохраняет тело в staging и ставит загрузку в очередь. Завершается, когда данные на диске.
+     */
+    public Mono<UploadResponse> accept(Upload upload, Flux<DataBuffer> content) {
+        if (!tryReserve()) {
+            // Ключ уже занят этим запросом — освобождаем, чтобы клиент мог повторить
+            return fileUploadService.markFailed(upload, "Ingest queue is full")
+                    .then(Mono.error(new OverloadedException("Ingest queue is full", RETRY_AFTER)));
+        }
+
+        Path staged = stagedFile(upload.getId());
+        return DataBufferUtils.write(content, staged, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+                .then(Mono.fromCallable(() -> {
+                    try (FileChannel channel = FileChannel.open(staged, StandardOpenOption.WRITE)) {
+                        channel.force(true);
+                    }
+                    return Files.size(staged);
+                }).subscribeOn(blockingIoScheduler))
+                .map(size -> {
+                    upload.setFileSize(size);
+                    queued.add(upload.getId());
+                    queue.emitNext(upload, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+                    log.info("Upload {} staged ({} bytes), queued for storage", upload.getId(), size);
+                    return new UploadResponse(upload.getId(), upload.getStatus(), upload.getOriginalFilename(),
+                            null, upload.getCreatedAt());
+                })
+                .onErrorResume(e -> {
+                    backlog.decrementAndGet();
+                    log.error("Failed to stage upload {}", upload.getId(), e);
+                    return deleteStaged(staged)
+                            .then(fileUploadService.markFailed(upload, "Failed to stage upload: " + e.getMessage()))
+                            .then(Mono.error(new StorageException("Failed to stage upload: " + e.getMessage(), e)));
+                });
+    }
+
+    private Mono<Void> store(Upload upload) {
+        Path staged = stagedFile(upload.getId());
+        running.incrementAndGet();
+        return Mono.defer(() -> fileUploadService.processStaged(upload,
+                        DataBufferUtils.read(staged, DefaultDataBufferFactory.sharedInstance, READ_BUFFER_SIZE)))
+                .doOnNext(response -> log.info("Staged upload {} stored", upload.getId()))
+                .then()
+                // Постоянную ошибку хранилища FileUploadService уже записал в статус — повторять нечего
+                .onErrorResume(e -> isSettled(upload).flatMap(settled -> settled ? Mono.empty() : Mono.error(e)))
+                .retryWhen(Retry.backoff(maxAttempts - 1, retryBackoff)
+                        .maxBackoff(Duration.ofMinutes(1))
+                        .doBeforeRetry(signal -> log.warn("Staged upload {} is still PROCESSING after attempt {}, retrying: {}",
+                                upload.getId(), signal.totalRetries() + 1, signal.failure().toString())))
+                .then(Mono.defer(() -> deleteStaged(staged)))
+                .onErrorResume(e -> giveUp(upload, staged, e))
+                .doFinally(signal -> {
+                    queued.remove(upload.getId());
+                    running.decrementAndGet();
+                    backlog.decrementAndGet();
+                });
+    }
+
+    /**
+     * Запись уже в конечном статусе (или её нет) — staged-файл больше не нужен.
+     * Если статус прочитать не удалось, считаем, что нет.
+     */
+    private Mono<Boolean> isSettled(Upload upload) {
+        return uploadRepository.findById(upload.getId())
+                .map(current -> current.getStatus() != Upload.UploadStatus.PROCESSING)
+                .defaultIfEmpty(true)
+                .onErrorReturn(false);
+    }
+
+    /**
+     * Попытки кончились: запись переводится в FAILED, и только потом удаляется staged-файл.
+     * Если и это не удалось, файл остаётся — после рестарта {@link #recoverStaged()} поставит его снова.
+     */
+    private Mono<Void> giveUp(Upload upload, Path staged, Throwable error) {
+        log.error("Failed to store staged upload {} after {} attempts", upload.getId(), maxAttempts, error);
+        return fileUploadService.markFailed(upload, "Failed to store upload: " + error.getMessage())
+                .then(Mono.defer(() -> deleteStaged(staged)))
+                .onErrorResume(e -> {
+                    log.error("Failed to mark upload {} as FAILED, keeping staged file {}", upload.getId(), staged, e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * После рестарта дозагружает staged-файлы, чьи записи всё ещё в PROCESSING.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverStaged() {
+        if (!enabled) {
+            return;
+        }
+        Flux.using(() -> Files.list(stagingDir), Flux::fromStream, Stream::close)
+                .filter(path -> path.getFileName().toString().endsWith(STAGING_SUFFIX))
+                .concatMap(path -> Mono.fromCallable(() -> uploadIdOf(path))
+                        .flatMap(uploadRepository::findById)
+                        .filter(upload -> upload.getStatus() == Upload.UploadStatus.PROCESSING)
+                        .doOnNext(upload -> {
+                            backlog.incrementAndGet();
+                            queued.add(upload.getId());
+                            queue.emitNext(upload, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+                            log.info("Recovered staged upload {}", upload.getId());
+                        })
+                        .switchIfEmpty(Mono.defer(() -> deleteStaged(path).then(Mono.empty())))
+                        .onErrorResume(e -> {
+                            log.error("Failed to recover staged file {}", path, e);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    private boolean tryReserve() {
+        if (backlog.incrementAndGet() > queueDepth) {
+            backlog.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private Path stagedFile(UUID uploadId) {
+        return stagingDir.resolve(uploadId + STAGING_SUFFIX);
+    }
+
+    private static UUID uploadIdOf(Path staged) {
+        String name = staged.getFileName().toString();
+        return UUID.fromString(name.substring(0, name.length() - STAGING_SUFFIX.length()));
+    }
+
+    private Mono<Void> deleteStaged(Path staged) {
+        return Mono.fromCallable(() -> Files.deleteIfExists(staged))
+                .subscribeOn(blockingIoScheduler)
+                .onErrorResume(e -> {
+                    log.error("Failed to delete staged file {}", staged, e);
+                    return Mono.just(false);
+                })
+                .then();
+    }
+}
@@ -0,0 +1,55 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Один файл пакетной загрузки, целиком прочитанный в память.
+ *
+ * @param index   порядковый номер файловой части в запросе
+ * @param content буферы содержимого; пусто, если файл отклонён
+ * @param error   причина отклонения до записи в хранилище, {@code null} если файл принят
+ */
+public record BatchItem(
+        int index,
+        String idempotencyKey,
+        String filename,
+        String contentType,
+        List<DataBuffer> content,
+        long size,
+        String error
+) {
+
+    static BatchItem rejected(int index, String idempotencyKey, String filename, String error) {
+        return new BatchItem(index, idempotencyKey, filename, null, List.of(), 0, error);
+    }
+
+    BatchItem reject(String error) {
+        release();
+        return rejected(index, idempotencyKey, filename, error);
+    }
+
+    /**
+     * Содержимое для записи в хранилище; буферы освобождает подписчик.
+     */
+    Flux<DataBuffer> body() {
+        return Flux.fromIterable(content);
+    }
+
+    void release() {
+        content.forEach(DataBufferUtils::release);
+    }
+
+    Upload toUpload() {
+        Upload upload = new Upload();
+        upload.setIdempotencyKey(idempotencyKey);
+        upload.setOriginalFilename(filename);
+        upload.setFileSize(size);
+        upload.setContentType(contentType);
+        return upload;
+    }
+}
@@ -0,0 +1,433 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.dto.BatchUploadResponse;
+import kz.kaspi.lab.fileuploader.dto.BatchUploadResponse.Item;
+import kz.kaspi.lab.fileuploader.dto.BatchUploadResponse.Outcome;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.exception.IdempotencyException;
+import kz.kaspi.lab.fileuploader.repository.UploadBatch;
+import kz.kaspi.lab.fileuploader.repository.UploadClaim;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import kz.kaspi.lab.fileuploader.service.UploadMetrics.Compensation;
+import kz.kaspi.lab.fileuploader.service.UploadMetrics.Stage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Пакетная загрузка: много небольших файлов в одном multipart-запросе.
+ * <p>
+ * Файлы читаются в память по одному и собираются в группы (не больше upload.batch.db-batch-size
+ * файлов и upload.batch.group-bytes байт). На группу — один запрос claim, запись в хранилище
+ * с параллельностью upload.batch.concurrency и по одному UPDATE для успешных и неудачных файлов.
+ * Пока группа обрабатывается, читается следующая; дальше чтение тела ждёт.
+ * Ошибка файла компенсируется только для этого файла — остальные сохраняются.
+ * <p>
+ * Итог пачки записывается в upload_batches. Повтор с тем же ключом сверяется с записью:
+ * другой состав файлов отклоняется, а если все файлы пачки уже в SUCCESS, ответ собирается
+ * из записи без claim и записи в хранилище. Иначе (в пачке были неудачи) повтор обрабатывается
+ * заново: сохранённые файлы вернутся как DUPLICATE, неудачные запишутся ещё раз.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BatchUploadService {
+
+    private final BlobService blobService;
+    private final UploadRepository uploadRepository;
+    private final IdempotencyCache idempotencyCache;
+    private final UploadMetrics uploadMetrics;
+
+    @Value("${upload.batch.max-items:1000}")
+    private int maxItems;
+
+    @Value("${upload.batch.max-item-size:16MB}")
+    private DataSize maxItemSize;
+
+    @Value("${upload.batch.db-batch-size:100}")
+    private int dbBatchSize;
+
+    @Value("${upload.batch.group-bytes:64MB}")
+    private DataSize groupBytes;
+
+    @Value("${upload.batch.concurrency:16}")
+    private int concurrency;
+
+    /**
+     * Ключ файла, для которого клиент не передал свой: ключ пачки и номер файла.
+     * Повтор той же пачки получает те же ключи, и уже сохранённые файлы не пишутся заново.
+     */
+    public static String itemKey(String batchKey, int index) {
+        return batchKey + "/" + index;
+    }
+
+    /**
+     * Читает содержимое файловой части в память. Файл сверх лимитов отклоняется,
+     * но его содержимое дочитывается, чтобы перейти к следующей части.
+     */
+    public Mono<BatchItem> bufferItem(int index, String idempotencyKey, String filename, String contentType,
+                                      Flux<DataBuffer> content) {
+        if (index >= maxItems) {
+            return content.doOnNext(DataBufferUtils::release)
+                    .then(Mono.fromSupplier(() -> BatchItem.rejected(index, idempotencyKey, filename,
+                            "Batch exceeds " + maxItems + " files")));
+        }
+        long limit = maxItemSize.toBytes();
+        return content.reduceWith(ItemBuffer::new, (buffer, data) -> buffer.append(data, limit))
+                .doOnDiscard(ItemBuffer.class, ItemBuffer::release)
+                .map(buffer -> buffer.tooLarge
+                        ? BatchItem.rejected(index, idempotencyKey, filename,
+                        "File exceeds upload.batch.max-item-size (" + maxItemSize + ")")
+                        : new BatchItem(index, idempotencyKey, filename, contentType, buffer.buffers, buffer.size, null));
+    }
+
+    public Mono<BatchUploadResponse> processBatch(String batchKey, Flux<BatchItem> items) {
+        return uploadRepository.findBatch(batchKey)
+                .flatMap(recorded -> recorded.completed()
+                        ? replay(recorded, items)
+                        : process(batchKey, matching(recorded, items), recorded))
+                .switchIfEmpty(Mono.defer(() -> process(batchKey, items, null)));
+    }
+
+    /**
+     * Повтор завершённой пачки: тела только дочитываются, ответ — из записи.
+     */
+    private Mono<BatchUploadResponse> replay(UploadBatch recorded, Flux<BatchItem> items) {
+        return items.doOnNext(BatchItem::release)
+                .map(BatchItem::idempotencyKey)
+                .collectList()
+                .flatMap(keys -> {
+                    if (!keys.equals(recorded.itemKeys())) {
+                        return Mono.error(mismatch(recorded.batchKey()));
+                    }
+                    List<Item> results = new ArrayList<>();
+                    for (int index = 0; index < recorded.items().size(); index++) {
+                        UploadBatch.Item item = recorded.items().get(index);
+                        results.add(new Item(index, item.idempotencyKey(), item.filename(),
+                                Outcome.valueOf(item.outcome()), item.uploadId(), item.status(), item.error()));
+                    }
+                    return Mono.just(response(recorded.batchKey(), results));
+                });
+    }
+
+    /**
+     * Файлы повтора должны идти с теми же ключами и в том же порядке, что в записанной пачке.
+     * Лишний или другой файл обрывает пачку сразу, нехватку видно только в конце.
+     */
+    private static Flux<BatchItem> matching(UploadBatch recorded, Flux<BatchItem> items) {
+        List<String> keys = recorded.itemKeys();
+        return items.handle((item, sink) -> {
+            if (item.index() >= keys.size() || !keys.get(item.index()).equals(item.idempotencyKey())) {
+                item.release();
+                sink.error(mismatch(recorded.batchKey()));
+            } else {
+                sink.next(item);
+            }
+        });
+    }
+
+    /**
+     * Запись итога — не часть ответа: если она не удалась, повтор просто обработает пачку заново.
+     * Пачка без файлов (её отклоняет обработчик) не записывается и ключ не занимает.
+     */
+    private Mono<Void> record(BatchUploadResponse response) {
+        if (response.items().isEmpty()) {
+            return Mono.empty();
+        }
+        List<UploadBatch.Item> items = response.items().stream()
+                .map(item -> new UploadBatch.Item(item.idempotencyKey(), item.filename(), item.uploadId(),
+                        item.outcome().name(), item.status(), item.error()))
+                .toList();
+        return uploadRepository.saveBatch(new UploadBatch(response.batchKey(), items))
+                .doOnNext(saved -> {
+                    if (!saved) {
+                        log.warn("Batch {} is already recorded with a different set of files", response.batchKey());
+                    }
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to record batch {}", response.batchKey(), e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<BatchUploadResponse> process(String batchKey, Flux<BatchItem> items, UploadBatch recorded) {
+        return Flux.defer(() -> {
+                    Set<String> seenKeys = new HashSet<>();
+                    GroupLimit limit = new GroupLimit(dbBatchSize, groupBytes.toBytes());
+                    return items
+                            .map(item -> item.error() == null && !seenKeys.add(item.idempotencyKey())
+                                    ? item.reject("Duplicate idempotency key in batch")
+                                    : item)
+                            .bufferUntil(limit::closes);
+                })
+                // Не больше одной прочитанной группы в ожидании — иначе пачка целиком окажется в памяти
+                .concatMap(this::processGroup, 1)
+                .doOnDiscard(BatchItem.class, BatchItem::release)
+                .doOnDiscard(List.class, group -> group.forEach(item -> {
+                    if (item instanceof BatchItem batchItem) {
+                        batchItem.release();
+                    }
+                }))
+                .collectSortedList(Comparator.comparingInt(Item::index))
+                .flatMap(results -> recorded != null && results.size() != recorded.items().size()
+                        ? Mono.error(mismatch(batchKey))
+                        : Mono.just(response(batchKey, results)))
+                .flatMap(response -> record(response).thenReturn(response));
+    }
+
+    private static BatchUploadResponse response(String batchKey, List<Item> results) {
+        return new BatchUploadResponse(
+                batchKey,
+                count(results, Outcome.STORED),
+                count(results, Outcome.DUPLICATE),
+                count(results, Outcome.FAILED),
+                results
+        );
+    }
+
+    private static IdempotencyException mismatch(String batchKey) {
+        return new IdempotencyException("Batch " + batchKey + " was already sent with a different set of files");
+    }
+
+    private Flux<Item> processGroup(List<BatchItem> group) {
+        List<Item> results = new ArrayList<>();
+        List<BatchItem> pending = new ArrayList<>();
+        for (BatchItem item : group) {
+            if (item.error() != null) {
+                results.add(item(item, Outcome.FAILED, null, null, item.error()));
+                continue;
+            }
+            uploadMetrics.bytesIngested(item.size());
+            // Повторы уже известных ключей отвечаем из кэша, без claim
+            Optional<IdempotencyCache.Entry> cached = idempotencyCache.get(item.idempotencyKey())
+                    .filter(entry -> entry.status() != Upload.UploadStatus.FAILED);
+            if (cached.isPresent()) {
+                item.release();
+                results.add(item(item, Outcome.DUPLICATE, cached.get().uploadId(), cached.get().status(), null));
+                continue;
+            }
+            pending.add(item);
+        }
+        if (pending.isEmpty()) {
+            return Flux.fromIterable(results);
+        }
+
+        return uploadMetrics.timeStage(Stage.CLAIM, claimAll(pending))
+                .onErrorResume(e -> {
+                    log.error("Failed to claim {} batch items", pending.size(), e);
+                    pending.forEach(item -> {
+                        item.release();
+                        results.add(item(item, Outcome.FAILED, null, null, "Could not claim idempotency key"));
+                    });
+                    return Mono.empty();
+                })
+                .flatMap(claims -> store(pending, claims, results))
+                .thenMany(Flux.defer(() -> Flux.fromIterable(results)));
+    }
+
+    /**
+     * Ключи, вставленные конкурентом во время запроса, в ответ не попадают — для них повторяем один раз.
+     */
+    private Mono<Map<String, UploadClaim>> claimAll(List<BatchItem> items) {
+        List<Upload> uploads = items.stream().map(BatchItem::toUpload).toList();
+        return uploadRepository.claimAll(uploads)
+                .collectMap(claim -> claim.upload().getIdempotencyKey())
+                .flatMap(claims -> {
+                    List<Upload> missing = uploads.stream()
+                            .filter(upload -> !claims.containsKey(upload.getIdempotencyKey()))
+                            .toList();
+                    if (missing.isEmpty()) {
+                        return Mono.just(claims);
+                    }
+                    return uploadRepository.claimAll(missing)
+                            .collectMap(claim -> claim.upload().getIdempotencyKey(), claim -> claim,
+                                    () -> new HashMap<>(claims));
+                });
+    }
+
+    private Mono<Void> store(List<BatchItem> pending, Map<String, UploadClaim> claims, List<Item> results) {
+        List<BatchItem> claimed = new ArrayList<>();
+        for (BatchItem item : pending) {
+            UploadClaim claim = claims.get(item.idempotencyKey());
+            if (claim == null) {
+                item.release();
+                results.add(item(item, Outcome.FAILED, null, null, "Could not claim idempotency key"));
+            } else if (!claim.claimed()) {
+                item.release();
+                idempotencyCache.put(claim.upload());
+                results.add(item(item, Outcome.DUPLICATE, claim.upload().getId(), claim.upload().getStatus(), null));
+            } else {
+                idempotencyCache.put(claim.upload());
+                claimed.add(item);
+            }
+        }
+
+        return Flux.fromIterable(claimed)
+                .flatMap(item -> {
+                    Upload upload = claims.get(item.idempotencyKey()).upload();
+                    return uploadMetrics.timeStage(Stage.STORE,
+                                    blobService.store(item.body(), item.filename(), item.contentType(), item.size()))
+                            .map(stored -> new Stored(item, upload, stored))
+                            .onErrorResume(e -> {
+                                log.error("Failed to store batch item {} ({})", item.index(), item.idempotencyKey(), e);
+                                return Mono.just(new Stored(item, upload, null));
+                            });
+                }, concurrency)
+                .collectList()
+                .flatMap(stored -> finish(stored, results));
+    }
+
+    /**
+     * Один UPDATE для сохранённых файлов и один для неудачных. Если не удался первый,
+     * снимаются ссылки на содержимое только этих файлов, и они тоже помечаются FAILED.
+     */
+    private Mono<Void> finish(List<Stored> stored, List<Item> results) {
+        List<Stored> succeeded = new ArrayList<>();
+        Map<Stored, String> failed = new LinkedHashMap<>();
+        for (Stored result : stored) {
+            if (result.object() == null) {
+                failed.put(result, "Storage upload failed");
+            } else {
+                result.upload().setStoragePath(result.object().objectName());
+                result.upload().setContentHash(result.object().contentHash());
+                result.upload().setFileSize(result.object().size());
+                result.upload().setCompression(result.object().compression());
+                result.upload().setStoredSize(result.object().storedSize());
+                result.upload().setPackId(result.object().packId());
+                result.upload().setPackOffset(result.object().packOffset());
+                result.upload().setStatus(Upload.UploadStatus.SUCCESS);
+                succeeded.add(result);
+            }
+        }
+
+        if (succeeded.isEmpty()) {
+            return markFailed(failed, results);
+        }
+        Mono<Void> complete = uploadMetrics.timeStage(Stage.DB_SAVE,
+                        uploadRepository.completeAll(succeeded.stream().map(Stored::upload).toList()))
+                .doOnNext(updated -> succeeded.forEach(result -> {
+                    idempotencyCache.put(result.upload());
+                    uploadMetrics.outcome(Upload.UploadStatus.SUCCESS);
+                    results.add(item(result.item(), Outcome.STORED, result.upload().getId(),
+                            Upload.UploadStatus.SUCCESS, null));
+                }))
+                .then()
+                .onErrorResume(dbError -> {
+                    log.error("Database error after storing {} batch items. Initiating compensation.",
+                            succeeded.size(), dbError);
+                    return Flux.fromIterable(succeeded)
+                            .concatMap(result -> {
+                                uploadMetrics.compensation(Compensation.DB_SAVE_FAILED);
+                                failed.put(result, dbError.getMessage());
+                                return blobService.release(result.object().contentHash());
+                            })
+                            .then();
+                });
+
+        return complete.then(Mono.defer(() -> markFailed(failed, results)));
+    }
+
+    private Mono<Void> markFailed(Map<Stored, String> failed, List<Item> results) {
+        if (failed.isEmpty()) {
+            return Mono.empty();
+        }
+        Map<UUID, String> errors = new LinkedHashMap<>();
+        failed.forEach((result, error) -> errors.put(result.upload().getId(), error));
+        return uploadRepository.failAll(errors)
+                .onErrorResume(e -> {
+                    log.error("Failed to mark {} batch items as FAILED", errors.size(), e);
+                    return Mono.empty();
+                })
+                .then(Mono.fromRunnable(() -> failed.forEach((result, error) -> {
+                    idempotencyCache.put(result.upload().getIdempotencyKey(), Upload.UploadStatus.FAILED,
+                            result.upload().getId());
+                    uploadMetrics.outcome(Upload.UploadStatus.FAILED);
+                    results.add(item(result.item(), Outcome.FAILED, result.upload().getId(),
+                            Upload.UploadStatus.FAILED, error));
+                })));
+    }
+
+    private static Item item(BatchItem item, Outcome outcome, UUID uploadId,
+                             Upload.UploadStatus status, String error) {
+        return new Item(item.index(), item.idempotencyKey(), item.filename(), outcome, uploadId, status, error);
+    }
+
+    private static int count(List<Item> results, Outcome outcome) {
+        return (int) results.stream().filter(result -> result.outcome() == outcome).count();
+    }
+
+    private record Stored(BatchItem item, Upload upload, StoredObject object) {
+    }
+
+    /**
+     * Содержимое одной части, пока она читается.
+     */
+    private static final class ItemBuffer {
+
+        private final List<DataBuffer> buffers = new ArrayList<>();
+        private long size;
+        private boolean tooLarge;
+
+        ItemBuffer append(DataBuffer data, long limit) {
+            size += data.readableByteCount();
+            if (tooLarge || size > limit) {
+                DataBufferUtils.release(data);
+                release();
+                tooLarge = true;
+            } else {
+                buffers.add(data);
+            }
+            return this;
+        }
+
+        void release() {
+            buffers.forEach(DataBufferUtils::release);
+            buffers.clear();
+        }
+    }
+
+    /**
+     * Закрывает группу по числу файлов или по суммарному размеру.
+     */
+    private static final class GroupLimit {
+
+        private final int maxItems;
+        private final long maxBytes;
+        private int items;
+        private long bytes;
+
+        GroupLimit(int maxItems, long maxBytes) {
+            this.maxItems = maxItems;
+            this.maxBytes = maxBytes;
+        }
+
+        boolean closes(BatchItem item) {
+            items++;
+            bytes += item.size();
+            if (items >= maxItems || bytes >= maxBytes) {
+                items = 0;
+                bytes = 0;
+                return true;
+            }
+            return false;
+        }
+    }
+}
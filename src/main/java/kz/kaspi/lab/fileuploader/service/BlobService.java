@@ -0,0 +1,140 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import kz.kaspi.lab.fileuploader.repository.BlobRepository;
+import kz.kaspi.lab.fileuploader.repository.PackRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Content-addressed хранение: одно содержимое — один объект в хранилище или одно место в паке.
+ * Ссылки считаются в таблице blobs, объект удаляется (место в паке освобождается)
+ * только когда снята последняя.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BlobService {
+
+    private final StorageService storageService;
+    private final BlobRepository blobRepository;
+    private final PackRepository packRepository;
+    private final PackWriter packWriter;
+    private final UploadMetrics uploadMetrics;
+
+    /**
+     * Сохраняет содержимое и берёт на него ссылку.
+     * Маленькие файлы с уже известным хэшем в хранилище не пишутся вовсе.
+     * Большие пишутся (хэш известен только в конце потока), и если дубликат
+     * обнаружился — только что записанный объект удаляется.
+     * Файлы, которые принимает {@link PackWriter}, дописываются в пак.
+     *
+     * @param sizeHint заявленный клиентом размер, 0 если неизвестен
+     */
+    public Mono<StoredObject> store(Flux<DataBuffer> content, String originalFilename, String contentType, long sizeHint) {
+        if (packWriter.accepts(sizeHint)) {
+            return storePacked(content);
+        }
+        return storageService.uploadFile(content, originalFilename, contentType, sizeHint, blobRepository::acquireExisting)
+                .flatMap(stored -> stored.reused() ? Mono.just(stored) : register(stored));
+    }
+
+    private Mono<StoredObject> register(StoredObject stored) {
+        return blobRepository.acquireOrInsert(stored.contentHash(), stored.objectName(), stored.storedSize())
+                .flatMap(canonical -> {
+                    if (canonical.getPackId() == null && canonical.getStoragePath().equals(stored.objectName())) {
+                        return Mono.just(stored);
+                    }
+                    log.info("Duplicate content {} detected, reusing {}", stored.contentHash(), canonical.getStoragePath());
+                    uploadMetrics.compensation(UploadMetrics.Compensation.DUPLICATE_CONTENT);
+                    return storageService.deleteFile(stored.objectName())
+                            .thenReturn(stored.reusedAs(canonical));
+                })
+                .onErrorResume(e -> {
+                    // Ссылку взять не удалось — записанный объект никому не принадлежит
+                    log.error("Failed to register blob {}", stored.contentHash(), e);
+                    uploadMetrics.compensation(UploadMetrics.Compensation.BLOB_REGISTER_FAILED);
+                    return storageService.deleteFile(stored.objectName()).then(Mono.error(e));
+                });
+    }
+
+    /**
+     * Файл читается в память целиком (он не больше upload.packing.max-file-size), и только
+     * если такого содержимого ещё нет, дописывается в пак. Пак пишется без сжатия:
+     * диапазон файла в нём читается как есть.
+     */
+    private Mono<StoredObject> storePacked(Flux<DataBuffer> content) {
+        return DataBufferUtils.join(content, (int) packWriter.maxFileSize())
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    DataBufferUtils.release(buffer);
+                    return bytes;
+                })
+                .onErrorMap(DataBufferLimitException.class,
+                        e -> new StorageException("File is larger than its declared size", e))
+                .flatMap(bytes -> {
+                    ContentDigest digest = new ContentDigest();
+                    digest.update(bytes, 0, bytes.length);
+                    String contentHash = digest.hex();
+                    StoredObject unstored = new StoredObject(null, bytes.length, contentHash, false);
+                    return blobRepository.acquireExistingBlob(contentHash)
+                            .map(unstored::reusedAs)
+                            .switchIfEmpty(Mono.defer(() -> packWriter.append(bytes)
+                                    .flatMap(entry -> registerPacked(StoredObject.packed(entry, contentHash, bytes.length)))));
+                });
+    }
+
+    /**
+     * Если то же содержимое успели зарегистрировать раньше, ссылка берётся на него,
+     * а байты в паке остаются без ссылок до уплотнения.
+     */
+    private Mono<StoredObject> registerPacked(StoredObject stored) {
+        return blobRepository.acquireOrInsertPacked(stored.contentHash(), stored.objectName(), stored.storedSize(),
+                        stored.packId(), stored.packOffset())
+                .flatMap(canonical -> {
+                    if (stored.packId().equals(canonical.getPackId()) && stored.packOffset().equals(canonical.getPackOffset())) {
+                        // live_bytes — только подсказка для уплотнения, ошибка загрузку не отменяет
+                        return packRepository.addLiveBytes(stored.packId(), stored.storedSize())
+                                .onErrorResume(e -> {
+                                    log.warn("Failed to account {} bytes in pack {}", stored.storedSize(), stored.packId(), e);
+                                    return Mono.empty();
+                                })
+                                .thenReturn(stored);
+                    }
+                    log.info("Duplicate content {} detected, reusing {}", stored.contentHash(), canonical.getStoragePath());
+                    uploadMetrics.compensation(UploadMetrics.Compensation.DUPLICATE_CONTENT);
+                    return Mono.just(stored.reusedAs(canonical));
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to register packed blob {}", stored.contentHash(), e);
+                    uploadMetrics.compensation(UploadMetrics.Compensation.BLOB_REGISTER_FAILED);
+                    return Mono.error(e);
+                });
+    }
+
+    /**
+     * Снимает ссылку на содержимое. Если ссылок не осталось, отдельный объект удаляется,
+     * а в паке место только помечается свободным — пак переписывает {@link PackCompactor}.
+     */
+    public Mono<Void> release(String contentHash) {
+        return blobRepository.release(contentHash)
+                .filter(refCount -> refCount == 0)
+                .flatMap(refCount -> blobRepository.deleteUnreferenced(contentHash))
+                .flatMap(blob -> {
+                    if (blob.getPackId() != null) {
+                        log.info("Last reference to {} released, freeing {} bytes in pack {}",
+                                contentHash, blob.getFileSize(), blob.getPackId());
+                        return packRepository.releaseBytes(blob.getPackId(), blob.getFileSize());
+                    }
+                    log.info("Last reference to {} released, deleting {}", contentHash, blob.getStoragePath());
+                    return storageService.deleteFile(blob.getStoragePath());
+                });
+    }
+}
@@ -0,0 +1,248 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.UploadSession;
+import kz.kaspi.lab.fileuploader.entity.UploadSession.SessionStatus;
+import kz.kaspi.lab.fileuploader.entity.UploadSessionPart;
+import kz.kaspi.lab.fileuploader.exception.UploadSessionException;
+import kz.kaspi.lab.fileuploader.repository.UploadClaim;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import kz.kaspi.lab.fileuploader.repository.UploadSessionPartRepository;
+import kz.kaspi.lab.fileuploader.repository.UploadSessionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Докачка больших файлов: сессия соответствует S3 multipart-загрузке в MinIO,
+ * чанк с индексом i — части с номером i + 1. Чанки можно слать в любом порядке и параллельно.
+ * Сессия живёт в рамках того же idempotency key и жизненного цикла Upload:
+ * открытие — PROCESSING, commit — SUCCESS, истечение срока — FAILED.
+ * <p>
+ * В дедупликацию по SHA-256 ({@link BlobService}) такие загрузки не входят: чанки приходят
+ * в любом порядке разными запросами, посчитать хэш всего файла по ходу нельзя, а перечитывать
+ * собранный объект после commit — второй раз гонять через сервис файл, ради которого
+ * и нужна докачка. content_hash у них пуст, объект принадлежит одной загрузке.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChunkedUploadService {
+
+    /** S3 ограничивает multipart-загрузку 10 000 частями. */
+    private static final int MAX_PARTS = 10_000;
+
+    private final IdempotencyService idempotencyService;
+    private final IdempotencyCache idempotencyCache;
+    private final StorageService storageService;
+    private final PartBufferPool bufferPool;
+    private final UploadRepository uploadRepository;
+    private final UploadSessionRepository sessionRepository;
+    private final UploadSessionPartRepository partRepository;
+    private final UploadMetrics uploadMetrics;
+
+    @Value("${storage.upload.session-ttl:24h}")
+    private Duration sessionTtl;
+
+    @Value("${storage.upload.session-expiry-batch:100}")
+    private int expiryBatchSize;
+
+    @Value("${storage.upload.committing-timeout:15m}")
+    private Duration committingTimeout;
+
+    /**
+     * Открывает сессию либо возвращает уже открытую для этого ключа — так клиент
+     * продолжает докачку после обрыва. {@code session} пуст, если ключ занят не сессией
+     * (обычная загрузка в процессе или уже завершена).
+     */
+    public Mono<SessionOpening> openSession(String idempotencyKey, String filename, String contentType, Long totalSize) {
+        return idempotencyService.claim(idempotencyKey, filename, totalSize != null ? totalSize : 0L, contentType)
+                .flatMap(claim -> claim.claimed()
+                        ? createSession(claim, filename, contentType, totalSize)
+                        : sessionRepository.findOpenByUploadId(claim.upload().getId())
+                        .map(session -> new SessionOpening(claim.upload(), session))
+                        .defaultIfEmpty(new SessionOpening(claim.upload(), null)));
+    }
+
+    private Mono<SessionOpening> createSession(UploadClaim claim, String filename, String contentType, Long totalSize) {
+        Upload upload = claim.upload();
+        return storageService.beginMultipart(filename, contentType)
+                .flatMap(target -> {
+                    UploadSession session = new UploadSession();
+                    session.setUploadId(upload.getId());
+                    session.setObjectName(target.objectName());
+                    session.setMultipartUploadId(target.uploadId());
+                    session.setChunkSize((long) bufferPool.partSize());
+                    session.setTotalSize(totalSize);
+                    session.setStatus(SessionStatus.OPEN);
+                    session.setExpiresAt(Instant.now().plus(sessionTtl));
+                    return sessionRepository.save(session)
+                            .onErrorResume(e -> storageService.abortMultipart(target).then(Mono.error(e)));
+                })
+                .map(session -> new SessionOpening(upload, session))
+                .onErrorResume(e -> markFailed(upload.getId(), upload.getIdempotencyKey(), e.getMessage())
+                        .then(Mono.error(e)));
+    }
+
+    /**
+     * Загружает чанк и продлевает срок жизни сессии.
+     */
+    public Mono<UploadedPart> uploadChunk(UUID sessionId, int index, Flux<DataBuffer> content) {
+        if (index < 0 || index >= MAX_PARTS) {
+            return Mono.error(new UploadSessionException("Chunk index must be between 0 and " + (MAX_PARTS - 1)));
+        }
+        return sessionRepository.findOpenById(sessionId)
+                .flatMap(session -> storageService.uploadPart(target(session), index + 1, content)
+                        .flatMap(part -> partRepository.upsert(sessionId, part.partNumber(), part.size(), part.etag())
+                                .then(sessionRepository.extendExpiry(sessionId, Instant.now().plus(sessionTtl)))
+                                .thenReturn(part)));
+    }
+
+    public Mono<SessionState> getState(UUID sessionId) {
+        return sessionRepository.findById(sessionId)
+                .flatMap(session -> partRepository.findBySessionIdOrdered(sessionId)
+                        .collectList()
+                        .map(parts -> new SessionState(session, parts)));
+    }
+
+    /**
+     * Собирает объект из загруженных частей. Все чанки кроме последнего должны быть
+     * ровно chunkSize, номера — без пропусков. Пока объект не собран, ошибка возвращает
+     * сессию в OPEN. Если commit прервался после сборки, сессия остаётся в COMMITTING,
+     * и повтор commit только сохраняет результат.
+     */
+    public Mono<Upload> commit(UUID sessionId) {
+        return sessionRepository.findCommittableById(sessionId)
+                .flatMap(session -> partRepository.findBySessionIdOrdered(sessionId)
+                        .collectList()
+                        .flatMap(parts -> {
+                            validateComplete(session, parts);
+                            if (session.getStatus() == SessionStatus.COMMITTING) {
+                                return storageService.objectExists(session.getObjectName())
+                                        .flatMap(assembled -> assembled
+                                                ? markCommitted(session, parts)
+                                                : completeSession(session, parts));
+                            }
+                            return sessionRepository.transition(sessionId, SessionStatus.OPEN.name(), SessionStatus.COMMITTING.name())
+                                    .switchIfEmpty(Mono.error(() -> new UploadSessionException("Session is already being committed")))
+                                    .flatMap(committing -> completeSession(committing, parts));
+                        }));
+    }
+
+    private Mono<Upload> completeSession(UploadSession session, List<UploadSessionPart> parts) {
+        List<UploadedPart> uploadedParts = parts.stream()
+                .map(part -> new UploadedPart(part.getPartNumber(), part.getEtag(), part.getSize()))
+                .toList();
+
+        return storageService.completeMultipart(target(session), uploadedParts)
+                // MinIO не собрал объект — сессия снова открыта, commit можно повторить
+                .onErrorResume(e -> sessionRepository.transition(session.getId(), SessionStatus.COMMITTING.name(), SessionStatus.OPEN.name())
+                        .then(Mono.error(e)))
+                .then(Mono.defer(() -> markCommitted(session, parts)));
+    }
+
+    /**
+     * Повторяемо: сохранение того же Upload и переход, который уже случился, ничего не меняют.
+     */
+    private Mono<Upload> markCommitted(UploadSession session, List<UploadSessionPart> parts) {
+        long size = parts.stream().mapToLong(UploadSessionPart::getSize).sum();
+        return uploadRepository.findById(session.getUploadId())
+                .flatMap(upload -> {
+                    upload.setStoragePath(session.getObjectName());
+                    upload.setFileSize(size);
+                    upload.setStatus(Upload.UploadStatus.SUCCESS);
+                    return uploadRepository.save(upload);
+                })
+                .flatMap(upload -> sessionRepository.transition(session.getId(), SessionStatus.COMMITTING.name(), SessionStatus.COMMITTED.name())
+                        .thenReturn(upload))
+                .doOnNext(upload -> {
+                    idempotencyCache.put(upload);
+                    uploadMetrics.outcome(Upload.UploadStatus.SUCCESS);
+                });
+    }
+
+    /**
+     * Прерывает просроченные сессии: multipart-загрузка отменяется в MinIO, Upload получает FAILED.
+     * Так же убираются commit-ы, зависшие в COMMITTING дольше committing-timeout: если Upload
+     * уже в SUCCESS, сессия закрывается как COMMITTED, иначе удаляется и собранный объект.
+     */
+    @Scheduled(fixedDelayString = "${storage.upload.session-sweep-interval:PT1M}")
+    public Mono<Void> expireSessions() {
+        return sessionRepository.expireBatch(Instant.now().minus(committingTimeout), expiryBatchSize)
+                .concatMap(session -> uploadRepository.findById(session.getUploadId())
+                        .flatMap(upload -> {
+                            if (upload.getStatus() == Upload.UploadStatus.SUCCESS) {
+                                log.info("Upload session {} already stored as {}, closing as committed", session.getId(), upload.getId());
+                                return sessionRepository.transition(session.getId(), SessionStatus.EXPIRED.name(),
+                                        SessionStatus.COMMITTED.name()).then();
+                            }
+                            log.info("Upload session {} expired, aborting multipart upload", session.getId());
+                            return storageService.abortMultipart(target(session))
+                                    .then(storageService.deleteFile(session.getObjectName()))
+                                    .then(markFailed(upload.getId(), upload.getIdempotencyKey(), "Upload session expired"));
+                        }))
+                .onErrorResume(e -> {
+                    log.error("Failed to expire upload sessions", e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<Void> markFailed(UUID uploadId, String idempotencyKey, String errorMessage) {
+        return uploadRepository.updateStatusAndErrorById(uploadId, Upload.UploadStatus.FAILED.name(), errorMessage)
+                .doOnSuccess(v -> {
+                    idempotencyCache.put(idempotencyKey, Upload.UploadStatus.FAILED, uploadId);
+                    uploadMetrics.outcome(Upload.UploadStatus.FAILED);
+                });
+    }
+
+    private void validateComplete(UploadSession session, List<UploadSessionPart> parts) {
+        if (parts.isEmpty()) {
+            throw new UploadSessionException("No chunks uploaded");
+        }
+        List<Integer> missing = new ArrayList<>();
+        int expected = 1;
+        for (UploadSessionPart part : parts) {
+            while (expected < part.getPartNumber()) {
+                missing.add(expected++ - 1);
+            }
+            expected++;
+        }
+        if (!missing.isEmpty()) {
+            throw new UploadSessionException("Missing chunks: " + missing);
+        }
+        for (int i = 0; i < parts.size() - 1; i++) {
+            if (parts.get(i).getSize() != session.getChunkSize().longValue()) {
+                throw new UploadSessionException("Chunk " + i + " must be exactly " + session.getChunkSize() + " bytes");
+            }
+        }
+        long size = parts.stream().mapToLong(UploadSessionPart::getSize).sum();
+        if (session.getTotalSize() != null && size != session.getTotalSize()) {
+            throw new UploadSessionException("Received " + size + " bytes, expected " + session.getTotalSize());
+        }
+    }
+
+    private static MultipartTarget target(UploadSession session) {
+        return new MultipartTarget(session.getObjectName(), session.getMultipartUploadId());
+    }
+
+    /**
+     * @param session {@code null}, если ключ занят не сессией докачки
+     */
+    public record SessionOpening(Upload upload, UploadSession session) {
+    }
+
+    public record SessionState(UploadSession session, List<UploadSessionPart> parts) {
+    }
+}
@@ -0,0 +1,301 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import kz.kaspi.lab.fileuploader.entity.Upload.Compression;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Прозрачное сжатие содержимого в хранилище (storage.compression.*).
+ * Кодек выбирается на каждую загрузку по contentType и по первым storage.compression.sample-size байтам:
+ * уже сжатые форматы и содержимое, которое почти не сжимается, пишутся как есть.
+ * Сжатие потоковое — в памяти только буферы кодека, а не весь файл.
+ */
+@Slf4j
+@Component
+public class ContentCompressor {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Сигнатуры форматов, которые повторно не сжимаются: gzip, zstd, zip, bzip2, xz. */
+    private static final byte[][] COMPRESSED_MAGIC = {
+            {0x1f, (byte) 0x8b},
+            {0x28, (byte) 0xb5, 0x2f, (byte) 0xfd},
+            {0x50, 0x4b, 0x03, 0x04},
+            {0x42, 0x5a, 0x68},
+            {(byte) 0xfd, 0x37, 0x7a, 0x58, 0x5a, 0x00}
+    };
+
+    private final boolean enabled;
+    private final Compression codec;
+    private final int gzipLevel;
+    private final int zstdLevel;
+    private final List<MediaType> contentTypes;
+    private final int sampleSize;
+    private final double maxRatio;
+    private final Scheduler blockingIoScheduler;
+
+    public ContentCompressor(
+            Scheduler blockingIoScheduler,
+            @Value("${storage.compression.enabled:false}") boolean enabled,
+            @Value("${storage.compression.codec:zstd}") String codec,
+            @Value("${storage.compression.gzip-level:6}") int gzipLevel,
+            @Value("${storage.compression.zstd-level:3}") int zstdLevel,
+            @Value("${storage.compression.content-types:text/*,application/json,application/xml,application/x-ndjson,application/yaml,application/javascript}") String contentTypes,
+            @Value("${storage.compression.sample-size:16KB}") DataSize sampleSize,
+            @Value("${storage.compression.max-ratio:0.9}") double maxRatio) {
+        this.enabled = enabled;
+        this.codec = Compression.valueOf(codec.trim().toUpperCase(Locale.ROOT));
+        if (this.codec == Compression.NONE) {
+            throw new IllegalArgumentException("storage.compression.codec must be gzip or zstd");
+        }
+        this.gzipLevel = gzipLevel;
+        this.zstdLevel = zstdLevel;
+        this.contentTypes = MediaType.parseMediaTypes(contentTypes);
+        this.sampleSize = (int) sampleSize.toBytes();
+        this.maxRatio = maxRatio;
+        this.blockingIoScheduler = blockingIoScheduler;
+        if (enabled) {
+            log.info("Storage compression enabled: codec={}, contentTypes={}", this.codec, this.contentTypes);
+        }
+    }
+
+    /**
+     * Выбирает кодек по contentType и началу потока и передаёт его writer вместе со всем содержимым.
+     * Буферы копятся, пока не наберётся storage.compression.sample-size байт или не кончится поток;
+     * дальше они идут в writer как есть, без копирования.
+     */
+    public <T> Mono<T> withCodec(String contentType, Flux<DataBuffer> content,
+                                 BiFunction<Compression, Flux<DataBuffer>, Mono<T>> writer) {
+        if (!enabled || !compressibleType(contentType)) {
+            return writer.apply(Compression.NONE, content);
+        }
+        return Flux.defer(() -> {
+                    AtomicLong sampled = new AtomicLong();
+                    return content.bufferUntil(buffer -> sampled.addAndGet(buffer.readableByteCount()) >= sampleSize);
+                })
+                .switchOnFirst((first, batches) -> {
+                    Compression compression = first.hasValue()
+                            ? choose(contentType, first.get())
+                            : Compression.NONE;
+                    return writer.apply(compression, batches.concatMapIterable(Function.identity())).flux();
+                })
+                .single();
+    }
+
+    /**
+     * Кодек для загрузки по пробе — первым storage.compression.sample-size байтам буферов,
+     * позиции чтения не меняются. На пробе выполняется быстрый deflate, и если он не дал
+     * хотя бы storage.compression.max-ratio, файл пишется без сжатия.
+     */
+    public Compression choose(String contentType, List<DataBuffer> head) {
+        if (!enabled || !compressibleType(contentType)) {
+            return Compression.NONE;
+        }
+        byte[] sample = sample(head);
+        if (sample.length == 0 || alreadyCompressed(sample) || deflatedRatio(sample) > maxRatio) {
+            return Compression.NONE;
+        }
+        return codec;
+    }
+
+    /**
+     * Сжимает поток. Входные буферы освобождаются по мере чтения, кодек закрывается
+     * и при отмене, и при ошибке.
+     */
+    public Flux<DataBuffer> compress(Flux<DataBuffer> content, Compression compression) {
+        if (compression == null || compression == Compression.NONE) {
+            return content;
+        }
+        return Flux.using(
+                () -> new Encoder(compression),
+                encoder -> content
+                        .<DataBuffer>handle((buffer, sink) -> {
+                            DataBuffer out = encoder.write(buffer);
+                            if (out != null) {
+                                sink.next(out);
+                            }
+                        })
+                        .concatWith(Mono.fromSupplier(encoder::finish)),
+                Encoder::close);
+    }
+
+    /**
+     * Распаковывает поток из хранилища. Кодеки работают с блокирующими потоками,
+     * поэтому чтение идёт на планировщике блокирующего I/O.
+     */
+    public Flux<DataBuffer> decompress(Flux<DataBuffer> content, Compression compression) {
+        if (compression == null || compression == Compression.NONE) {
+            return content;
+        }
+        return DataBufferUtils.readInputStream(
+                        () -> decoder(compression, DataBufferUtils.subscriberInputStream(content, 1)),
+                        DefaultDataBufferFactory.sharedInstance, BUFFER_SIZE)
+                .subscribeOn(blockingIoScheduler);
+    }
+
+    private boolean compressibleType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            MediaType type = MediaType.parseMediaType(contentType);
+            return contentTypes.stream().anyMatch(allowed -> allowed.includes(type));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    private byte[] sample(List<DataBuffer> head) {
+        long available = head.stream().mapToLong(DataBuffer::readableByteCount).sum();
+        byte[] sample = new byte[(int) Math.min(available, sampleSize)];
+        int offset = 0;
+        for (DataBuffer buffer : head) {
+            int length = Math.min(buffer.readableByteCount(), sample.length - offset);
+            if (length == 0) {
+                break;
+            }
+            int position = buffer.readPosition();
+            buffer.read(sample, offset, length);
+            buffer.readPosition(position);
+            offset += length;
+        }
+        return sample;
+    }
+
+    private static boolean alreadyCompressed(byte[] sample) {
+        for (byte[] magic : COMPRESSED_MAGIC) {
+            if (sample.length >= magic.length && startsWith(sample, magic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double deflatedRatio(byte[] sample) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] out = new byte[sample.length];
+            while (!deflater.finished()) {
+                deflater.deflate(out);
+            }
+            return (double) deflater.getBytesWritten() / sample.length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static InputStream decoder(Compression compression, InputStream source) throws IOException {
+        return switch (compression) {
+            case GZIP -> new GZIPInputStream(source, BUFFER_SIZE);
+            case ZSTD -> new ZstdInputStream(source);
+            case NONE -> source;
+        };
+    }
+
+    /**
+     * Кодек поверх накопителя в памяти: после каждого входного буфера
+     * накопленный результат отдаётся дальше и накопитель очищается.
+     */
+    private final class Encoder {
+
+        private final ByteArrayOutputStream sink = new ByteArrayOutputStream(BUFFER_SIZE);
+        private final OutputStream stream;
+        private boolean closed;
+
+        Encoder(Compression compression) throws IOException {
+            this.stream = switch (compression) {
+                case GZIP -> new LeveledGzipOutputStream(sink, gzipLevel);
+                case ZSTD -> new ZstdOutputStream(sink, zstdLevel);
+                case NONE -> throw new IllegalArgumentException("Nothing to encode for NONE");
+            };
+        }
+
+        DataBuffer write(DataBuffer input) {
+            try (InputStream in = input.asInputStream(true)) {
+                in.transferTo(stream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return drain();
+        }
+
+        /**
+         * Дописывает хвост кодека (для gzip — CRC и длину).
+         */
+        DataBuffer finish() {
+            closed = true;
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return drain();
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                stream.close();
+            } catch (IOException e) {
+                log.debug("Failed to close compression stream", e);
+            }
+        }
+
+        private DataBuffer drain() {
+            if (sink.size() == 0) {
+                return null;
+            }
+            DataBuffer out = DefaultDataBufferFactory.sharedInstance.wrap(sink.toByteArray());
+            sink.reset();
+            return out;
+        }
+    }
+
+    private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+
+        LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Инкрементальный SHA-256 и счётчик байт для одного потока загрузки.
+ */
+final class ContentDigest {
+
+    private final MessageDigest sha256;
+    private long size;
+    private String hex;
+
+    ContentDigest() {
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    void update(byte[] data, int offset, int length) {
+        sha256.update(data, offset, length);
+        size += length;
+    }
+
+    void update(ByteBuffer data) {
+        size += data.remaining();
+        sha256.update(data);
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Завершает вычисление. Вызывать только после того, как поток прочитан целиком.
+     */
+    String hex() {
+        if (hex == null) {
+            hex = HexFormat.of().formatHex(sha256.digest());
+        }
+        return hex;
+    }
+}
@@ -0,0 +1,398 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioClient;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import io.minio.http.Method;
+import io.minio.messages.Part;
+import kz.kaspi.lab.fileuploader.entity.DirectUpload;
+import kz.kaspi.lab.fileuploader.entity.DirectUpload.DirectUploadStatus;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.exception.DirectUploadException;
+import kz.kaspi.lab.fileuploader.repository.DirectUploadRepository;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Прямая загрузка в MinIO по presigned URL: сервис занимает idempotency key, выдаёт URL
+ * и при завершении проверяет объект, сами байты через сервис не идут.
+ * Файл больше upload.direct.multipart-threshold загружается частями, каждой — свой URL.
+ * Неподтверждённая загрузка истекает через url-ttl + completion-grace: объект или
+ * multipart-загрузка удаляются из MinIO, Upload получает FAILED. Так же убирается
+ * завершение, зависшее в COMPLETING дольше completing-timeout (узел упал посреди complete).
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+public class DirectUploadService {
+
+    /** S3 ограничивает multipart-загрузку 10 000 частями, а объект — 5 ТБ. */
+    private static final int MAX_PARTS = 10_000;
+    private static final long MAX_OBJECT_SIZE = DataSize.ofTerabytes(5).toBytes();
+    private static final long MIB = 1024 * 1024;
+    /** Повторы проверки собранного объекта и записи SUCCESS: объект уже в MinIO, переоткрыть загрузку нельзя. */
+    private static final int SETTLE_RETRIES = 3;
+    private static final Duration SETTLE_BACKOFF = Duration.ofMillis(500);
+
+    private final MinioClient minioClient;
+    private final MinioMultipartClient multipartClient;
+    private final IdempotencyService idempotencyService;
+    private final IdempotencyCache idempotencyCache;
+    private final FileUploadService fileUploadService;
+    private final StorageService storageService;
+    private final UploadRepository uploadRepository;
+    private final DirectUploadRepository directUploadRepository;
+    private final UploadMetrics uploadMetrics;
+    private final Scheduler blockingIoScheduler;
+    private final String bucketName;
+    private final long multipartThreshold;
+    private final long partSize;
+    private final Duration urlTtl;
+    private final Duration completionGrace;
+    private final Duration completingTimeout;
+    private final int expiryBatchSize;
+
+    public DirectUploadService(
+            MinioClient minioClient,
+            MinioMultipartClient multipartClient,
+            IdempotencyService idempotencyService,
+            IdempotencyCache idempotencyCache,
+            FileUploadService fileUploadService,
+            StorageService storageService,
+            UploadRepository uploadRepository,
+            DirectUploadRepository directUploadRepository,
+            UploadMetrics uploadMetrics,
+            Scheduler blockingIoScheduler,
+            @Value("${storage.minio.bucket-name}") String bucketName,
+            @Value("${upload.direct.multipart-threshold:64MB}") DataSize multipartThreshold,
+            @Value("${upload.direct.part-size:64MB}") DataSize partSize,
+            @Value("${upload.direct.url-ttl:1h}") Duration urlTtl,
+            @Value("${upload.direct.completion-grace:15m}") Duration completionGrace,
+            @Value("${upload.direct.completing-timeout:15m}") Duration completingTimeout,
+            @Value("${upload.direct.expiry-batch:100}") int expiryBatchSize) {
+        if (partSize.toBytes() < 5 * MIB) {
+            throw new IllegalArgumentException("upload.direct.part-size must be at least 5MB");
+        }
+        this.minioClient = minioClient;
+        this.multipartClient = multipartClient;
+        this.idempotencyService = idempotencyService;
+        this.idempotencyCache = idempotencyCache;
+        this.fileUploadService = fileUploadService;
+        this.storageService = storageService;
+        this.uploadRepository = uploadRepository;
+        this.directUploadRepository = directUploadRepository;
+        this.uploadMetrics = uploadMetrics;
+        this.blockingIoScheduler = blockingIoScheduler;
+        this.bucketName = bucketName;
+        this.multipartThreshold = multipartThreshold.toBytes();
+        this.partSize = partSize.toBytes();
+        this.urlTtl = urlTtl;
+        this.completionGrace = completionGrace;
+        this.completingTimeout = completingTimeout;
+        this.expiryBatchSize = expiryBatchSize;
+    }
+
+    /**
+     * Занимает ключ и выдаёт URL для загрузки. Повтор с тем же ключом до завершения
+     * продлевает срок и выдаёт свежие URL. {@code direct} пуст, если ключ занят
+     * другой загрузкой или уже завершён.
+     */
+    public Mono<DirectUploadGrant> begin(String idempotencyKey, String filename, String contentType, long size) {
+        if (size <= 0 || size > MAX_OBJECT_SIZE) {
+            return Mono.error(new IllegalArgumentException("size must be between 1 and " + MAX_OBJECT_SIZE + " bytes"));
+        }
+        return idempotencyService.claim(idempotencyKey, filename, size, contentType)
+                .flatMap(claim -> claim.claimed()
+                        ? create(claim.upload(), filename, contentType, size)
+                        : directUploadRepository.findPendingByUploadId(claim.upload().getId())
+                        .flatMap(direct -> directUploadRepository.extendExpiry(direct.getId(), expiresAt()))
+                        .flatMap(direct -> grant(claim.upload(), direct))
+                        .defaultIfEmpty(new DirectUploadGrant(claim.upload(), null, List.of(), null)));
+    }
+
+    private Mono<DirectUploadGrant> create(Upload upload, String filename, String contentType, long size) {
+        String objectName = StorageService.generateObjectName(filename);
+        boolean multipart = size > multipartThreshold;
+
+        DirectUpload direct = new DirectUpload();
+        direct.setUploadId(upload.getId());
+        direct.setObjectName(objectName);
+        direct.setExpectedSize(size);
+        direct.setStatus(DirectUploadStatus.PENDING);
+        direct.setExpiresAt(expiresAt());
+
+        Mono<DirectUpload> saved;
+        if (multipart) {
+            direct.setPartSize(partSizeFor(size));
+            saved = multipartClient.createMultipartUpload(bucketName, objectName, contentType)
+                    .flatMap(multipartUploadId -> {
+                        direct.setMultipartUploadId(multipartUploadId);
+                        return directUploadRepository.save(direct)
+                                .onErrorResume(e -> storageService.abortMultipart(new MultipartTarget(objectName, multipartUploadId))
+                                        .then(Mono.error(e)));
+                    });
+        } else {
+            saved = directUploadRepository.save(direct);
+        }
+
+        return saved
+                .doOnNext(created -> log.info("Direct upload {} for {} ({} bytes, multipart={})",
+                        created.getId(), upload.getId(), size, multipart))
+                .flatMap(created -> grant(upload, created))
+                // Запись direct_uploads, если успела сохраниться, подберёт очистка по сроку
+                .onErrorResume(e -> fileUploadService.markFailed(upload, e.getMessage()).then(Mono.error(e)));
+    }
+
+    /**
+     * Подписывает URL локально, но первый вызов узнаёт регион bucket запросом к MinIO,
+     * поэтому — на планировщике блокирующего I/O.
+     */
+    private Mono<DirectUploadGrant> grant(Upload upload, DirectUpload direct) {
+        return Mono.fromCallable(() -> {
+                    int expirySeconds = (int) urlTtl.toSeconds();
+                    Instant urlExpiresAt = Instant.now().plus(urlTtl);
+                    List<String> urls = new ArrayList<>();
+                    if (!direct.isMultipart()) {
+                        urls.add(presign(direct.getObjectName(), Map.of(), expirySeconds));
+                    } else {
+                        for (int partNumber = 1; partNumber <= partCount(direct); partNumber++) {
+                            urls.add(presign(direct.getObjectName(), Map.of(
+                                    "uploadId", direct.getMultipartUploadId(),
+                                    "partNumber", String.valueOf(partNumber)), expirySeconds));
+                        }
+                    }
+                    return new DirectUploadGrant(upload, direct, urls, urlExpiresAt);
+                })
+                .subscribeOn(blockingIoScheduler);
+    }
+
+    private String presign(String objectName, Map<String, String> queryParams, int expirySeconds) throws Exception {
+        return minioClient.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
+                .method(Method.PUT)
+                .bucket(bucketName)
+                .object(objectName)
+                .extraQueryParams(queryParams)
+                .expiry(expirySeconds)
+                .build());
+    }
+
+    /**
+     * Проверяет загруженный объект и переводит Upload в SUCCESS. Пока объект не загружен
+     * или не совпадает с заявленным, загрузка остаётся открытой и завершение можно повторить.
+     * Для multipart части сверяются до сборки. После сборки (или проверки одиночного объекта)
+     * проверка и запись SUCCESS повторяются; если так и не удалось, объект удаляется, а Upload
+     * получает FAILED — запись не остаётся в COMPLETING.
+     *
+     * @param etag ETag от клиента, {@code null} — не сверять
+     */
+    public Mono<Upload> complete(UUID directUploadId, String etag) {
+        return directUploadRepository.findPendingById(directUploadId)
+                .flatMap(pending -> directUploadRepository.transition(directUploadId,
+                                DirectUploadStatus.PENDING.name(), DirectUploadStatus.COMPLETING.name())
+                        .switchIfEmpty(Mono.error(() -> new DirectUploadException("Direct upload is already being completed"))))
+                .flatMap(direct -> (direct.isMultipart() ? assemble(direct) : verify(direct, etag))
+                        .onErrorResume(e -> reopen(direct).then(Mono.error(e)))
+                        .singleOptional()
+                        .flatMap(verified -> settle(direct, verified.orElse(null))));
+    }
+
+    private Mono<StatObjectResponse> verify(DirectUpload direct, String etag) {
+        return stat(direct)
+                .doOnNext(stat -> checkObject(direct, stat, etag));
+    }
+
+    /**
+     * Сверяет части и собирает объект. Пусто — объект собран, его ещё нужно проверить.
+     */
+    private Mono<StatObjectResponse> assemble(DirectUpload direct) {
+        MultipartTarget target = new MultipartTarget(direct.getObjectName(), direct.getMultipartUploadId());
+        return multipartClient.listParts(bucketName, direct.getObjectName(), direct.getMultipartUploadId())
+                .collectList()
+                .doOnNext(parts -> checkParts(direct, parts))
+                .flatMap(parts -> storageService.completeMultipart(target, parts.stream()
+                        .map(part -> new UploadedPart(part.partNumber(), part.etag(), part.partSize()))
+                        .toList()))
+                .then(Mono.empty());
+    }
+
+    /**
+     * Объект на месте: проверка (если ещё не было) и SUCCESS. Сбои повторяются; несовпадение
+     * объекта или исчерпанные повторы закрывают обе записи через {@link #abandon}.
+     *
+     * @param verified уже проверенный одиночный объект, {@code null} — проверить собранный
+     */
+    private Mono<Upload> settle(DirectUpload direct, StatObjectResponse verified) {
+        Mono<StatObjectResponse> checked = verified != null
+                ? Mono.just(verified)
+                : Mono.defer(() -> stat(direct)).doOnNext(stat -> checkObject(direct, stat, null));
+        return checked
+                .flatMap(stat -> markSucceeded(direct, stat))
+                .retryWhen(Retry.backoff(SETTLE_RETRIES, SETTLE_BACKOFF)
+                        .filter(e -> !(e instanceof DirectUploadException))
+                        .doBeforeRetry(signal -> log.warn("Completing direct upload {} failed, retrying: {}",
+                                direct.getId(), signal.failure().toString()))
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .onErrorResume(e -> {
+                    log.error("Failed to complete direct upload {}", direct.getId(), e);
+                    return abandon(direct, DirectUploadStatus.COMPLETING, DirectUploadStatus.FAILED, e.getMessage())
+                            .onErrorResume(cleanupError -> {
+                                log.error("Failed to close direct upload {}, left for expiry", direct.getId(), cleanupError);
+                                return Mono.empty();
+                            })
+                            .then(Mono.error(e));
+                });
+    }
+
+    private Mono<StatObjectResponse> stat(DirectUpload direct) {
+        return multipartClient.statObject(bucketName, direct.getObjectName())
+                .onErrorMap(e -> e instanceof ErrorResponseException error
+                                && "NoSuchKey".equals(error.errorResponse().code()),
+                        e -> new DirectUploadException("Object has not been uploaded yet"));
+    }
+
+    /**
+     * Повторяемо: сохранение того же Upload и переход, который уже случился, ничего не меняют.
+     */
+    private Mono<Upload> markSucceeded(DirectUpload direct, StatObjectResponse stat) {
+        return uploadRepository.findById(direct.getUploadId())
+                .flatMap(upload -> {
+                    upload.setStoragePath(direct.getObjectName());
+                    upload.setFileSize(stat.size());
+                    upload.setCompression(Upload.Compression.NONE);
+                    upload.setStoredSize(stat.size());
+                    upload.setStatus(Upload.UploadStatus.SUCCESS);
+                    return uploadRepository.save(upload);
+                })
+                .flatMap(upload -> directUploadRepository.transition(direct.getId(),
+                                DirectUploadStatus.COMPLETING.name(), DirectUploadStatus.COMPLETED.name())
+                        .thenReturn(upload))
+                .doOnNext(upload -> {
+                    idempotencyCache.put(upload);
+                    uploadMetrics.outcome(Upload.UploadStatus.SUCCESS);
+                    log.info("Direct upload {} completed: {} ({} bytes)", direct.getId(), direct.getObjectName(), stat.size());
+                });
+    }
+
+    /**
+     * Удаляет из MinIO то, что клиент загрузил, но так и не подтвердил, и закрывает
+     * завершения, зависшие в COMPLETING.
+     */
+    @Scheduled(fixedDelayString = "${upload.direct.sweep-interval:PT1M}")
+    public Mono<Void> expireDirectUploads() {
+        return directUploadRepository.expireBatch(Instant.now().minus(completingTimeout), expiryBatchSize)
+                .concatMap(direct -> {
+                    log.info("Direct upload {} expired unconfirmed, removing {}", direct.getId(), direct.getObjectName());
+                    return abandon(direct, DirectUploadStatus.EXPIRED, DirectUploadStatus.EXPIRED, "Direct upload expired");
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to expire direct uploads", e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Закрывает загрузку, которую не удалось завершить. Если Upload уже в SUCCESS (не прошёл только
+     * последний переход), объект принадлежит ему и запись становится COMPLETED. Иначе запись
+     * переводится from → to, объект удаляется, Upload получает FAILED.
+     */
+    private Mono<Void> abandon(DirectUpload direct, DirectUploadStatus from, DirectUploadStatus to, String errorMessage) {
+        return uploadRepository.findById(direct.getUploadId())
+                .flatMap(upload -> {
+                    if (upload.getStatus() == Upload.UploadStatus.SUCCESS) {
+                        log.info("Direct upload {} already stored as {}, closing as completed", direct.getId(), upload.getId());
+                        return directUploadRepository.transition(direct.getId(), from.name(), DirectUploadStatus.COMPLETED.name()).then();
+                    }
+                    Mono<DirectUpload> closed = from == to
+                            ? Mono.just(direct)
+                            : directUploadRepository.transition(direct.getId(), from.name(), to.name());
+                    return closed.flatMap(d -> discardObject(direct)
+                            .then(fileUploadService.markFailed(upload, errorMessage)));
+                });
+    }
+
+    private Mono<Void> reopen(DirectUpload direct) {
+        return directUploadRepository.transition(direct.getId(),
+                DirectUploadStatus.COMPLETING.name(), DirectUploadStatus.PENDING.name()).then();
+    }
+
+    /**
+     * Для multipart удаляется и сама загрузка, и объект: завершение могло успеть его собрать.
+     */
+    private Mono<Void> discardObject(DirectUpload direct) {
+        return direct.isMultipart()
+                ? storageService.abortMultipart(new MultipartTarget(direct.getObjectName(), direct.getMultipartUploadId()))
+                .then(storageService.deleteFile(direct.getObjectName()))
+                : storageService.deleteFile(direct.getObjectName());
+    }
+
+    private void checkParts(DirectUpload direct, List<Part> parts) {
+        int expectedCount = partCount(direct);
+        if (parts.size() != expectedCount) {
+            throw new DirectUploadException("Received " + parts.size() + " of " + expectedCount + " parts");
+        }
+        for (int i = 0; i < parts.size(); i++) {
+            Part part = parts.get(i);
+            long expectedSize = i < parts.size() - 1
+                    ? direct.getPartSize()
+                    : direct.getExpectedSize() - (long) (expectedCount - 1) * direct.getPartSize();
+            if (part.partNumber() != i + 1 || part.partSize() != expectedSize) {
+                throw new DirectUploadException("Part " + (i + 1) + " must be exactly " + expectedSize + " bytes");
+            }
+        }
+    }
+
+    private static void checkObject(DirectUpload direct, StatObjectResponse stat, String etag) {
+        if (stat.size() != direct.getExpectedSize()) {
+            throw new DirectUploadException("Object is " + stat.size() + " bytes, expected " + direct.getExpectedSize());
+        }
+        if (etag != null && !unquote(etag).equals(unquote(stat.etag()))) {
+            throw new DirectUploadException("ETag does not match the stored object");
+        }
+    }
+
+    /**
+     * Часть не меньше upload.direct.part-size и такая, чтобы частей было не больше 10 000; кратна 1 МБ.
+     */
+    private long partSizeFor(long size) {
+        long minimum = (size + MAX_PARTS - 1) / MAX_PARTS;
+        long rounded = (minimum + MIB - 1) / MIB * MIB;
+        return Math.max(partSize, rounded);
+    }
+
+    private static int partCount(DirectUpload direct) {
+        return (int) ((direct.getExpectedSize() + direct.getPartSize() - 1) / direct.getPartSize());
+    }
+
+    private Instant expiresAt() {
+        return Instant.now().plus(urlTtl).plus(completionGrace);
+    }
+
+    private static String unquote(String etag) {
+        return etag.replace("\"", "");
+    }
+
+    /**
+     * @param direct       {@code null}, если ключ занят не прямой загрузкой
+     * @param urls         один URL для PUT либо URL частей по порядку номеров
+     * @param urlExpiresAt до какого момента действуют URL
+     */
+    public record DirectUploadGrant(Upload upload, DirectUpload direct, List<String> urls, Instant urlExpiresAt) {
+    }
+}
@@ -0,0 +1,91 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.Upload.Compression;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Скачивание загруженных файлов: небольшие объекты отдаются из {@link ObjectDiskCache},
+ * крупные — потоком из хранилища.
+ */
+@Slf4j
+@Service
+public class FileDownloadService {
+
+    private final UploadRepository uploadRepository;
+    private final StorageService storageService;
+    private final ObjectDiskCache diskCache;
+    private final Counter cacheBytes;
+    private final Counter storageBytes;
+
+    public FileDownloadService(UploadRepository uploadRepository, StorageService storageService,
+                               ObjectDiskCache diskCache, MeterRegistry meterRegistry) {
+        this.uploadRepository = uploadRepository;
+        this.storageService = storageService;
+        this.diskCache = diskCache;
+        this.cacheBytes = servedCounter(meterRegistry, "cache");
+        this.storageBytes = servedCounter(meterRegistry, "storage");
+    }
+
+    private static Counter servedCounter(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("download.bytes.served")
+                .description("Bytes sent to download clients")
+                .baseUnit("bytes")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Доступны только успешно загруженные файлы.
+     */
+    public Mono<Upload> findDownloadable(UUID uploadId) {
+        return uploadRepository.findById(uploadId)
+                .filter(upload -> upload.getStatus() == Upload.UploadStatus.SUCCESS && upload.getStoragePath() != null);
+    }
+
+    /**
+     * Локальная копия объекта. Пусто, если объект не кэшируется или кэш недоступен
+     * (например, кончилось место на диске) — тогда файл отдаётся из хранилища.
+     *
+     * @param servedBytes сколько байт будет отправлено клиенту (весь файл или диапазон)
+     */
+    public Mono<Path> cachedFile(Upload upload, long servedBytes) {
+        if (!diskCache.accepts(upload.getFileSize())) {
+            return Mono.empty();
+        }
+        Mono<Path> cached = upload.isPacked()
+                ? diskCache.getRange(upload.getStoragePath(), upload.getPackOffset(), upload.getStoredSize())
+                : diskCache.get(upload.getStoragePath(), upload.getCompression());
+        return cached
+                .doOnNext(file -> cacheBytes.increment(servedBytes))
+                .onErrorResume(e -> !(e instanceof StorageException), e -> {
+                    log.warn("Download cache unavailable for {}, serving from storage", upload.getStoragePath(), e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Файл из пака — ranged GET его диапазона в объекте пака.
+     *
+     * @param length {@code null} — до конца файла
+     */
+    public Flux<DataBuffer> stream(Upload upload, long offset, Long length) {
+        Flux<DataBuffer> content = upload.isPacked()
+                ? storageService.downloadFile(upload.getStoragePath(), Compression.NONE, upload.getPackOffset() + offset,
+                        length != null ? length : upload.getStoredSize() - offset)
+                : storageService.downloadFile(upload.getStoragePath(), upload.getCompression(), offset, length);
+        return content
+                .doOnNext(buffer -> storageBytes.increment(buffer.readableByteCount()));
+    }
+}
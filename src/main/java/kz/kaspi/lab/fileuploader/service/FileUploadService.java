@@ -1,9 +1,12 @@
 package kz.kaspi.lab.fileuploader.service;
 
 import kz.kaspi.lab.fileuploader.dto.UploadResponse;
+import kz.kaspi.lab.fileuploader.dto.UploadStatusResponse;
 import kz.kaspi.lab.fileuploader.entity.Upload;
 import kz.kaspi.lab.fileuploader.exception.StorageException;
 import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import kz.kaspi.lab.fileuploader.service.UploadMetrics.Compensation;
+import kz.kaspi.lab.fileuploader.service.UploadMetrics.Stage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.buffer.DataBuffer;
@@ -12,57 +15,118 @@ import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FileUploadService {
 
-    private final IdempotencyService idempotencyService;
-    private final StorageService storageService;
+    private final BlobService blobService;
     private final UploadRepository uploadRepository;
+    private final IdempotencyCache idempotencyCache;
+    private final UploadProgress uploadProgress;
+    private final UploadMetrics uploadMetrics;
     private final TransactionalOperator transactionalOperator;
 
-    public Mono<UploadResponse> processUpload(
-            String idempotencyKey,
-            String originalFilename,
-            long fileSize,
-            String contentType,
-            Flux<DataBuffer> fileContent) {
+    /**
+     * Загружает содержимое для записи, уже занятой через {@link IdempotencyService#claim}.
+     */
+    public Mono<UploadResponse> processUpload(Upload upload, Flux<DataBuffer> fileContent) {
+        return process(upload, fileContent, false);
+    }
+
+    /**
+     * Загружает staged-файл асинхронного приёма. Временная ошибка хранилища оставляет запись
+     * в PROCESSING: повтор с диска делает {@link AsyncIngestService}, он же переводит запись
+     * в FAILED, когда попытки кончатся.
+     */
+    public Mono<UploadResponse> processStaged(Upload upload, Flux<DataBuffer> fileContent) {
+        return process(upload, fileContent, true);
+    }
+
+    private Mono<UploadResponse> process(Upload upload, Flux<DataBuffer> fileContent, boolean keepRetryable) {
+        Flux<DataBuffer> trackedContent = Flux.defer(() -> {
+            AtomicLong transferred = uploadProgress.start(upload.getId());
+            return fileContent.doOnNext(buffer -> {
+                transferred.addAndGet(buffer.readableByteCount());
+                uploadMetrics.bytesIngested(buffer.readableByteCount());
+            });
+        });
+
+        // Шаг 3: Загрузка в хранилище (вне транзакции БД!), с дедупликацией по SHA-256
+        Mono<UploadResponse> pipeline = uploadMetrics.timeStage(Stage.STORE,
+                        blobService.store(trackedContent, upload.getOriginalFilename(), upload.getContentType(), upload.getFileSize()))
+                .flatMap(stored -> {
+                    // Шаг 4: Обновление записи в БД
+                    upload.setStoragePath(stored.objectName());
+                    upload.setContentHash(stored.contentHash());
+                    upload.setFileSize(stored.size());
+                    upload.setCompression(stored.compression());
+                    upload.setStoredSize(stored.storedSize());
+                    upload.setPackId(stored.packId());
+                    upload.setPackOffset(stored.packOffset());
+                    upload.setStatus(Upload.UploadStatus.SUCCESS);
+                    return uploadMetrics.timeStage(Stage.DB_SAVE, uploadRepository.save(upload))
+                            .doOnNext(saved -> {
+                                idempotencyCache.put(saved);
+                                uploadMetrics.outcome(Upload.UploadStatus.SUCCESS);
+                            })
+                            .onErrorResume(dbError -> {
+                                // Шаг 5: Компенсация — снимаем ссылку, объект удалится если она последняя
+                                log.error("Database error after successful storage upload. Initiating compensation.", dbError);
+                                uploadMetrics.compensation(Compensation.DB_SAVE_FAILED);
+                                return blobService.release(stored.contentHash())
+                                        .then(updateStatusToFailed(upload, dbError.getMessage()))
+                                        .then(Mono.error(dbError));
+                            });
+                })
+                .onErrorResume(StorageException.class, storageError -> {
+                    if (keepRetryable && storageError.isRetryable()) {
+                        log.warn("Storage upload of {} failed transiently, keeping it PROCESSING: {}",
+                                upload.getId(), storageError.getMessage());
+                        return Mono.error(storageError);
+                    }
+                    // Ошибка хранилища — просто обновляем статус
+                    log.error("Storage upload failed", storageError);
+                    return updateStatusToFailed(upload, storageError.getMessage())
+                            .then(Mono.error(storageError));
+                })
+                .map(this::toResponse)
+                .doFinally(signal -> uploadProgress.finish(upload.getId()));
 
-        // Шаг 1 & 2: Проверка идемпотентности и создание записи
-        return idempotencyService.initiateProcessing(idempotencyKey, originalFilename, fileSize, contentType)
-                .flatMap(upload ->
-                        // Шаг 3: Загрузка в хранилище (вне транзакции БД!)
-                        storageService.uploadFile(fileContent, originalFilename, fileSize, contentType)
-                                .flatMap(storagePath -> {
-                                    // Шаг 4: Обновление записи в БД
-                                    upload.setStoragePath(storagePath);
-                                    upload.setStatus(Upload.UploadStatus.SUCCESS);
-                                    return uploadRepository.save(upload)
-                                            .onErrorResume(dbError -> {
-                                                // Шаг 5: Компенсация — удаляем файл из хранилища
-                                                log.error("Database error after successful storage upload. Initiating compensation.", dbError);
-                                                return storageService.deleteFile(storagePath)
-                                                        .then(updateStatusToFailed(idempotencyKey, dbError.getMessage()))
-                                                        .then(Mono.error(dbError));
-                                            });
-                                })
-                                .onErrorResume(StorageException.class, storageError -> {
-                                    // Ошибка хранилища — просто обновляем статус
-                                    log.error("Storage upload failed", storageError);
-                                    return updateStatusToFailed(idempotencyKey, storageError.getMessage())
-                                            .then(Mono.error(storageError));
-                                })
-                )
-                .map(this::toResponse);
+        return uploadMetrics.observeUpload(upload.getId(), pipeline);
     }
 
-    private Mono<Void> updateStatusToFailed(String idempotencyKey, String errorMessage) {
+    public Mono<UploadStatusResponse> getStatus(UUID uploadId) {
+        return uploadRepository.findById(uploadId)
+                .map(upload -> new UploadStatusResponse(
+                        upload.getId(),
+                        upload.getStatus(),
+                        upload.getOriginalFilename(),
+                        upload.getContentType(),
+                        upload.getFileSize(),
+                        uploadProgress.bytesTransferred(upload.getId()).orElse(null),
+                        upload.getErrorMessage(),
+                        upload.getCreatedAt(),
+                        upload.getUpdatedAt()
+                ));
+    }
+
+    public Mono<Void> markFailed(Upload upload, String errorMessage) {
+        return updateStatusToFailed(upload, errorMessage);
+    }
+
+    private Mono<Void> updateStatusToFailed(Upload upload, String errorMessage) {
         return uploadRepository.updateStatusAndErrorByIdempotencyKey(
-                idempotencyKey,
+                upload.getIdempotencyKey(),
                 Upload.UploadStatus.FAILED.name(),
                 errorMessage
-        );
+        ).doOnSuccess(v -> {
+            idempotencyCache.put(upload.getIdempotencyKey(), Upload.UploadStatus.FAILED, upload.getId());
+            uploadMetrics.outcome(Upload.UploadStatus.FAILED);
+        });
     }
 
     private UploadResponse toResponse(Upload upload) {
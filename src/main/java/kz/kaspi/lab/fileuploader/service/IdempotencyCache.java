@@ -0,0 +1,77 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Локальный кэш idempotency key → (статус, uploadId) перед UploadRepository.
+ * SUCCESS окончателен и живёт долго. PROCESSING и FAILED могут смениться
+ * на другом узле, поэтому хранятся коротко и лишь сглаживают всплески повторов.
+ */
+@Component
+public class IdempotencyCache {
+
+    private final Cache<String, Entry> cache;
+
+    public IdempotencyCache(
+            MeterRegistry meterRegistry,
+            @Value("${idempotency.cache.max-size:100000}") long maxSize,
+            @Value("${idempotency.cache.success-ttl:1h}") Duration successTtl,
+            @Value("${idempotency.cache.transient-ttl:5s}") Duration transientTtl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new StatusExpiry(successTtl, transientTtl))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "idempotency");
+    }
+
+    public Optional<Entry> get(String idempotencyKey) {
+        return Optional.ofNullable(cache.getIfPresent(idempotencyKey));
+    }
+
+    public void put(Upload upload) {
+        put(upload.getIdempotencyKey(), upload.getStatus(), upload.getId());
+    }
+
+    public void put(String idempotencyKey, UploadStatus status, UUID uploadId) {
+        cache.put(idempotencyKey, new Entry(status, uploadId));
+    }
+
+    public record Entry(UploadStatus status, UUID uploadId) {
+    }
+
+    private record StatusExpiry(Duration successTtl, Duration transientTtl) implements Expiry<String, Entry> {
+
+        @Override
+        public long expireAfterCreate(String key, Entry entry, long currentTime) {
+            return ttl(entry).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+            // Смена статуса начинает отсчёт заново со своим TTL
+            return ttl(entry).toNanos();
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        private Duration ttl(Entry entry) {
+            return entry.status() == UploadStatus.SUCCESS ? successTtl : transientTtl;
+        }
+    }
+}
@@ -2,15 +2,12 @@ package kz.kaspi.lab.fileuploader.service;
 
 import kz.kaspi.lab.fileuploader.entity.Upload;
 import kz.kaspi.lab.fileuploader.exception.IdempotencyException;
+import kz.kaspi.lab.fileuploader.repository.UploadClaim;
 import kz.kaspi.lab.fileuploader.repository.UploadRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
-
-import java.time.Duration;
 
 @Slf4j
 @Service
@@ -18,38 +15,41 @@ import java.time.Duration;
 public class IdempotencyService {
 
     private final UploadRepository uploadRepository;
+    private final IdempotencyCache idempotencyCache;
 
     /**
-     * Проверяет идемпотентность и создаёт запись о начале обработки.
-     * Использует optimistic locking через БД (UNIQUE constraint).
+     * Атомарно занимает idempotency key одним запросом к БД.
+     * Новый ключ или ключ в статусе FAILED переводится в PROCESSING и достаётся этому запросу,
+     * для остальных возвращается существующая запись без изменений.
      */
-    @Transactional
-    public Mono<Upload> initiateProcessing(String idempotencyKey, String filename, long size, String contentType) {
-        return uploadRepository.existsByIdempotencyKey(idempotencyKey)
-                .flatMap(exists -> {
-                    if (exists) {
+    public Mono<UploadClaim> claim(String idempotencyKey, String filename, long size, String contentType) {
+        Mono<UploadClaim> claim = uploadRepository.claim(idempotencyKey, filename, size, contentType);
+        return claim
+                // Пусто только если конкурент вставил строку после начала нашего запроса — повторяем
+                .switchIfEmpty(Mono.defer(() -> claim))
+                .switchIfEmpty(Mono.error(() -> new IdempotencyException(
+                        "Could not claim idempotency key " + idempotencyKey)))
+                .doOnNext(result -> {
+                    if (!result.claimed()) {
                         log.warn("Duplicate request detected for key: {}", idempotencyKey);
-                        return Mono.error(new IdempotencyException(
-                                "Request with idempotency key " + idempotencyKey + " already processed"
-                        ));
                     }
-
-                    Upload upload = new Upload();
-                    upload.setIdempotencyKey(idempotencyKey);
-                    upload.setOriginalFilename(filename);
-                    upload.setFileSize(size);
-                    upload.setContentType(contentType);
-                    upload.setStatus(Upload.UploadStatus.PROCESSING);
-
-                    return uploadRepository.save(upload);
-                })
-                .subscribeOn(Schedulers.boundedElastic()); // Блокирующая операция БД в отдельном пуле
+                    idempotencyCache.put(result.upload());
+                });
     }
 
     /**
-     * Проверяет статус существующей записи (для повторных запросов).
+     * Статус ранее обработанного ключа из локального кэша, без похода в БД.
+     * Отдаются только SUCCESS и PROCESSING — FAILED всё равно ведёт к повторной попытке.
      */
-    public Mono<Upload> checkExistingStatus(String idempotencyKey) {
-        return uploadRepository.findByIdempotencyKey(idempotencyKey);
+    public Mono<Upload> checkCachedStatus(String idempotencyKey) {
+        return Mono.justOrEmpty(idempotencyCache.get(idempotencyKey))
+                .filter(entry -> entry.status() != Upload.UploadStatus.FAILED)
+                .map(entry -> {
+                    Upload cached = new Upload();
+                    cached.setId(entry.uploadId());
+                    cached.setIdempotencyKey(idempotencyKey);
+                    cached.setStatus(entry.status());
+                    return cached;
+                });
     }
 }
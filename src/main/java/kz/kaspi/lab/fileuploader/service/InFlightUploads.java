@@ -0,0 +1,110 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.kaspi.lab.fileuploader.dto.UploadResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Реестр загрузок, выполняющихся на этом узле, по idempotency key.
+ * Первый запрос становится лидером, параллельные повторы с тем же ключом
+ * присоединяются к его результату и не читают своё тело.
+ */
+@Component
+public class InFlightUploads {
+
+    private final ConcurrentMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final Duration followerWait;
+    private final Counter completedCounter;
+    private final Counter timedOutCounter;
+    private final Counter fallbackCounter;
+
+    public InFlightUploads(
+            MeterRegistry meterRegistry,
+            @Value("${idempotency.coalesce.wait:2s}") Duration followerWait) {
+        this.followerWait = followerWait;
+        this.completedCounter = coalescedCounter(meterRegistry, "completed");
+        this.timedOutCounter = coalescedCounter(meterRegistry, "timeout");
+        this.fallbackCounter = coalescedCounter(meterRegistry, "fallback");
+        Gauge.builder("upload.inflight.keys", inFlight, ConcurrentMap::size)
+                .description("Idempotency keys currently being uploaded on this node")
+                .register(meterRegistry);
+    }
+
+    private static Counter coalescedCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("upload.coalesced")
+                .description("Requests attached to an in-flight upload with the same idempotency key")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Регистрирует запрос. Лидер обязан вызвать {@link #finish} по завершении.
+     */
+    public Registration register(String idempotencyKey) {
+        InFlight created = new InFlight();
+        InFlight existing = inFlight.putIfAbsent(idempotencyKey, created);
+        return existing == null
+                ? new Registration(created, true)
+                : new Registration(existing, false);
+    }
+
+    /**
+     * Завершает загрузку лидера. Если успешного результата не было, последователи
+     * получат пустой ответ и пойдут обычным путём.
+     */
+    public void finish(String idempotencyKey, InFlight entry) {
+        inFlight.remove(idempotencyKey, entry);
+        entry.result.tryEmitEmpty();
+    }
+
+    /**
+     * Ожидание результата лидера последователем, не дольше idempotency.coalesce.wait.
+     * <ul>
+     *     <li>значение — лидер успешно загрузил файл;</li>
+     *     <li>пусто — лидер завершился без результата, запрос нужно обработать самостоятельно;</li>
+     *     <li>{@link TimeoutException} — лидер ещё работает.</li>
+     * </ul>
+     */
+    public Mono<UploadResponse> await(InFlight entry) {
+        return entry.result.asMono()
+                .timeout(followerWait)
+                .doOnNext(response -> completedCounter.increment())
+                .doOnError(TimeoutException.class, e -> timedOutCounter.increment())
+                .switchIfEmpty(Mono.fromRunnable(fallbackCounter::increment));
+    }
+
+    public record Registration(InFlight entry, boolean leader) {
+    }
+
+    public static final class InFlight {
+
+        private final Sinks.One<UploadResponse> result = Sinks.one();
+        private volatile UUID uploadId;
+
+        public void claimed(UUID uploadId) {
+            this.uploadId = uploadId;
+        }
+
+        public void succeeded(UploadResponse response) {
+            result.tryEmitValue(response);
+        }
+
+        /**
+         * Id записи лидера; {@code null}, пока лидер не занял ключ в БД.
+         */
+        public UUID uploadId() {
+            return uploadId;
+        }
+    }
+}
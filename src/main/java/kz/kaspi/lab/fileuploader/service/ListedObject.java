@@ -0,0 +1,9 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import java.time.Instant;
+
+/**
+ * Объект из листинга хранилища, см. {@link StorageBackend#list}.
+ */
+public record ListedObject(String name, Instant lastModified) {
+}
@@ -0,0 +1,337 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import jakarta.annotation.PostConstruct;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище на локальном диске (storage.backend=local) — для edge-узлов, тестов
+ * и замеров без сети.
+ * <p>
+ * Объект лежит в {@code <root>/ab/cd/<имя>}, где ab/cd — первые байты SHA-256 имени,
+ * чтобы в одном каталоге не скапливались миллионы файлов. Запись идёт через
+ * AsynchronousFileChannel во временный файл в {@code <root>/.tmp}, после fsync он
+ * атомарно переименовывается в итоговый путь — недописанный объект никогда не виден читателям.
+ * Части докачки хранятся в {@code <root>/.multipart/<uploadId>/<номер>} и при commit
+ * склеиваются через FileChannel.transferTo.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local")
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Path rootDir;
+    private final Path tmpDir;
+    private final Path multipartDir;
+    private final int maxPartSize;
+    private final Scheduler blockingIoScheduler;
+
+    public LocalStorageBackend(
+            @Value("${storage.local.root-dir}") Path rootDir,
+            PartBufferPool bufferPool,
+            Scheduler blockingIoScheduler) {
+        this.rootDir = rootDir.toAbsolutePath().normalize();
+        this.tmpDir = this.rootDir.resolve(".tmp");
+        this.multipartDir = this.rootDir.resolve(".multipart");
+        this.maxPartSize = bufferPool.partSize();
+        this.blockingIoScheduler = blockingIoScheduler;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        Files.createDirectories(tmpDir);
+        Files.createDirectories(multipartDir);
+        // Временные файлы прерванных записей никому не принадлежат
+        try (Stream<Path> leftovers = Files.list(tmpDir)) {
+            leftovers.forEach(LocalStorageBackend::deleteQuietly);
+        }
+        log.info("Local storage backend at {}", rootDir);
+    }
+
+    /**
+     * Хэш известен только после записи, поэтому {@code existingObject} не используется —
+     * дубликат удалит {@link BlobService}.
+     */
+    @Override
+    public Mono<StoredObject> put(String objectName, Flux<DataBuffer> content, String contentType, long sizeHint,
+                                  Function<String, Mono<String>> existingObject) {
+        return Mono.defer(() -> {
+            ContentDigest digest = new ContentDigest();
+            Path tmp = newTmpFile();
+            return writeDurably(content.doOnNext(buffer -> digest(buffer, digest)), tmp)
+                    .then(commit(tmp, objectPath(objectName)))
+                    .then(Mono.fromSupplier(() -> new StoredObject(objectName, digest.size(), digest.hex(), false)))
+                    .onErrorResume(e -> deleteLater(tmp).then(Mono.error(e)));
+        });
+    }
+
+    @Override
+    public Flux<DataBuffer> get(String objectName, long offset, Long length) {
+        Flux<DataBuffer> data = Flux.defer(() -> DataBufferUtils.readAsynchronousFileChannel(
+                () -> AsynchronousFileChannel.open(objectPath(objectName), StandardOpenOption.READ),
+                offset, DefaultDataBufferFactory.sharedInstance, READ_BUFFER_SIZE));
+        return length != null ? DataBufferUtils.takeUntilByteCount(data, length) : data;
+    }
+
+    @Override
+    public Mono<Void> delete(String objectName) {
+        return Mono.fromCallable(() -> Files.deleteIfExists(objectPath(objectName)))
+                .subscribeOn(blockingIoScheduler)
+                .then();
+    }
+
+    /**
+     * Каталоги обходятся целиком и имена сортируются в памяти: локальное хранилище
+     * рассчитано на объём одного узла, постраничного листинга у файловой системы нет.
+     */
+    @Override
+    public Flux<ListedObject> list(String startAfter) {
+        return Mono.fromCallable(() -> {
+                    List<ListedObject> objects = new ArrayList<>();
+                    // <root>/ab/cd/<имя>
+                    try (Stream<Path> paths = Files.walk(rootDir, 3)) {
+                        paths.filter(path -> path.getNameCount() - rootDir.getNameCount() == 3)
+                                .filter(path -> !path.startsWith(tmpDir) && !path.startsWith(multipartDir))
+                                .forEach(path -> {
+                                    String name = path.getFileName().toString();
+                                    if (startAfter != null && name.compareTo(startAfter) <= 0) {
+                                        return;
+                                    }
+                                    try {
+                                        objects.add(new ListedObject(name, Files.getLastModifiedTime(path).toInstant()));
+                                    } catch (IOException e) {
+                                        // Удалён во время обхода
+                                        log.debug("Skipping {} while listing: {}", path, e.toString());
+                                    }
+                                });
+                    }
+                    objects.sort(Comparator.comparing(ListedObject::name));
+                    return objects;
+                })
+                .subscribeOn(blockingIoScheduler)
+                .flatMapIterable(objects -> objects);
+    }
+
+    @Override
+    public Mono<Void> deleteAll(List<String> objectNames) {
+        return Flux.fromIterable(objectNames)
+                .concatMap(this::delete)
+                .then();
+    }
+
+    @Override
+    public Mono<Boolean> exists(String objectName) {
+        return Mono.fromCallable(() -> Files.exists(objectPath(objectName)))
+                .subscribeOn(blockingIoScheduler);
+    }
+
+    @Override
+    public Mono<String> beginMultipart(String objectName, String contentType) {
+        return Mono.fromCallable(() -> {
+                    String uploadId = UUID.randomUUID().toString();
+                    Files.createDirectory(multipartDir.resolve(uploadId));
+                    return uploadId;
+                })
+                .subscribeOn(blockingIoScheduler);
+    }
+
+    /**
+     * Часть пишется во временный файл и переименовывается на место прежней версии,
+     * поэтому повтор того же чанка безопасен.
+     */
+    @Override
+    public Mono<UploadedPart> uploadPart(MultipartTarget target, int partNumber, Flux<DataBuffer> content) {
+        return Mono.defer(() -> {
+            ContentDigest digest = new ContentDigest();
+            Path tmp = newTmpFile();
+            Flux<DataBuffer> limited = content.handle((buffer, sink) -> {
+                digest(buffer, digest);
+                if (digest.size() > maxPartSize) {
+                    DataBufferUtils.release(buffer);
+                    sink.error(new StorageException("Chunk exceeds maximum size of " + maxPartSize + " bytes"));
+                } else {
+                    sink.next(buffer);
+                }
+            });
+            return writeDurably(limited, tmp)
+                    .then(Mono.fromCallable(() -> {
+                        // Отменённая загрузка не должна воскреснуть из-за запоздавшего чанка
+                        if (!Files.isDirectory(sessionDir(target))) {
+                            throw new StorageException("Multipart upload " + target.uploadId() + " not found");
+                        }
+                        moveDurably(tmp, partPath(target, partNumber));
+                        return tmp;
+                    }).subscribeOn(blockingIoScheduler))
+                    .then(Mono.fromSupplier(() -> new UploadedPart(partNumber, digest.hex(), digest.size())))
+                    .onErrorResume(e -> deleteLater(tmp).then(Mono.error(e)));
+        });
+    }
+
+    @Override
+    public Mono<Void> completeMultipart(MultipartTarget target, List<UploadedPart> parts) {
+        return Mono.fromCallable(() -> {
+                    Path tmp = newTmpFile();
+                    try {
+                        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                            for (UploadedPart part : parts) {
+                                try (FileChannel in = FileChannel.open(partPath(target, part.partNumber()), StandardOpenOption.READ)) {
+                                    long size = in.size();
+                                    long position = 0;
+                                    while (position < size) {
+                                        position += in.transferTo(position, size - position, out);
+                                    }
+                                }
+                            }
+                            out.force(true);
+                        }
+                        moveDurably(tmp, objectPath(target.objectName()));
+                    } catch (IOException e) {
+                        deleteQuietly(tmp);
+                        throw e;
+                    }
+                    deleteRecursively(sessionDir(target));
+                    return target;
+                })
+                .subscribeOn(blockingIoScheduler)
+                .then();
+    }
+
+    @Override
+    public Mono<Void> abortMultipart(MultipartTarget target) {
+        return Mono.fromCallable(() -> {
+                    deleteRecursively(sessionDir(target));
+                    return target;
+                })
+                .subscribeOn(blockingIoScheduler)
+                .then();
+    }
+
+    private Mono<Void> writeDurably(Flux<DataBuffer> content, Path file) {
+        return DataBufferUtils.write(content, file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+                .then(Mono.fromCallable(() -> {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        channel.force(true);
+                    }
+                    return file;
+                }).subscribeOn(blockingIoScheduler))
+                .then();
+    }
+
+    private Mono<Void> commit(Path tmp, Path target) {
+        return Mono.fromCallable(() -> {
+                    moveDurably(tmp, target);
+                    return target;
+                })
+                .subscribeOn(blockingIoScheduler)
+                .then();
+    }
+
+    /**
+     * Атомарное переименование и fsync каталога, чтобы запись о файле тоже пережила сбой питания.
+     */
+    private static void moveDurably(Path tmp, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel dir = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Не все ОС позволяют открыть каталог (например, Windows) — файл уже на месте
+            log.debug("Directory fsync is not supported for {}", target.getParent());
+        }
+    }
+
+    private Path objectPath(String objectName) {
+        byte[] hash = sha256(objectName);
+        Path path = rootDir
+                .resolve(HexFormat.of().formatHex(hash, 0, 1))
+                .resolve(HexFormat.of().formatHex(hash, 1, 2))
+                .resolve(objectName)
+                .normalize();
+        if (!path.startsWith(rootDir)) {
+            throw new StorageException("Invalid object name: " + objectName);
+        }
+        return path;
+    }
+
+    private Path sessionDir(MultipartTarget target) {
+        return multipartDir.resolve(UUID.fromString(target.uploadId()).toString());
+    }
+
+    private Path partPath(MultipartTarget target, int partNumber) {
+        return sessionDir(target).resolve(String.valueOf(partNumber));
+    }
+
+    private Path newTmpFile() {
+        return tmpDir.resolve(UUID.randomUUID().toString());
+    }
+
+    private static void digest(DataBuffer buffer, ContentDigest digest) {
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                ByteBuffer data = iterator.next();
+                digest.update(data);
+            }
+        }
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private Mono<Void> deleteLater(Path file) {
+        return Mono.fromRunnable(() -> deleteQuietly(file))
+                .subscribeOn(blockingIoScheduler)
+                .then();
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(LocalStorageBackend::deleteQuietly);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.BucketExistsArgs;
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
+import io.minio.MinioAsyncClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.PutObjectArgs;
+import io.minio.ListObjectsV2Response;
+import io.minio.ListPartsResponse;
+import io.minio.MakeBucketArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+import io.minio.messages.ListBucketResultV2;
+import io.minio.messages.ListPartsResult;
+import io.minio.messages.Part;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Асинхронный клиент MinIO с доступом к низкоуровневому S3 multipart API.
+ * В SDK эти методы protected, поэтому открываем их через наследование.
+ * Все вызовы неблокирующие: запросы уходят в dispatcher OkHttp.
+ */
+public class MinioMultipartClient extends MinioAsyncClient {
+
+    public MinioMultipartClient(MinioAsyncClient client) {
+        super(client);
+    }
+
+    public Mono<String> createMultipartUpload(String bucket, String object, String contentType) {
+        Multimap<String, String> headers = ImmutableMultimap.of("Content-Type", contentType);
+        return call(() -> createMultipartUploadAsync(bucket, null, object, headers, null))
+                .map(response -> response.result().uploadId());
+    }
+
+    /**
+     * Загружает одну часть. Передаются только первые {@code length} байт буфера,
+     * поэтому буфер можно переиспользовать из пула.
+     */
+    public Mono<Part> uploadPart(String bucket, String object, String uploadId, int partNumber, byte[] data, int length) {
+        return call(() -> uploadPartAsync(bucket, null, object, data, length, uploadId, partNumber, null, null))
+                .map(response -> new Part(response.partNumber(), response.etag()));
+    }
+
+    public Mono<ObjectWriteResponse> completeMultipartUpload(String bucket, String object, String uploadId, List<Part> parts) {
+        return call(() -> completeMultipartUploadAsync(
+                bucket, null, object, uploadId, parts.toArray(new Part[0]), null, null));
+    }
+
+    /**
+     * Уже загруженные части по возрастанию номера; ListParts отдаёт до 1000 частей за запрос.
+     */
+    public Flux<Part> listParts(String bucket, String object, String uploadId) {
+        return listPartsPage(bucket, object, uploadId, null)
+                .expand(page -> page.isTruncated()
+                        ? listPartsPage(bucket, object, uploadId, page.nextPartNumberMarker())
+                        : Mono.empty())
+                .concatMapIterable(ListPartsResult::partList);
+    }
+
+    private Mono<ListPartsResult> listPartsPage(String bucket, String object, String uploadId, Integer partNumberMarker) {
+        return call(() -> listPartsAsync(bucket, null, object, 1000, partNumberMarker, uploadId, null, null))
+                .map(ListPartsResponse::result);
+    }
+
+    public Mono<Void> abortMultipartUpload(String bucket, String object, String uploadId) {
+        return call(() -> abortMultipartUploadAsync(bucket, null, object, uploadId, null, null)).then();
+    }
+
+    /**
+     * Однократный PUT для объектов, целиком уместившихся в одну часть.
+     */
+    public Mono<ObjectWriteResponse> putObject(String bucket, String object, byte[] data, int length, String contentType) {
+        return call(() -> putObject(
+                PutObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(object)
+                        .stream(new ByteArrayInputStream(data, 0, length), length, -1)
+                        .contentType(contentType)
+                        .build()
+        ));
+    }
+
+    /**
+     * GET объекта или диапазона [offset, offset + length). Mono завершается после получения
+     * заголовков ответа; тело читается из возвращённого потока, который нужно закрыть.
+     *
+     * @param length {@code null} — до конца объекта
+     */
+    public Mono<GetObjectResponse> getObject(String bucket, String object, long offset, Long length) {
+        return call(() -> getObject(
+                GetObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(object)
+                        .offset(offset)
+                        .length(length)
+                        .build()
+        ));
+    }
+
+    public Mono<StatObjectResponse> statObject(String bucket, String object) {
+        return call(() -> statObject(
+                StatObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(object)
+                        .build()
+        ));
+    }
+
+    public Mono<Void> removeObject(String bucket, String object) {
+        return call(() -> removeObject(
+                RemoveObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(object)
+                        .build()
+        )).then();
+    }
+
+    public Mono<Boolean> bucketExists(String bucket) {
+        return call(() -> bucketExists(BucketExistsArgs.builder().bucket(bucket).build()));
+    }
+
+    public Mono<Void> makeBucket(String bucket) {
+        return call(() -> makeBucket(MakeBucketArgs.builder().bucket(bucket).build()));
+    }
+
+    /**
+     * Объекты бакета по возрастанию имени после startAfter ({@code null} — с начала).
+     * Следующая страница ListObjectsV2 запрашивается, только когда дочитана текущая.
+     */
+    public Flux<Item> listObjects(String bucket, String startAfter, int pageSize) {
+        return listObjectsPage(bucket, startAfter, null, pageSize)
+                .expand(page -> page.isTruncated()
+                        ? listObjectsPage(bucket, null, page.nextContinuationToken(), pageSize)
+                        : Mono.empty())
+                .<Item>concatMapIterable(ListBucketResultV2::contents);
+    }
+
+    private Mono<ListBucketResultV2> listObjectsPage(String bucket, String startAfter, String continuationToken, int pageSize) {
+        return call(() -> listObjectsV2Async(bucket, null, null, null, startAfter, pageSize, null, continuationToken,
+                false, false, null, null))
+                .map(ListObjectsV2Response::result);
+    }
+
+    /**
+     * Удаляет до 1000 объектов одним запросом DeleteObjects. В quiet-режиме ответ содержит только ошибки.
+     */
+    public Mono<List<DeleteError>> removeObjects(String bucket, List<String> objects) {
+        return call(() -> deleteObjectsAsync(bucket, null, objects.stream().map(DeleteObject::new).toList(),
+                true, false, null, null))
+                .map(response -> response.result().errorList());
+    }
+
+    private static <T> Mono<T> call(Callable<CompletableFuture<T>> request) {
+        return Mono.fromFuture(() -> {
+            try {
+                return request.call();
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+    }
+}
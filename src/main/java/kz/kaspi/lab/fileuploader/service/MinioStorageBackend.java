@@ -0,0 +1,272 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.minio.errors.ErrorResponseException;
+import io.minio.errors.ServerException;
+import io.minio.messages.Part;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import kz.kaspi.lab.fileuploader.service.PartChunker.PartChunk;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Хранилище в MinIO (S3 API), бэкенд по умолчанию.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+public class MinioStorageBackend implements StorageBackend {
+
+    private final MinioMultipartClient multipartClient;
+    private final PartBufferPool bufferPool;
+    private final Scheduler blockingIoScheduler;
+
+    private static final Duration PART_RETRY_BACKOFF = Duration.ofMillis(200);
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+    /** Предел S3 и для ListObjectsV2, и для DeleteObjects. */
+    private static final int MAX_KEYS_PER_REQUEST = 1000;
+    /** Коды ошибок S3, после которых запрос имеет смысл повторить. */
+    private static final Set<String> TRANSIENT_ERROR_CODES = Set.of(
+            "SlowDown", "SlowDownRead", "SlowDownWrite", "InternalError", "ServiceUnavailable",
+            "RequestTimeout", "XMinioServerNotInitialized");
+
+    @Value("${storage.minio.bucket-name}")
+    private String bucketName;
+
+    @Value("${storage.upload.parallel-threshold:64MB}")
+    private DataSize parallelThreshold;
+
+    @Value("${storage.upload.part-concurrency:4}")
+    private int partConcurrency;
+
+    @Value("${storage.upload.part-retries:3}")
+    private int partRetries;
+
+    /**
+     * Стримит содержимое в MinIO без временных файлов и блокировок.
+     * Файл меньше одной части уходит одним PUT, остальное — через S3 multipart
+     * с backpressure на источник: новая часть читается, только когда есть место под неё.
+     * <p>
+     * Для файлов из одной части хэш известен до записи, поэтому сначала вызывается
+     * {@code existingObject}: если он вернул путь, запись в хранилище пропускается.
+     * <p>
+     * Если заявленный размер не меньше storage.upload.parallel-threshold, части уходят
+     * параллельно (до storage.upload.part-concurrency на загрузку). Общее число запросов
+     * к MinIO ограничено dispatcher'ом клиента (storage.minio.max-concurrent-requests),
+     * а память под части — пулом буферов (storage.upload.max-buffers): запрос, ждущий
+     * в очереди dispatcher'а, держит свой буфер, поэтому лимит ставится до чтения части.
+     */
+    @Override
+    public Mono<StoredObject> put(String objectName, Flux<DataBuffer> content, String contentType, long sizeHint,
+                                  Function<String, Mono<String>> existingObject) {
+        ContentDigest digest = new ContentDigest();
+
+        return PartChunker.split(content, bufferPool, digest)
+                .switchOnFirst((first, chunks) -> {
+                    if (!first.hasValue()) {
+                        // Ошибка чтения тела — до MinIO не доходим
+                        return chunks.then(Mono.<StoredObject>empty()).flux();
+                    }
+                    if (first.get().length() < bufferPool.partSize()) {
+                        // Весь файл уместился в первую часть, поток уже дочитан
+                        return chunks.concatMap(single -> putSingle(objectName, single, contentType, digest, existingObject));
+                    }
+                    int concurrency = sizeHint >= parallelThreshold.toBytes() ? partConcurrency : 1;
+                    return putMultipart(objectName, chunks, contentType, concurrency)
+                            .then(Mono.fromSupplier(() -> new StoredObject(objectName, digest.size(), digest.hex(), false)))
+                            .flux();
+                })
+                .single();
+    }
+
+    private Mono<StoredObject> putSingle(String objectName, PartChunk chunk, String contentType, ContentDigest digest,
+                                         Function<String, Mono<String>> existingObject) {
+        String contentHash = digest.hex();
+        return existingObject.apply(contentHash)
+                .map(existing -> new StoredObject(existing, digest.size(), contentHash, true))
+                .switchIfEmpty(Mono.defer(() ->
+                        multipartClient.putObject(bucketName, objectName, chunk.data(), chunk.length(), contentType)
+                                .retryWhen(transientFailures())
+                                .thenReturn(new StoredObject(objectName, digest.size(), contentHash, false))))
+                .doFinally(signal -> releaseChunk(chunk, signal));
+    }
+
+    /**
+     * При {@code concurrency > 1} одновременно в памяти до concurrency + 1 частей.
+     * Неудачная часть перезагружается из того же буфера, при окончательной ошибке
+     * multipart-загрузка отменяется.
+     */
+    private Mono<Void> putMultipart(String objectName, Flux<PartChunk> chunks, String contentType, int concurrency) {
+        return multipartClient.createMultipartUpload(bucketName, objectName, contentType)
+                .flatMap(uploadId -> chunks
+                        .flatMap(chunk -> multipartClient
+                                .uploadPart(bucketName, objectName, uploadId, chunk.partNumber(), chunk.data(), chunk.length())
+                                .retryWhen(transientFailures())
+                                .doFinally(signal -> releaseChunk(chunk, signal)), concurrency, 1)
+                        .collectSortedList(Comparator.comparingInt(Part::partNumber))
+                        .flatMap(parts -> multipartClient.completeMultipartUpload(bucketName, objectName, uploadId, parts))
+                        .onErrorResume(e -> abortQuietly(objectName, uploadId).then(Mono.error(e)))
+                        .doOnCancel(() -> abortQuietly(objectName, uploadId).subscribe()))
+                .then();
+    }
+
+    /**
+     * Повторяется только открытие запроса: после начала передачи ошибка уходит клиенту.
+     * Тело ответа MinIO — блокирующий InputStream, поэтому чтение идёт на планировщике
+     * блокирующего I/O (storage.blocking.*).
+     */
+    @Override
+    public Flux<DataBuffer> get(String objectName, long offset, Long length) {
+        return multipartClient.getObject(bucketName, objectName, offset, length)
+                .retryWhen(transientFailures())
+                .flatMapMany(response -> DataBufferUtils.readInputStream(
+                        () -> response, DefaultDataBufferFactory.sharedInstance, DOWNLOAD_BUFFER_SIZE))
+                .subscribeOn(blockingIoScheduler);
+    }
+
+    @Override
+    public Mono<Void> delete(String objectName) {
+        return multipartClient.removeObject(bucketName, objectName)
+                .retryWhen(transientFailures());
+    }
+
+    /**
+     * Ошибка листинга не повторяется: повтор начал бы страницы заново.
+     */
+    @Override
+    public Flux<ListedObject> list(String startAfter) {
+        return multipartClient.listObjects(bucketName, startAfter, MAX_KEYS_PER_REQUEST)
+                .filter(item -> !item.isDir())
+                .map(item -> new ListedObject(item.objectName(), item.lastModified().toInstant()));
+    }
+
+    /**
+     * По одному запросу DeleteObjects на каждые 1000 имён.
+     */
+    @Override
+    public Mono<Void> deleteAll(List<String> objectNames) {
+        return Flux.fromIterable(objectNames)
+                .buffer(MAX_KEYS_PER_REQUEST)
+                .concatMap(batch -> multipartClient.removeObjects(bucketName, batch)
+                        .retryWhen(transientFailures())
+                        .flatMap(errors -> errors.isEmpty()
+                                ? Mono.<Void>empty()
+                                : Mono.error(new StorageException("Failed to delete " + errors.size() + " of "
+                                + batch.size() + " objects, first: " + errors.get(0).objectName()
+                                + " (" + errors.get(0).code() + ")"))))
+                .then();
+    }
+
+    @Override
+    public Mono<Boolean> exists(String objectName) {
+        return multipartClient.statObject(bucketName, objectName)
+                .retryWhen(transientFailures())
+                .thenReturn(true)
+                .onErrorResume(e -> e instanceof ErrorResponseException error
+                        && "NoSuchKey".equals(error.errorResponse().code()), e -> Mono.just(false));
+    }
+
+    @Override
+    public Mono<String> beginMultipart(String objectName, String contentType) {
+        return multipartClient.createMultipartUpload(bucketName, objectName, contentType);
+    }
+
+    /**
+     * Часть не может быть больше storage.upload.part-size — она целиком помещается в один буфер пула.
+     */
+    @Override
+    public Mono<UploadedPart> uploadPart(MultipartTarget target, int partNumber, Flux<DataBuffer> content) {
+        return PartChunker.split(content, bufferPool, new ContentDigest())
+                .concatMap(chunk -> {
+                    if (chunk.partNumber() > 1) {
+                        bufferPool.release(chunk.data());
+                        return Mono.error(new StorageException(
+                                "Chunk exceeds maximum size of " + bufferPool.partSize() + " bytes"));
+                    }
+                    return multipartClient
+                            .uploadPart(bucketName, target.objectName(), target.uploadId(), partNumber, chunk.data(), chunk.length())
+                            .retryWhen(transientFailures())
+                            .map(part -> new UploadedPart(partNumber, part.etag(), chunk.length()))
+                            .doFinally(signal -> releaseChunk(chunk, signal));
+                }, 1)
+                .last();
+    }
+
+    @Override
+    public Mono<Void> completeMultipart(MultipartTarget target, List<UploadedPart> parts) {
+        List<Part> s3Parts = parts.stream()
+                .map(part -> new Part(part.partNumber(), part.etag()))
+                .toList();
+        return multipartClient.completeMultipartUpload(bucketName, target.objectName(), target.uploadId(), s3Parts)
+                .then();
+    }
+
+    @Override
+    public Mono<Void> abortMultipart(MultipartTarget target) {
+        return multipartClient.abortMultipartUpload(bucketName, target.objectName(), target.uploadId());
+    }
+
+    private Mono<Void> abortQuietly(String objectName, String uploadId) {
+        return multipartClient.abortMultipartUpload(bucketName, objectName, uploadId)
+                .doOnSuccess(v -> log.info("Aborted multipart upload {} for {}", uploadId, objectName))
+                .onErrorResume(e -> {
+                    log.error("Failed to abort multipart upload {} for {}", uploadId, objectName, e);
+                    return Mono.empty();
+                });
+    }
+
+    @Override
+    public boolean isRetryable(Throwable error) {
+        return isTransient(error);
+    }
+
+    private Retry transientFailures() {
+        return Retry.backoff(partRetries, PART_RETRY_BACKOFF)
+                .filter(MinioStorageBackend::isTransient)
+                .doBeforeRetry(signal -> log.warn("Retrying MinIO request after failure (attempt {}): {}",
+                        signal.totalRetries() + 1, signal.failure().toString()))
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    /**
+     * Сетевые ошибки и 5xx от MinIO повторяем, ответы 4xx (NoSuchUpload, AccessDenied, ...) — нет.
+     * S3-ответ с ошибкой разбирается по коду (SlowDown, InternalError, ...) и по HTTP-статусу.
+     */
+    static boolean isTransient(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof ErrorResponseException error) {
+            return TRANSIENT_ERROR_CODES.contains(error.errorResponse().code())
+                    || (error.response() != null && error.response().code() >= 500);
+        }
+        return cause instanceof IOException || cause instanceof ServerException;
+    }
+
+    private void releaseChunk(PartChunk chunk, SignalType signal) {
+        // При отмене OkHttp ещё может дописывать тело запроса — место освобождаем, массив не переиспользуем
+        if (signal == SignalType.CANCEL) {
+            bufferPool.discard(chunk.data());
+        } else {
+            bufferPool.release(chunk.data());
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package kz.kaspi.lab.fileuploader.service;
+
+/**
+ * Открытая S3 multipart-загрузка в хранилище.
+ */
+public record MultipartTarget(String objectName, String uploadId) {
+}
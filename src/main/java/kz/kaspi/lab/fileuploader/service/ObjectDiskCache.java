@@ -0,0 +1,160 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import kz.kaspi.lab.fileuploader.entity.Upload.Compression;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Локальный дисковый кэш объектов хранилища для скачивания.
+ * Объекты в MinIO не перезаписываются (имя — UUID), поэтому кэш не инвалидируется,
+ * только вытесняет редко читаемые файлы, когда суммарный размер превышает download.cache.max-size.
+ * Параллельные промахи по одному объекту делят одну загрузку из MinIO.
+ * Сжатые объекты хранятся на диске уже распакованными.
+ * <p>
+ * Индекс хранится в памяти, поэтому при старте каталог кэша очищается.
+ * <p>
+ * Вытесненный файл удаляется не сразу, а через download.cache.delete-delay: путь мог уже уйти
+ * в ответ, который ещё не открыл файл. Открытый к моменту удаления файл дочитывается до конца.
+ */
+@Slf4j
+@Component
+public class ObjectDiskCache {
+
+    private final StorageService storageService;
+    private final Scheduler blockingIoScheduler;
+    private final boolean enabled;
+    private final Path cacheDir;
+    private final long maxObjectSize;
+    private final Duration deleteDelay;
+    private final AsyncCache<String, CachedFile> cache;
+
+    public ObjectDiskCache(
+            StorageService storageService,
+            MeterRegistry meterRegistry,
+            Scheduler blockingIoScheduler,
+            @Value("${download.cache.enabled:true}") boolean enabled,
+            @Value("${download.cache.dir:${java.io.tmpdir}/file-uploader-cache}") Path cacheDir,
+            @Value("${download.cache.max-size:2GB}") DataSize maxSize,
+            @Value("${download.cache.max-object-size:64MB}") DataSize maxObjectSize,
+            @Value("${download.cache.delete-delay:1m}") Duration deleteDelay) {
+        this.storageService = storageService;
+        this.blockingIoScheduler = blockingIoScheduler;
+        this.enabled = enabled;
+        this.cacheDir = cacheDir;
+        this.maxObjectSize = maxObjectSize.toBytes();
+        this.deleteDelay = deleteDelay;
+        // Вес в килобайтах: weigher возвращает int, а файл может быть больше 2 ГБ
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toKilobytes())
+                .weigher((String key, CachedFile file) -> (int) Math.max(1, (file.size() + 1023) / 1024))
+                .removalListener(this::onRemoval)
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "downloads");
+        Gauge.builder("download.cache.hit.ratio", cache, c -> c.synchronous().stats().hitRate())
+                .description("Share of cacheable downloads served from the local disk cache")
+                .register(meterRegistry);
+        Gauge.builder("download.cache.bytes", cache, c -> c.synchronous().policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0L))
+                        .orElse(0L) * 1024)
+                .description("Bytes held in the local disk cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(cacheDir);
+        try (Stream<Path> leftovers = Files.list(cacheDir)) {
+            leftovers.forEach(ObjectDiskCache::deleteQuietly);
+        }
+        log.info("Download cache enabled: dir={}, maxObjectSize={} bytes", cacheDir, maxObjectSize);
+    }
+
+    /**
+     * Кэшируются только объекты не больше download.cache.max-object-size,
+     * остальные отдаются потоком из хранилища.
+     */
+    public boolean accepts(long size) {
+        return enabled && size <= maxObjectSize;
+    }
+
+    /**
+     * Файл с содержимым объекта; при промахе объект сначала целиком скачивается на диск.
+     * Сжатие объекта не входит в ключ: объект с данным именем всегда записан одним кодеком.
+     */
+    public Mono<Path> get(String objectName, Compression compression) {
+        return cached(objectName, () -> storageService.downloadFile(objectName, compression, 0, null));
+    }
+
+    /**
+     * Файл из пака: кэшируется только его диапазон. Паки тоже не перезаписываются —
+     * уплотнение пишет новый, поэтому имя пака и смещение однозначно задают содержимое.
+     */
+    public Mono<Path> getRange(String objectName, long offset, long length) {
+        return cached(objectName + "@" + offset,
+                () -> storageService.downloadFile(objectName, Compression.NONE, offset, length));
+    }
+
+    private Mono<Path> cached(String key, Supplier<Flux<DataBuffer>> content) {
+        // Отмена одного запроса не должна отменять загрузку, которую ждут другие
+        return Mono.fromFuture(() -> cache.get(key, (k, executor) -> load(k, content.get()).toFuture()), true)
+                .map(CachedFile::path);
+    }
+
+    private Mono<CachedFile> load(String key, Flux<DataBuffer> content) {
+        Path file = cacheDir.resolve(UUID.randomUUID().toString());
+        return DataBufferUtils.write(content, file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+                .then(Mono.fromCallable(() -> new CachedFile(file, Files.size(file)))
+                        .subscribeOn(blockingIoScheduler))
+                .doOnNext(cached -> log.debug("Cached {} ({} bytes)", key, cached.size()))
+                .doOnError(e -> deleteQuietly(file));
+    }
+
+    private void onRemoval(String key, CachedFile file, RemovalCause cause) {
+        // Для неудачной загрузки значения нет
+        if (file != null) {
+            Mono.delay(deleteDelay)
+                    .publishOn(blockingIoScheduler)
+                    .subscribe(tick -> deleteQuietly(file.path()));
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached file {}", file, e);
+        }
+    }
+
+    private record CachedFile(Path path, long size) {
+    }
+}
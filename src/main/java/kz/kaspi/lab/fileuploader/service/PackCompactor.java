@@ -0,0 +1,224 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.entity.Blob;
+import kz.kaspi.lab.fileuploader.entity.Pack;
+import kz.kaspi.lab.fileuploader.entity.Upload.Compression;
+import kz.kaspi.lab.fileuploader.repository.BlobRepository;
+import kz.kaspi.lab.fileuploader.repository.PackRepository;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Уплотнение паков (upload.packing.compaction.*): паки, в которых занято меньше min-live-ratio,
+ * переписываются — живые файлы нескольких паков собираются в новый, ссылки в blobs и uploads
+ * переносятся одной транзакцией, старые паки помечаются DELETED.
+ * Объект старого пака удаляется только через delete-after: за это время дочитываются
+ * загрузки, которые получили старый адрес до переноса.
+ */
+@Slf4j
+@Service
+public class PackCompactor {
+
+    private final StorageService storageService;
+    private final PackRepository packRepository;
+    private final BlobRepository blobRepository;
+    private final UploadRepository uploadRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final double minLiveRatio;
+    private final Duration minAge;
+    private final Duration deleteAfter;
+    private final int batchSize;
+    private final long packSize;
+
+    public PackCompactor(
+            StorageService storageService,
+            PackRepository packRepository,
+            BlobRepository blobRepository,
+            UploadRepository uploadRepository,
+            TransactionalOperator transactionalOperator,
+            @Value("${upload.packing.compaction.min-live-ratio:0.5}") double minLiveRatio,
+            @Value("${upload.packing.compaction.min-age:10m}") Duration minAge,
+            @Value("${upload.packing.compaction.delete-after:10m}") Duration deleteAfter,
+            @Value("${upload.packing.compaction.batch:16}") int batchSize,
+            @Value("${upload.packing.pack-size:8MB}") DataSize packSize) {
+        this.storageService = storageService;
+        this.packRepository = packRepository;
+        this.blobRepository = blobRepository;
+        this.uploadRepository = uploadRepository;
+        this.transactionalOperator = transactionalOperator;
+        this.minLiveRatio = minLiveRatio;
+        this.minAge = minAge;
+        this.deleteAfter = deleteAfter;
+        this.batchSize = batchSize;
+        this.packSize = packSize.toBytes();
+    }
+
+    /**
+     * Пак, уплотнение которого прервалось, остаётся в COMPACTING и через min-age забирается снова;
+     * записанный к тому моменту новый пак без ссылок уплотнится как пустой.
+     */
+    @Scheduled(fixedDelayString = "${upload.packing.compaction.interval:PT5M}")
+    public Mono<Void> compactPacks() {
+        return packRepository.claimForCompaction(Instant.now().minus(minAge), minLiveRatio, batchSize)
+                .collectList()
+                .flatMap(this::compact)
+                .then(Mono.defer(this::purgeDeleted))
+                .onErrorResume(e -> {
+                    log.error("Failed to compact packs", e);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> compact(List<Pack> packs) {
+        Output output = new Output();
+        return Flux.fromIterable(packs)
+                .concatMap(pack -> liveSlices(pack)
+                        .flatMap(slices -> {
+                            if (slices.isEmpty()) {
+                                log.info("Pack {} has no live files, deleting", pack.getId());
+                                return packRepository.markDeleted(pack.getId());
+                            }
+                            output.add(pack, slices);
+                            return output.size >= packSize ? flush(output) : Mono.<Void>empty();
+                        })
+                        .onErrorResume(e -> {
+                            log.error("Failed to read pack {} for compaction", pack.getId(), e);
+                            return Mono.empty();
+                        }))
+                .then(Mono.defer(() -> flush(output)));
+    }
+
+    /**
+     * Живые файлы пака. Пак читается целиком: он не больше pack-size плюс один файл.
+     */
+    private Mono<List<Slice>> liveSlices(Pack pack) {
+        return blobRepository.findLiveInPack(pack.getId())
+                .collectList()
+                .flatMap(live -> live.isEmpty()
+                        ? Mono.just(List.<Slice>of())
+                        : DataBufferUtils.join(storageService.downloadFile(pack.getObjectName(), Compression.NONE, 0, null))
+                        .map(buffer -> {
+                            byte[] content = new byte[buffer.readableByteCount()];
+                            buffer.read(content);
+                            DataBufferUtils.release(buffer);
+                            List<Slice> slices = new ArrayList<>(live.size());
+                            for (Blob blob : live) {
+                                int start = Math.toIntExact(blob.getPackOffset());
+                                slices.add(new Slice(blob, Arrays.copyOfRange(content, start, start + Math.toIntExact(blob.getFileSize()))));
+                            }
+                            return slices;
+                        }));
+    }
+
+    /**
+     * Пишет собранные файлы в новый пак и переносит на него ссылки. При ошибке исходные паки
+     * остаются в COMPACTING, а новый удаляется.
+     */
+    private Mono<Void> flush(Output output) {
+        if (output.slices.isEmpty()) {
+            return Mono.empty();
+        }
+        List<Pack> sources = List.copyOf(output.sources);
+        List<Slice> slices = List.copyOf(output.slices);
+        long size = output.size;
+        output.clear();
+
+        return storageService.uploadPack(Flux.fromIterable(slices)
+                        .map(slice -> DefaultDataBufferFactory.sharedInstance.wrap(slice.content())), size)
+                .flatMap(stored -> {
+                    Pack row = new Pack();
+                    row.setObjectName(stored.objectName());
+                    row.setSize(stored.storedSize());
+                    row.setLiveBytes(0L);
+                    row.setStatus(Pack.PackStatus.SEALED);
+                    return packRepository.save(row)
+                            .flatMap(target -> relocate(sources, slices, target)
+                                    .onErrorResume(e -> packRepository.deleteById(target.getId()).then(Mono.error(e))))
+                            .onErrorResume(e -> storageService.deleteFile(stored.objectName()).then(Mono.error(e)));
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to compact packs {}", sources.stream().map(Pack::getId).toList(), e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Одна транзакция: файлы, ссылки на которые успели снять, не переносятся
+     * и в live_bytes нового пака не входят.
+     */
+    private Mono<Void> relocate(List<Pack> sources, List<Slice> slices, Pack target) {
+        List<Mono<Long>> moves = new ArrayList<>(slices.size());
+        long offset = 0;
+        for (Slice slice : slices) {
+            Blob blob = slice.blob();
+            long sliceOffset = offset;
+            moves.add(blobRepository.relocate(blob.getContentHash(), blob.getPackId(), target.getId(),
+                            target.getObjectName(), sliceOffset)
+                    .flatMap(updated -> updated == 0
+                            ? Mono.just(0L)
+                            : uploadRepository.relocate(blob.getContentHash(), blob.getPackId(), target.getId(),
+                                    target.getObjectName(), sliceOffset).thenReturn(blob.getFileSize())));
+            offset += slice.content().length;
+        }
+        return Flux.concat(moves)
+                .reduce(0L, Long::sum)
+                .flatMap(liveBytes -> packRepository.addLiveBytes(target.getId(), liveBytes)
+                        .then(Flux.fromIterable(sources).concatMap(source -> packRepository.markDeleted(source.getId())).then())
+                        .doOnSuccess(v -> log.info("Compacted {} packs into {}: {} files, {} live bytes",
+                                sources.size(), target.getId(), slices.size(), liveBytes)))
+                .as(transactionalOperator::transactional);
+    }
+
+    private Mono<Void> purgeDeleted() {
+        return packRepository.findDeletedBefore(Instant.now().minus(deleteAfter), batchSize)
+                .concatMap(pack -> uploadRepository.relocateStale(pack.getId())
+                        .doOnNext(updated -> {
+                            if (updated > 0) {
+                                log.info("Moved {} uploads off deleted pack {}", updated, pack.getId());
+                            }
+                        })
+                        .then(storageService.deleteFile(pack.getObjectName()))
+                        .then(packRepository.deleteById(pack.getId())))
+                .then();
+    }
+
+    private record Slice(Blob blob, byte[] content) {
+    }
+
+    /**
+     * Файлы для следующего нового пака и паки, из которых они взяты.
+     */
+    private static final class Output {
+
+        private final List<Pack> sources = new ArrayList<>();
+        private final List<Slice> slices = new ArrayList<>();
+        private long size;
+
+        void add(Pack source, List<Slice> live) {
+            sources.add(source);
+            slices.addAll(live);
+            live.forEach(slice -> size += slice.content().length);
+        }
+
+        void clear() {
+            sources.clear();
+            slices.clear();
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import java.util.UUID;
+
+/**
+ * Место файла в записанном паке.
+ */
+public record PackEntry(UUID packId, String objectName, long offset) {
+}
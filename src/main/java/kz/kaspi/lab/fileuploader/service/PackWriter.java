@@ -0,0 +1,174 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import jakarta.annotation.PreDestroy;
+import kz.kaspi.lab.fileuploader.entity.Pack;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import kz.kaspi.lab.fileuploader.repository.PackRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Упаковка маленьких файлов (upload.packing.*): файлы до max-file-size дописываются
+ * в общий открытый пак, который записывается в хранилище одним объектом, когда набрал
+ * pack-size или с первого файла прошло max-linger.
+ * <p>
+ * Загрузка подтверждается только после записи пака в хранилище и в таблицу packs:
+ * файл в открытом паке есть только в памяти, и при падении процесса он теряется
+ * вместе с неотвеченным запросом, как и обычная незавершённая загрузка.
+ */
+@Slf4j
+@Component
+public class PackWriter {
+
+    private final StorageService storageService;
+    private final PackRepository packRepository;
+    private final boolean enabled;
+    private final long maxFileSize;
+    private final long packSize;
+    private final Duration maxLinger;
+
+    private final Object lock = new Object();
+    private OpenPack open;
+
+    public PackWriter(
+            StorageService storageService,
+            PackRepository packRepository,
+            @Value("${upload.packing.enabled:false}") boolean enabled,
+            @Value("${upload.packing.max-file-size:64KB}") DataSize maxFileSize,
+            @Value("${upload.packing.pack-size:8MB}") DataSize packSize,
+            @Value("${upload.packing.max-linger:200ms}") Duration maxLinger) {
+        this.storageService = storageService;
+        this.packRepository = packRepository;
+        this.enabled = enabled;
+        this.maxFileSize = maxFileSize.toBytes();
+        this.packSize = packSize.toBytes();
+        this.maxLinger = maxLinger;
+        if (enabled) {
+            log.info("Small-file packing enabled: maxFileSize={} bytes, packSize={} bytes, maxLinger={}",
+                    this.maxFileSize, this.packSize, maxLinger);
+        }
+    }
+
+    /**
+     * Упаковывается файл, размер которого известен заранее и не больше max-file-size.
+     *
+     * @param sizeHint заявленный размер, 0 если неизвестен
+     */
+    public boolean accepts(long sizeHint) {
+        return enabled && sizeHint > 0 && sizeHint <= maxFileSize;
+    }
+
+    public long maxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * Дописывает файл в открытый пак. Mono завершается, когда пак записан.
+     * Отмена подписки файл из пака не убирает — его байты останутся в паке без ссылок.
+     */
+    public Mono<PackEntry> append(byte[] content) {
+        return Mono.defer(() -> {
+            Sinks.One<PackEntry> sink = Sinks.one();
+            OpenPack full = null;
+            synchronized (lock) {
+                if (open == null) {
+                    OpenPack created = new OpenPack();
+                    created.timer = Mono.delay(maxLinger).subscribe(tick -> seal(created));
+                    open = created;
+                }
+                open.add(content, sink);
+                if (open.size >= packSize) {
+                    full = open;
+                    open = null;
+                }
+            }
+            if (full != null) {
+                full.timer.dispose();
+                write(full);
+            }
+            return sink.asMono();
+        });
+    }
+
+    /**
+     * Записывает открытый пак, не дожидаясь max-linger, чтобы ожидающие загрузки получили ответ.
+     */
+    @PreDestroy
+    public void flush() {
+        OpenPack pack;
+        synchronized (lock) {
+            pack = open;
+            open = null;
+        }
+        if (pack != null) {
+            pack.timer.dispose();
+            write(pack);
+        }
+    }
+
+    private void seal(OpenPack pack) {
+        synchronized (lock) {
+            // Пак уже закрыт по размеру
+            if (open != pack) {
+                return;
+            }
+            open = null;
+        }
+        write(pack);
+    }
+
+    private void write(OpenPack pack) {
+        Flux<DataBuffer> content = Flux.fromIterable(pack.entries)
+                .map(entry -> DefaultDataBufferFactory.sharedInstance.wrap(entry.content()));
+        storageService.uploadPack(content, pack.size)
+                .flatMap(stored -> {
+                    Pack row = new Pack();
+                    row.setObjectName(stored.objectName());
+                    row.setSize(stored.storedSize());
+                    row.setLiveBytes(0L);
+                    row.setStatus(Pack.PackStatus.SEALED);
+                    return packRepository.save(row)
+                            .onErrorResume(e -> storageService.deleteFile(stored.objectName()).then(Mono.error(e)));
+                })
+                .subscribe(
+                        saved -> {
+                            log.debug("Pack {} sealed: {} files, {} bytes", saved.getId(), pack.entries.size(), pack.size);
+                            pack.entries.forEach(entry -> entry.sink().tryEmitValue(
+                                    new PackEntry(saved.getId(), saved.getObjectName(), entry.offset())));
+                        },
+                        e -> {
+                            log.error("Failed to write pack of {} files", pack.entries.size(), e);
+                            StorageException error = e instanceof StorageException storageError
+                                    ? storageError
+                                    : new StorageException("Failed to write pack: " + e.getMessage(), e);
+                            pack.entries.forEach(entry -> entry.sink().tryEmitError(error));
+                        });
+    }
+
+    private static final class OpenPack {
+
+        private final List<Pending> entries = new ArrayList<>();
+        private long size;
+        private Disposable timer;
+
+        void add(byte[] content, Sinks.One<PackEntry> sink) {
+            entries.add(new Pending(content, size, sink));
+            size += content.length;
+        }
+    }
+
+    private record Pending(byte[] content, long offset, Sinks.One<PackEntry> sink) {
+    }
+}
@@ -0,0 +1,139 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Пул буферов размером с одну часть multipart-загрузки.
+ * Держит не более {@code maxIdle} свободных буферов, чтобы не гонять GC
+ * на крупных массивах при каждом запросе.
+ * <p>
+ * Буферов в работе одновременно не больше storage.upload.max-buffers на весь сервис:
+ * буфер выдаётся до того, как в него читается тело, поэтому память под части ограничена
+ * и тогда, когда запросы к MinIO стоят в очереди dispatcher'а OkHttp.
+ */
+@Slf4j
+@Component
+public class PartBufferPool {
+
+    private final int partSize;
+    private final int maxBuffers;
+    private final BlockingQueue<byte[]> idle;
+    private final Queue<MonoSink<byte[]>> waiters = new ArrayDeque<>();
+    private int inUse;
+
+    public PartBufferPool(
+            MeterRegistry meterRegistry,
+            @Value("${storage.upload.part-size:8MB}") DataSize partSize,
+            @Value("${storage.upload.buffer-pool-size:32}") int maxIdle,
+            @Value("${storage.upload.max-buffers:128}") int maxBuffers) {
+        // S3 требует минимум 5 MiB для всех частей, кроме последней
+        if (partSize.toBytes() < DataSize.ofMegabytes(5).toBytes()) {
+            throw new IllegalArgumentException("storage.upload.part-size must be at least 5MB");
+        }
+        if (maxBuffers < 1) {
+            throw new IllegalArgumentException("storage.upload.max-buffers must be positive");
+        }
+        this.partSize = Math.toIntExact(partSize.toBytes());
+        this.maxBuffers = maxBuffers;
+        this.idle = new ArrayBlockingQueue<>(maxIdle);
+
+        Gauge.builder("storage.upload.buffers.in.use", this, PartBufferPool::inUse)
+                .description("Part buffers handed out and not yet released")
+                .register(meterRegistry);
+        Gauge.builder("storage.upload.buffers.waiting", this, PartBufferPool::waiting)
+                .description("Part buffer requests waiting for a free buffer")
+                .register(meterRegistry);
+    }
+
+    public int partSize() {
+        return partSize;
+    }
+
+    /**
+     * Буфер под очередную часть; если все storage.upload.max-buffers заняты — ждёт освобождения.
+     * Полученный буфер обязательно вернуть через {@link #release} или {@link #discard}.
+     */
+    public Mono<byte[]> acquire() {
+        return Mono.<byte[]>create(sink -> {
+                    boolean granted;
+                    synchronized (this) {
+                        granted = inUse < maxBuffers;
+                        if (granted) {
+                            inUse++;
+                        } else {
+                            waiters.add(sink);
+                        }
+                    }
+                    if (granted) {
+                        sink.success(take());
+                    } else {
+                        sink.onCancel(() -> removeWaiter(sink));
+                    }
+                })
+                // Буфер, выданный уже отменённому ожиданию, возвращается в пул
+                .doOnDiscard(byte[].class, this::release);
+    }
+
+    /**
+     * Возвращает буфер для повторного использования.
+     */
+    public void release(byte[] buffer) {
+        if (buffer != null && buffer.length == partSize) {
+            handOver(buffer);
+        }
+    }
+
+    /**
+     * Освобождает место буфера, не используя массив повторно: в него, возможно, ещё пишут.
+     */
+    public void discard(byte[] buffer) {
+        if (buffer != null && buffer.length == partSize) {
+            handOver(null);
+        }
+    }
+
+    public synchronized int inUse() {
+        return inUse;
+    }
+
+    public synchronized int waiting() {
+        return waiters.size();
+    }
+
+    private void handOver(byte[] reusable) {
+        MonoSink<byte[]> next;
+        synchronized (this) {
+            next = waiters.poll();
+            if (next == null) {
+                inUse--;
+                if (reusable != null) {
+                    idle.offer(reusable);
+                }
+            }
+        }
+        if (next != null) {
+            next.success(reusable != null ? reusable : take());
+        }
+    }
+
+    private synchronized void removeWaiter(MonoSink<byte[]> sink) {
+        waiters.remove(sink);
+    }
+
+    private byte[] take() {
+        byte[] buffer = idle.poll();
+        return buffer != null ? buffer : new byte[partSize];
+    }
+}
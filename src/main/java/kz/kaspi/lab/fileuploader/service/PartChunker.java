@@ -0,0 +1,110 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Нарезает поток DataBuffer на части фиксированного размера для S3 multipart.
+ * Следующий буфер запрашивается у источника только по запросу подписчика,
+ * так что в памяти одновременно находится лишь несколько частей.
+ * Буфер под часть берётся из {@link PartBufferPool} до чтения в него: пока пул исчерпан,
+ * источник не читается. Попутно считает SHA-256 и размер содержимого.
+ */
+final class PartChunker {
+
+    /** Сколько входящих DataBuffer держать в очереди перед нарезкой. */
+    private static final int SOURCE_PREFETCH = 16;
+
+    private PartChunker() {
+    }
+
+    /**
+     * Последняя часть может быть неполной. Для пустого потока выдаётся одна часть нулевой длины.
+     */
+    static Flux<PartChunk> split(Flux<DataBuffer> content, PartBufferPool pool, ContentDigest digest) {
+        return Flux.defer(() -> {
+            Accumulator accumulator = new Accumulator(pool, digest);
+            return content
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .concatMap(accumulator::append, SOURCE_PREFETCH)
+                    .concatWith(Mono.fromSupplier(accumulator::flush))
+                    .doOnDiscard(PartChunk.class, chunk -> pool.release(chunk.data()))
+                    .doFinally(signal -> accumulator.dispose());
+        });
+    }
+
+    record PartChunk(int partNumber, byte[] data, int length) {
+    }
+
+    private static final class Accumulator {
+
+        private final PartBufferPool pool;
+        private final ContentDigest digest;
+        private byte[] current;
+        private int position;
+        private int partNumber;
+
+        Accumulator(PartBufferPool pool, ContentDigest digest) {
+            this.pool = pool;
+            this.digest = digest;
+        }
+
+        Flux<PartChunk> append(DataBuffer buffer) {
+            // Чаще всего буфер целиком ложится в текущую часть — без лишних Flux
+            if (current != null && buffer.readableByteCount() < current.length - position) {
+                try {
+                    copy(buffer, buffer.readableByteCount());
+                    return Flux.empty();
+                } finally {
+                    DataBufferUtils.release(buffer);
+                }
+            }
+            return fill(buffer).doFinally(signal -> DataBufferUtils.release(buffer));
+        }
+
+        private Flux<PartChunk> fill(DataBuffer buffer) {
+            if (buffer.readableByteCount() == 0) {
+                return Flux.empty();
+            }
+            if (current == null) {
+                return pool.acquire().flatMapMany(acquired -> {
+                    current = acquired;
+                    return fill(buffer);
+                });
+            }
+            copy(buffer, Math.min(buffer.readableByteCount(), current.length - position));
+            if (position < current.length) {
+                return Flux.empty();
+            }
+            PartChunk full = new PartChunk(++partNumber, current, position);
+            current = null;
+            position = 0;
+            return Flux.concat(Mono.just(full), Flux.defer(() -> fill(buffer)));
+        }
+
+        private void copy(DataBuffer buffer, int count) {
+            buffer.read(current, position, count);
+            digest.update(current, position, count);
+            position += count;
+        }
+
+        PartChunk flush() {
+            if (current == null) {
+                return partNumber == 0 ? new PartChunk(++partNumber, new byte[0], 0) : null;
+            }
+            PartChunk last = new PartChunk(++partNumber, current, position);
+            current = null;
+            position = 0;
+            return last;
+        }
+
+        void dispose() {
+            if (current != null) {
+                pool.release(current);
+                current = null;
+            }
+        }
+    }
+}
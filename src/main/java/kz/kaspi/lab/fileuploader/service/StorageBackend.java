@@ -0,0 +1,72 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Хранилище объектов. Реализация выбирается через storage.backend (minio | local).
+ * Имена объектов назначает {@link StorageService}, ошибки в StorageException тоже оборачивает он.
+ */
+public interface StorageBackend {
+
+    /**
+     * Потоково записывает объект, попутно считая SHA-256 и размер.
+     * Объект становится видимым для чтения только после успешного завершения.
+     *
+     * @param sizeHint       заявленный размер, 0 если неизвестен
+     * @param existingObject поиск уже сохранённого объекта по хэшу; бэкенд может вызвать его,
+     *                       если хэш известен до записи, и тогда не писать содержимое
+     */
+    Mono<StoredObject> put(String objectName, Flux<DataBuffer> content, String contentType, long sizeHint,
+                           Function<String, Mono<String>> existingObject);
+
+    /**
+     * Читает объект или диапазон [offset, offset + length).
+     *
+     * @param length {@code null} — до конца объекта
+     */
+    Flux<DataBuffer> get(String objectName, long offset, Long length);
+
+    Mono<Void> delete(String objectName);
+
+    /**
+     * Есть ли объект с таким именем.
+     */
+    Mono<Boolean> exists(String objectName);
+
+    /**
+     * Объекты по возрастанию имени после startAfter ({@code null} — с начала), без служебных
+     * файлов бэкенда. Страницы читаются по мере запроса.
+     */
+    Flux<ListedObject> list(String startAfter);
+
+    /**
+     * Удаляет объекты пачкой. Отсутствующий объект ошибкой не считается.
+     */
+    Mono<Void> deleteAll(List<String> objectNames);
+
+    /**
+     * Открывает загрузку по частям (докачка), возвращает её id.
+     */
+    Mono<String> beginMultipart(String objectName, String contentType);
+
+    /**
+     * Загружает часть; повторная загрузка с тем же номером заменяет предыдущую.
+     */
+    Mono<UploadedPart> uploadPart(MultipartTarget target, int partNumber, Flux<DataBuffer> content);
+
+    Mono<Void> completeMultipart(MultipartTarget target, List<UploadedPart> parts);
+
+    Mono<Void> abortMultipart(MultipartTarget target);
+
+    /**
+     * Временный ли сбой: после него ту же запись можно повторить (см. {@link AsyncIngestService}).
+     */
+    default boolean isRetryable(Throwable error) {
+        return false;
+    }
+}
@@ -1,101 +1,200 @@
 package kz.kaspi.lab.fileuploader.service;
 
-import io.minio.MinioClient;
-import io.minio.PutObjectArgs;
-import io.minio.RemoveObjectArgs;
-import io.minio.errors.*;
+import kz.kaspi.lab.fileuploader.entity.Upload.Compression;
 import kz.kaspi.lab.fileuploader.exception.StorageException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
+/**
+ * Работа с хранилищем поверх выбранного {@link StorageBackend}: имена объектов,
+ * сжатие ({@link ContentCompressor}), логирование и приведение ошибок к StorageException.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class StorageService {
 
-    private final MinioClient minioClient;
+    private static final String PACK_SUFFIX = ".pack";
 
-    @Value("${storage.minio.bucket-name}")
-    private String bucketName;
+    private final StorageBackend backend;
+    private final UploadMetrics uploadMetrics;
+    private final ContentCompressor compressor;
+
+    @Value("${storage.backend:minio}")
+    private String backendName;
 
     /**
-     * Загружает файл во временный файл, затем в MinIO.
+     * Потоково сохраняет содержимое под новым именем объекта. Сжимаемое содержимое
+     * пишется сжатым, кодек выбирается по contentType и началу содержимого.
+     *
+     * @param sizeHint       заявленный размер (например, Content-Length), 0 если неизвестен
+     * @param existingObject поиск уже сохранённого объекта по хэшу, см. {@link StorageBackend#put}
      */
-    public Mono<String> uploadFile(Flux<DataBuffer> content, String originalFilename, long fileSize, String contentType) {
-        return Mono.fromCallable(() -> {
-                    // Создаём временный файл
-                    Path tempFile = Files.createTempFile("upload-", "-" + originalFilename);
-
-                    try {
-                        // Сохраняем реактивный поток во временный файл
-                        DataBufferUtils.write(content, tempFile, StandardOpenOption.WRITE)
-                                .share()
-                                .block();
-
-                        // Загружаем в MinIO
-                        String objectName = generateObjectName(originalFilename);
-
-                        try (InputStream is = Files.newInputStream(tempFile)) {
-                            minioClient.putObject(
-                                    PutObjectArgs.builder()
-                                            .bucket(bucketName)
-                                            .object(objectName)
-                                            .stream(is, Files.size(tempFile), -1)
-                                            .contentType(contentType)
-                                            .build()
-                            );
-                        }
-
-                        log.info("File uploaded to MinIO: {}", objectName);
-                        return objectName;
-
-                    } finally {
-                        // Удаляем временный файл в любом случае
-                        Files.deleteIfExists(tempFile);
+    public Mono<StoredObject> uploadFile(Flux<DataBuffer> content, String originalFilename, String contentType,
+                                         long sizeHint, Function<String, Mono<String>> existingObject) {
+        String objectName = generateObjectName(originalFilename);
+
+        Mono<StoredObject> put = compressor.withCodec(contentType, content, (compression, source) -> {
+            if (compression == Compression.NONE) {
+                return backend.put(objectName, source, contentType, sizeHint, existingObject);
+            }
+            AtomicLong originalSize = new AtomicLong();
+            Flux<DataBuffer> compressed = compressor.compress(
+                    source.doOnNext(buffer -> originalSize.addAndGet(buffer.readableByteCount())), compression);
+            return backend.put(objectName, compressed, contentType, sizeHint, existingObject)
+                    .map(stored -> stored.compressed(compression, originalSize.get()));
+        });
+
+        return timed("put", put)
+                .doOnNext(stored -> {
+                    log.info("File stored as {} (sha256={}, reused={}, compression={}, {} -> {} bytes)",
+                            stored.objectName(), stored.contentHash(), stored.reused(),
+                            stored.compression(), stored.size(), stored.storedSize());
+                    if (!stored.reused()) {
+                        uploadMetrics.bytesStored(stored.storedSize());
                     }
                 })
-                .subscribeOn(Schedulers.boundedElastic())
                 .onErrorMap(e -> {
                     log.error("Failed to upload file to storage", e);
-                    return new StorageException("Failed to upload file: " + e.getMessage(), e);
+                    return new StorageException("Failed to upload file: " + e.getMessage(), e, backend.isRetryable(e));
                 });
     }
 
     /**
-     * Удаляет файл из хранилища (для отката).
+     * Записывает пак маленьких файлов как есть: без сжатия и без поиска такого же содержимого.
      */
-    public Mono<Void> deleteFile(String objectName) {
-        return Mono.fromRunnable(() -> {
-                    try {
-                        minioClient.removeObject(
-                                RemoveObjectArgs.builder()
-                                        .bucket(bucketName)
-                                        .object(objectName)
-                                        .build()
-                        );
-                        log.info("Deleted file from storage: {}", objectName);
-                    } catch (Exception e) {
-                        log.error("Failed to delete file {} from storage", objectName, e);
-                    }
+    public Mono<StoredObject> uploadPack(Flux<DataBuffer> content, long size) {
+        String objectName = UUID.randomUUID() + PACK_SUFFIX;
+        return timed("pack_put", backend.put(objectName, content, MediaType.APPLICATION_OCTET_STREAM_VALUE, size,
+                        contentHash -> Mono.empty()))
+                .doOnNext(stored -> {
+                    log.info("Pack stored as {} ({} bytes)", stored.objectName(), stored.storedSize());
+                    uploadMetrics.bytesStored(stored.storedSize());
                 })
-                .subscribeOn(Schedulers.boundedElastic())
-                .then();
+                .onErrorMap(e -> new StorageException("Failed to upload pack: " + e.getMessage(), e, backend.isRetryable(e)));
+    }
+
+    /**
+     * Открывает multipart-загрузку, части которой приходят отдельными запросами (докачка).
+     */
+    public Mono<MultipartTarget> beginMultipart(String originalFilename, String contentType) {
+        String objectName = generateObjectName(originalFilename);
+        return timed("multipart_begin", backend.beginMultipart(objectName, contentType))
+                .map(uploadId -> new MultipartTarget(objectName, uploadId))
+                .onErrorMap(e -> new StorageException("Failed to start multipart upload: " + e.getMessage(), e));
+    }
+
+    /**
+     * Загружает одну часть открытой multipart-загрузки. Часть не может быть больше
+     * storage.upload.part-size.
+     */
+    public Mono<UploadedPart> uploadPart(MultipartTarget target, int partNumber, Flux<DataBuffer> content) {
+        return timed("multipart_part", backend.uploadPart(target, partNumber, content))
+                .doOnNext(part -> uploadMetrics.bytesStored(part.size()))
+                .onErrorMap(e -> !(e instanceof StorageException),
+                        e -> new StorageException("Failed to upload part: " + e.getMessage(), e));
+    }
+
+    public Mono<Void> completeMultipart(MultipartTarget target, List<UploadedPart> parts) {
+        return timed("multipart_complete", backend.completeMultipart(target, parts))
+                .doOnSuccess(v -> log.info("Multipart upload completed: {}", target.objectName()))
+                .onErrorMap(e -> new StorageException("Failed to complete multipart upload: " + e.getMessage(), e));
+    }
+
+    public Mono<Void> abortMultipart(MultipartTarget target) {
+        return timed("multipart_abort", backend.abortMultipart(target))
+                .doOnSuccess(v -> log.info("Aborted multipart upload {} for {}", target.uploadId(), target.objectName()))
+                .onErrorResume(e -> {
+                    log.error("Failed to abort multipart upload {} for {}", target.uploadId(), target.objectName(), e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Читает объект или его диапазон; offset и length — в исходном (распакованном) содержимом.
+     * Сжатый объект читается с начала, диапазон отсчитывается после распаковки.
+     *
+     * @param compression как объект записан, {@code null} — без сжатия
+     * @param length      {@code null} — до конца объекта
+     */
+    public Flux<DataBuffer> downloadFile(String objectName, Compression compression, long offset, Long length) {
+        if (compression == null || compression == Compression.NONE) {
+            return backend.get(objectName, offset, length)
+                    .onErrorMap(e -> new StorageException("Failed to download file: " + e.getMessage(), e));
+        }
+        Flux<DataBuffer> content = compressor.decompress(
+                backend.get(objectName, 0, null)
+                        .onErrorMap(e -> new StorageException("Failed to download file: " + e.getMessage(), e)),
+                compression);
+        if (offset > 0) {
+            content = DataBufferUtils.skipUntilByteCount(content, offset);
+        }
+        if (length != null) {
+            content = DataBufferUtils.takeUntilByteCount(content, length);
+        }
+        return content.onErrorMap(e -> !(e instanceof StorageException),
+                e -> new StorageException("Failed to decompress file: " + e.getMessage(), e));
+    }
+
+    /**
+     * Удаляет файл из хранилища (для отката). Ошибка только логируется.
+     */
+    public Mono<Void> deleteFile(String objectName) {
+        return timed("delete", backend.delete(objectName))
+                .doOnSuccess(v -> log.info("Deleted file from storage: {}", objectName))
+                .onErrorResume(e -> {
+                    log.error("Failed to delete file {} from storage", objectName, e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Есть ли объект в хранилище. В отличие от {@link #deleteFile}, ошибка возвращается вызывающему.
+     */
+    public Mono<Boolean> objectExists(String objectName) {
+        return timed("stat", backend.exists(objectName))
+                .onErrorMap(e -> !(e instanceof StorageException),
+                        e -> new StorageException("Failed to check file " + objectName + ": " + e.getMessage(), e));
+    }
+
+    /**
+     * Объекты хранилища по возрастанию имени после startAfter ({@code null} — с начала).
+     */
+    public Flux<ListedObject> listObjects(String startAfter) {
+        return backend.list(startAfter)
+                .onErrorMap(e -> new StorageException("Failed to list objects: " + e.getMessage(), e));
+    }
+
+    /**
+     * Удаляет объекты пачкой. В отличие от {@link #deleteFile}, ошибка возвращается вызывающему.
+     */
+    public Mono<Void> deleteFiles(List<String> objectNames) {
+        if (objectNames.isEmpty()) {
+            return Mono.empty();
+        }
+        return timed("delete_batch", backend.deleteAll(objectNames))
+                .doOnSuccess(v -> log.info("Deleted {} files from storage", objectNames.size()))
+                .onErrorMap(e -> !(e instanceof StorageException),
+                        e -> new StorageException("Failed to delete files: " + e.getMessage(), e));
+    }
+
+    private <T> Mono<T> timed(String operation, Mono<T> source) {
+        return uploadMetrics.timeStorage(operation, backendName, source);
     }
 
-    private String generateObjectName(String originalFilename) {
+    static String generateObjectName(String originalFilename) {
         String extension = "";
         int lastDot = originalFilename.lastIndexOf('.');
         if (lastDot > 0) {
@@ -103,4 +202,4 @@ public class StorageService {
         }
         return UUID.randomUUID() + extension;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,52 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.entity.Blob;
+import kz.kaspi.lab.fileuploader.entity.Upload.Compression;
+
+import java.util.UUID;
+
+/**
+ * Результат записи содержимого в хранилище.
+ *
+ * @param size        исходный размер содержимого
+ * @param contentHash SHA-256 объекта в хранилище, то есть уже сжатого содержимого
+ * @param reused      {@code true}, если объект с таким же содержимым уже был в хранилище
+ *                    и новая запись не выполнялась
+ * @param storedSize  размер объекта в хранилище
+ * @param packId      пак, в который записан файл, {@code null} — отдельный объект
+ * @param packOffset  начало файла в объекте пака
+ */
+public record StoredObject(String objectName, long size, String contentHash, boolean reused,
+                           Compression compression, long storedSize, UUID packId, Long packOffset) {
+
+    public StoredObject(String objectName, long size, String contentHash, boolean reused) {
+        this(objectName, size, contentHash, reused, Compression.NONE, size, null, null);
+    }
+
+    /**
+     * Файл, записанный в пак без сжатия.
+     */
+    public static StoredObject packed(PackEntry entry, String contentHash, long size) {
+        return new StoredObject(entry.objectName(), size, contentHash, false, Compression.NONE, size,
+                entry.packId(), entry.offset());
+    }
+
+    public StoredObject withObjectName(String objectName) {
+        return new StoredObject(objectName, size, contentHash, reused, compression, storedSize, packId, packOffset);
+    }
+
+    /**
+     * То же содержимое, уже записанное другой загрузкой — отдельным объектом или в пак.
+     */
+    public StoredObject reusedAs(Blob blob) {
+        return new StoredObject(blob.getStoragePath(), size, contentHash, true, compression, storedSize,
+                blob.getPackId(), blob.getPackOffset());
+    }
+
+    /**
+     * Бэкенд видит только сжатый поток: его размер становится storedSize, а size — исходный.
+     */
+    public StoredObject compressed(Compression compression, long originalSize) {
+        return new StoredObject(objectName, originalSize, contentHash, reused, compression, size, packId, packOffset);
+    }
+}
@@ -0,0 +1,96 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.dto.UploadListItem;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import kz.kaspi.lab.fileuploader.repository.UploadSearch;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Список загрузок для дашбордов. Курсор — непрозрачная строка с (created_at, id)
+ * последней отданной записи; следующая страница читается по индексу сразу после неё.
+ */
+@Service
+public class UploadListingService {
+
+    private final UploadRepository uploadRepository;
+    private final int defaultLimit;
+    private final int maxLimit;
+
+    public UploadListingService(
+            UploadRepository uploadRepository,
+            @Value("${upload.listing.default-limit:100}") int defaultLimit,
+            @Value("${upload.listing.max-limit:1000}") int maxLimit) {
+        this.uploadRepository = uploadRepository;
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Проверяет параметры запроса, {@code null} — параметр не задан.
+     * Лимит больше upload.listing.max-limit урезается до него.
+     *
+     * @throws IllegalArgumentException некорректный курсор, лимит или диапазон дат
+     */
+    public UploadSearch search(UploadStatus status, String contentType, Instant from, Instant to,
+                               String cursor, Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        Position after = cursor != null ? decodeCursor(cursor) : null;
+        return new UploadSearch(status, contentType, from, to,
+                after != null ? after.createdAt() : null,
+                after != null ? after.id() : null,
+                limit == null ? defaultLimit : Math.min(limit, maxLimit));
+    }
+
+    public Flux<UploadListItem> list(UploadSearch search) {
+        return uploadRepository.search(search).map(this::toItem);
+    }
+
+    private UploadListItem toItem(Upload upload) {
+        return new UploadListItem(
+                upload.getId(),
+                upload.getIdempotencyKey(),
+                upload.getStatus(),
+                upload.getOriginalFilename(),
+                upload.getContentType(),
+                upload.getFileSize(),
+                upload.getErrorMessage(),
+                upload.getCreatedAt(),
+                upload.getUpdatedAt(),
+                encodeCursor(upload)
+        );
+    }
+
+    static String encodeCursor(Upload upload) {
+        String position = upload.getCreatedAt() + "_" + upload.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Position decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int separator = position.indexOf('_');
+            return new Position(Instant.parse(position.substring(0, separator)),
+                    UUID.fromString(position.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    private record Position(Instant createdAt, UUID id) {
+    }
+}
@@ -0,0 +1,172 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Метрики конвейера загрузки. Теги берутся только из фиксированных наборов
+ * (stage, operation, outcome, status, reason) — без id и имён файлов, чтобы число
+ * временных рядов в Prometheus не росло с трафиком. Id загрузки пишется только в span.
+ */
+@Component
+public class UploadMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+    private final Counter bytesIngested;
+    private final Counter bytesStored;
+
+    public UploadMetrics(MeterRegistry meterRegistry, ObservationRegistry observationRegistry, UploadProgress uploadProgress) {
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+        this.bytesIngested = Counter.builder("upload.bytes.ingested")
+                .description("Bytes read from upload request bodies")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.bytesStored = Counter.builder("upload.bytes.stored")
+                .description("Bytes written to the storage backend (deduplicated content is not counted)")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("upload.in.flight", uploadProgress, UploadProgress::active)
+                .description("Uploads currently being transferred to storage from this node")
+                .register(meterRegistry);
+    }
+
+    public enum Stage {
+        /** Проверка idempotency key в локальном кэше. */
+        CACHE_LOOKUP,
+        /** Атомарный захват ключа в БД. */
+        CLAIM,
+        /** От начала запроса до заголовков части 'file' в multipart. */
+        PARSE,
+        /** Запись содержимого в хранилище с дедупликацией. */
+        STORE,
+        /** Сохранение итоговой записи Upload. */
+        DB_SAVE;
+
+        private String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public enum Compensation {
+        /** Запись в БД не удалась после записи в хранилище — снята ссылка на blob. */
+        DB_SAVE_FAILED,
+        /** Такое же содержимое уже хранится — только что записанный объект удалён. */
+        DUPLICATE_CONTENT,
+        /** Не удалось взять ссылку на blob — записанный объект удалён. */
+        BLOB_REGISTER_FAILED;
+
+        private String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Время этапа с тегом outcome (success | error | cancelled).
+     */
+    public <T> Mono<T> timeStage(Stage stage, Mono<T> source) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return source.doFinally(signal -> sample.stop(stageTimer(stage, outcome(signal))));
+        });
+    }
+
+    /**
+     * Время операции хранилища (put, delete, multipart_*) с тегом выбранного бэкенда.
+     */
+    public <T> Mono<T> timeStorage(String operation, String backend, Mono<T> source) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return source.doFinally(signal -> sample.stop(Timer.builder("storage.operation.duration")
+                    .description("Latency of storage backend operations")
+                    .tag("operation", operation)
+                    .tag("backend", backend)
+                    .tag("outcome", outcome(signal))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)));
+        });
+    }
+
+    public Timer.Sample startStage() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stopStage(Stage stage, Timer.Sample sample) {
+        sample.stop(stageTimer(stage, "success"));
+    }
+
+    /**
+     * Span на одну загрузку: от начала передачи в хранилище до сохранения статуса.
+     * Станет span'ом трассировки, как только в classpath появится micrometer-tracing bridge;
+     * без него даёт таймер upload.process и long task timer upload.process.active.
+     */
+    public <T> Mono<T> observeUpload(UUID uploadId, Mono<T> source) {
+        return Mono.defer(() -> {
+            Observation observation = Observation.createNotStarted("upload.process", observationRegistry)
+                    .contextualName("upload")
+                    .highCardinalityKeyValue("upload.id", String.valueOf(uploadId))
+                    .start();
+            return source
+                    .doOnSuccess(value -> observation.lowCardinalityKeyValue(
+                            KeyValue.of("status", Upload.UploadStatus.SUCCESS.name())))
+                    .doOnError(e -> observation
+                            .lowCardinalityKeyValue(KeyValue.of("status", Upload.UploadStatus.FAILED.name()))
+                            .error(e))
+                    .doFinally(signal -> observation.stop());
+        });
+    }
+
+    public void bytesIngested(long bytes) {
+        bytesIngested.increment(bytes);
+    }
+
+    public void bytesStored(long bytes) {
+        bytesStored.increment(bytes);
+    }
+
+    public void outcome(Upload.UploadStatus status) {
+        Counter.builder("upload.outcome")
+                .description("Finished uploads by final status")
+                .tag("status", status.name())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void compensation(Compensation reason) {
+        Counter.builder("upload.compensation")
+                .description("Compensating storage deletes and blob releases")
+                .tag("reason", reason.tag())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private Timer stageTimer(Stage stage, String outcome) {
+        return Timer.builder("upload.stage.duration")
+                .description("Latency of upload pipeline stages")
+                .tag("stage", stage.tag())
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "success";
+        };
+    }
+}
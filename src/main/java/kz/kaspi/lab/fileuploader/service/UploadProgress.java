@@ -0,0 +1,41 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Прогресс загрузок, которые сейчас передаются в хранилище с этого узла.
+ */
+@Component
+public class UploadProgress {
+
+    private final ConcurrentMap<UUID, AtomicLong> transferred = new ConcurrentHashMap<>();
+
+    public AtomicLong start(UUID uploadId) {
+        AtomicLong counter = new AtomicLong();
+        transferred.put(uploadId, counter);
+        return counter;
+    }
+
+    public void finish(UUID uploadId) {
+        transferred.remove(uploadId);
+    }
+
+    public int active() {
+        return transferred.size();
+    }
+
+    public Set<UUID> ids() {
+        return Set.copyOf(transferred.keySet());
+    }
+
+    public Optional<Long> bytesTransferred(UUID uploadId) {
+        return Optional.ofNullable(transferred.get(uploadId)).map(AtomicLong::get);
+    }
+}
@@ -0,0 +1,307 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import kz.kaspi.lab.fileuploader.repository.MaintenanceLeaseRepository;
+import kz.kaspi.lab.fileuploader.repository.StaleUpload;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновая сверка базы с хранилищем (upload.reconciler.*) — для того, что осталось
+ * после падения узла посреди загрузки:
+ * <ul>
+ *     <li>записи, зависшие в PROCESSING, переводятся в FAILED, и клиент может повторить загрузку;</li>
+ *     <li>объекты хранилища, на которые не ссылается ни одна таблица, удаляются.</li>
+ * </ul>
+ * Проход выполняет один узел — тот, кто взял аренду в maintenance_leases; позиция листинга
+ * хранится в аренде, и следующий проход (на любом узле) продолжает с неё.
+ * Между пачками проход делает паузу и ждёт, пока нагрузка на узле не спадёт ниже busy-ratio
+ * от лимитов admission; не дождавшись, проход прерывается до следующего раза.
+ * <p>
+ * Зависшей считается запись, не обновлявшаяся stale-after: каждый узел раз в heartbeat-interval
+ * обновляет updated_at загрузок, которые ещё выполняет, так что долгие загрузки не трогаются.
+ */
+@Slf4j
+@Service
+public class UploadReconciler {
+
+    private static final String LEASE_NAME = "upload-reconciler";
+    private static final UUID MIN_ID = new UUID(0, 0);
+    private static final Duration BUSY_POLL = Duration.ofSeconds(1);
+    private static final String STALE_ERROR = "Upload was interrupted, please retry";
+    // Столько пропущенных heartbeat подряд, прежде чем живую загрузку сочтут зависшей
+    private static final int MIN_MISSED_HEARTBEATS = 3;
+
+    private final UploadRepository uploadRepository;
+    private final MaintenanceLeaseRepository leaseRepository;
+    private final StorageService storageService;
+    private final IdempotencyCache idempotencyCache;
+    private final UploadProgress uploadProgress;
+    private final AsyncIngestService asyncIngestService;
+    private final AdmissionController admissionController;
+    private final Counter staleFailed;
+    private final Counter orphansDeleted;
+
+    private final boolean enabled;
+    private final Duration staleAfter;
+    private final Duration orphanGrace;
+    private final boolean dryRun;
+    private final int batchSize;
+    private final int pageSize;
+    private final long maxObjectsPerRun;
+    private final Duration pause;
+    private final double busyRatio;
+    private final Duration busyWait;
+    private final double leaseTtlSeconds;
+    private final String holder;
+
+    public UploadReconciler(
+            UploadRepository uploadRepository,
+            MaintenanceLeaseRepository leaseRepository,
+            StorageService storageService,
+            IdempotencyCache idempotencyCache,
+            UploadProgress uploadProgress,
+            AsyncIngestService asyncIngestService,
+            AdmissionController admissionController,
+            MeterRegistry meterRegistry,
+            @Value("${upload.reconciler.enabled:true}") boolean enabled,
+            @Value("${upload.reconciler.stale-after:30m}") Duration staleAfter,
+            @Value("${upload.reconciler.heartbeat-interval:PT1M}") Duration heartbeatInterval,
+            @Value("${upload.reconciler.orphan-grace:24h}") Duration orphanGrace,
+            @Value("${upload.reconciler.dry-run:false}") boolean dryRun,
+            @Value("${upload.reconciler.batch-size:500}") int batchSize,
+            @Value("${upload.reconciler.page-size:1000}") int pageSize,
+            @Value("${upload.reconciler.max-objects-per-run:100000}") long maxObjectsPerRun,
+            @Value("${upload.reconciler.pause:200ms}") Duration pause,
+            @Value("${upload.reconciler.busy-ratio:0.5}") double busyRatio,
+            @Value("${upload.reconciler.busy-wait:30s}") Duration busyWait,
+            @Value("${upload.reconciler.lease-ttl:2m}") Duration leaseTtl) {
+        if (staleAfter.compareTo(heartbeatInterval.multipliedBy(MIN_MISSED_HEARTBEATS)) < 0) {
+            throw new IllegalArgumentException("upload.reconciler.stale-after " + staleAfter + " must be at least "
+                    + MIN_MISSED_HEARTBEATS + " x heartbeat-interval " + heartbeatInterval);
+        }
+        this.uploadRepository = uploadRepository;
+        this.leaseRepository = leaseRepository;
+        this.storageService = storageService;
+        this.idempotencyCache = idempotencyCache;
+        this.uploadProgress = uploadProgress;
+        this.asyncIngestService = asyncIngestService;
+        this.admissionController = admissionController;
+        this.staleFailed = Counter.builder("upload.reconciler.stale.failed")
+                .description("PROCESSING uploads marked FAILED by the reconciler")
+                .register(meterRegistry);
+        this.orphansDeleted = Counter.builder("upload.reconciler.orphans.deleted")
+                .description("Unreferenced storage objects removed by the reconciler")
+                .register(meterRegistry);
+        this.enabled = enabled;
+        this.staleAfter = staleAfter;
+        this.orphanGrace = orphanGrace;
+        this.dryRun = dryRun;
+        this.batchSize = batchSize;
+        this.pageSize = pageSize;
+        this.maxObjectsPerRun = maxObjectsPerRun;
+        this.pause = pause;
+        this.busyRatio = busyRatio;
+        this.busyWait = busyWait;
+        this.leaseTtlSeconds = leaseTtl.toMillis() / 1000.0;
+        this.holder = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID().toString().substring(0, 8);
+        if (busyWait.plus(pause).compareTo(leaseTtl) >= 0) {
+            log.warn("upload.reconciler.lease-ttl {} is not longer than busy-wait + pause, the lease may expire mid-run", leaseTtl);
+        }
+    }
+
+    /**
+     * Обновляет updated_at загрузок этого узла. Выполняется и там, где сверка выключена:
+     * проход на другом узле не должен счесть их зависшими.
+     */
+    @Scheduled(fixedDelayString = "${upload.reconciler.heartbeat-interval:PT1M}")
+    public Mono<Void> heartbeat() {
+        Set<UUID> ids = new HashSet<>(uploadProgress.ids());
+        ids.addAll(asyncIngestService.queuedIds());
+        return uploadRepository.touchAll(ids)
+                .onErrorResume(e -> {
+                    log.warn("Failed to refresh {} in-flight uploads", ids.size(), e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    @Scheduled(fixedDelayString = "${upload.reconciler.interval:PT5M}", initialDelayString = "${upload.reconciler.interval:PT5M}")
+    public Mono<Void> reconcile() {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return leaseRepository.acquire(LEASE_NAME, holder, leaseTtlSeconds)
+                .flatMap(lease -> {
+                    Run run = new Run(lease.getScanCursor());
+                    return failStale(run)
+                            .then(Mono.defer(() -> removeOrphans(run)))
+                            .onErrorResume(RunAborted.class, e -> {
+                                log.info("Reconciliation paused: {}", e.getMessage());
+                                return Mono.empty();
+                            })
+                            .then(Mono.defer(() -> leaseRepository.release(LEASE_NAME, holder)));
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to reconcile uploads with storage", e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Keyset-проход по PROCESSING-записям старше stale-after, по странице batch-size за запрос.
+     */
+    private Mono<Void> failStale(Run run) {
+        Instant staleBefore = Instant.now().minus(staleAfter);
+        AtomicLong failed = new AtomicLong();
+        return failStalePage(MIN_ID, Instant.EPOCH, staleBefore, failed)
+                .expand(page -> {
+                    if (page.size() < batchSize) {
+                        return Mono.empty();
+                    }
+                    StaleUpload last = page.get(page.size() - 1);
+                    return throttle(run).then(failStalePage(last.id(), last.createdAt(), staleBefore, failed));
+                })
+                .then(Mono.fromRunnable(() -> {
+                    if (failed.get() > 0) {
+                        log.warn("Marked {} stale PROCESSING uploads as FAILED", failed.get());
+                    }
+                }));
+    }
+
+    private Mono<List<StaleUpload>> failStalePage(UUID afterId, Instant afterCreatedAt, Instant staleBefore, AtomicLong failed) {
+        return uploadRepository.failStale(afterCreatedAt, afterId, staleBefore, batchSize, STALE_ERROR)
+                .doOnNext(row -> {
+                    if (row.failed()) {
+                        log.info("Upload {} has been PROCESSING since {}, marking FAILED", row.id(), row.createdAt());
+                        idempotencyCache.put(row.idempotencyKey(), UploadStatus.FAILED, row.id());
+                        staleFailed.increment();
+                        failed.incrementAndGet();
+                    }
+                })
+                .collectList();
+    }
+
+    /**
+     * Листинг хранилища с позиции из аренды, не больше max-objects-per-run объектов за проход.
+     * Объекты моложе orphan-grace не рассматриваются: между записью объекта и строкой
+     * в базе, которая на него сошлётся, всегда есть окно.
+     */
+    private Mono<Void> removeOrphans(Run run) {
+        Instant graceBefore = Instant.now().minus(orphanGrace);
+        Instant staleBefore = Instant.now().minus(staleAfter);
+        AtomicLong listed = new AtomicLong();
+        AtomicLong removed = new AtomicLong();
+        return storageService.listObjects(run.cursor)
+                .take(maxObjectsPerRun)
+                .buffer(pageSize)
+                .concatMap(page -> removeUnreferenced(page, graceBefore, staleBefore)
+                        .doOnNext(removed::addAndGet)
+                        .then(Mono.defer(() -> {
+                            listed.addAndGet(page.size());
+                            run.cursor = page.get(page.size() - 1).name();
+                            return throttle(run);
+                        })), 1)
+                .then(Mono.defer(() -> {
+                    boolean finished = listed.get() < maxObjectsPerRun;
+                    log.info("Reconciled {} storage objects, {} orphans {}{}", listed.get(), removed.get(),
+                            dryRun ? "found" : "removed", finished ? ", listing complete" : "");
+                    if (finished) {
+                        // Следующий проход начнёт листинг сначала
+                        run.cursor = null;
+                    }
+                    return renew(run);
+                }));
+    }
+
+    private Mono<Integer> removeUnreferenced(List<ListedObject> page, Instant graceBefore, Instant staleBefore) {
+        List<String> candidates = page.stream()
+                .filter(object -> object.lastModified().isBefore(graceBefore))
+                .map(ListedObject::name)
+                .toList();
+        return uploadRepository.findUnreferenced(candidates, staleBefore)
+                .collectList()
+                .flatMap(orphans -> {
+                    if (orphans.isEmpty()) {
+                        return Mono.just(0);
+                    }
+                    log.warn("Found {} unreferenced storage objects, e.g. {}{}", orphans.size(), orphans.get(0),
+                            dryRun ? " (dry run, keeping)" : "");
+                    if (dryRun) {
+                        return Mono.just(orphans.size());
+                    }
+                    return storageService.deleteFiles(orphans)
+                            .doOnSuccess(v -> orphansDeleted.increment(orphans.size()))
+                            .thenReturn(orphans.size());
+                });
+    }
+
+    /**
+     * Пауза между пачками, ожидание спада нагрузки и продление аренды с текущей позицией.
+     */
+    private Mono<Void> throttle(Run run) {
+        return Mono.delay(pause)
+                .then(Mono.defer(this::awaitIdle))
+                .then(Mono.defer(() -> renew(run)));
+    }
+
+    private Mono<Void> awaitIdle() {
+        return Flux.interval(Duration.ZERO, BUSY_POLL)
+                .filter(tick -> !busy())
+                .next()
+                .timeout(busyWait, Mono.error(() -> new RunAborted("foreground load stayed above "
+                        + busyRatio + " of admission limits for " + busyWait)))
+                .then();
+    }
+
+    private boolean busy() {
+        AdmissionController.Limits limits = admissionController.limits();
+        return admissionController.active() > limits.maxConcurrent() * busyRatio
+                || admissionController.inFlightBytes() > limits.maxInFlightBytes() * busyRatio;
+    }
+
+    private Mono<Void> renew(Run run) {
+        return leaseRepository.renew(LEASE_NAME, holder, run.cursor, leaseTtlSeconds)
+                .flatMap(updated -> updated > 0
+                        ? Mono.<Void>empty()
+                        : Mono.error(new RunAborted("lease " + LEASE_NAME + " was taken over")));
+    }
+
+    /**
+     * Состояние прохода: позиция листинга хранилища.
+     */
+    private static final class Run {
+
+        private String cursor;
+
+        Run(String cursor) {
+            this.cursor = cursor;
+        }
+    }
+
+    /**
+     * Проход остановлен до следующего запуска: узел занят или аренда потеряна.
+     */
+    private static final class RunAborted extends RuntimeException {
+
+        RunAborted(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
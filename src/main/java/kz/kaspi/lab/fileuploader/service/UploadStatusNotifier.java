@@ -0,0 +1,187 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.r2dbc.postgresql.api.Notification;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Wrapped;
+import jakarta.annotation.PreDestroy;
+import kz.kaspi.lab.fileuploader.dto.UploadStatusEvent;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Раздаёт смены статусов загрузок подписчикам этого узла. Триггер на uploads делает
+ * NOTIFY upload_status (V8), узел слушает канал одним выделенным соединением вне пула
+ * и передаёт событие только подписчикам этого id.
+ * <p>
+ * Пока соединение переподключается, события теряются — после LISTEN каждый подписчик
+ * получает сигнал resync и перечитывает статусы сам.
+ */
+@Slf4j
+@Component
+public class UploadStatusNotifier {
+
+    static final String CHANNEL = "upload_status";
+
+    private final ConnectionFactory connectionFactory;
+    private final int subscriberBuffer;
+    private final Map<UUID, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final Set<Subscriber> all = ConcurrentHashMap.newKeySet();
+    private volatile Disposable listening;
+
+    public UploadStatusNotifier(
+            @Value("${spring.r2dbc.url}") String url,
+            @Value("${spring.r2dbc.username:}") String username,
+            @Value("${spring.r2dbc.password:}") String password,
+            @Value("${upload.status-stream.subscriber-buffer:256}") int subscriberBuffer) {
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(url).mutate();
+        if (!username.isEmpty()) {
+            options.option(ConnectionFactoryOptions.USER, username);
+        }
+        if (!password.isEmpty()) {
+            options.option(ConnectionFactoryOptions.PASSWORD, password);
+        }
+        this.connectionFactory = ConnectionFactories.get(options.build());
+        this.subscriberBuffer = subscriberBuffer;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        listening = Flux.usingWhen(
+                        Mono.from(connectionFactory.create()),
+                        this::listen,
+                        connection -> Mono.from(connection.close()))
+                // Соединение закрылось без ошибки — тоже переподключаемся
+                .concatWith(Mono.error(() -> new IllegalStateException("LISTEN connection closed")))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("Upload status LISTEN connection lost, reconnecting: {}",
+                                signal.failure().getMessage())))
+                .subscribe(this::dispatch);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (listening != null) {
+            listening.dispose();
+        }
+    }
+
+    /**
+     * События по этим id и сигналы resync ({@link Signal#resync()}), первым — resync.
+     * Подписчик, не успевающий читать, получает ошибку переполнения, а не тормозит остальных.
+     */
+    public Flux<Signal> subscribe(Collection<UUID> ids) {
+        return Flux.defer(() -> {
+            Subscriber subscriber = new Subscriber(Set.copyOf(ids),
+                    Sinks.many().unicast().onBackpressureBuffer(Queues.<Signal>get(subscriberBuffer).get()));
+            all.add(subscriber);
+            subscriber.ids().forEach(id -> subscribers.computeIfAbsent(id, key -> ConcurrentHashMap.newKeySet()).add(subscriber));
+            // Первый resync — уже после регистрации: подписчик читает статусы, не пропуская уведомлений
+            return Flux.concat(Mono.just(Signal.RESYNC), subscriber.sink().asFlux())
+                    .doFinally(signal -> unsubscribe(subscriber));
+        });
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        all.remove(subscriber);
+        subscriber.ids().forEach(id -> subscribers.computeIfPresent(id, (key, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        }));
+    }
+
+    private Flux<Signal> listen(Connection connection) {
+        PostgresqlConnection postgres = unwrap(connection);
+        return postgres.createStatement("LISTEN " + CHANNEL)
+                .execute()
+                .flatMap(result -> result.getRowsUpdated())
+                .then()
+                .doOnSuccess(v -> log.info("Listening for upload status changes on channel {}", CHANNEL))
+                .thenMany(Flux.concat(
+                        Mono.just(Signal.RESYNC),
+                        postgres.getNotifications().mapNotNull(UploadStatusNotifier::parse)));
+    }
+
+    /**
+     * Вызывается последовательно из одного потока уведомлений.
+     */
+    private void dispatch(Signal signal) {
+        Collection<Subscriber> targets = signal.resync()
+                ? all
+                : subscribers.getOrDefault(signal.event().id(), Set.of());
+        for (Subscriber subscriber : targets) {
+            if (subscriber.sink().tryEmitNext(signal) == Sinks.EmitResult.FAIL_OVERFLOW) {
+                subscriber.sink().tryEmitError(new IllegalStateException("Status subscriber is too slow"));
+            }
+        }
+    }
+
+    private static PostgresqlConnection unwrap(Connection connection) {
+        Object current = connection;
+        while (!(current instanceof PostgresqlConnection) && current instanceof Wrapped<?> wrapped) {
+            current = wrapped.unwrap();
+        }
+        if (current instanceof PostgresqlConnection postgres) {
+            return postgres;
+        }
+        throw new IllegalStateException("LISTEN requires an r2dbc-postgresql connection, got " + connection.getClass());
+    }
+
+    /**
+     * id|status|file_size|error_message, см. V8__notify_upload_status.sql.
+     */
+    static Signal parse(Notification notification) {
+        String payload = notification.getParameter();
+        if (payload == null) {
+            return null;
+        }
+        String[] fields = payload.split("\\|", 4);
+        try {
+            return new Signal(new UploadStatusEvent(
+                    UUID.fromString(fields[0]),
+                    UploadStatus.valueOf(fields[1]),
+                    fields.length > 2 && !fields[2].isEmpty() ? Long.valueOf(fields[2]) : null,
+                    fields.length > 3 && !fields[3].isEmpty() ? fields[3] : null));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            log.warn("Malformed upload status notification: {}", payload);
+            return null;
+        }
+    }
+
+    /**
+     * Смена статуса либо, если event пуст, resync: уведомления могли потеряться,
+     * статусы нужно перечитать из базы.
+     */
+    public record Signal(UploadStatusEvent event) {
+
+        static final Signal RESYNC = new Signal(null);
+
+        public boolean resync() {
+            return event == null;
+        }
+    }
+
+    private record Subscriber(Set<UUID> ids, Sinks.Many<Signal> sink) {
+    }
+}
@@ -0,0 +1,65 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.dto.UploadStatusEvent;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Поток статусов для подписчика: одно чтение из базы на подписку (и после переподключения
+ * LISTEN), дальше — только уведомления {@link UploadStatusNotifier}.
+ */
+@Service
+@RequiredArgsConstructor
+public class UploadStatusStream {
+
+    private final UploadRepository uploadRepository;
+    private final UploadStatusNotifier notifier;
+
+    /**
+     * Текущий статус каждого id, затем его смены. Завершается, когда все загрузки
+     * дошли до SUCCESS или FAILED (или не найдены). Подписка на уведомления оформляется
+     * до чтения из базы, поэтому переход между ними не теряется; уведомление, пришедшее
+     * во время чтения, обрабатывается после него.
+     */
+    public Flux<UploadStatusEvent> watch(Set<UUID> ids) {
+        return Flux.defer(() -> {
+            Map<UUID, UploadStatusEvent> sent = new HashMap<>();
+            Set<UUID> pending = new HashSet<>(ids);
+            return notifier.subscribe(ids)
+                    .concatMap(signal -> signal.resync() ? snapshot(ids) : Flux.just(signal.event()))
+                    // То же состояние повторно не отправляется (снимок после уведомления, resync)
+                    .filter(event -> !event.equals(sent.put(event.id(), event)))
+                    .doOnNext(event -> {
+                        if (isFinal(event)) {
+                            pending.remove(event.id());
+                        } else {
+                            pending.add(event.id());
+                        }
+                    })
+                    .takeUntil(event -> pending.isEmpty());
+        });
+    }
+
+    private Flux<UploadStatusEvent> snapshot(Set<UUID> ids) {
+        return uploadRepository.findAllById(ids)
+                .collectMap(Upload::getId, UploadStatusEvent::of)
+                .flatMapIterable(found -> ids.stream()
+                        .map(id -> found.getOrDefault(id, UploadStatusEvent.notFound(id)))
+                        .toList());
+    }
+
+    private static boolean isFinal(UploadStatusEvent event) {
+        return event.status() == null
+                || event.status() == Upload.UploadStatus.SUCCESS
+                || event.status() == Upload.UploadStatus.FAILED;
+    }
+}
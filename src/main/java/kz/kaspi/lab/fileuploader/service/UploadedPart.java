@@ -0,0 +1,4 @@
+package kz.kaspi.lab.fileuploader.service;
+
+public record UploadedPart(int partNumber, String etag, long size) {
+}
@@ -0,0 +1,11 @@
+-- Поиск ссылок на объект хранилища по имени: сверка страницы листинга бакета
+-- одним запросом (UploadReconciler). Без индексов каждое имя — полный проход по таблице
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_blobs_storage_path ON blobs (storage_path);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_packs_object_name ON packs (object_name);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_uploads_storage_path ON uploads (storage_path) WHERE storage_path IS NOT NULL;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_upload_sessions_object_name ON upload_sessions (object_name);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_direct_uploads_object_name ON direct_uploads (object_name);
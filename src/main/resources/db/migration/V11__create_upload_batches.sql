@@ -0,0 +1,16 @@
+-- Пачки пакетной загрузки (POST /api/v1/upload/batch): состав и итог по ключу пачки.
+-- Массивы параллельны и идут в порядке файловых частей запроса; upload_id пуст у файлов,
+-- отклонённых до claim. Повтор с тем же ключом сверяется с item_keys, и если все файлы
+-- пачки в SUCCESS, ответ собирается из этой записи
+CREATE TABLE upload_batches (
+                                batch_key VARCHAR(255) PRIMARY KEY,
+                                item_count INT NOT NULL,
+                                item_keys VARCHAR(255)[] NOT NULL,
+                                filenames VARCHAR(500)[] NOT NULL,
+                                upload_ids UUID[] NOT NULL,
+                                outcomes VARCHAR(20)[] NOT NULL,
+                                statuses VARCHAR(20)[] NOT NULL,
+                                errors TEXT[] NOT NULL,
+                                created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+                                updated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
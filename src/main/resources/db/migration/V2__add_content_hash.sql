@@ -0,0 +1,12 @@
+ALTER TABLE uploads ADD COLUMN content_hash VARCHAR(64);
+
+CREATE INDEX idx_uploads_content_hash ON uploads(content_hash);
+
+-- Один объект в хранилище на уникальное содержимое, ref_count — число ссылающихся uploads
+CREATE TABLE blobs (
+                       content_hash VARCHAR(64) PRIMARY KEY,
+                       storage_path VARCHAR(1000) NOT NULL,
+                       file_size BIGINT NOT NULL,
+                       ref_count INT NOT NULL DEFAULT 0,
+                       created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,28 @@
+-- Сессии докачки: одна сессия = одна S3 multipart-загрузка в MinIO
+CREATE TABLE upload_sessions (
+                                 id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+                                 upload_id UUID NOT NULL REFERENCES uploads(id),
+                                 object_name VARCHAR(1000) NOT NULL,
+                                 multipart_upload_id VARCHAR(1024) NOT NULL,
+                                 chunk_size BIGINT NOT NULL,
+                                 total_size BIGINT,
+                                 status VARCHAR(20) NOT NULL DEFAULT 'OPEN',
+                                 expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+                                 created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+                                 updated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_upload_sessions_upload_id ON upload_sessions(upload_id);
+CREATE INDEX idx_upload_sessions_open_expiry ON upload_sessions(expires_at) WHERE status = 'OPEN';
+-- Commit-ы, зависшие в COMMITTING (узел упал после сборки объекта), забирает очистка сессий
+CREATE INDEX idx_upload_sessions_committing ON upload_sessions(updated_at) WHERE status = 'COMMITTING';
+
+CREATE TABLE upload_session_parts (
+                                      id BIGSERIAL PRIMARY KEY,
+                                      session_id UUID NOT NULL REFERENCES upload_sessions(id) ON DELETE CASCADE,
+                                      part_number INT NOT NULL,
+                                      size BIGINT NOT NULL,
+                                      etag VARCHAR(255) NOT NULL,
+                                      created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+                                      UNIQUE (session_id, part_number)
+);
@@ -0,0 +1,5 @@
+-- Кодек, которым содержимое сжато в хранилище, и размер объекта после сжатия.
+-- file_size остаётся исходным размером файла; у записей до этой миграции stored_size пуст
+ALTER TABLE uploads
+    ADD COLUMN compression VARCHAR(16) DEFAULT 'NONE',
+    ADD COLUMN stored_size BIGINT;
@@ -0,0 +1,16 @@
+-- Индексы под GET /api/v1/uploads: равенство по фильтру, затем (created_at, id).
+-- Страница — обратный проход по индексу от курсора (created_at, id) < (...), без OFFSET и сортировки.
+-- CONCURRENTLY не блокирует запись в большую таблицу; такую миграцию Flyway выполняет вне транзакции.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_uploads_created ON uploads (created_at, id);
+
+-- SUCCESS — подавляющее большинство строк, его список читается по idx_uploads_created с фильтром.
+-- Для PROCESSING и FAILED — небольшой частичный индекс; заменяет малоселективный idx_status
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_uploads_unfinished_created
+    ON uploads (status, created_at, id) WHERE status IN ('PROCESSING', 'FAILED');
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_uploads_content_type_created ON uploads (content_type, created_at, id);
+
+DROP INDEX CONCURRENTLY IF EXISTS idx_status;
+
+-- Дублирует индекс ограничения UNIQUE (idempotency_key) и удорожает каждую вставку
+DROP INDEX CONCURRENTLY IF EXISTS idx_idempotency_key;
@@ -0,0 +1,20 @@
+-- Прямая загрузка в MinIO по presigned URL: байты идут мимо сервиса,
+-- сервис выдаёт URL, а при завершении проверяет объект и переводит upload в SUCCESS.
+-- multipart_upload_id пуст для одиночного PUT
+CREATE TABLE direct_uploads (
+                                id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+                                upload_id UUID NOT NULL REFERENCES uploads(id),
+                                object_name VARCHAR(1000) NOT NULL,
+                                multipart_upload_id VARCHAR(1024),
+                                part_size BIGINT,
+                                expected_size BIGINT NOT NULL,
+                                status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+                                expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+                                created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+                                updated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_direct_uploads_upload_id ON direct_uploads(upload_id);
+CREATE INDEX idx_direct_uploads_pending_expiry ON direct_uploads(expires_at) WHERE status = 'PENDING';
+-- Завершения, зависшие в COMPLETING (узел упал посреди complete), забирает очистка по сроку
+CREATE INDEX idx_direct_uploads_completing ON direct_uploads(updated_at) WHERE status = 'COMPLETING';
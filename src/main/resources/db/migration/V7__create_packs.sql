@@ -0,0 +1,27 @@
+-- Упаковка маленьких файлов: несколько файлов подряд в одном объекте хранилища.
+-- live_bytes — сколько байт пака ещё занято содержимым со ссылками, по нему выбираются паки для уплотнения.
+-- DELETED — пак переписан или пуст, объект удаляется после паузы, пока дочитываются старые ссылки
+CREATE TABLE packs (
+                       id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+                       object_name VARCHAR(1000) NOT NULL,
+                       size BIGINT NOT NULL,
+                       live_bytes BIGINT NOT NULL DEFAULT 0,
+                       status VARCHAR(20) NOT NULL DEFAULT 'SEALED',
+                       created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+                       updated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_packs_status_created ON packs(status, created_at);
+
+-- Содержимое внутри пака: storage_path — объект пака, pack_offset — начало файла в нём,
+-- длина — file_size у blobs и stored_size у uploads
+ALTER TABLE blobs
+    ADD COLUMN pack_id UUID,
+    ADD COLUMN pack_offset BIGINT;
+
+ALTER TABLE uploads
+    ADD COLUMN pack_id UUID,
+    ADD COLUMN pack_offset BIGINT;
+
+CREATE INDEX idx_blobs_pack_id ON blobs(pack_id) WHERE pack_id IS NOT NULL;
+CREATE INDEX idx_uploads_pack_id ON uploads(pack_id) WHERE pack_id IS NOT NULL;
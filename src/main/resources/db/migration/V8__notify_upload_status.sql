@@ -0,0 +1,18 @@
+-- Смена статуса загрузки публикуется в канал upload_status (см. UploadStatusNotifier).
+-- NOTIFY транзакционный: событие уходит, только если изменение закоммичено.
+-- Полезная нагрузка — id|status|file_size|error_message, сообщение об ошибке последним
+-- (может содержать '|') и обрезано, чтобы не упереться в лимит NOTIFY в 8000 байт
+CREATE OR REPLACE FUNCTION notify_upload_status() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('upload_status',
+                      NEW.id || '|' || NEW.status || '|' || COALESCE(NEW.file_size::text, '') || '|'
+                          || COALESCE(left(NEW.error_message, 1000), ''));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_uploads_status_notify
+    AFTER UPDATE OF status ON uploads
+    FOR EACH ROW
+    WHEN (OLD.status IS DISTINCT FROM NEW.status)
+EXECUTE FUNCTION notify_upload_status();
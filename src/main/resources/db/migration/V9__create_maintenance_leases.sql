@@ -0,0 +1,10 @@
+-- Аренда фоновых задач, которые должны идти на одном узле за раз (см. UploadReconciler).
+-- Узел берёт аренду, если она свободна, истекла или уже его, и продлевает её по ходу работы.
+-- scan_cursor — где задача остановилась, следующий держатель продолжает с этого места
+CREATE TABLE maintenance_leases (
+                                    name VARCHAR(100) PRIMARY KEY,
+                                    holder VARCHAR(255) NOT NULL,
+                                    expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+                                    scan_cursor VARCHAR(1000),
+                                    updated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
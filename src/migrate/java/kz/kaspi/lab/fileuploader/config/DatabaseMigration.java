@@ -0,0 +1,37 @@
+package kz.kaspi.lab.fileuploader.config;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.flyway.autoconfigure.FlywayAutoConfiguration;
+import org.springframework.core.SpringProperties;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Миграции отдельным шагом: {@code java -jar file-uploader.jar migrate}. Поднимается только
+ * Flyway с настройками spring.flyway.* из того же application.yaml, миграции применяются,
+ * и процесс завершается — без веб-сервера, R2DBC и MinIO.
+ * <p>
+ * Класс намеренно без {@code @Configuration}: его не подхватывает сканирование компонентов приложения.
+ * Вместе с JDBC и Flyway попадает в сборку только с Maven-профилем migrate (включён по умолчанию).
+ */
+@ImportAutoConfiguration(FlywayAutoConfiguration.class)
+public class DatabaseMigration {
+
+    public static void run(String[] args) {
+        // AOT-артефакты собираются для приложения, для этого контекста их нет
+        SpringProperties.setProperty("spring.aot.enabled", "false");
+        // Перезапуск devtools вызвал бы main приложения без аргумента migrate
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        // Аргументы командной строки перекрывают профиль, в котором Flyway выключен
+        String[] migrationArgs = Stream.concat(Stream.of("--spring.flyway.enabled=true"), Arrays.stream(args))
+                .toArray(String[]::new);
+        new SpringApplicationBuilder(DatabaseMigration.class)
+                .main(DatabaseMigration.class)
+                .web(WebApplicationType.NONE)
+                .run(migrationArgs)
+                .close();
+    }
+}
@@ -0,0 +1,73 @@
+package kz.kaspi.lab.fileuploader.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.kaspi.lab.fileuploader.service.AdmissionController;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.autoconfigure.endpoint.EndpointAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.endpoint.web.WebEndpointAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementContextAutoConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.jackson.autoconfigure.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.ConfigDataApplicationContextInitializer;
+import org.springframework.boot.test.context.runner.ReactiveWebApplicationContextRunner;
+import org.springframework.boot.webflux.autoconfigure.HttpHandlerAutoConfiguration;
+import org.springframework.boot.webflux.autoconfigure.WebFluxAutoConfiguration;
+import org.springframework.boot.webflux.autoconfigure.actuate.web.WebFluxEndpointManagementContextConfiguration;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionEndpointTest {
+
+    private final AdmissionController admissionController = new AdmissionController(new SimpleMeterRegistry(), 64,
+            DataSize.ofGigabytes(2), 0, DataSize.ofMegabytes(8), Duration.ofSeconds(30));
+
+    // application.yaml как есть: эндпоинт открыт по HTTP, но только на чтение
+    private final ReactiveWebApplicationContextRunner runner = new ReactiveWebApplicationContextRunner()
+            .withInitializer(new ConfigDataApplicationContextInitializer())
+            // Как в SpringApplication: read-only -> Access.READ_ONLY
+            .withInitializer(context -> context.getEnvironment().setConversionService(new ApplicationConversionService()))
+            .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class, WebFluxAutoConfiguration.class,
+                    HttpHandlerAutoConfiguration.class, EndpointAutoConfiguration.class, WebEndpointAutoConfiguration.class,
+                    ManagementContextAutoConfiguration.class, WebFluxEndpointManagementContextConfiguration.class))
+            .withBean(AdmissionController.class, () -> admissionController)
+            .withUserConfiguration(AdmissionEndpoint.class);
+
+    @Test
+    void limitsCannotBeChangedOverHttpByDefault() {
+        runner.run(context -> {
+            WebTestClient client = WebTestClient.bindToApplicationContext(context).build();
+
+            client.get().uri("/actuator/admission").exchange()
+                    .expectStatus().isOk()
+                    .expectBody().jsonPath("$.limits.maxConcurrent").isEqualTo(64);
+            client.post().uri("/actuator/admission")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue("{\"maxConcurrent\": 1}")
+                    .exchange()
+                    .expectStatus().is4xxClientError();
+
+            assertThat(admissionController.limits().maxConcurrent()).isEqualTo(64);
+        });
+    }
+
+    @Test
+    void limitsChangeWhenWriteAccessIsEnabled() {
+        runner.withPropertyValues("management.endpoint.admission.access=unrestricted").run(context -> {
+            WebTestClient client = WebTestClient.bindToApplicationContext(context).build();
+
+            client.post().uri("/actuator/admission")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue("{\"maxConcurrent\": 1}")
+                    .exchange()
+                    .expectStatus().isOk();
+
+            assertThat(admissionController.limits().maxConcurrent()).isEqualTo(1);
+        });
+    }
+}
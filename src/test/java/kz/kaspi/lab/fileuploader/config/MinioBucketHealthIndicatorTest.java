@@ -0,0 +1,58 @@
+package kz.kaspi.lab.fileuploader.config;
+
+import kz.kaspi.lab.fileuploader.service.MinioMultipartClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.health.contributor.Status;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MinioBucketHealthIndicatorTest {
+
+    private final MinioMultipartClient client = mock(MinioMultipartClient.class);
+    private MinioBucketHealthIndicator indicator;
+
+    @AfterEach
+    void tearDown() {
+        indicator.stop();
+    }
+
+    @Test
+    void becomesReadyOnceBucketIsCreated() {
+        AtomicInteger attempts = new AtomicInteger();
+        when(client.bucketExists("bucket")).thenReturn(Mono.defer(() -> attempts.incrementAndGet() == 1
+                ? Mono.error(new IOException("connection refused"))
+                : Mono.just(false)));
+        when(client.makeBucket("bucket")).thenReturn(Mono.empty());
+        indicator = new MinioBucketHealthIndicator(client, "bucket", true);
+
+        // До первой проверки сервис не готов, но и не упал
+        assertThat(indicator.health().block().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+        indicator.start();
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> indicator.health().block().getStatus().equals(Status.UP));
+        verify(client).makeBucket("bucket");
+    }
+
+    @Test
+    void staysDownWhenBucketIsMissingAndCreationIsDisabled() {
+        when(client.bucketExists("bucket")).thenReturn(Mono.just(false));
+        indicator = new MinioBucketHealthIndicator(client, "bucket", false);
+
+        indicator.start();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> indicator.health().block().getStatus().equals(Status.DOWN));
+        assertThat(indicator.health().block().getDetails()).containsEntry("bucket", "bucket").containsKey("error");
+        verify(client, never()).makeBucket("bucket");
+    }
+}
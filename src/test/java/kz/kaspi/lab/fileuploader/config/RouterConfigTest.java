@@ -0,0 +1,65 @@
+package kz.kaspi.lab.fileuploader.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.kaspi.lab.fileuploader.controller.AdmissionFilter;
+import kz.kaspi.lab.fileuploader.controller.ChunkedUploadHandler;
+import kz.kaspi.lab.fileuploader.controller.DirectUploadHandler;
+import kz.kaspi.lab.fileuploader.service.AdmissionController;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import java.time.Duration;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RouterConfigTest {
+
+    private final AdmissionController admissionController = new AdmissionController(new SimpleMeterRegistry(), 1,
+            DataSize.ofGigabytes(2), 0, DataSize.ofMegabytes(8), Duration.ofSeconds(30));
+    private final ChunkedUploadHandler chunkedHandler = mock(ChunkedUploadHandler.class);
+    private final DirectUploadHandler directHandler = mock(DirectUploadHandler.class);
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        when(chunkedHandler.uploadChunk(any())).thenAnswer(invocation -> ServerResponse.ok().build());
+        when(chunkedHandler.getSession(any())).thenAnswer(invocation -> ServerResponse.ok().build());
+        when(directHandler.complete(any())).thenAnswer(invocation -> ServerResponse.ok().build());
+        when(directHandler.begin(any())).thenAnswer(invocation -> ServerResponse.ok().build());
+
+        AdmissionFilter admissionFilter = new AdmissionFilter(admissionController, true);
+        RouterConfig config = new RouterConfig();
+        client = WebTestClient.bindToRouterFunction(config.chunkedUploadRoutes(chunkedHandler, admissionFilter)
+                        .and(config.directUploadRoutes(directHandler, admissionFilter)))
+                .build();
+    }
+
+    @Test
+    void admitsChunksAndDirectCompletion() {
+        client.put().uri("/api/v1/upload/sessions/{id}/chunks/0", "s").bodyValue("chunk").exchange()
+                .expectStatus().isOk();
+        client.post().uri("/api/v1/upload/direct/{id}/complete", "d").exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void rejectsChunksAndDirectCompletionWhenOverloaded() {
+        // Единственный слот занят другой загрузкой
+        admissionController.admit("other", 0);
+
+        client.put().uri("/api/v1/upload/sessions/{id}/chunks/0", "s").bodyValue("chunk").exchange()
+                .expectStatus().isEqualTo(503)
+                .expectHeader().exists("Retry-After");
+        client.post().uri("/api/v1/upload/direct/{id}/complete", "d").exchange()
+                .expectStatus().isEqualTo(503);
+
+        // Лёгкие запросы допуск не проходят
+        client.get().uri("/api/v1/upload/sessions/{id}", "s").exchange().expectStatus().isOk();
+        client.post().uri("/api/v1/upload/direct").exchange().expectStatus().isOk();
+    }
+}
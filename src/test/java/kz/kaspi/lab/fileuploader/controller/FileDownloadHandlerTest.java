@@ -0,0 +1,140 @@
+package kz.kaspi.lab.fileuploader.controller;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.service.FileDownloadService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+class FileDownloadHandlerTest {
+
+    private static final String CONTENT = "0123456789";
+
+    @TempDir
+    Path cacheDir;
+
+    private final FileDownloadService downloadService = mock(FileDownloadService.class);
+    private Upload upload;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        upload = new Upload();
+        upload.setId(UUID.randomUUID());
+        upload.setOriginalFilename("report.txt");
+        upload.setStatus(Upload.UploadStatus.SUCCESS);
+        upload.setFileSize((long) CONTENT.length());
+        upload.setContentType("text/plain");
+        upload.setContentHash("abc");
+        upload.setStoragePath("2026/10/18/report.txt");
+        when(downloadService.findDownloadable(any())).thenReturn(Mono.empty());
+        when(downloadService.findDownloadable(upload.getId())).thenReturn(Mono.just(upload));
+        when(downloadService.cachedFile(any(), anyLong())).thenReturn(Mono.empty());
+        // Хранилище отдаёт ровно запрошенный диапазон
+        when(downloadService.stream(any(), anyLong(), any())).thenAnswer(invocation -> {
+            int offset = Math.toIntExact(invocation.<Long>getArgument(1));
+            Long length = invocation.getArgument(2);
+            String slice = CONTENT.substring(offset, length == null ? CONTENT.length() : offset + Math.toIntExact(length));
+            return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(slice.getBytes(StandardCharsets.US_ASCII)));
+        });
+
+        client = WebTestClient.bindToRouterFunction(route(GET("/api/v1/files/{id}"), new FileDownloadHandler(downloadService)::download))
+                .build();
+    }
+
+    @Test
+    void servesWholeFileFromStorage() {
+        client.get().uri("/api/v1/files/{id}", upload.getId()).exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"abc\"")
+                .expectHeader().valueEquals("Accept-Ranges", "bytes")
+                .expectHeader().contentLength(CONTENT.length())
+                .expectBody(String.class).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void servesSingleRangeFromStorage() {
+        client.get().uri("/api/v1/files/{id}", upload.getId()).header("Range", "bytes=2-5").exchange()
+                .expectStatus().isEqualTo(206)
+                .expectHeader().valueEquals("Content-Range", "bytes 2-5/10")
+                .expectBody(String.class).isEqualTo("2345");
+
+        client.get().uri("/api/v1/files/{id}", upload.getId()).header("Range", "bytes=-3").exchange()
+                .expectStatus().isEqualTo(206)
+                .expectHeader().valueEquals("Content-Range", "bytes 7-9/10")
+                .expectBody(String.class).isEqualTo("789");
+
+        // Конец за пределами файла урезается до последнего байта
+        client.get().uri("/api/v1/files/{id}", upload.getId()).header("Range", "bytes=8-100").exchange()
+                .expectStatus().isEqualTo(206)
+                .expectHeader().valueEquals("Content-Range", "bytes 8-9/10")
+                .expectBody(String.class).isEqualTo("89");
+    }
+
+    @Test
+    void servesWholeFileForSeveralRangesFromStorage() {
+        client.get().uri("/api/v1/files/{id}", upload.getId()).header("Range", "bytes=0-1,4-5").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void rejectsRangeStartingPastTheEnd() {
+        client.get().uri("/api/v1/files/{id}", upload.getId()).header("Range", "bytes=10-").exchange()
+                .expectStatus().isEqualTo(416)
+                .expectHeader().valueEquals("Content-Range", "bytes */10");
+
+        verify(downloadService, never()).stream(any(), anyLong(), any());
+    }
+
+    @Test
+    void ignoresMalformedRange() {
+        client.get().uri("/api/v1/files/{id}", upload.getId()).header("Range", "lines=1-2").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void servesRangeFromCachedFile() throws Exception {
+        Path cached = Files.writeString(cacheDir.resolve("cached"), CONTENT);
+        when(downloadService.cachedFile(any(), anyLong())).thenReturn(Mono.just(cached));
+
+        client.get().uri("/api/v1/files/{id}", upload.getId()).header("Range", "bytes=2-5").exchange()
+                .expectStatus().isEqualTo(206)
+                .expectHeader().valueEquals("Content-Range", "bytes 2-5/10")
+                .expectBody(String.class).isEqualTo("2345");
+
+        verify(downloadService).cachedFile(upload, 4);
+        verify(downloadService, never()).stream(any(), anyLong(), any());
+    }
+
+    @Test
+    void answersNotModifiedForMatchingETag() {
+        client.get().uri("/api/v1/files/{id}", upload.getId()).header("If-None-Match", "\"abc\"").exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    void answersNotFoundAndBadRequest() {
+        client.get().uri("/api/v1/files/{id}", UUID.randomUUID()).exchange().expectStatus().isNotFound();
+        client.get().uri("/api/v1/files/{id}", "not-a-uuid").exchange().expectStatus().isBadRequest();
+    }
+}
@@ -0,0 +1,46 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.data.r2dbc.test.autoconfigure.DataR2dbcTest;
+import org.springframework.boot.flyway.autoconfigure.FlywayAutoConfiguration;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Репозитории с собственным SQL проверяются на настоящем PostgreSQL: схема — миграции Flyway,
+ * контейнер общий для всех наследников. Без Docker тесты пропускаются.
+ */
+@DataR2dbcTest
+@ImportAutoConfiguration(FlywayAutoConfiguration.class)
+@Testcontainers(disabledWithoutDocker = true)
+public abstract class PostgresRepositoryTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("fileuploader")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @Autowired
+    protected DatabaseClient databaseClient;
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        registry.add("spring.flyway.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.r2dbc.url", () -> "r2dbc:" + POSTGRES.getJdbcUrl().substring("jdbc:".length()));
+    }
+
+    @BeforeEach
+    void cleanTables() {
+        // Сессии докачки и прямые загрузки ссылаются на uploads и очищаются вместе с ними
+        databaseClient.sql("TRUNCATE uploads, blobs, packs, upload_batches CASCADE")
+                .then()
+                .block();
+    }
+}
@@ -0,0 +1,124 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.Upload.Compression;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadBatchRepositoryTest extends PostgresRepositoryTest {
+
+    @Autowired
+    UploadRepository uploadRepository;
+
+    @Test
+    void claimsNewAndFailedKeysAndReturnsTheRest() {
+        UUID done = uploadRepository.claim("done", "done.txt", 1, "text/plain").block().upload().getId();
+        uploadRepository.updateStatusAndErrorById(done, UploadStatus.SUCCESS.name(), null).block();
+        UUID failed = uploadRepository.claim("failed", "failed.txt", 1, "text/plain").block().upload().getId();
+        uploadRepository.updateStatusAndErrorById(failed, UploadStatus.FAILED.name(), "boom").block();
+
+        Map<String, UploadClaim> claims = claimAll(upload("new", 3), upload("done", 4), upload("failed", 5));
+
+        assertThat(claims).containsOnlyKeys("new", "done", "failed");
+        assertThat(claims.get("new").claimed()).isTrue();
+        assertThat(claims.get("new").upload().getFileSize()).isEqualTo(3);
+        assertThat(claims.get("done").claimed()).isFalse();
+        assertThat(claims.get("done").upload().getId()).isEqualTo(done);
+        assertThat(claims.get("done").upload().getFileSize()).isEqualTo(1);
+        assertThat(claims.get("failed").claimed()).isTrue();
+        assertThat(claims.get("failed").upload().getId()).isEqualTo(failed);
+        assertThat(claims.get("failed").upload().getFileSize()).isEqualTo(5);
+        assertThat(claims.get("failed").upload().getErrorMessage()).isNull();
+        assertThat(claims.values()).extracting(claim -> claim.upload().getStatus())
+                .containsOnly(UploadStatus.PROCESSING, UploadStatus.SUCCESS);
+    }
+
+    @Test
+    void completesAndFailsWholeBatch() {
+        Map<String, UploadClaim> claims = claimAll(upload("a", 3), upload("b", 4), upload("c", 5));
+        Upload a = claims.get("a").upload();
+        a.setStoragePath("objects/a");
+        a.setContentHash("hash-a");
+        a.setCompression(Compression.GZIP);
+        a.setStoredSize(2L);
+        Upload b = claims.get("b").upload();
+        b.setStoragePath("packs/1");
+        b.setContentHash("hash-b");
+        b.setStoredSize(4L);
+        b.setPackId(UUID.randomUUID());
+        b.setPackOffset(128L);
+        UUID c = claims.get("c").upload().getId();
+
+        assertThat(uploadRepository.completeAll(List.of(a, b)).block()).isEqualTo(2);
+        assertThat(uploadRepository.failAll(Map.of(c, "too large")).block()).isEqualTo(1);
+        assertThat(uploadRepository.completeAll(List.of()).block()).isZero();
+        assertThat(uploadRepository.failAll(Map.of()).block()).isZero();
+
+        Upload storedA = uploadRepository.findById(a.getId()).block();
+        assertThat(storedA.getStatus()).isEqualTo(UploadStatus.SUCCESS);
+        assertThat(storedA.getStoragePath()).isEqualTo("objects/a");
+        assertThat(storedA.getContentHash()).isEqualTo("hash-a");
+        assertThat(storedA.getFileSize()).isEqualTo(3);
+        assertThat(storedA.getCompression()).isEqualTo(Compression.GZIP);
+        assertThat(storedA.getStoredSize()).isEqualTo(2);
+        assertThat(storedA.getPackId()).isNull();
+        Upload storedB = uploadRepository.findById(b.getId()).block();
+        assertThat(storedB.getStatus()).isEqualTo(UploadStatus.SUCCESS);
+        assertThat(storedB.getCompression()).isEqualTo(Compression.NONE);
+        assertThat(storedB.getPackId()).isEqualTo(b.getPackId());
+        assertThat(storedB.getPackOffset()).isEqualTo(128);
+        Upload storedC = uploadRepository.findById(c).block();
+        assertThat(storedC.getStatus()).isEqualTo(UploadStatus.FAILED);
+        assertThat(storedC.getErrorMessage()).isEqualTo("too large");
+    }
+
+    @Test
+    void recordsBatchAndKeepsItsSetOfFiles() {
+        UUID first = UUID.randomUUID();
+        UploadBatch failed = new UploadBatch("batch", List.of(
+                new UploadBatch.Item("batch/0", "a.txt", first, "STORED", UploadStatus.SUCCESS, null),
+                new UploadBatch.Item("batch/1", "b.txt", null, "FAILED", null, "File exceeds limit")));
+
+        assertThat(uploadRepository.saveBatch(failed).block()).isTrue();
+        UploadBatch recorded = uploadRepository.findBatch("batch").block();
+        assertThat(recorded.items()).isEqualTo(failed.items());
+        assertThat(recorded.completed()).isFalse();
+
+        // Повтор с тем же составом перезаписывает итог
+        UUID second = UUID.randomUUID();
+        UploadBatch retried = new UploadBatch("batch", List.of(
+                new UploadBatch.Item("batch/0", "a.txt", first, "DUPLICATE", UploadStatus.SUCCESS, null),
+                new UploadBatch.Item("batch/1", "b.txt", second, "STORED", UploadStatus.SUCCESS, null)));
+        assertThat(uploadRepository.saveBatch(retried).block()).isTrue();
+        assertThat(uploadRepository.findBatch("batch").block().completed()).isTrue();
+
+        // Другой состав под тем же ключом не записывается
+        UploadBatch other = new UploadBatch("batch", List.of(
+                new UploadBatch.Item("batch/0", "c.txt", UUID.randomUUID(), "STORED", UploadStatus.SUCCESS, null)));
+        assertThat(uploadRepository.saveBatch(other).block()).isFalse();
+        assertThat(uploadRepository.findBatch("batch").block().items()).isEqualTo(retried.items());
+        assertThat(uploadRepository.findBatch("missing").block()).isNull();
+    }
+
+    private Map<String, UploadClaim> claimAll(Upload... uploads) {
+        return uploadRepository.claimAll(List.of(uploads))
+                .collectMap(claim -> claim.upload().getIdempotencyKey())
+                .block();
+    }
+
+    private static Upload upload(String key, long size) {
+        Upload upload = new Upload();
+        upload.setIdempotencyKey(key);
+        upload.setOriginalFilename(key + ".txt");
+        upload.setFileSize(size);
+        upload.setContentType("text/plain");
+        return upload;
+    }
+}
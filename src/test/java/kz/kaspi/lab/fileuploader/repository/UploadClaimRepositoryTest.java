@@ -0,0 +1,73 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadClaimRepositoryTest extends PostgresRepositoryTest {
+
+    @Autowired
+    UploadRepository uploadRepository;
+
+    @Test
+    void claimsNewKey() {
+        UploadClaim claim = uploadRepository.claim("key", "a.txt", 10, "text/plain").block();
+
+        assertThat(claim.claimed()).isTrue();
+        assertThat(claim.upload().getId()).isNotNull();
+        assertThat(claim.upload().getStatus()).isEqualTo(UploadStatus.PROCESSING);
+        assertThat(claim.upload().getOriginalFilename()).isEqualTo("a.txt");
+        assertThat(claim.upload().getCreatedAt()).isNotNull();
+    }
+
+    @Test
+    void returnsExistingRowWithoutTouchingIt() {
+        Upload first = uploadRepository.claim("key", "a.txt", 10, "text/plain").block().upload();
+        uploadRepository.updateStatusAndErrorByIdempotencyKey("key", UploadStatus.SUCCESS.name(), null).block();
+
+        UploadClaim repeat = uploadRepository.claim("key", "b.txt", 20, "image/png").block();
+
+        assertThat(repeat.claimed()).isFalse();
+        assertThat(repeat.upload().getId()).isEqualTo(first.getId());
+        assertThat(repeat.upload().getStatus()).isEqualTo(UploadStatus.SUCCESS);
+        assertThat(repeat.upload().getOriginalFilename()).isEqualTo("a.txt");
+
+        UploadClaim inProgress = uploadRepository.claim("other", "c.txt", 1, "text/plain").block();
+        assertThat(uploadRepository.claim("other", "c.txt", 1, "text/plain").block().claimed()).isFalse();
+        assertThat(inProgress.claimed()).isTrue();
+    }
+
+    @Test
+    void reclaimsFailedKey() {
+        Upload first = uploadRepository.claim("key", "a.txt", 10, "text/plain").block().upload();
+        uploadRepository.updateStatusAndErrorByIdempotencyKey("key", UploadStatus.FAILED.name(), "boom").block();
+
+        UploadClaim retry = uploadRepository.claim("key", "b.txt", 20, "image/png").block();
+
+        assertThat(retry.claimed()).isTrue();
+        assertThat(retry.upload().getId()).isEqualTo(first.getId());
+        assertThat(retry.upload().getStatus()).isEqualTo(UploadStatus.PROCESSING);
+        assertThat(retry.upload().getOriginalFilename()).isEqualTo("b.txt");
+        assertThat(retry.upload().getFileSize()).isEqualTo(20);
+        assertThat(retry.upload().getErrorMessage()).isNull();
+    }
+
+    @Test
+    void onlyOneOfConcurrentClaimsWins() {
+        List<UploadClaim> claims = Flux.range(0, 8)
+                .flatMap(i -> uploadRepository.claim("key", "a.txt", 10, "text/plain"))
+                .collectList()
+                .block();
+
+        // Проигравший гонку получает существующую строку либо пустой ответ (его повторяет IdempotencyService)
+        assertThat(claims).filteredOn(UploadClaim::claimed).hasSize(1);
+        assertThat(claims).extracting(claim -> claim.upload().getId()).containsOnly(claims.get(0).upload().getId());
+        assertThat(uploadRepository.count().block()).isEqualTo(1);
+    }
+}
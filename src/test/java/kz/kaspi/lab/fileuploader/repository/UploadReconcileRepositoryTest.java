@@ -0,0 +1,189 @@
+package kz.kaspi.lab.fileuploader.repository;
+
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadReconcileRepositoryTest extends PostgresRepositoryTest {
+
+    private static final Instant NOW = Instant.now();
+    private static final Instant STALE_BEFORE = NOW.minus(Duration.ofMinutes(30));
+    private static final Instant START = Instant.EPOCH;
+    private static final UUID START_ID = new UUID(0, 0);
+
+    @Autowired
+    UploadRepository uploadRepository;
+
+    @Test
+    void failsOnlyUploadsWithoutRecentUpdates() {
+        UUID stale = insertUpload("stale", ago(130), ago(60));
+        UUID alive = insertUpload("alive", ago(120), ago(1));
+        UUID fresh = insertUpload("fresh", ago(1), ago(1));
+
+        List<StaleUpload> page = failStale(START, START_ID, 10);
+
+        assertThat(page).containsExactly(
+                new StaleUpload(stale, page.get(0).createdAt(), "stale", true),
+                new StaleUpload(alive, page.get(1).createdAt(), null, false));
+        assertThat(status(stale)).isEqualTo(UploadStatus.FAILED);
+        assertThat(status(alive)).isEqualTo(UploadStatus.PROCESSING);
+        assertThat(status(fresh)).isEqualTo(UploadStatus.PROCESSING);
+    }
+
+    @Test
+    void openSessionShieldsUploadUntilItExpires() {
+        UUID paused = insertUpload("paused", ago(120), ago(60));
+        UUID abandoned = insertUpload("abandoned", ago(120), ago(60));
+        insertSession(paused, "OPEN", NOW.plus(Duration.ofHours(20)));
+        insertSession(abandoned, "OPEN", ago(45));
+
+        failStale(START, START_ID, 10);
+
+        assertThat(status(paused)).isEqualTo(UploadStatus.PROCESSING);
+        assertThat(status(abandoned)).isEqualTo(UploadStatus.FAILED);
+    }
+
+    @Test
+    void pendingDirectUploadShieldsUploadUntilItExpires() {
+        UUID pending = insertUpload("pending", ago(120), ago(60));
+        UUID abandoned = insertUpload("abandoned", ago(120), ago(60));
+        UUID completing = insertUpload("completing", ago(120), ago(60));
+        insertDirectUpload(pending, "PENDING", NOW.plus(Duration.ofMinutes(10)));
+        insertDirectUpload(abandoned, "PENDING", ago(45));
+        insertDirectUpload(completing, "COMPLETING", NOW.plus(Duration.ofMinutes(10)));
+
+        failStale(START, START_ID, 10);
+
+        assertThat(status(pending)).isEqualTo(UploadStatus.PROCESSING);
+        assertThat(status(abandoned)).isEqualTo(UploadStatus.FAILED);
+        assertThat(status(completing)).isEqualTo(UploadStatus.FAILED);
+    }
+
+    @Test
+    void pagesInCreationOrder() {
+        UUID first = insertUpload("first", ago(180), ago(60));
+        UUID second = insertUpload("second", ago(150), ago(60));
+        UUID third = insertUpload("third", ago(120), ago(60));
+
+        List<StaleUpload> page = failStale(START, START_ID, 2);
+        StaleUpload last = page.get(page.size() - 1);
+        List<StaleUpload> next = failStale(last.createdAt(), last.id(), 2);
+
+        assertThat(page).extracting(StaleUpload::id).containsExactly(first, second);
+        assertThat(next).extracting(StaleUpload::id).containsExactly(third);
+        assertThat(failStale(next.get(0).createdAt(), third, 2)).isEmpty();
+    }
+
+    @Test
+    void findsNamesNobodyReferences() {
+        UUID upload = insertUpload("upload", ago(120), ago(1));
+        execute("UPDATE uploads SET storage_path = 'stored' WHERE id = '" + upload + "'");
+        execute("INSERT INTO blobs (content_hash, storage_path, file_size) VALUES ('hash', 'blob', 1)");
+        execute("INSERT INTO packs (object_name, size) VALUES ('pack', 1)");
+        insertSession(upload, "OPEN", NOW.plus(Duration.ofHours(1)), "session");
+        insertSession(upload, "COMMITTING", NOW.plus(Duration.ofHours(1)), "committing", ago(1));
+        insertSession(upload, "COMMITTING", NOW.plus(Duration.ofHours(1)), "stuck-committing", ago(60));
+        insertDirectUpload(upload, "PENDING", NOW.plus(Duration.ofHours(1)), "direct");
+        insertDirectUpload(upload, "COMPLETING", NOW.plus(Duration.ofHours(1)), "stuck-completing", ago(60));
+
+        List<String> unreferenced = uploadRepository.findUnreferenced(List.of("stored", "blob", "pack", "session",
+                        "committing", "stuck-committing", "direct", "stuck-completing", "orphan"), STALE_BEFORE)
+                .collectList()
+                .block();
+
+        assertThat(unreferenced).containsExactlyInAnyOrder("stuck-committing", "stuck-completing", "orphan");
+    }
+
+    @Test
+    void touchesOnlyUnfinishedUploads() {
+        UUID processing = insertUpload("processing", ago(120), ago(60));
+        UUID finished = insertUpload("finished", ago(120), ago(60));
+        execute("UPDATE uploads SET status = 'SUCCESS' WHERE id = '" + finished + "'");
+
+        assertThat(uploadRepository.touchAll(List.of(processing, finished)).block()).isEqualTo(1);
+        assertThat(uploadRepository.touchAll(List.of()).block()).isZero();
+        assertThat(failStale(START, START_ID, 10)).extracting(StaleUpload::failed).containsExactly(false);
+    }
+
+    private List<StaleUpload> failStale(Instant afterCreatedAt, UUID afterId, int limit) {
+        return uploadRepository.failStale(afterCreatedAt, afterId, STALE_BEFORE, limit, "stale")
+                .collectList()
+                .block();
+    }
+
+    private UUID insertUpload(String key, Instant createdAt, Instant updatedAt) {
+        return databaseClient.sql("""
+                        INSERT INTO uploads (idempotency_key, original_filename, created_at, updated_at)
+                        VALUES (:key, 'file.bin', :createdAt, :updatedAt) RETURNING id
+                        """)
+                .bind("key", key)
+                .bind("createdAt", createdAt)
+                .bind("updatedAt", updatedAt)
+                .map((row, metadata) -> row.get("id", UUID.class))
+                .one()
+                .block();
+    }
+
+    private void insertSession(UUID uploadId, String status, Instant expiresAt) {
+        insertSession(uploadId, status, expiresAt, "chunks/" + uploadId, NOW);
+    }
+
+    private void insertSession(UUID uploadId, String status, Instant expiresAt, String objectName) {
+        insertSession(uploadId, status, expiresAt, objectName, NOW);
+    }
+
+    private void insertSession(UUID uploadId, String status, Instant expiresAt, String objectName, Instant updatedAt) {
+        databaseClient.sql("""
+                        INSERT INTO upload_sessions (upload_id, object_name, multipart_upload_id, chunk_size, status, expires_at, updated_at)
+                        VALUES (:uploadId, :objectName, 'mpu', 5242880, :status, :expiresAt, :updatedAt)
+                        """)
+                .bind("uploadId", uploadId)
+                .bind("objectName", objectName)
+                .bind("status", status)
+                .bind("expiresAt", expiresAt)
+                .bind("updatedAt", updatedAt)
+                .then()
+                .block();
+    }
+
+    private void insertDirectUpload(UUID uploadId, String status, Instant expiresAt) {
+        insertDirectUpload(uploadId, status, expiresAt, "direct/" + uploadId, NOW);
+    }
+
+    private void insertDirectUpload(UUID uploadId, String status, Instant expiresAt, String objectName) {
+        insertDirectUpload(uploadId, status, expiresAt, objectName, NOW);
+    }
+
+    private void insertDirectUpload(UUID uploadId, String status, Instant expiresAt, String objectName, Instant updatedAt) {
+        databaseClient.sql("""
+                        INSERT INTO direct_uploads (upload_id, object_name, expected_size, status, expires_at, updated_at)
+                        VALUES (:uploadId, :objectName, 1, :status, :expiresAt, :updatedAt)
+                        """)
+                .bind("uploadId", uploadId)
+                .bind("objectName", objectName)
+                .bind("status", status)
+                .bind("expiresAt", expiresAt)
+                .bind("updatedAt", updatedAt)
+                .then()
+                .block();
+    }
+
+    private UploadStatus status(UUID id) {
+        return uploadRepository.findById(id).block().getStatus();
+    }
+
+    private void execute(String sql) {
+        databaseClient.sql(sql).then().block();
+    }
+
+    private static Instant ago(int minutes) {
+        return NOW.minus(Duration.ofMinutes(minutes));
+    }
+}
@@ -0,0 +1,105 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.kaspi.lab.fileuploader.exception.ClientLimitExceededException;
+import kz.kaspi.lab.fileuploader.exception.OverloadedException;
+import kz.kaspi.lab.fileuploader.service.AdmissionController.Permit;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class AdmissionControllerTest {
+
+    private static final Duration MAX_RETRY_AFTER = Duration.ofSeconds(30);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void rejectsOverConcurrencyLimitUntilReleased() {
+        AdmissionController controller = controller(2, DataSize.ofGigabytes(1), 0);
+        Permit first = controller.admit("a", 10);
+        controller.admit("b", 10);
+
+        OverloadedException rejected = catchThrowableOfType(() -> controller.admit("c", 10), OverloadedException.class);
+
+        assertThat(rejected).isNotInstanceOf(ClientLimitExceededException.class);
+        // Завершений ещё не было — скорость неизвестна, клиенту предлагается максимум
+        assertThat(rejected.getRetryAfter()).isEqualTo(MAX_RETRY_AFTER);
+        assertThat(rejected("concurrency")).isEqualTo(1);
+
+        first.release();
+        first.release();
+        assertThat(controller.active()).isEqualTo(1);
+        controller.admit("c", 10);
+    }
+
+    @Test
+    void retryAfterFollowsCompletionRate() {
+        AdmissionController controller = controller(1, DataSize.ofGigabytes(1), 0);
+        for (int i = 0; i < 20; i++) {
+            controller.admit("a", 10).release();
+        }
+        controller.admit("a", 10);
+
+        OverloadedException rejected = catchThrowableOfType(() -> controller.admit("b", 10), OverloadedException.class);
+
+        // Два завершения в секунду за окно в 10 с — место освободится примерно через секунду
+        assertThat(rejected.getRetryAfter()).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void rejectsOverByteBudgetButAdmitsOversizedRequestWhenIdle() {
+        AdmissionController controller = controller(10, DataSize.ofKilobytes(10), 0);
+
+        Permit oversized = controller.admit("a", DataSize.ofKilobytes(50).toBytes());
+        assertThat(controller.inFlightBytes()).isEqualTo(DataSize.ofKilobytes(50).toBytes());
+
+        assertThat(catchThrowableOfType(() -> controller.admit("b", 1), OverloadedException.class))
+                .hasMessage("Upload byte budget exhausted");
+        assertThat(rejected("bytes")).isEqualTo(1);
+
+        oversized.release();
+        controller.admit("b", DataSize.ofKilobytes(6).toBytes());
+        // Неизвестная длина считается как unknown-length-bytes (8MB) и в бюджет не влезает
+        assertThat(catchThrowableOfType(() -> controller.admit("c", -1), OverloadedException.class)).isNotNull();
+    }
+
+    @Test
+    void limitsEachClientSeparately() {
+        AdmissionController controller = controller(10, DataSize.ofGigabytes(1), 1);
+        controller.admit("a", 10);
+
+        ClientLimitExceededException rejected = catchThrowableOfType(() -> controller.admit("a", 10),
+                ClientLimitExceededException.class);
+
+        assertThat(rejected.getRetryAfter()).isBetween(Duration.ofSeconds(1), MAX_RETRY_AFTER);
+        assertThat(rejected("client")).isEqualTo(1);
+        controller.admit("b", 10);
+    }
+
+    @Test
+    void updatesLimitsOnTheFly() {
+        AdmissionController controller = controller(10, DataSize.ofGigabytes(1), 0);
+        controller.admit("a", 10);
+
+        assertThat(controller.updateLimits(1, null, null))
+                .isEqualTo(new AdmissionController.Limits(1, DataSize.ofGigabytes(1).toBytes(), 0));
+        assertThat(catchThrowableOfType(() -> controller.admit("b", 10), OverloadedException.class)).isNotNull();
+        assertThatIllegalArgumentException().isThrownBy(() -> controller.updateLimits(0, null, null));
+        assertThatIllegalArgumentException().isThrownBy(() -> controller.updateLimits(null, null, -1));
+    }
+
+    private AdmissionController controller(int maxConcurrent, DataSize maxInFlightBytes, int perClientMaxConcurrent) {
+        return new AdmissionController(registry, maxConcurrent, maxInFlightBytes, perClientMaxConcurrent,
+                DataSize.ofMegabytes(8), MAX_RETRY_AFTER);
+    }
+
+    private double rejected(String reason) {
+        return registry.get("upload.admission.rejected").tag("reason", reason).counter().count();
+    }
+}
@@ -0,0 +1,217 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.kaspi.lab.fileuploader.dto.UploadResponse;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.exception.OverloadedException;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AsyncIngestServiceTest {
+
+    @TempDir
+    Path stagingDir;
+
+    private final FileUploadService fileUploadService = mock(FileUploadService.class);
+    private final UploadRepository uploadRepository = mock(UploadRepository.class);
+    private AsyncIngestService service;
+    private Upload upload;
+
+    @BeforeEach
+    void setUp() {
+        upload = new Upload();
+        upload.setId(UUID.randomUUID());
+        upload.setIdempotencyKey("key");
+        upload.setOriginalFilename("a.txt");
+        upload.setStatus(Upload.UploadStatus.PROCESSING);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void acknowledgesAfterStagingAndStoresFromDisk() throws Exception {
+        service = service(16);
+        AtomicReference<String> stored = new AtomicReference<>();
+        when(fileUploadService.processStaged(eq(upload), any())).thenAnswer(invocation -> {
+            Flux<DataBuffer> content = invocation.getArgument(1);
+            return DataBufferUtils.join(content)
+                    .map(buffer -> {
+                        stored.set(buffer.toString(StandardCharsets.UTF_8));
+                        DataBufferUtils.release(buffer);
+                        return new UploadResponse(upload.getId(), Upload.UploadStatus.SUCCESS, "a.txt", "obj", null);
+                    });
+        });
+
+        StepVerifier.create(service.accept(upload, content("hello")))
+                .assertNext(response -> assertThat(response.status()).isEqualTo(Upload.UploadStatus.PROCESSING))
+                .verifyComplete();
+
+        // Staged-файл удаляется после сохранения
+        await().atMost(Duration.ofSeconds(5)).until(() -> !Files.exists(stagingDir.resolve(upload.getId() + ".staged")));
+        assertThat(stored).hasValue("hello");
+        assertThat(upload.getFileSize()).isEqualTo(5L);
+    }
+
+    @Test
+    void rejectsBeforeReadingBodyWhenQueueIsFull() throws Exception {
+        service = service(0);
+        when(fileUploadService.markFailed(upload, "Ingest queue is full")).thenReturn(Mono.empty());
+
+        StepVerifier.create(service.accept(upload, Flux.error(new AssertionError("body must not be read"))))
+                .verifyError(OverloadedException.class);
+
+        verify(fileUploadService).markFailed(upload, "Ingest queue is full");
+        verify(fileUploadService, never()).processStaged(any(), any());
+    }
+
+    @Test
+    void retriesWhileRowStaysProcessing() throws Exception {
+        service = service(16);
+        AtomicInteger attempts = new AtomicInteger();
+        when(fileUploadService.processStaged(eq(upload), any())).thenAnswer(invocation -> {
+            Flux<DataBuffer> content = invocation.getArgument(1);
+            return content.then(attempts.incrementAndGet() == 1
+                    ? Mono.error(new IllegalStateException("connection reset"))
+                    : Mono.just(new UploadResponse(upload.getId(), Upload.UploadStatus.SUCCESS, "a.txt", "obj", null)));
+        });
+        when(uploadRepository.findById(upload.getId())).thenReturn(Mono.just(processing()));
+
+        service.accept(upload, content("hello")).block();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.queuedIds().isEmpty());
+        assertThat(attempts).hasValue(2);
+        assertThat(stagedFile()).doesNotExist();
+        verify(fileUploadService, never()).markFailed(any(), anyString());
+    }
+
+    @Test
+    void retriesTransientStorageErrorFromStagedFile() throws Exception {
+        service = service(16);
+        List<String> reads = new CopyOnWriteArrayList<>();
+        when(fileUploadService.processStaged(eq(upload), any())).thenAnswer(invocation -> {
+            Flux<DataBuffer> content = invocation.getArgument(1);
+            return DataBufferUtils.join(content)
+                    .flatMap(buffer -> {
+                        reads.add(buffer.toString(StandardCharsets.UTF_8));
+                        DataBufferUtils.release(buffer);
+                        // Первая попытка: MinIO отвечает 503 и после ретраев бэкенда
+                        return reads.size() == 1
+                                ? Mono.error(new StorageException("Service Unavailable", null, true))
+                                : Mono.just(new UploadResponse(upload.getId(), Upload.UploadStatus.SUCCESS, "a.txt", "obj", null));
+                    });
+        });
+        when(uploadRepository.findById(upload.getId())).thenReturn(Mono.just(processing()));
+
+        service.accept(upload, content("hello")).block();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.queuedIds().isEmpty());
+        assertThat(reads).containsExactly("hello", "hello");
+        assertThat(stagedFile()).doesNotExist();
+        verify(fileUploadService, never()).markFailed(any(), anyString());
+    }
+
+    @Test
+    void marksFailedBeforeDeletingWhenAttemptsRunOut() throws Exception {
+        service = service(16);
+        when(fileUploadService.processStaged(eq(upload), any()))
+                .thenReturn(Mono.error(new IllegalStateException("database is down")));
+        when(uploadRepository.findById(upload.getId())).thenReturn(Mono.just(processing()));
+        when(fileUploadService.markFailed(eq(upload), anyString())).thenReturn(Mono.empty());
+
+        service.accept(upload, content("hello")).block();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.queuedIds().isEmpty());
+        verify(fileUploadService, times(3)).processStaged(eq(upload), any());
+        verify(fileUploadService).markFailed(eq(upload), anyString());
+        assertThat(stagedFile()).doesNotExist();
+    }
+
+    @Test
+    void keepsStagedFileWhenStatusCannotBeRecorded() throws Exception {
+        service = service(16);
+        when(fileUploadService.processStaged(eq(upload), any()))
+                .thenReturn(Mono.error(new IllegalStateException("database is down")));
+        when(uploadRepository.findById(upload.getId())).thenReturn(Mono.error(new IllegalStateException("database is down")));
+        when(fileUploadService.markFailed(eq(upload), anyString()))
+                .thenReturn(Mono.error(new IllegalStateException("database is down")));
+
+        service.accept(upload, content("hello")).block();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.queuedIds().isEmpty());
+        assertThat(stagedFile()).exists();
+    }
+
+    @Test
+    void deletesStagedFileWhenFailureIsAlreadyRecorded() throws Exception {
+        service = service(16);
+        when(fileUploadService.processStaged(eq(upload), any()))
+                .thenReturn(Mono.error(new StorageException("bucket is gone")));
+        Upload failed = processing();
+        failed.setStatus(Upload.UploadStatus.FAILED);
+        when(uploadRepository.findById(upload.getId())).thenReturn(Mono.just(failed));
+
+        service.accept(upload, content("hello")).block();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.queuedIds().isEmpty());
+        verify(fileUploadService).processStaged(eq(upload), any());
+        verify(fileUploadService, never()).markFailed(any(), anyString());
+        assertThat(stagedFile()).doesNotExist();
+    }
+
+    private AsyncIngestService service(int queueDepth) throws Exception {
+        AsyncIngestService service = new AsyncIngestService(fileUploadService, uploadRepository, new SimpleMeterRegistry(),
+                Schedulers.boundedElastic(), true, 2, queueDepth, stagingDir, 3, Duration.ofMillis(10));
+        service.start();
+        return service;
+    }
+
+    private Upload processing() {
+        Upload current = new Upload();
+        current.setId(upload.getId());
+        current.setStatus(Upload.UploadStatus.PROCESSING);
+        return current;
+    }
+
+    private Path stagedFile() {
+        return stagingDir.resolve(upload.getId() + ".staged");
+    }
+
+    private static Flux<DataBuffer> content(String text) {
+        return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,138 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import kz.kaspi.lab.fileuploader.dto.BatchUploadResponse;
+import kz.kaspi.lab.fileuploader.dto.BatchUploadResponse.Outcome;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import kz.kaspi.lab.fileuploader.exception.IdempotencyException;
+import kz.kaspi.lab.fileuploader.repository.UploadBatch;
+import kz.kaspi.lab.fileuploader.repository.UploadClaim;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchUploadServiceTest {
+
+    private final BlobService blobService = mock(BlobService.class);
+    private final UploadRepository uploadRepository = mock(UploadRepository.class);
+    private BatchUploadService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new BatchUploadService(blobService, uploadRepository,
+                new IdempotencyCache(new SimpleMeterRegistry(), 100, Duration.ofHours(1), Duration.ofSeconds(5)),
+                new UploadMetrics(new SimpleMeterRegistry(), ObservationRegistry.NOOP, new UploadProgress()));
+        ReflectionTestUtils.setField(service, "maxItems", 10);
+        ReflectionTestUtils.setField(service, "maxItemSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(service, "dbBatchSize", 10);
+        ReflectionTestUtils.setField(service, "groupBytes", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(service, "concurrency", 2);
+    }
+
+    @Test
+    void recordsFirstBatch() {
+        when(uploadRepository.findBatch("batch")).thenReturn(Mono.empty());
+        when(uploadRepository.claimAll(any())).thenAnswer(invocation -> {
+            List<Upload> uploads = invocation.getArgument(0);
+            return Flux.fromIterable(uploads).map(upload -> {
+                upload.setId(UUID.randomUUID());
+                upload.setStatus(UploadStatus.PROCESSING);
+                return new UploadClaim(upload, true);
+            });
+        });
+        when(blobService.store(any(), anyString(), anyString(), anyLong()))
+                .thenReturn(Mono.just(new StoredObject("objects/a", 1, "hash", false)));
+        when(uploadRepository.completeAll(any())).thenReturn(Mono.just(2L));
+        AtomicReference<UploadBatch> recorded = new AtomicReference<>();
+        when(uploadRepository.saveBatch(any())).thenAnswer(invocation -> {
+            recorded.set(invocation.getArgument(0));
+            return Mono.just(true);
+        });
+
+        StepVerifier.create(service.processBatch("batch", items("batch/0", "batch/1")))
+                .assertNext(response -> assertThat(response.stored()).isEqualTo(2))
+                .verifyComplete();
+
+        assertThat(recorded.get().batchKey()).isEqualTo("batch");
+        assertThat(recorded.get().itemKeys()).containsExactly("batch/0", "batch/1");
+        assertThat(recorded.get().completed()).isTrue();
+    }
+
+    @Test
+    void answersMatchingReplayOfCompletedBatchFromRecord() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        when(uploadRepository.findBatch("batch")).thenReturn(Mono.just(new UploadBatch("batch", List.of(
+                new UploadBatch.Item("batch/0", "batch/0.txt", first, "STORED", UploadStatus.SUCCESS, null),
+                new UploadBatch.Item("batch/1", "batch/1.txt", second, "DUPLICATE", UploadStatus.SUCCESS, null)))));
+
+        BatchUploadResponse response = service.processBatch("batch", items("batch/0", "batch/1")).block();
+
+        assertThat(response.stored()).isEqualTo(1);
+        assertThat(response.duplicates()).isEqualTo(1);
+        assertThat(response.items()).extracting(BatchUploadResponse.Item::uploadId).containsExactly(first, second);
+        assertThat(response.items()).extracting(BatchUploadResponse.Item::outcome)
+                .containsExactly(Outcome.STORED, Outcome.DUPLICATE);
+        verify(uploadRepository, never()).claimAll(any());
+        verify(uploadRepository, never()).saveBatch(any());
+        verify(blobService, never()).store(any(), anyString(), anyString(), anyLong());
+    }
+
+    @Test
+    void rejectsReplayWithDifferentFiles() {
+        UploadBatch completed = new UploadBatch("batch", List.of(
+                new UploadBatch.Item("batch/0", "batch/0.txt", UUID.randomUUID(), "STORED", UploadStatus.SUCCESS, null)));
+        when(uploadRepository.findBatch("batch")).thenReturn(Mono.just(completed));
+
+        StepVerifier.create(service.processBatch("batch", items("batch/0", "batch/1")))
+                .verifyError(IdempotencyException.class);
+
+        // Пачка с неудачами повторяется заново, но тоже только с тем же составом
+        UploadBatch withFailure = new UploadBatch("batch", List.of(
+                new UploadBatch.Item("batch/0", "batch/0.txt", UUID.randomUUID(), "FAILED", UploadStatus.FAILED, "boom"),
+                new UploadBatch.Item("batch/1", "batch/1.txt", UUID.randomUUID(), "STORED", UploadStatus.SUCCESS, null)));
+        when(uploadRepository.findBatch("batch")).thenReturn(Mono.just(withFailure));
+
+        StepVerifier.create(service.processBatch("batch", items("other", "batch/1")))
+                .verifyError(IdempotencyException.class);
+        StepVerifier.create(service.processBatch("batch", items()))
+                .verifyError(IdempotencyException.class);
+
+        verify(uploadRepository, never()).claimAll(any());
+        verify(uploadRepository, never()).saveBatch(any());
+    }
+
+    private Flux<BatchItem> items(String... keys) {
+        return Flux.range(0, keys.length)
+                .concatMap(index -> service.bufferItem(index, keys[index], keys[index] + ".txt", "text/plain",
+                        Flux.just(buffer("x"))));
+    }
+
+    private static DataBuffer buffer(String text) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
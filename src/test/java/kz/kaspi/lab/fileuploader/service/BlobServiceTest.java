@@ -0,0 +1,132 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.repository.BlobRepository;
+import kz.kaspi.lab.fileuploader.repository.PackRepository;
+import kz.kaspi.lab.fileuploader.repository.PostgresRepositoryTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlobServiceTest extends PostgresRepositoryTest {
+
+    private static final String HASH = "a".repeat(64);
+
+    @Autowired
+    BlobRepository blobRepository;
+
+    private final StorageService storageService = mock(StorageService.class);
+    private BlobService blobService;
+
+    @BeforeEach
+    void setUp() {
+        blobService = new BlobService(storageService, blobRepository, mock(PackRepository.class), mock(PackWriter.class),
+                mock(UploadMetrics.class));
+        when(storageService.deleteFile(anyString())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void duplicateContentPointsToExistingObjectAndDeletesTheNewOne() {
+        // Большой файл: хэш известен только после записи
+        written("objects/first");
+        StoredObject first = blobService.store(Flux.empty(), "a.bin", null, 0).block();
+        written("objects/second");
+        StoredObject second = blobService.store(Flux.empty(), "b.bin", null, 0).block();
+
+        assertThat(first.objectName()).isEqualTo("objects/first");
+        assertThat(first.reused()).isFalse();
+        assertThat(second.objectName()).isEqualTo("objects/first");
+        assertThat(second.reused()).isTrue();
+        verify(storageService).deleteFile("objects/second");
+        verify(storageService, never()).deleteFile("objects/first");
+        assertThat(refCount()).isEqualTo(2);
+    }
+
+    @Test
+    void smallDuplicateTakesReferenceWithoutWriting() {
+        written("objects/first");
+        blobService.store(Flux.empty(), "a.txt", null, 0).block();
+        // Маленький файл: хэш известен до записи, StorageService спрашивает существующий объект
+        when(storageService.uploadFile(any(), anyString(), any(), anyLong(), any())).thenAnswer(invocation -> {
+            Function<String, Mono<String>> existingObject = invocation.getArgument(4);
+            return existingObject.apply(HASH)
+                    .map(path -> new StoredObject(path, 3, HASH, true))
+                    .defaultIfEmpty(new StoredObject("objects/unexpected", 3, HASH, false));
+        });
+
+        StoredObject reused = blobService.store(Flux.empty(), "b.txt", null, 0).block();
+
+        assertThat(reused.objectName()).isEqualTo("objects/first");
+        assertThat(reused.reused()).isTrue();
+        assertThat(refCount()).isEqualTo(2);
+        verify(storageService, never()).deleteFile(anyString());
+    }
+
+    @Test
+    void deletesObjectOnlyWhenLastReferenceIsReleased() {
+        written("objects/first");
+        blobService.store(Flux.empty(), "a.bin", null, 0).block();
+        written("objects/second");
+        blobService.store(Flux.empty(), "b.bin", null, 0).block();
+
+        blobService.release(HASH).block();
+        verify(storageService, never()).deleteFile("objects/first");
+        assertThat(refCount()).isEqualTo(1);
+
+        blobService.release(HASH).block();
+        verify(storageService).deleteFile("objects/first");
+        assertThat(blobRepository.findById(HASH).block()).isNull();
+    }
+
+    @Test
+    void keepsObjectReacquiredBeforeItIsDeleted() {
+        written("objects/first");
+        blobService.store(Flux.empty(), "a.bin", null, 0).block();
+        // Между снятием последней ссылки и удалением записи другая загрузка берёт ссылку заново
+        BlobRepository racing = mock(BlobRepository.class, delegatesTo(blobRepository));
+        doAnswer(invocation -> blobRepository.release(HASH)
+                .flatMap(refCount -> blobRepository.acquireOrInsert(HASH, "objects/late", 3).thenReturn(refCount)))
+                .when(racing).release(HASH);
+
+        new BlobService(storageService, racing, mock(PackRepository.class), mock(PackWriter.class),
+                mock(UploadMetrics.class)).release(HASH).block();
+
+        verify(storageService, never()).deleteFile(anyString());
+        assertThat(refCount()).isEqualTo(1);
+        assertThat(blobRepository.findById(HASH).block().getStoragePath()).isEqualTo("objects/first");
+    }
+
+    @Test
+    void doesNotReuseObjectWhoseLastReferenceIsReleased() {
+        written("objects/first");
+        blobService.store(Flux.empty(), "a.bin", null, 0).block();
+        blobRepository.release(HASH).block();
+
+        // Объект вот-вот удалят — маленький файл пишется заново
+        assertThat(blobRepository.acquireExisting(HASH).block()).isNull();
+        assertThat(refCount()).isZero();
+    }
+
+    private void written(String objectName) {
+        when(storageService.uploadFile(any(), anyString(), any(), anyLong(), any()))
+                .thenReturn(Mono.just(new StoredObject(objectName, 3, HASH, false)));
+    }
+
+    private int refCount() {
+        return blobRepository.findById(HASH).block().getRefCount();
+    }
+}
@@ -0,0 +1,133 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.UploadSession;
+import kz.kaspi.lab.fileuploader.entity.UploadSession.SessionStatus;
+import kz.kaspi.lab.fileuploader.entity.UploadSessionPart;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import kz.kaspi.lab.fileuploader.repository.UploadSessionPartRepository;
+import kz.kaspi.lab.fileuploader.repository.UploadSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChunkedUploadServiceTest {
+
+    private static final String OPEN = SessionStatus.OPEN.name();
+    private static final String COMMITTING = SessionStatus.COMMITTING.name();
+
+    private final StorageService storageService = mock(StorageService.class);
+    private final UploadRepository uploadRepository = mock(UploadRepository.class);
+    private final UploadSessionRepository sessionRepository = mock(UploadSessionRepository.class);
+    private final UploadSessionPartRepository partRepository = mock(UploadSessionPartRepository.class);
+    private ChunkedUploadService service;
+    private Upload upload;
+    private UploadSession session;
+
+    @BeforeEach
+    void setUp() {
+        service = new ChunkedUploadService(mock(IdempotencyService.class), mock(IdempotencyCache.class), storageService,
+                mock(PartBufferPool.class), uploadRepository, sessionRepository, partRepository, mock(UploadMetrics.class));
+        ReflectionTestUtils.setField(service, "sessionTtl", Duration.ofHours(24));
+        ReflectionTestUtils.setField(service, "expiryBatchSize", 100);
+        ReflectionTestUtils.setField(service, "committingTimeout", Duration.ofMinutes(15));
+
+        upload = new Upload();
+        upload.setId(UUID.randomUUID());
+        upload.setIdempotencyKey("key");
+        upload.setStatus(Upload.UploadStatus.PROCESSING);
+
+        session = new UploadSession();
+        session.setId(UUID.randomUUID());
+        session.setUploadId(upload.getId());
+        session.setObjectName("2026/10/18/video.mp4");
+        session.setMultipartUploadId("mpu");
+        session.setChunkSize(5L);
+        session.setStatus(SessionStatus.OPEN);
+
+        UploadSessionPart part = new UploadSessionPart();
+        part.setPartNumber(1);
+        part.setSize(3L);
+        part.setEtag("etag");
+        when(partRepository.findBySessionIdOrdered(session.getId())).thenReturn(Flux.just(part));
+        when(sessionRepository.findCommittableById(session.getId())).thenAnswer(invocation -> Mono.just(session));
+        when(sessionRepository.transition(any(), anyString(), anyString())).thenAnswer(invocation -> {
+            session.setStatus(SessionStatus.valueOf(invocation.getArgument(2)));
+            return Mono.just(session);
+        });
+        when(uploadRepository.findById(upload.getId())).thenAnswer(invocation -> Mono.just(upload));
+        when(uploadRepository.updateStatusAndErrorById(any(), anyString(), anyString())).thenReturn(Mono.empty());
+        when(storageService.abortMultipart(any())).thenReturn(Mono.empty());
+        when(storageService.deleteFile(anyString())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void resumesCommitAfterObjectWasAssembled() {
+        when(storageService.completeMultipart(any(), any())).thenReturn(Mono.empty());
+        when(uploadRepository.save(any()))
+                .thenReturn(Mono.error(new IllegalStateException("database is down")))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(service.commit(session.getId())).verifyErrorMessage("database is down");
+        verify(sessionRepository, never()).transition(session.getId(), COMMITTING, OPEN);
+
+        when(storageService.objectExists(session.getObjectName())).thenReturn(Mono.just(true));
+        StepVerifier.create(service.commit(session.getId()))
+                .expectNextMatches(saved -> saved.getStatus() == Upload.UploadStatus.SUCCESS && saved.getFileSize() == 3L)
+                .verifyComplete();
+
+        verify(storageService).completeMultipart(any(), any());
+        verify(sessionRepository).transition(session.getId(), COMMITTING, SessionStatus.COMMITTED.name());
+    }
+
+    @Test
+    void reopensWhenAssemblyFails() {
+        when(storageService.completeMultipart(any(), any())).thenReturn(Mono.error(new StorageException("InvalidPart")));
+
+        StepVerifier.create(service.commit(session.getId())).verifyErrorMessage("InvalidPart");
+
+        verify(sessionRepository).transition(session.getId(), COMMITTING, OPEN);
+        verify(uploadRepository, never()).save(any());
+    }
+
+    @Test
+    void expiryClosesCommitThatAlreadySucceeded() {
+        session.setStatus(SessionStatus.EXPIRED);
+        upload.setStatus(Upload.UploadStatus.SUCCESS);
+        when(sessionRepository.expireBatch(any(Instant.class), anyInt())).thenReturn(Flux.just(session));
+
+        StepVerifier.create(service.expireSessions()).verifyComplete();
+
+        verify(sessionRepository).transition(session.getId(), SessionStatus.EXPIRED.name(), SessionStatus.COMMITTED.name());
+        verify(storageService, never()).abortMultipart(any());
+        verify(storageService, never()).deleteFile(anyString());
+    }
+
+    @Test
+    void expiryRemovesAbandonedCommit() {
+        session.setStatus(SessionStatus.EXPIRED);
+        when(sessionRepository.expireBatch(any(Instant.class), anyInt())).thenReturn(Flux.just(session));
+
+        StepVerifier.create(service.expireSessions()).verifyComplete();
+
+        verify(storageService).abortMultipart(new MultipartTarget(session.getObjectName(), "mpu"));
+        verify(storageService).deleteFile(session.getObjectName());
+        verify(uploadRepository).updateStatusAndErrorById(upload.getId(), Upload.UploadStatus.FAILED.name(), "Upload session expired");
+    }
+}
@@ -0,0 +1,172 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.entity.Upload.Compression;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class ContentCompressorTest {
+
+    private static final byte[] CSV = csv();
+
+    private final ContentCompressor compressor = compressor(true);
+
+    @Test
+    void choosesCodecForCompressibleText() {
+        DataBuffer first = wrap(Arrays.copyOf(CSV, 8192));
+
+        assertThat(compressor.choose("text/csv; charset=utf-8", List.of(first))).isEqualTo(Compression.ZSTD);
+        // Проба не сдвигает позицию чтения
+        assertThat(first.readableByteCount()).isEqualTo(8192);
+        assertThat(compressor.choose("application/json", List.of(first))).isEqualTo(Compression.ZSTD);
+    }
+
+    @Test
+    void skipsOtherTypesAndIncompressibleContent() {
+        byte[] random = new byte[8192];
+        new Random(1).nextBytes(random);
+
+        assertThat(compressor.choose("image/png", List.of(wrap(CSV)))).isEqualTo(Compression.NONE);
+        assertThat(compressor.choose(null, List.of(wrap(CSV)))).isEqualTo(Compression.NONE);
+        assertThat(compressor.choose("not a type", List.of(wrap(CSV)))).isEqualTo(Compression.NONE);
+        assertThat(compressor.choose("text/plain", List.of(wrap(random)))).isEqualTo(Compression.NONE);
+        assertThat(compressor.choose("text/plain", List.of(wrap(new byte[0])))).isEqualTo(Compression.NONE);
+        assertThat(compressor(false).choose("text/plain", List.of(wrap(CSV)))).isEqualTo(Compression.NONE);
+    }
+
+    @Test
+    void skipsAlreadyCompressedContentByMagic() throws Exception {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(CSV);
+        }
+        byte[] zstd = join(compressor.compress(chunks(CSV, 7000), Compression.ZSTD));
+        // Начинается с сигнатуры zip, дальше хорошо сжимаемый текст
+        byte[] zip = Arrays.copyOf(new byte[]{0x50, 0x4b, 0x03, 0x04}, 8192);
+        System.arraycopy(CSV, 0, zip, 4, zip.length - 4);
+
+        assertThat(compressor.choose("text/plain", List.of(wrap(gzipped.toByteArray())))).isEqualTo(Compression.NONE);
+        assertThat(compressor.choose("text/plain", List.of(wrap(zstd)))).isEqualTo(Compression.NONE);
+        assertThat(compressor.choose("text/plain", List.of(wrap(zip)))).isEqualTo(Compression.NONE);
+    }
+
+    @Test
+    void samplesSeveralBuffersBeforeChoosing() {
+        // Первый буфер сам по себе не сжимается, но проба захватывает и следующие
+        byte[] header = new byte[256];
+        new Random(1).nextBytes(header);
+        byte[] content = Arrays.copyOf(header, header.length + CSV.length);
+        System.arraycopy(CSV, 0, content, header.length, CSV.length);
+        List<Compression> chosen = new ArrayList<>();
+
+        byte[] written = compressor.withCodec("text/plain", chunks(content, 256), (compression, source) -> {
+            chosen.add(compression);
+            return bytes(source);
+        }).block();
+
+        assertThat(chosen).containsExactly(Compression.ZSTD);
+        assertThat(written).isEqualTo(content);
+    }
+
+    @Test
+    void choosesOnWholeStreamShorterThanSample() {
+        byte[] content = Arrays.copyOf(CSV, 10_000);
+        List<Compression> chosen = new ArrayList<>();
+
+        byte[] written = compressor.withCodec("text/plain", chunks(content, 100), (compression, source) -> {
+            chosen.add(compression);
+            return bytes(source);
+        }).block();
+        byte[] empty = compressor.withCodec("text/plain", Flux.empty(), (compression, source) -> {
+            chosen.add(compression);
+            return bytes(source);
+        }).block();
+
+        assertThat(chosen).containsExactly(Compression.ZSTD, Compression.NONE);
+        assertThat(written).isEqualTo(content);
+        assertThat(empty).isEmpty();
+    }
+
+    @Test
+    void roundTripsGzipAndZstd() {
+        for (Compression codec : List.of(Compression.GZIP, Compression.ZSTD)) {
+            byte[] compressed = join(compressor.compress(chunks(CSV, 7000), codec));
+
+            assertThat(compressed.length).as(codec.name()).isLessThan(CSV.length / 3);
+            assertThat(join(compressor.decompress(chunks(compressed, 5000), codec))).as(codec.name()).isEqualTo(CSV);
+        }
+    }
+
+    @Test
+    void roundTripsEmptyContent() {
+        for (Compression codec : List.of(Compression.GZIP, Compression.ZSTD)) {
+            byte[] compressed = join(compressor.compress(Flux.empty(), codec));
+
+            assertThat(join(compressor.decompress(chunks(compressed, 5000), codec))).as(codec.name()).isEmpty();
+        }
+    }
+
+    @Test
+    void passesContentThroughWithoutCodec() {
+        assertThat(join(compressor.compress(chunks(CSV, 7000), Compression.NONE))).isEqualTo(CSV);
+        assertThat(join(compressor.decompress(chunks(CSV, 7000), null))).isEqualTo(CSV);
+        assertThatIllegalArgumentException().isThrownBy(() -> new ContentCompressor(Schedulers.immediate(), true,
+                "none", 6, 3, "text/*", DataSize.ofKilobytes(16), 0.9));
+    }
+
+    private static ContentCompressor compressor(boolean enabled) {
+        return new ContentCompressor(Schedulers.boundedElastic(), enabled, "zstd", 6, 3,
+                "text/*,application/json", DataSize.ofKilobytes(16), 0.9);
+    }
+
+    private static byte[] csv() {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            csv.append("row,").append(i).append(",value\n");
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static DataBuffer wrap(byte[] data) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(data);
+    }
+
+    private static Flux<DataBuffer> chunks(byte[] data, int size) {
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < data.length; i += size) {
+            buffers.add(wrap(Arrays.copyOfRange(data, i, Math.min(data.length, i + size))));
+        }
+        return Flux.fromIterable(buffers);
+    }
+
+    private static byte[] join(Flux<DataBuffer> content) {
+        return bytes(content).block();
+    }
+
+    private static Mono<byte[]> bytes(Flux<DataBuffer> content) {
+        return DataBufferUtils.join(content)
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    DataBufferUtils.release(buffer);
+                    return bytes;
+                })
+                .defaultIfEmpty(new byte[0]);
+    }
+}
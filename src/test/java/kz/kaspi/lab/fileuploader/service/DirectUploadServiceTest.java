@@ -0,0 +1,180 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.minio.MinioClient;
+import io.minio.StatObjectResponse;
+import io.minio.messages.Part;
+import kz.kaspi.lab.fileuploader.entity.DirectUpload;
+import kz.kaspi.lab.fileuploader.entity.DirectUpload.DirectUploadStatus;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.repository.DirectUploadRepository;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DirectUploadServiceTest {
+
+    private static final String COMPLETING = DirectUploadStatus.COMPLETING.name();
+
+    private final MinioMultipartClient multipartClient = mock(MinioMultipartClient.class);
+    private final FileUploadService fileUploadService = mock(FileUploadService.class);
+    private final StorageService storageService = mock(StorageService.class);
+    private final UploadRepository uploadRepository = mock(UploadRepository.class);
+    private final DirectUploadRepository directUploadRepository = mock(DirectUploadRepository.class);
+    private DirectUploadService service;
+    private Upload upload;
+
+    @BeforeEach
+    void setUp() {
+        service = new DirectUploadService(mock(MinioClient.class), multipartClient, mock(IdempotencyService.class),
+                mock(IdempotencyCache.class), fileUploadService, storageService, uploadRepository,
+                directUploadRepository, mock(UploadMetrics.class), Schedulers.immediate(), "bucket",
+                DataSize.ofMegabytes(64), DataSize.ofMegabytes(5), Duration.ofHours(1), Duration.ofMinutes(15),
+                Duration.ofMinutes(15), 100);
+
+        upload = new Upload();
+        upload.setId(UUID.randomUUID());
+        upload.setIdempotencyKey("key");
+        upload.setStatus(Upload.UploadStatus.PROCESSING);
+        // Каждое чтение — своя копия, как из базы
+        when(uploadRepository.findById(upload.getId())).thenAnswer(invocation -> Mono.fromCallable(this::storedUpload));
+        when(storageService.deleteFile(anyString())).thenReturn(Mono.empty());
+        when(storageService.abortMultipart(any())).thenReturn(Mono.empty());
+        when(fileUploadService.markFailed(any(), anyString())).thenReturn(Mono.empty());
+        when(directUploadRepository.transition(any(), anyString(), anyString()))
+                .thenAnswer(invocation -> Mono.just(new DirectUpload()));
+    }
+
+    @Test
+    void retriesStatAfterAssembly() {
+        DirectUpload direct = multipart();
+        Part part = mock(Part.class);
+        when(part.partNumber()).thenReturn(1);
+        when(part.partSize()).thenReturn(10L);
+        when(part.etag()).thenReturn("etag");
+        when(multipartClient.listParts("bucket", direct.getObjectName(), "mpu")).thenReturn(Flux.just(part));
+        when(storageService.completeMultipart(any(), any())).thenReturn(Mono.empty());
+        StatObjectResponse stat = stat(10);
+        AtomicInteger stats = new AtomicInteger();
+        when(multipartClient.statObject("bucket", direct.getObjectName())).thenReturn(Mono.defer(() ->
+                stats.incrementAndGet() == 1 ? Mono.error(new IOException("connection reset")) : Mono.just(stat)));
+        when(uploadRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(service.complete(direct.getId(), null))
+                .expectNextMatches(saved -> saved.getStatus() == Upload.UploadStatus.SUCCESS)
+                .verifyComplete();
+
+        verify(directUploadRepository).transition(direct.getId(), COMPLETING, DirectUploadStatus.COMPLETED.name());
+        verify(storageService, never()).deleteFile(anyString());
+    }
+
+    @Test
+    void failsBothRowsWhenSuccessCannotBeRecorded() {
+        DirectUpload direct = single();
+        StatObjectResponse stat = stat(10);
+        when(multipartClient.statObject("bucket", direct.getObjectName())).thenReturn(Mono.just(stat));
+        when(uploadRepository.save(any())).thenReturn(Mono.error(new IllegalStateException("database is down")));
+
+        StepVerifier.create(service.complete(direct.getId(), null))
+                .verifyErrorMessage("database is down");
+
+        verify(directUploadRepository).transition(direct.getId(), COMPLETING, DirectUploadStatus.FAILED.name());
+        verify(directUploadRepository, never()).transition(direct.getId(), COMPLETING, DirectUploadStatus.PENDING.name());
+        verify(storageService).deleteFile(direct.getObjectName());
+        verify(fileUploadService).markFailed(any(), anyString());
+    }
+
+    @Test
+    void reopensWhenObjectIsNotUploadedYet() {
+        DirectUpload direct = single();
+        StatObjectResponse stat = stat(3);
+        when(multipartClient.statObject("bucket", direct.getObjectName())).thenReturn(Mono.just(stat));
+
+        StepVerifier.create(service.complete(direct.getId(), null))
+                .verifyErrorMessage("Object is 3 bytes, expected 10");
+
+        verify(directUploadRepository).transition(direct.getId(), COMPLETING, DirectUploadStatus.PENDING.name());
+        verify(storageService, never()).deleteFile(anyString());
+    }
+
+    @Test
+    void expiryKeepsObjectOfSucceededUpload() {
+        DirectUpload direct = multipart();
+        direct.setStatus(DirectUploadStatus.EXPIRED);
+        upload.setStatus(Upload.UploadStatus.SUCCESS);
+        when(directUploadRepository.expireBatch(any(Instant.class), anyInt())).thenReturn(Flux.just(direct));
+
+        StepVerifier.create(service.expireDirectUploads()).verifyComplete();
+
+        verify(directUploadRepository).transition(direct.getId(), DirectUploadStatus.EXPIRED.name(),
+                DirectUploadStatus.COMPLETED.name());
+        verify(storageService, never()).deleteFile(anyString());
+        verify(fileUploadService, never()).markFailed(any(), anyString());
+    }
+
+    @Test
+    void expiryRemovesAbandonedUpload() {
+        DirectUpload direct = multipart();
+        direct.setStatus(DirectUploadStatus.EXPIRED);
+        when(directUploadRepository.expireBatch(any(Instant.class), anyInt())).thenReturn(Flux.just(direct));
+
+        StepVerifier.create(service.expireDirectUploads()).verifyComplete();
+
+        verify(storageService).abortMultipart(new MultipartTarget(direct.getObjectName(), "mpu"));
+        verify(storageService).deleteFile(direct.getObjectName());
+        verify(fileUploadService).markFailed(any(), anyString());
+    }
+
+    private Upload storedUpload() {
+        Upload stored = new Upload();
+        stored.setId(upload.getId());
+        stored.setIdempotencyKey(upload.getIdempotencyKey());
+        stored.setStatus(upload.getStatus());
+        return stored;
+    }
+
+    private DirectUpload single() {
+        DirectUpload direct = new DirectUpload();
+        direct.setId(UUID.randomUUID());
+        direct.setUploadId(upload.getId());
+        direct.setObjectName("2026/10/18/object");
+        direct.setExpectedSize(10L);
+        direct.setStatus(DirectUploadStatus.PENDING);
+        when(directUploadRepository.findPendingById(direct.getId())).thenReturn(Mono.just(direct));
+        when(directUploadRepository.transition(direct.getId(), DirectUploadStatus.PENDING.name(), COMPLETING))
+                .thenReturn(Mono.just(direct));
+        return direct;
+    }
+
+    private DirectUpload multipart() {
+        DirectUpload direct = single();
+        direct.setMultipartUploadId("mpu");
+        direct.setPartSize(DataSize.ofMegabytes(5).toBytes());
+        return direct;
+    }
+
+    private static StatObjectResponse stat(long size) {
+        StatObjectResponse stat = mock(StatObjectResponse.class);
+        when(stat.size()).thenReturn(size);
+        when(stat.etag()).thenReturn("\"etag\"");
+        return stat;
+    }
+}
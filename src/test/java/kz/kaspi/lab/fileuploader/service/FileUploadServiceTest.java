@@ -0,0 +1,116 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FileUploadServiceTest {
+
+    private final BlobService blobService = mock(BlobService.class);
+    private final UploadRepository uploadRepository = mock(UploadRepository.class);
+    private final IdempotencyCache cache = new IdempotencyCache(
+            new SimpleMeterRegistry(), 100, Duration.ofHours(1), Duration.ofSeconds(5));
+    private final UploadProgress uploadProgress = new UploadProgress();
+    private final FileUploadService service = new FileUploadService(blobService, uploadRepository, cache, uploadProgress,
+            new UploadMetrics(new SimpleMeterRegistry(), ObservationRegistry.NOOP, uploadProgress), mock(TransactionalOperator.class));
+
+    private Upload upload;
+
+    @BeforeEach
+    void setUp() {
+        upload = new Upload();
+        upload.setId(UUID.randomUUID());
+        upload.setIdempotencyKey("key");
+        upload.setOriginalFilename("a.txt");
+        upload.setContentType("text/plain");
+        upload.setFileSize(5L);
+        upload.setStatus(UploadStatus.PROCESSING);
+    }
+
+    @Test
+    void cachesSuccess() {
+        when(blobService.store(any(), anyString(), anyString(), anyLong()))
+                .thenReturn(Mono.just(new StoredObject("objects/a", 5, "hash", false)));
+        when(uploadRepository.save(upload)).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(service.processUpload(upload, Flux.empty()))
+                .assertNext(response -> assertThat(response.status()).isEqualTo(UploadStatus.SUCCESS))
+                .verifyComplete();
+        assertThat(status()).contains(UploadStatus.SUCCESS);
+    }
+
+    @Test
+    void cachesFailedWhenStorageFails() {
+        when(blobService.store(any(), anyString(), anyString(), anyLong()))
+                .thenReturn(Mono.error(new StorageException("minio down")));
+        when(uploadRepository.updateStatusAndErrorByIdempotencyKey("key", "FAILED", "minio down"))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(service.processUpload(upload, Flux.empty()))
+                .verifyError(StorageException.class);
+        assertThat(status()).contains(UploadStatus.FAILED);
+    }
+
+    @Test
+    void keepsStagedUploadProcessingOnTransientStorageError() {
+        when(blobService.store(any(), anyString(), anyString(), anyLong()))
+                .thenReturn(Mono.error(new StorageException("Service Unavailable", null, true)));
+
+        StepVerifier.create(service.processStaged(upload, Flux.empty()))
+                .verifyError(StorageException.class);
+        verify(uploadRepository, never()).updateStatusAndErrorByIdempotencyKey(anyString(), anyString(), anyString());
+        assertThat(status()).isEmpty();
+    }
+
+    @Test
+    void failsStagedUploadOnPermanentStorageError() {
+        when(blobService.store(any(), anyString(), anyString(), anyLong()))
+                .thenReturn(Mono.error(new StorageException("Access Denied")));
+        when(uploadRepository.updateStatusAndErrorByIdempotencyKey("key", "FAILED", "Access Denied"))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(service.processStaged(upload, Flux.empty()))
+                .verifyError(StorageException.class);
+        assertThat(status()).contains(UploadStatus.FAILED);
+    }
+
+    @Test
+    void cachesFailedWhenDatabaseUpdateFails() {
+        when(blobService.store(any(), anyString(), anyString(), anyLong()))
+                .thenReturn(Mono.just(new StoredObject("objects/a", 5, "hash", false)));
+        when(uploadRepository.save(upload)).thenReturn(Mono.error(new IllegalStateException("db down")));
+        when(blobService.release("hash")).thenReturn(Mono.empty());
+        when(uploadRepository.updateStatusAndErrorByIdempotencyKey("key", "FAILED", "db down"))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(service.processUpload(upload, Flux.empty()))
+                .verifyError(IllegalStateException.class);
+        assertThat(status()).contains(UploadStatus.FAILED);
+    }
+
+    private Optional<UploadStatus> status() {
+        return cache.get("key").map(IdempotencyCache.Entry::status);
+    }
+}
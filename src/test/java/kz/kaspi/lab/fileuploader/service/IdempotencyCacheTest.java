@@ -0,0 +1,41 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class IdempotencyCacheTest {
+
+    private final IdempotencyCache cache = new IdempotencyCache(
+            new SimpleMeterRegistry(), 100, Duration.ofHours(1), Duration.ofMillis(200));
+
+    @Test
+    void keepsSuccessLongerThanTransientStatuses() {
+        cache.put("done", UploadStatus.SUCCESS, UUID.randomUUID());
+        cache.put("running", UploadStatus.PROCESSING, UUID.randomUUID());
+        cache.put("failed", UploadStatus.FAILED, UUID.randomUUID());
+
+        await().atMost(Duration.ofSeconds(5)).until(() ->
+                cache.get("running").isEmpty() && cache.get("failed").isEmpty());
+        assertThat(cache.get("done")).map(IdempotencyCache.Entry::status).contains(UploadStatus.SUCCESS);
+    }
+
+    @Test
+    void statusChangeRestartsExpiryWithItsOwnTtl() {
+        UUID id = UUID.randomUUID();
+        cache.put("key", UploadStatus.PROCESSING, id);
+        cache.put("key", UploadStatus.SUCCESS, id);
+
+        await().pollDelay(Duration.ofMillis(400)).atMost(Duration.ofSeconds(5)).until(() -> true);
+        assertThat(cache.get("key")).contains(new IdempotencyCache.Entry(UploadStatus.SUCCESS, id));
+
+        cache.put("key", UploadStatus.FAILED, id);
+        await().atMost(Duration.ofSeconds(5)).until(() -> cache.get("key").isEmpty());
+    }
+}
@@ -0,0 +1,82 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import kz.kaspi.lab.fileuploader.repository.UploadClaim;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class IdempotencyServiceTest {
+
+    private final UploadRepository uploadRepository = mock(UploadRepository.class);
+    private final IdempotencyCache cache = new IdempotencyCache(
+            new SimpleMeterRegistry(), 100, Duration.ofHours(1), Duration.ofSeconds(5));
+    private final IdempotencyService service = new IdempotencyService(uploadRepository, cache);
+
+    @Test
+    void answersSuccessFromCacheWithoutDatabase() {
+        UUID id = UUID.randomUUID();
+        cache.put("key", UploadStatus.SUCCESS, id);
+
+        StepVerifier.create(service.checkCachedStatus("key"))
+                .assertNext(upload -> {
+                    assertThat(upload.getId()).isEqualTo(id);
+                    assertThat(upload.getStatus()).isEqualTo(UploadStatus.SUCCESS);
+                })
+                .verifyComplete();
+        verifyNoInteractions(uploadRepository);
+    }
+
+    @Test
+    void ignoresFailedEntries() {
+        // FAILED всё равно ведёт к повторной попытке через claim
+        cache.put("key", UploadStatus.FAILED, UUID.randomUUID());
+
+        StepVerifier.create(service.checkCachedStatus("key")).verifyComplete();
+    }
+
+    @Test
+    void claimCachesProcessing() {
+        UUID id = UUID.randomUUID();
+        when(uploadRepository.claim("key", "a.txt", 5, "text/plain"))
+                .thenReturn(Mono.just(new UploadClaim(upload(id, UploadStatus.PROCESSING), true)));
+
+        StepVerifier.create(service.claim("key", "a.txt", 5, "text/plain"))
+                .assertNext(claim -> assertThat(claim.claimed()).isTrue())
+                .verifyComplete();
+        assertThat(cache.get("key")).contains(new IdempotencyCache.Entry(UploadStatus.PROCESSING, id));
+    }
+
+    @Test
+    void repeatsClaimLostToConcurrentInsert() {
+        Upload existing = upload(UUID.randomUUID(), UploadStatus.PROCESSING);
+        AtomicInteger attempts = new AtomicInteger();
+        when(uploadRepository.claim("key", "a.txt", 5, "text/plain")).thenReturn(Mono.defer(() ->
+                attempts.incrementAndGet() == 1 ? Mono.empty() : Mono.just(new UploadClaim(existing, false))));
+
+        StepVerifier.create(service.claim("key", "a.txt", 5, "text/plain"))
+                .assertNext(claim -> assertThat(claim.claimed()).isFalse())
+                .verifyComplete();
+        assertThat(attempts).hasValue(2);
+    }
+
+    private static Upload upload(UUID id, UploadStatus status) {
+        Upload upload = new Upload();
+        upload.setId(id);
+        upload.setIdempotencyKey("key");
+        upload.setStatus(status);
+        return upload;
+    }
+}
@@ -0,0 +1,79 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.kaspi.lab.fileuploader.dto.UploadResponse;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import kz.kaspi.lab.fileuploader.service.InFlightUploads.Registration;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InFlightUploadsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final InFlightUploads inFlight = new InFlightUploads(registry, Duration.ofMillis(200));
+
+    @Test
+    void followerGetsLeaderResult() {
+        Registration leader = inFlight.register("key");
+        Registration follower = inFlight.register("key");
+        UploadResponse response = new UploadResponse(UUID.randomUUID(), UploadStatus.SUCCESS, "a.txt", "path", null);
+
+        assertThat(leader.leader()).isTrue();
+        assertThat(follower.leader()).isFalse();
+        assertThat(follower.entry()).isSameAs(leader.entry());
+
+        StepVerifier.create(inFlight.await(follower.entry()))
+                .then(() -> {
+                    leader.entry().succeeded(response);
+                    inFlight.finish("key", leader.entry());
+                })
+                .expectNext(response)
+                .verifyComplete();
+        assertThat(coalesced("completed")).isEqualTo(1);
+    }
+
+    @Test
+    void followerFallsBackWhenLeaderFails() {
+        Registration leader = inFlight.register("key");
+        Registration follower = inFlight.register("key");
+
+        StepVerifier.create(inFlight.await(follower.entry()))
+                .then(() -> inFlight.finish("key", leader.entry()))
+                .verifyComplete();
+        assertThat(coalesced("fallback")).isEqualTo(1);
+    }
+
+    @Test
+    void followerTimesOutWhileLeaderIsStillUploading() {
+        Registration leader = inFlight.register("key");
+
+        StepVerifier.create(inFlight.await(inFlight.register("key").entry()))
+                .verifyError(TimeoutException.class);
+        assertThat(coalesced("timeout")).isEqualTo(1);
+        assertThat(leader.entry().uploadId()).isNull();
+    }
+
+    @Test
+    void finishedKeyStartsNewLeader() {
+        Registration first = inFlight.register("key");
+        inFlight.finish("key", first.entry());
+
+        Registration second = inFlight.register("key");
+
+        assertThat(second.leader()).isTrue();
+        assertThat(second.entry()).isNotSameAs(first.entry());
+        // Запоздавший finish старого лидера не снимает нового
+        inFlight.finish("key", first.entry());
+        assertThat(inFlight.register("key").leader()).isFalse();
+    }
+
+    private double coalesced(String outcome) {
+        return registry.get("upload.coalesced").tag("outcome", outcome).counter().count();
+    }
+}
@@ -0,0 +1,143 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalStorageBackendTest {
+
+    private static final int PART_SIZE = (int) DataSize.ofMegabytes(5).toBytes();
+
+    @TempDir
+    Path rootDir;
+
+    private LocalStorageBackend backend;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        PartBufferPool pool = new PartBufferPool(new SimpleMeterRegistry(), DataSize.ofMegabytes(5), 2, 4);
+        backend = new LocalStorageBackend(rootDir, pool, Schedulers.boundedElastic());
+        backend.init();
+    }
+
+    @Test
+    void storesAndReadsObjectWithRanges() throws Exception {
+        byte[] data = random(12_345, 1);
+
+        StoredObject stored = backend.put("2026/10/18/a.bin", chunks(data), "application/octet-stream", 0, hash -> Mono.empty())
+                .block();
+
+        assertThat(stored.size()).isEqualTo(data.length);
+        assertThat(stored.contentHash()).isEqualTo(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data)));
+        assertThat(read(backend.get("2026/10/18/a.bin", 0, null))).isEqualTo(data);
+        assertThat(read(backend.get("2026/10/18/a.bin", 100, 1500L))).isEqualTo(Arrays.copyOfRange(data, 100, 1600));
+        assertThat(backend.exists("2026/10/18/a.bin").block()).isTrue();
+        // Временный файл записи переименован на место
+        try (var leftovers = Files.list(rootDir.resolve(".tmp"))) {
+            assertThat(leftovers).isEmpty();
+        }
+
+        backend.delete("2026/10/18/a.bin").block();
+        assertThat(backend.exists("2026/10/18/a.bin").block()).isFalse();
+    }
+
+    @Test
+    void rejectsObjectNameEscapingRoot() {
+        StepVerifier.create(backend.put("../../../outside.bin", chunks(new byte[10]), null, 0, hash -> Mono.empty()))
+                .verifyError(StorageException.class);
+        assertThat(rootDir.resolveSibling("outside.bin")).doesNotExist();
+    }
+
+    @Test
+    void assemblesMultipartInPartOrder() {
+        byte[] first = random(PART_SIZE, 2);
+        byte[] second = random(777, 3);
+        MultipartTarget target = new MultipartTarget("video.bin", backend.beginMultipart("video.bin", null).block());
+
+        UploadedPart secondPart = backend.uploadPart(target, 2, chunks(second)).block();
+        backend.uploadPart(target, 1, chunks(random(PART_SIZE, 4))).block();
+        // Повтор чанка заменяет прежнюю версию
+        UploadedPart firstPart = backend.uploadPart(target, 1, chunks(first)).block();
+        backend.completeMultipart(target, List.of(firstPart, secondPart)).block();
+
+        byte[] all = read(backend.get("video.bin", 0, null));
+        assertThat(all).hasSize(first.length + second.length);
+        assertThat(Arrays.copyOfRange(all, 0, first.length)).isEqualTo(first);
+        assertThat(Arrays.copyOfRange(all, first.length, all.length)).isEqualTo(second);
+        assertThat(rootDir.resolve(".multipart").resolve(target.uploadId())).doesNotExist();
+    }
+
+    @Test
+    void rejectsOversizedPartAndPartsOfAbortedUpload() {
+        MultipartTarget target = new MultipartTarget("video.bin", backend.beginMultipart("video.bin", null).block());
+
+        StepVerifier.create(backend.uploadPart(target, 1, chunks(new byte[PART_SIZE + 1])))
+                .verifyErrorMessage("Chunk exceeds maximum size of " + PART_SIZE + " bytes");
+
+        backend.abortMultipart(target).block();
+        StepVerifier.create(backend.uploadPart(target, 1, chunks(new byte[10])))
+                .verifyError(StorageException.class);
+    }
+
+    @Test
+    void listsObjectsInNameOrderAfterPosition() {
+        for (String name : List.of("c.bin", "a.bin", "b.bin")) {
+            backend.put(name, chunks(name.getBytes()), null, 0, hash -> Mono.empty()).block();
+        }
+
+        assertThat(backend.list(null).map(ListedObject::name).collectList().block())
+                .containsExactly("a.bin", "b.bin", "c.bin");
+        assertThat(backend.list("b.bin").map(ListedObject::name).collectList().block())
+                .containsExactly("c.bin");
+
+        backend.deleteAll(List.of("a.bin", "missing.bin")).block();
+        assertThat(backend.list(null).map(ListedObject::name).collectList().block())
+                .containsExactly("b.bin", "c.bin");
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static Flux<DataBuffer> chunks(byte[] data) {
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < data.length; i += 64 * 1024) {
+            buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(data, i, Math.min(data.length, i + 64 * 1024))));
+        }
+        return Flux.fromIterable(buffers);
+    }
+
+    private static byte[] read(Flux<DataBuffer> content) {
+        return DataBufferUtils.join(content)
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    DataBufferUtils.release(buffer);
+                    return bytes;
+                })
+                .block();
+    }
+}
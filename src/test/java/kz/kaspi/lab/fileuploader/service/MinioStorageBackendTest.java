@@ -0,0 +1,135 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.ErrorResponse;
+import io.minio.messages.Part;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MinioStorageBackendTest {
+
+    private static final int PART_SIZE = (int) DataSize.ofMegabytes(5).toBytes();
+
+    private final MinioMultipartClient client = mock(MinioMultipartClient.class);
+    private final PartBufferPool pool = new PartBufferPool(new SimpleMeterRegistry(), DataSize.ofMegabytes(5), 4, 4);
+    private MinioStorageBackend backend;
+
+    @BeforeEach
+    void setUp() {
+        backend = new MinioStorageBackend(client, pool, Schedulers.immediate());
+        ReflectionTestUtils.setField(backend, "bucketName", "bucket");
+        ReflectionTestUtils.setField(backend, "parallelThreshold", DataSize.ofMegabytes(64));
+        ReflectionTestUtils.setField(backend, "partConcurrency", 4);
+        ReflectionTestUtils.setField(backend, "partRetries", 3);
+        when(client.createMultipartUpload("bucket", "object", null)).thenReturn(Mono.just("mpu"));
+        when(client.completeMultipartUpload(eq("bucket"), eq("object"), eq("mpu"), anyList())).thenReturn(Mono.empty());
+        when(client.abortMultipartUpload("bucket", "object", "mpu")).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void retriesThrottledPartFromTheSameBuffer() {
+        AtomicInteger attempts = new AtomicInteger();
+        List<byte[]> sent = new CopyOnWriteArrayList<>();
+        // Как и настоящий клиент, запрос уходит при каждой подписке — повтор переподписывается
+        when(client.uploadPart(eq("bucket"), eq("object"), eq("mpu"), anyInt(), any(), anyInt())).thenAnswer(invocation -> {
+            int partNumber = invocation.getArgument(3);
+            return Mono.defer(() -> {
+                if (partNumber != 2) {
+                    return Mono.just(new Part(partNumber, "etag" + partNumber));
+                }
+                sent.add(invocation.getArgument(4));
+                // Первая попытка второй части — SlowDown
+                return attempts.getAndIncrement() == 0
+                        ? Mono.error(s3Error("SlowDown", 503))
+                        : Mono.just(new Part(partNumber, "etag" + partNumber));
+            });
+        });
+
+        StepVerifier.create(backend.put("object", content(PART_SIZE + 10), null, 0, hash -> Mono.empty()))
+                .expectNextMatches(stored -> stored.size() == PART_SIZE + 10)
+                .verifyComplete();
+
+        assertThat(attempts).hasValue(2);
+        assertThat(sent.get(1)).isSameAs(sent.get(0));
+        verify(client).uploadPart(eq("bucket"), eq("object"), eq("mpu"), eq(2), any(), eq(10));
+        verify(client).completeMultipartUpload(eq("bucket"), eq("object"), eq("mpu"), anyList());
+        verify(client, never()).abortMultipartUpload(anyString(), anyString(), anyString());
+        assertThat(pool.inUse()).isZero();
+    }
+
+    @Test
+    void abortsMultipartWhenPartIsRejected() {
+        when(client.uploadPart(eq("bucket"), eq("object"), eq("mpu"), anyInt(), any(), anyInt()))
+                .thenReturn(Mono.error(s3Error("AccessDenied", 403)));
+
+        StepVerifier.create(backend.put("object", content(PART_SIZE + 10), null, 0, hash -> Mono.empty()))
+                .verifyError(ErrorResponseException.class);
+
+        // Ошибка 4xx не повторяется
+        verify(client, times(1)).uploadPart(eq("bucket"), eq("object"), eq("mpu"), eq(1), any(), anyInt());
+        verify(client).abortMultipartUpload("bucket", "object", "mpu");
+        assertThat(pool.inUse()).isZero();
+    }
+
+    @Test
+    void retriesThrottlingAndServerErrors() {
+        assertThat(MinioStorageBackend.isTransient(s3Error("SlowDown", 503))).isTrue();
+        assertThat(MinioStorageBackend.isTransient(new CompletionException(s3Error("InternalError", 500)))).isTrue();
+        // Неизвестный код, но статус 5xx
+        assertThat(MinioStorageBackend.isTransient(s3Error("XAmzContentSHA256Mismatch", 502))).isTrue();
+        assertThat(MinioStorageBackend.isTransient(new IOException("connection reset"))).isTrue();
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        assertThat(MinioStorageBackend.isTransient(s3Error("NoSuchUpload", 404))).isFalse();
+        assertThat(MinioStorageBackend.isTransient(s3Error("AccessDenied", 403))).isFalse();
+        assertThat(MinioStorageBackend.isTransient(new IllegalStateException("bug"))).isFalse();
+    }
+
+    private static Flux<DataBuffer> content(int size) {
+        return Flux.range(0, (size + 99_999) / 100_000)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(new byte[Math.min(100_000, size - i * 100_000)]));
+    }
+
+    private static ErrorResponseException s3Error(String code, int status) {
+        Response response = new Response.Builder()
+                .request(new Request.Builder().url("http://localhost:9000/bucket/object").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(status)
+                .message(code)
+                .build();
+        return new ErrorResponseException(new ErrorResponse(code, code, "bucket", "object", "/bucket/object", "req", "host"),
+                response, null);
+    }
+}
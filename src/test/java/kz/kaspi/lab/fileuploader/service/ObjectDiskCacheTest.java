@@ -0,0 +1,83 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.kaspi.lab.fileuploader.entity.Upload.Compression;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ObjectDiskCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    private final StorageService storageService = mock(StorageService.class);
+    private final AtomicInteger downloads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        when(storageService.downloadFile(anyString(), any(), anyLong(), any())).thenAnswer(invocation -> Flux.defer(() -> {
+            downloads.incrementAndGet();
+            return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(new byte[2048]));
+        }).delaySubscription(Duration.ofMillis(50)));
+    }
+
+    @Test
+    void concurrentMissesShareOneDownload() throws Exception {
+        ObjectDiskCache cache = cache(DataSize.ofMegabytes(1), Duration.ofMinutes(1));
+
+        Path first = Mono.zip(cache.get("a", Compression.NONE), cache.get("a", Compression.NONE))
+                .map(pair -> {
+                    assertThat(pair.getT1()).isEqualTo(pair.getT2());
+                    return pair.getT1();
+                })
+                .block();
+
+        assertThat(downloads).hasValue(1);
+        assertThat(Files.size(first)).isEqualTo(2048);
+        assertThat(cache.get("a", Compression.NONE).block()).isEqualTo(first);
+    }
+
+    @Test
+    void evictedFileOutlivesPathsAlreadyHandedOut() {
+        ObjectDiskCache cache = cache(DataSize.ofKilobytes(5), Duration.ofMillis(500));
+
+        Path evicted = cache.get("a", Compression.NONE).block();
+        cache.get("b", Compression.NONE).block();
+        cache.get("c", Compression.NONE).block();
+        cache.get("d", Compression.NONE).block();
+
+        // Вытеснение уже могло случиться, но файл ещё на месте для тех, кто получил путь
+        assertThat(evicted).exists();
+        await().atMost(Duration.ofSeconds(5)).until(() -> Files.notExists(evicted));
+    }
+
+    private ObjectDiskCache cache(DataSize maxSize, Duration deleteDelay) {
+        ObjectDiskCache cache = new ObjectDiskCache(storageService, new SimpleMeterRegistry(), Schedulers.boundedElastic(),
+                true, cacheDir, maxSize, DataSize.ofMegabytes(1), deleteDelay);
+        try {
+            cache.init();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,123 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.entity.Pack;
+import kz.kaspi.lab.fileuploader.exception.StorageException;
+import kz.kaspi.lab.fileuploader.repository.PackRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PackWriterTest {
+
+    private final StorageService storageService = mock(StorageService.class);
+    private final PackRepository packRepository = mock(PackRepository.class);
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private final AtomicInteger packs = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        when(storageService.uploadPack(any(), anyLong())).thenAnswer(invocation -> DataBufferUtils.join(invocation.<Flux<DataBuffer>>getArgument(0))
+                .map(buffer -> {
+                    String content = buffer.toString(StandardCharsets.US_ASCII);
+                    written.add(content);
+                    return new StoredObject("packs/" + packs.incrementAndGet(), content.length(), "hash", false);
+                }));
+        when(packRepository.save(any(Pack.class))).thenAnswer(invocation -> {
+            Pack pack = invocation.getArgument(0);
+            pack.setId(UUID.randomUUID());
+            return Mono.just(pack);
+        });
+        when(storageService.deleteFile(any())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void acceptsOnlySmallFilesOfKnownSize() {
+        PackWriter writer = writer(DataSize.ofBytes(10), Duration.ofMinutes(1));
+
+        assertThat(writer.accepts(5)).isTrue();
+        assertThat(writer.accepts(0)).isFalse();
+        assertThat(writer.accepts(DataSize.ofKilobytes(64).toBytes() + 1)).isFalse();
+        assertThat(new PackWriter(storageService, packRepository, false, DataSize.ofKilobytes(64), DataSize.ofBytes(10),
+                Duration.ofMinutes(1)).accepts(5)).isFalse();
+    }
+
+    @Test
+    void sealsPackWhenItIsFull() {
+        PackWriter writer = writer(DataSize.ofBytes(10), Duration.ofMinutes(1));
+
+        List<PackEntry> entries = Flux.merge(append(writer, "abc"), append(writer, "de"), append(writer, "fghij"))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(written).containsExactly("abcdefghij");
+        assertThat(entries).extracting(PackEntry::offset).containsExactlyInAnyOrder(0L, 3L, 5L);
+        assertThat(entries).extracting(PackEntry::objectName).containsOnly("packs/1");
+    }
+
+    @Test
+    void sealsPartialPackAfterMaxLinger() {
+        PackWriter writer = writer(DataSize.ofKilobytes(8), Duration.ofMillis(100));
+
+        StepVerifier.create(append(writer, "abc"))
+                .expectNextMatches(entry -> entry.offset() == 0 && entry.objectName().equals("packs/1"))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        assertThat(written).containsExactly("abc");
+    }
+
+    @Test
+    void acknowledgesOnlyAfterPackIsRecorded() {
+        PackWriter writer = writer(DataSize.ofKilobytes(8), Duration.ofMinutes(1));
+        StepVerifier.FirstStep<PackEntry> pending = StepVerifier.create(append(writer, "abc"));
+
+        pending.expectSubscription()
+                .expectNoEvent(Duration.ofMillis(100))
+                .then(writer::flush)
+                .expectNextCount(1)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void failsEveryFileWhenPackCannotBeRecorded() {
+        when(packRepository.save(any(Pack.class))).thenReturn(Mono.error(new IllegalStateException("database is down")));
+        PackWriter writer = writer(DataSize.ofBytes(5), Duration.ofMinutes(1));
+
+        StepVerifier.create(Flux.merge(append(writer, "abc").materialize(), append(writer, "de").materialize())
+                        .filter(signal -> signal.isOnError())
+                        .map(signal -> signal.getThrowable()))
+                .expectNextMatches(StorageException.class::isInstance)
+                .expectNextMatches(StorageException.class::isInstance)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        // Объект без строки в packs никому не нужен
+        verify(storageService).deleteFile("packs/1");
+    }
+
+    private PackWriter writer(DataSize packSize, Duration maxLinger) {
+        return new PackWriter(storageService, packRepository, true, DataSize.ofKilobytes(64), packSize, maxLinger);
+    }
+
+    private static Mono<PackEntry> append(PackWriter writer, String content) {
+        return writer.append(content.getBytes(StandardCharsets.US_ASCII));
+    }
+}
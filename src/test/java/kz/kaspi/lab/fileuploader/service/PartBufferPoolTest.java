@@ -0,0 +1,77 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartBufferPoolTest {
+
+    private final PartBufferPool pool = new PartBufferPool(new SimpleMeterRegistry(), DataSize.ofMegabytes(5), 4, 2);
+
+    @Test
+    void waitsForReleaseWhenAllBuffersAreInUse() {
+        byte[] first = pool.acquire().block();
+        pool.acquire().block();
+        AtomicReference<byte[]> third = new AtomicReference<>();
+
+        pool.acquire().subscribe(third::set);
+        assertThat(third.get()).isNull();
+        assertThat(pool.waiting()).isEqualTo(1);
+
+        pool.release(first);
+        assertThat(third.get()).isSameAs(first);
+        assertThat(pool.inUse()).isEqualTo(2);
+    }
+
+    @Test
+    void discardedBufferFreesItsPlaceButIsNotReused() {
+        byte[] first = pool.acquire().block();
+        pool.acquire().block();
+        AtomicReference<byte[]> third = new AtomicReference<>();
+        pool.acquire().subscribe(third::set);
+
+        pool.discard(first);
+
+        assertThat(third.get()).isNotNull().isNotSameAs(first);
+        assertThat(pool.inUse()).isEqualTo(2);
+    }
+
+    @Test
+    void cancelledWaiterDoesNotTakeABuffer() {
+        byte[] first = pool.acquire().block();
+        byte[] second = pool.acquire().block();
+        Disposable cancelled = pool.acquire().subscribe();
+        cancelled.dispose();
+        assertThat(pool.waiting()).isZero();
+
+        pool.release(first);
+        pool.release(second);
+
+        assertThat(pool.inUse()).isZero();
+        StepVerifier.create(pool.acquire()).expectNextCount(1).verifyComplete();
+    }
+
+    @Test
+    void chunkerStopsReadingUntilABufferIsFree() {
+        byte[] held = pool.acquire().block();
+        pool.acquire().block();
+        ContentDigest digest = new ContentDigest();
+
+        StepVerifier.create(PartChunker.split(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(new byte[10])), pool, digest))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(100))
+                .then(() -> pool.release(held))
+                .expectNextMatches(chunk -> chunk.length() == 10)
+                .verifyComplete();
+        assertThat(digest.size()).isEqualTo(10);
+    }
+}
@@ -0,0 +1,92 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.kaspi.lab.fileuploader.service.PartChunker.PartChunk;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartChunkerTest {
+
+    private static final int PART_SIZE = (int) DataSize.ofMegabytes(5).toBytes();
+
+    private final PartBufferPool pool = new PartBufferPool(new SimpleMeterRegistry(), DataSize.ofMegabytes(5), 4, 4);
+
+    @Test
+    void cutsContentIntoFullPartsAndRemainder() throws Exception {
+        byte[] data = new byte[2 * PART_SIZE + 1234];
+        new Random(1).nextBytes(data);
+        ContentDigest digest = new ContentDigest();
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        List<Integer> lengths = new ArrayList<>();
+
+        // Входные буферы не кратны части — граница части проходит внутри буфера
+        PartChunker.split(chunks(data, 100_000), pool, digest)
+                .doOnNext(chunk -> {
+                    lengths.add(chunk.length());
+                    joined.write(chunk.data(), 0, chunk.length());
+                    pool.release(chunk.data());
+                })
+                .blockLast();
+
+        assertThat(lengths).containsExactly(PART_SIZE, PART_SIZE, 1234);
+        assertThat(joined.toByteArray()).isEqualTo(data);
+        assertThat(digest.size()).isEqualTo(data.length);
+        assertThat(digest.hex()).isEqualTo(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data)));
+        assertThat(pool.inUse()).isZero();
+    }
+
+    @Test
+    void numbersPartsFromOne() {
+        StepVerifier.create(PartChunker.split(chunks(new byte[PART_SIZE + 1], PART_SIZE + 1), pool, new ContentDigest())
+                        .doOnNext(chunk -> pool.release(chunk.data()))
+                        .map(PartChunk::partNumber))
+                .expectNext(1, 2)
+                .verifyComplete();
+    }
+
+    @Test
+    void emitsSingleEmptyPartForEmptyContent() {
+        StepVerifier.create(PartChunker.split(Flux.empty(), pool, new ContentDigest()))
+                .expectNextMatches(chunk -> chunk.partNumber() == 1 && chunk.length() == 0)
+                .verifyComplete();
+        assertThat(pool.inUse()).isZero();
+    }
+
+    @Test
+    void returnsBuffersWhenCancelledOrFailed() {
+        StepVerifier.create(PartChunker.split(chunks(new byte[3 * PART_SIZE], 100_000), pool, new ContentDigest()), 1)
+                .expectNextCount(1)
+                .thenCancel()
+                .verify();
+        // Выданную часть освобождает получатель, недособранную — нарезчик
+        assertThat(pool.inUse()).isEqualTo(1);
+
+        PartBufferPool failing = new PartBufferPool(new SimpleMeterRegistry(), DataSize.ofMegabytes(5), 4, 4);
+        StepVerifier.create(PartChunker.split(chunks(new byte[1000], 100)
+                        .concatWith(Flux.error(new IllegalStateException("connection reset"))), failing, new ContentDigest()))
+                .verifyErrorMessage("connection reset");
+        assertThat(failing.inUse()).isZero();
+    }
+
+    private static Flux<DataBuffer> chunks(byte[] data, int size) {
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < data.length; i += size) {
+            buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(data, i, Math.min(data.length, i + size))));
+        }
+        return Flux.fromIterable(buffers);
+    }
+}
@@ -0,0 +1,62 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import kz.kaspi.lab.fileuploader.repository.UploadSearch;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.mockito.Mockito.mock;
+
+class UploadListingServiceTest {
+
+    private final UploadListingService service = new UploadListingService(mock(UploadRepository.class), 100, 1000);
+
+    @Test
+    void cursorPointsRightAfterTheRow() {
+        Upload upload = new Upload();
+        upload.setId(UUID.randomUUID());
+        upload.setCreatedAt(Instant.parse("2026-10-18T10:00:00.123456Z"));
+
+        UploadSearch search = service.search(null, null, null, null, UploadListingService.encodeCursor(upload), null);
+
+        assertThat(search.afterCreatedAt()).isEqualTo(upload.getCreatedAt());
+        assertThat(search.afterId()).isEqualTo(upload.getId());
+        assertThat(search.limit()).isEqualTo(100);
+        // Курсор безопасен для query string
+        assertThat(UploadListingService.encodeCursor(upload)).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        assertThatIllegalArgumentException().isThrownBy(() -> search("not base64!"));
+        assertThatIllegalArgumentException().isThrownBy(() -> search(encode("no separator")));
+        assertThatIllegalArgumentException().isThrownBy(() -> search(encode("yesterday_" + UUID.randomUUID())));
+        assertThatIllegalArgumentException().isThrownBy(() -> search(encode("2026-10-18T10:00:00Z_42")))
+                .withMessage("Invalid cursor");
+    }
+
+    @Test
+    void capsLimitAndChecksRange() {
+        Instant from = Instant.parse("2026-10-01T00:00:00Z");
+
+        assertThat(service.search(null, null, null, null, null, 5000).limit()).isEqualTo(1000);
+        assertThat(service.search(null, null, null, null, null, 10).limit()).isEqualTo(10);
+        assertThatIllegalArgumentException().isThrownBy(() -> service.search(null, null, null, null, null, 0));
+        assertThatIllegalArgumentException().isThrownBy(() -> service.search(null, null, from, from, null, null));
+    }
+
+    private UploadSearch search(String cursor) {
+        return service.search(null, null, null, null, cursor, null);
+    }
+
+    private static String encode(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.US_ASCII));
+    }
+}
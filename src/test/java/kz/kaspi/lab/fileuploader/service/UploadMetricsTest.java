@@ -0,0 +1,104 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import kz.kaspi.lab.fileuploader.entity.Upload;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UploadMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BlobService blobService = mock(BlobService.class);
+    private final UploadRepository uploadRepository = mock(UploadRepository.class);
+    private final UploadProgress uploadProgress = new UploadProgress();
+    private final FileUploadService service = new FileUploadService(blobService, uploadRepository,
+            new IdempotencyCache(new SimpleMeterRegistry(), 100, Duration.ofHours(1), Duration.ofSeconds(5)),
+            uploadProgress, new UploadMetrics(meterRegistry, ObservationRegistry.NOOP, uploadProgress),
+            mock(TransactionalOperator.class));
+
+    @BeforeEach
+    void setUp() {
+        // Хранилище дочитывает тело, как настоящий BlobService
+        when(blobService.store(any(), anyString(), anyString(), anyLong())).thenAnswer(invocation -> {
+            Flux<DataBuffer> content = invocation.getArgument(0);
+            return DataBufferUtils.join(content)
+                    .map(buffer -> {
+                        int size = buffer.readableByteCount();
+                        DataBufferUtils.release(buffer);
+                        return new StoredObject("objects/a", size, "hash", false);
+                    });
+        });
+        when(blobService.release("hash")).thenReturn(Mono.empty());
+        when(uploadRepository.updateStatusAndErrorByIdempotencyKey(anyString(), anyString(), anyString()))
+                .thenReturn(Mono.empty());
+    }
+
+    @Test
+    void recordsStagesAndOutcomesOfSuccessfulAndFailedUploads() {
+        Upload ok = upload("ok");
+        Upload failed = upload("failed");
+        when(uploadRepository.save(ok)).thenReturn(Mono.just(ok));
+        when(uploadRepository.save(failed)).thenReturn(Mono.error(new IllegalStateException("db down")));
+
+        StepVerifier.create(service.processUpload(ok, content("hello"))).expectNextCount(1).verifyComplete();
+        StepVerifier.create(service.processUpload(failed, content("world"))).verifyError(IllegalStateException.class);
+
+        assertThat(stageTimer("store", "success").count()).isEqualTo(2);
+        assertThat(stageTimer("db_save", "success").count()).isEqualTo(1);
+        assertThat(stageTimer("db_save", "error").count()).isEqualTo(1);
+        assertThat(stageTimer("db_save", "success").totalTime(TimeUnit.NANOSECONDS)).isPositive();
+
+        assertThat(meterRegistry.get("upload.outcome").tag("status", "SUCCESS").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("upload.outcome").tag("status", "FAILED").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("upload.compensation").tag("reason", "db_save_failed").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("upload.bytes.ingested").counter().count()).isEqualTo(10);
+        assertThat(meterRegistry.get("upload.in.flight").gauge().value()).isZero();
+
+        // Только фиксированные теги: ни id, ни имени файла в рядах нет
+        meterRegistry.getMeters().forEach(meter -> assertThat(meter.getId().getTags())
+                .allSatisfy(tag -> assertThat(tag.getKey()).isIn("stage", "outcome", "status", "reason")));
+    }
+
+    private Timer stageTimer(String stage, String outcome) {
+        return meterRegistry.get("upload.stage.duration").tag("stage", stage).tag("outcome", outcome).timer();
+    }
+
+    private static Upload upload(String key) {
+        Upload upload = new Upload();
+        upload.setId(UUID.randomUUID());
+        upload.setIdempotencyKey(key);
+        upload.setOriginalFilename(key + ".txt");
+        upload.setContentType("text/plain");
+        upload.setFileSize(5L);
+        upload.setStatus(UploadStatus.PROCESSING);
+        return upload;
+    }
+
+    private static Flux<DataBuffer> content(String text) {
+        return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+}
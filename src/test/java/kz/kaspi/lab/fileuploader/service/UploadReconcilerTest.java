@@ -0,0 +1,44 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kz.kaspi.lab.fileuploader.repository.MaintenanceLeaseRepository;
+import kz.kaspi.lab.fileuploader.repository.UploadRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class UploadReconcilerTest {
+
+    private static final Duration HEARTBEAT = Duration.ofMinutes(1);
+
+    @Test
+    void rejectsStaleAfterShorterThanThreeHeartbeats() {
+        assertThatThrownBy(() -> reconciler(Duration.ofMinutes(2), HEARTBEAT))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("stale-after");
+        assertThatThrownBy(() -> reconciler(Duration.ofMinutes(30), Duration.ofMinutes(15)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void acceptsStaleAfterOfThreeHeartbeatsOrMore() {
+        assertThatCode(() -> reconciler(Duration.ofMinutes(3), HEARTBEAT)).doesNotThrowAnyException();
+        assertThatCode(() -> reconciler(Duration.ofMinutes(30), HEARTBEAT)).doesNotThrowAnyException();
+    }
+
+    private static UploadReconciler reconciler(Duration staleAfter, Duration heartbeatInterval) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdmissionController admissionController = new AdmissionController(registry, 64, DataSize.ofGigabytes(2), 0,
+                DataSize.ofMegabytes(8), Duration.ofSeconds(30));
+        return new UploadReconciler(mock(UploadRepository.class), mock(MaintenanceLeaseRepository.class),
+                mock(StorageService.class), mock(IdempotencyCache.class), new UploadProgress(),
+                mock(AsyncIngestService.class), admissionController, registry, true, staleAfter, heartbeatInterval,
+                Duration.ofHours(24), false, 500, 1000, 100_000, Duration.ofMillis(200), 0.5, Duration.ofSeconds(30),
+                Duration.ofMinutes(2));
+    }
+}
@@ -0,0 +1,54 @@
+package kz.kaspi.lab.fileuploader.service;
+
+import io.r2dbc.postgresql.api.Notification;
+import kz.kaspi.lab.fileuploader.dto.UploadStatusEvent;
+import kz.kaspi.lab.fileuploader.entity.Upload.UploadStatus;
+import kz.kaspi.lab.fileuploader.service.UploadStatusNotifier.Signal;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UploadStatusNotifierTest {
+
+    private static final UUID ID = UUID.randomUUID();
+
+    @Test
+    void parsesFullPayload() {
+        Signal signal = UploadStatusNotifier.parse(notification(ID + "|SUCCESS|1024|"));
+
+        assertThat(signal.resync()).isFalse();
+        assertThat(signal.event()).isEqualTo(new UploadStatusEvent(ID, UploadStatus.SUCCESS, 1024L, null));
+    }
+
+    @Test
+    void keepsPipesInsideErrorMessage() {
+        Signal signal = UploadStatusNotifier.parse(notification(ID + "|FAILED||disk full | retry later"));
+
+        assertThat(signal.event()).isEqualTo(new UploadStatusEvent(ID, UploadStatus.FAILED, null, "disk full | retry later"));
+    }
+
+    @Test
+    void acceptsPayloadWithoutOptionalFields() {
+        assertThat(UploadStatusNotifier.parse(notification(ID + "|PROCESSING")).event())
+                .isEqualTo(new UploadStatusEvent(ID, UploadStatus.PROCESSING, null, null));
+    }
+
+    @Test
+    void dropsMalformedPayload() {
+        assertThat(UploadStatusNotifier.parse(notification(null))).isNull();
+        assertThat(UploadStatusNotifier.parse(notification(""))).isNull();
+        assertThat(UploadStatusNotifier.parse(notification("not-a-uuid|SUCCESS|1|"))).isNull();
+        assertThat(UploadStatusNotifier.parse(notification(ID + "|UNKNOWN|1|"))).isNull();
+        assertThat(UploadStatusNotifier.parse(notification(ID + "|SUCCESS|many|"))).isNull();
+    }
+
+    private static Notification notification(String payload) {
+        Notification notification = mock(Notification.class);
+        when(notification.getParameter()).thenReturn(payload);
+        return notification;
+    }
+}